@@ -52,6 +52,9 @@ public class DirectoryManager {
     private static File GENOME_CACHE_DIRECTORY;
     private static File GENE_LIST_DIRECTORY;
     private static File BAM_CACHE_DIRECTORY;
+    private static File SUMMARY_CACHE_DIRECTORY;
+    private static File DATASET_CACHE_DIRECTORY;
+    private static File NAME_INDEX_DIRECTORY;
     final public static String IGV_DIR_USERPREF = "igvDir";
 
 
@@ -233,6 +236,54 @@ public class DirectoryManager {
         return BAM_CACHE_DIRECTORY;
     }
 
+    /**
+     * Directory for the persistent summary score cache,  see {@link org.broad.igv.data.SummaryTileDiskCache}
+     */
+    public static synchronized File getSummaryCacheDirectory() {
+        if (SUMMARY_CACHE_DIRECTORY == null) {
+            File defaultDir = getIgvDirectory();
+            if (defaultDir.exists()) {
+                SUMMARY_CACHE_DIRECTORY = new File(defaultDir, "summary");
+                if (!SUMMARY_CACHE_DIRECTORY.exists()) {
+                    SUMMARY_CACHE_DIRECTORY.mkdir();
+                }
+            }
+        }
+        return SUMMARY_CACHE_DIRECTORY;
+    }
+
+    /**
+     * Directory for binary copies of numeric datasets,  see {@link org.broad.igv.data.BinaryDatasetCache}
+     */
+    public static synchronized File getDatasetCacheDirectory() {
+        if (DATASET_CACHE_DIRECTORY == null) {
+            File defaultDir = getIgvDirectory();
+            if (defaultDir.exists()) {
+                DATASET_CACHE_DIRECTORY = new File(defaultDir, "datasets");
+                if (!DATASET_CACHE_DIRECTORY.exists()) {
+                    DATASET_CACHE_DIRECTORY.mkdir();
+                }
+            }
+        }
+        return DATASET_CACHE_DIRECTORY;
+    }
+
+    /**
+     * Directory for tables of feature names,  see {@link org.broad.igv.feature.FeatureNameCache}
+     */
+    public static synchronized File getNameIndexDirectory() {
+        if (NAME_INDEX_DIRECTORY == null) {
+            File defaultDir = getIgvDirectory();
+            if (defaultDir.exists()) {
+                NAME_INDEX_DIRECTORY = new File(defaultDir, "names");
+                if (!NAME_INDEX_DIRECTORY.exists()) {
+                    NAME_INDEX_DIRECTORY.mkdir();
+                }
+            }
+        }
+        return NAME_INDEX_DIRECTORY;
+    }
+
     public static synchronized File getSamDirectory() {
 
         File samDir = new File(DirectoryManager.getIgvDirectory(), "sam");
@@ -346,6 +397,8 @@ public class DirectoryManager {
         GENOME_CACHE_DIRECTORY = null;
         GENE_LIST_DIRECTORY = null;
         BAM_CACHE_DIRECTORY = null;
+        DATASET_CACHE_DIRECTORY = null;
+        NAME_INDEX_DIRECTORY = null;
         return true;
 
     }
@@ -142,6 +142,10 @@ public class PreferenceManager implements PropertyManager {
     public static final String SAM_COMPLETE_READS_ONLY = "SAM.COMPLETE_READS_ONLY";
 
     public static final String SAM_REDUCED_MEMORY_MODE = "SAM.REDUCED_MEMORY_MODE";
+    public static final String SAM_COMPACT_COUNTS = "SAM.COMPACT_COUNTS";
+    public static final String SAM_COMPACT_ALIGNMENTS = "SAM.COMPACT_ALIGNMENTS";
+    public static final String SAM_COMPACT_ALIGNMENTS_OFF_HEAP = "SAM.COMPACT_ALIGNMENTS_OFF_HEAP";
+    public static final String SAM_PARALLEL_DECODE = "SAM.PARALLEL_DECODE";
     public static final String SAM_MIN_INDEL_SIZE = "SAM.MIN_INDEL_SIZE";
 
     public static final String SAM_SHOW_ALIGNMENT_TRACK = "SAM.SHOW_ALIGNMENT_TRACK";
@@ -244,6 +248,12 @@ public class PreferenceManager implements PropertyManager {
 
     public static final String GWAS_TRACK_HEIGHT = "GWAS_TRACK_HEIGHT";
     public static final String GWAS_DESCRIPTION_CACHE_SIZE = "GWAS_DESCRIPTION_CACHE_SIZE";
+    public static final String HTTP_BLOCK_CACHE_SIZE = "HTTP_BLOCK_CACHE_SIZE";
+    public static final String SEQUENCE_CACHE_SIZE = "SEQUENCE_CACHE_SIZE";
+    public static final String SUMMARY_CACHE_SIZE = "SUMMARY_CACHE_SIZE";
+    public static final String DATASET_CACHE_SIZE = "DATASET_CACHE_SIZE";
+    public static final String NAME_INDEX_CACHE_SIZE = "NAME_INDEX_CACHE_SIZE";
+    public static final String QUANTILE_SKETCH_ERROR = "QUANTILE_SKETCH_ERROR";
     public static final String GWAS_MIN_POINT_SIZE = "GWAS_MIN_POINT_SIZE";
     public static final String GWAS_MAX_POINT_SIZE = "GWAS_MAX_POINT_SIZE";
     public static final String GWAS_USE_CHR_COLORS = "GWAS_USE_CHR_COLORS";
@@ -440,6 +450,26 @@ public class PreferenceManager implements PropertyManager {
         return value.floatValue();
     }
 
+    /**
+     * Rank error of percentile summaries,  0 for exact.  Values outside [0, 1) are ignored with a warning and 0 is
+     * used instead.
+     */
+    public float getQuantileSketchError() {
+        float error;
+        try {
+            error = getAsFloat(QUANTILE_SKETCH_ERROR);
+        } catch (NumberFormatException e) {
+            error = Float.NaN;
+        }
+        if (!(error >= 0 && error < 1)) {
+            log.warn("Invalid " + QUANTILE_SKETCH_ERROR + " value: " + get(QUANTILE_SKETCH_ERROR) +
+                    ".  Expected 0 (exact) or a rank error between 0 and 1,  using 0");
+            error = 0;
+            objectCache.put(QUANTILE_SKETCH_ERROR, error);
+        }
+        return error;
+    }
+
 
     public void mergePreferences(Map<String, String> newPrefs) {
         for (Map.Entry<String, String> entry : newPrefs.entrySet()) {
@@ -1120,6 +1150,10 @@ public class PreferenceManager implements PropertyManager {
         defaultValues.put(SAM_SHOW_ALL_BASES, "false");
 
         defaultValues.put(SAM_REDUCED_MEMORY_MODE, "false");
+        defaultValues.put(SAM_COMPACT_COUNTS, "true");
+        defaultValues.put(SAM_COMPACT_ALIGNMENTS, "false");
+        defaultValues.put(SAM_COMPACT_ALIGNMENTS_OFF_HEAP, "false");
+        defaultValues.put(SAM_PARALLEL_DECODE, "true");
         defaultValues.put(SAM_MIN_INDEL_SIZE, "25");
 
         defaultValues.put(SAM_SHOW_ALIGNMENT_TRACK, "true");
@@ -1150,6 +1184,12 @@ public class PreferenceManager implements PropertyManager {
 
         defaultValues.put(GWAS_TRACK_HEIGHT, "200");
         defaultValues.put(GWAS_DESCRIPTION_CACHE_SIZE, "10000");
+        defaultValues.put(HTTP_BLOCK_CACHE_SIZE, "64");   // megabytes,  0 to disable
+        defaultValues.put(SEQUENCE_CACHE_SIZE, "32");     // megabytes of 2-bit packed reference sequence
+        defaultValues.put(SUMMARY_CACHE_SIZE, "256");     // megabytes of on-disk summary tiles,  0 to disable
+        defaultValues.put(DATASET_CACHE_SIZE, "2048");    // megabytes of binary .igv/.cn dataset copies,  0 to disable
+        defaultValues.put(NAME_INDEX_CACHE_SIZE, "0");    // megabytes of feature name tables for indexed files,  0 to disable
+        defaultValues.put(QUANTILE_SKETCH_ERROR, "0");    // rank error of percentile summaries, 0 for exact
         defaultValues.put(GWAS_MIN_POINT_SIZE, "3");
         defaultValues.put(GWAS_MAX_POINT_SIZE, "7");
         defaultValues.put(GWAS_USE_CHR_COLORS, "true");
@@ -44,9 +44,11 @@ import org.broad.igv.renderer.DataRange;
 import org.broad.igv.sam.AlignmentTrack;
 import org.broad.igv.track.RegionScoreType;
 import org.broad.igv.track.Track;
+import org.broad.igv.track.TrackGroup;
 import org.broad.igv.ui.IGV;
 import org.broad.igv.ui.event.DataLoadedEvent;
 import org.broad.igv.ui.panel.FrameManager;
+import org.broad.igv.ui.panel.TrackPanel;
 import org.broad.igv.ui.util.MessageUtils;
 import org.broad.igv.ui.util.SnapshotUtilities;
 import org.broad.igv.util.*;
@@ -139,6 +141,8 @@ public class CommandExecutor {
                 } else if (cmd.equalsIgnoreCase("snapshot")) {
                     String filename = param1;
                     result = createSnapshot(filename, param2);
+                } else if (cmd.equalsIgnoreCase("snapshotall")) {
+                    result = createSnapshots(param1, param2);
                 } else if ((cmd.equalsIgnoreCase("loadfile") || cmd.equalsIgnoreCase("load")) && param1 != null) {
                     result = load(param1, param2, param3, param4);
                 } else if (cmd.equalsIgnoreCase("genome") && args.size() > 1) {
@@ -867,6 +871,50 @@ public class CommandExecutor {
     }
 
 
+    /**
+     * Create a snapshot for each locus listed in a file,  rendered in parallel without repainting the main window.
+     * Images contain the data panels only.
+     *
+     * @param locusFile file of loci,  see {@link SnapshotRenderer#readLoci(String)}
+     * @param threads   number of threads,  defaults to the number of processors
+     * @return
+     */
+    private String createSnapshots(String locusFile, String threads) {
+
+        if (locusFile == null) {
+            return "ERROR: missing locus file parameter";
+        }
+
+        int nThreads = Runtime.getRuntime().availableProcessors();
+        if (threads != null) {
+            try {
+                nThreads = Integer.parseInt(threads);
+            } catch (NumberFormatException e) {
+                return "ERROR: number of threads must be an integer: " + threads;
+            }
+        }
+
+        File directory = snapshotDirectory == null ? new File(".") : snapshotDirectory;
+        try {
+            List<SnapshotRenderer.SnapshotLocus> loci = SnapshotRenderer.readLoci(StringUtils.stripQuotes(locusFile));
+
+            List<Collection<TrackGroup>> panels = new ArrayList<Collection<TrackGroup>>();
+            for (TrackPanel tp : igv.getTrackPanels()) {
+                panels.add(tp.getGroups());
+            }
+            int width = FrameManager.getDefaultFrame().getWidthInPixels();
+            if (width <= 0) width = 1000;
+
+            int count = (new SnapshotRenderer(panels, width, nThreads)).render(loci, directory);
+            return count == loci.size() ? "OK" : "ERROR: created " + count + " of " + loci.size() + " snapshots";
+        } catch (IOException e) {
+            log.error("Error reading locus file: " + locusFile, e);
+            return "ERROR: " + e.getMessage();
+        } catch (InterruptedException e) {
+            return "ERROR: interrupted";
+        }
+    }
+
     private static void createParents(File outputFile) {
         File parent = outputFile.getParentFile();
         if (!parent.exists()) {
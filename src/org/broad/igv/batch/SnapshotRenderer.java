@@ -0,0 +1,287 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.batch;
+
+import com.google.common.eventbus.EventBus;
+import org.apache.log4j.Logger;
+import org.broad.igv.feature.FeatureDB;
+import org.broad.igv.feature.Locus;
+import org.broad.igv.feature.NamedFeature;
+import org.broad.igv.track.RenderContext;
+import org.broad.igv.track.RenderContextImpl;
+import org.broad.igv.track.TrackGroup;
+import org.broad.igv.ui.UIConstants;
+import org.broad.igv.ui.panel.DataPanelPainter;
+import org.broad.igv.ui.panel.ReferenceFrame;
+import org.broad.igv.ui.util.SnapshotUtilities;
+import org.broad.igv.util.ParsingUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders snapshots of a list of loci to png files without going through the Swing event thread.  Each worker
+ * thread paints the data panels with {@link DataPanelPainter} into an offscreen image,  using its own
+ * {@link ReferenceFrame}.  Loaded tracks and their data sources are shared by all workers.
+ */
+public class SnapshotRenderer {
+
+    private static Logger log = Logger.getLogger(SnapshotRenderer.class);
+
+    private final List<Collection<TrackGroup>> panels;
+    private final int width;
+    private final int nThreads;
+
+    /**
+     * @param panels   track groups of each panel to render,  stacked vertically in the image
+     * @param width    image width in pixels
+     * @param nThreads
+     */
+    public SnapshotRenderer(List<Collection<TrackGroup>> panels, int width, int nThreads) {
+        this.panels = panels;
+        this.width = width;
+        this.nThreads = Math.max(1, nThreads);
+    }
+
+    /**
+     * Render each locus to a png file in {@code directory}.
+     *
+     * @return the number of images written
+     */
+    public int render(List<SnapshotLocus> loci, final File directory) throws InterruptedException {
+
+        // Each worker reuses one frame.  Tracks cache loaded data by frame name,  so this bounds the cached data
+        // to one interval per worker.
+        final ThreadLocal<ReferenceFrame> frames = new ThreadLocal<ReferenceFrame>() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            protected ReferenceFrame initialValue() {
+                ReferenceFrame frame = new SnapshotFrame("snapshot-" + count.incrementAndGet());
+                frame.setBounds(0, width);
+                return frame;
+            }
+        };
+        final int maxPanelHeight = SnapshotUtilities.getMaxPanelHeight();
+
+        ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+        List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>(loci.size());
+        try {
+            for (final SnapshotLocus snapshotLocus : loci) {
+                futures.add(executor.submit(new Callable<Boolean>() {
+                    public Boolean call() throws Exception {
+                        ReferenceFrame frame = frames.get();
+                        frame.jumpTo(snapshotLocus.locus);
+                        BufferedImage image = paint(frame, maxPanelHeight);
+                        File file = new File(directory, snapshotLocus.filename);
+                        ImageIO.write(image, "png", file);
+                        return true;
+                    }
+                }));
+            }
+
+            int count = 0;
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                    count++;
+                } catch (ExecutionException e) {
+                    log.error("Error creating snapshot " + loci.get(i).filename, e.getCause());
+                }
+            }
+            return count;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Paint the data panels for the current locus of {@code frame}.
+     */
+    BufferedImage paint(ReferenceFrame frame, int maxPanelHeight) {
+
+        int[] heights = new int[panels.size()];
+        int totalHeight = 0;
+        for (int i = 0; i < panels.size(); i++) {
+            heights[i] = Math.min(maxPanelHeight, getPanelHeight(panels.get(i)));
+            totalHeight += heights[i];
+        }
+
+        BufferedImage image = new BufferedImage(width, Math.max(1, totalHeight), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setColor(Color.white);
+            g.fillRect(0, 0, image.getWidth(), image.getHeight());
+
+            int y = 0;
+            for (int i = 0; i < panels.size(); i++) {
+                Graphics2D panelGraphics = (Graphics2D) g.create(0, y, width, heights[i]);
+                Rectangle rect = new Rectangle(0, 0, width, heights[i]);
+                RenderContext context = new RenderContextImpl(null, panelGraphics, frame, rect);
+                try {
+                    // Painters are synchronized,  use one per image
+                    new DataPanelPainter().paint(panels.get(i), context, width, Color.white, rect);
+                } finally {
+                    context.dispose();
+                    panelGraphics.dispose();
+                }
+                y += heights[i];
+            }
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    private static int getPanelHeight(Collection<TrackGroup> groups) {
+        int height = 0;
+        for (TrackGroup group : groups) {
+            if (group != null && group.isVisible()) {
+                if (groups.size() > 1) {
+                    height += UIConstants.groupGap;
+                }
+                height += group.getHeight();
+            }
+        }
+        return height;
+    }
+
+    /**
+     * Read a list of loci,  one per line.  A line is either a locus string or feature name,  optionally followed
+     * by an output file name,  or a bed record (chr, start, end, [name]).  Lines starting with # are skipped.
+     *
+     * @param path
+     * @return
+     * @throws IOException
+     */
+    public static List<SnapshotLocus> readLoci(String path) throws IOException {
+
+        List<SnapshotLocus> loci = new ArrayList<SnapshotLocus>();
+        BufferedReader reader = null;
+        try {
+            reader = ParsingUtils.openBufferedReader(path);
+            String nextLine;
+            while ((nextLine = reader.readLine()) != null) {
+                nextLine = nextLine.trim();
+                if (nextLine.length() == 0 || nextLine.startsWith("#") || nextLine.startsWith("track")) {
+                    continue;
+                }
+                String[] tokens = ParsingUtils.WHITESPACE_PATTERN.split(nextLine);
+
+                Locus locus = null;
+                String name = null;
+                if (tokens.length >= 3 && isInteger(tokens[1]) && isInteger(tokens[2])) {
+                    locus = new Locus(tokens[0], Integer.parseInt(tokens[1]), Integer.parseInt(tokens[2]));
+                    if (tokens.length > 3) name = tokens[3];
+                } else {
+                    locus = getLocus(tokens[0]);
+                    if (tokens.length > 1) name = tokens[1];
+                }
+
+                if (locus == null) {
+                    log.error("Unknown locus: " + tokens[0]);
+                    continue;
+                }
+                loci.add(new SnapshotLocus(locus, getFilename(name, locus)));
+            }
+        } finally {
+            if (reader != null) reader.close();
+        }
+        return loci;
+    }
+
+    /**
+     * Return the locus for a locus string or feature name,  with a 0-based start
+     */
+    private static Locus getLocus(String locusString) {
+        Locus locus = Locus.fromString(locusString);
+        if (locus != null) {
+            return new Locus(locus.getChr(), Math.max(0, locus.getStart() - 1), locus.getEnd());
+        }
+        NamedFeature feature = FeatureDB.getFeature(locusString.toUpperCase());
+        return feature == null ? null : new Locus(feature.getChr(), feature.getStart(), feature.getEnd());
+    }
+
+    private static String getFilename(String name, Locus locus) {
+        if (name == null) {
+            name = locus.getChr() + "_" + (locus.getStart() + 1) + "_" + locus.getEnd();
+        }
+        return name.toLowerCase().endsWith(".png") ? name : name + ".png";
+    }
+
+    private static boolean isInteger(String s) {
+        try {
+            Integer.parseInt(s);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+
+    public static class SnapshotLocus {
+
+        final Locus locus;
+        final String filename;
+
+        public SnapshotLocus(Locus locus, String filename) {
+            this.locus = locus;
+            this.filename = filename;
+        }
+    }
+
+    /**
+     * A frame with a private event bus.  Locus changes of snapshot frames are not posted to IGV,  which would
+     * otherwise repaint the main window for every snapshot.
+     */
+    static class SnapshotFrame extends ReferenceFrame {
+
+        private EventBus eventBus;
+
+        SnapshotFrame(String name) {
+            super(name);
+            eventBus = new EventBus();
+        }
+
+        @Override
+        public EventBus getEventBus() {
+            if (eventBus == null) {
+                // Called from the superclass constructor
+                return new EventBus();
+            }
+            return eventBus;
+        }
+    }
+}
@@ -31,6 +31,7 @@ import org.broad.igv.bbfile.*;
 import org.broad.igv.data.AbstractDataSource;
 import org.broad.igv.data.BasicScore;
 import org.broad.igv.data.DataTile;
+import org.broad.igv.data.SummaryTileDiskCache;
 import org.broad.igv.feature.*;
 import org.broad.igv.feature.genome.Genome;
 import org.broad.igv.feature.tribble.IGVBEDCodec;
@@ -72,6 +73,9 @@ public class BigWigDataSource extends AbstractDataSource implements FeatureSourc
 
     private RawDataInterval currentInterval = null;
 
+    // Identity of the file for the persistent summary cache,  "" if it cannot be determined
+    private String summaryCacheId;
+
     private double dataMin = 0;
     private double dataMax = 100;
 
@@ -168,6 +172,16 @@ public class BigWigDataSource extends AbstractDataSource implements FeatureSourc
         wholeGenomeScores = null;
 
         this.windowFunction = statType;
+        super.setWindowFunction(statType);
+    }
+
+    @Override
+    protected synchronized String getSummaryCacheId() {
+        if (summaryCacheId == null) {
+            String id = SummaryTileDiskCache.getFileIdentity(reader.getBBFileHeader().getPath());
+            summaryCacheId = id == null ? "" : id;
+        }
+        return summaryCacheId.length() == 0 ? null : summaryCacheId;
     }
 
     public boolean isLogNormalized() {
@@ -29,6 +29,7 @@ package org.broad.igv.data;
 
 import org.apache.log4j.Logger;
 import org.broad.igv.Globals;
+import org.broad.igv.PreferenceManager;
 import org.broad.igv.feature.Chromosome;
 import org.broad.igv.feature.LocusScore;
 import org.broad.igv.feature.genome.Genome;
@@ -179,7 +180,19 @@ public abstract class AbstractDataSource implements DataSource {
                 SummaryTile summaryTile = summaryTileCache.get(key);
                 if (summaryTile == null) {
 
-                    summaryTile = computeSummaryTile(chr, tileStart, tileEnd, 700);
+                    // Second level,  summaries persisted by this or an earlier session
+                    SummaryTileDiskCache diskCache = SummaryTileDiskCache.getInstance();
+                    String diskKey = diskCache == null ? null : getDiskCacheKey(chr, chrLength, z, t);
+                    List<LocusScore> persistedScores = diskKey == null ? null : diskCache.get(diskKey, windowFunction);
+
+                    if (persistedScores != null) {
+                        summaryTile = new SummaryTile(persistedScores);
+                    } else {
+                        summaryTile = computeSummaryTile(chr, tileStart, tileEnd, 700);
+                        if (diskKey != null) {
+                            diskCache.put(diskKey, summaryTile.getScores());
+                        }
+                    }
 
                     if (cacheSummaryTiles && !FrameManager.isGeneListMode()) {
                         synchronized (summaryTileCache) {
@@ -203,6 +216,26 @@ public abstract class AbstractDataSource implements DataSource {
     }
 
 
+    /**
+     * Return a string identifying the data file,  used to key summary tiles persisted by
+     * {@link SummaryTileDiskCache}.  Sources returning null, the default, do not persist summaries.
+     *
+     * @return
+     */
+    protected String getSummaryCacheId() {
+        return null;
+    }
+
+    private String getDiskCacheKey(String chr, int chrLength, int zoom, int tileNumber) {
+        String id = getSummaryCacheId();
+        if (id == null) {
+            return null;
+        }
+        float quantileError = PreferenceManager.getInstance().getQuantileSketchError();
+        return id + "|" + (genome == null ? "" : genome.getId()) + "|" + chr + "|" + chrLength + "|" + zoom + "|" +
+                tileNumber + "|" + windowFunction + "|" + quantileError;
+    }
+
     /**
      * Note:  Package scope used so this method can be unit tested
      *
@@ -255,7 +288,8 @@ public abstract class AbstractDataSource implements DataSource {
                 List<LocusScore> scores = new ArrayList(nBins);
                 double scale = (double) (endLocation - startLocation) / nBins;
 
-                Accumulator accumulator = new Accumulator(windowFunction, 5);
+                double quantileError = PreferenceManager.getInstance().getQuantileSketchError();
+                Accumulator accumulator = new Accumulator(windowFunction, 5, quantileError);
                 int accumulatedStart = -1;
                 int accumulatedEnd = -1;
                 int lastEndBin = 0;
@@ -289,7 +323,7 @@ public abstract class AbstractDataSource implements DataSource {
                     if (endBin > lastEndBin || endBin > startBin) {
                         if (accumulator.hasData()) {
                             scores.add(getCompositeScore(accumulator, accumulatedStart, accumulatedEnd));
-                            accumulator = new Accumulator(windowFunction, 5);
+                            accumulator = new Accumulator(windowFunction, 5, quantileError);
                         }
                     }
 
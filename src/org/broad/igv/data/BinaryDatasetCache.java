@@ -0,0 +1,573 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.data;
+
+import org.apache.log4j.Logger;
+import org.broad.igv.DirectoryManager;
+import org.broad.igv.PreferenceManager;
+import org.broad.igv.util.CacheFileUtils;
+import org.broad.igv.util.FileUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.*;
+
+/**
+ * A persistent cache of binary, column oriented copies of the numeric text datasets read by
+ * {@link IGVDatasetParser} (.igv, .cn, .xcn, .snp, .loh, .expr).  The copy is written while the text file is first
+ * scanned,  and on later loads replaces both the scan and the per-chromosome parsing:  chromosome data is read by
+ * memory mapping the chromosome's block and copying its columns directly into arrays.
+ * <p/>
+ * Copies live in the "datasets" directory under the IGV directory,  named by a digest of the source path and genome.
+ * A copy is only used if the source file length and modification time, the genome, and the data headings match
+ * those recorded when it was written.  Files are evicted least recently used first once the total size exceeds the
+ * DATASET_CACHE_SIZE preference.
+ * <p/>
+ * .gct and other expression files are read by {@link org.broad.igv.data.expression.ExpressionFileParser},  which maps
+ * probes to loci and keeps the whole matrix in memory after one pass.  They do not go through this cache.
+ * <p/>
+ * File layout,  all values big-endian:
+ * <pre>
+ *   int magic, int version
+ *   chromosome blocks:  int[n] starts,  int[n] ends (optional),  float[n] per heading,
+ *                       int[n + 1] probe offsets,  UTF-8 probe bytes
+ *   index:  source length and modification time,  genome,  headings,  dataset statistics,  longest features,
+ *           block table
+ *   long index position
+ * </pre>
+ */
+public class BinaryDatasetCache {
+
+    private static Logger log = Logger.getLogger(BinaryDatasetCache.class);
+
+    private static final int MAGIC = 0x49474244;
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".bin";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Files smaller than this are parsed quickly enough that a binary copy is not worth the disk space.
+     */
+    static final long DEFAULT_MIN_FILE_SIZE = 1024 * 1024;
+
+    private static BinaryDatasetCache instance;
+
+    private final File directory;
+    private long maxBytes;
+    private final long minFileSize;
+
+    /**
+     * Return the shared cache,  or null if it is disabled or the cache directory is not available.
+     */
+    public static synchronized BinaryDatasetCache getInstance() {
+        long maxBytes = PreferenceManager.getInstance().getAsInt(PreferenceManager.DATASET_CACHE_SIZE) * 1024L * 1024L;
+        if (maxBytes <= 0) {
+            return null;
+        }
+        if (instance == null) {
+            File dir = DirectoryManager.getDatasetCacheDirectory();
+            if (dir == null) {
+                return null;
+            }
+            instance = new BinaryDatasetCache(dir, maxBytes, DEFAULT_MIN_FILE_SIZE);
+        } else {
+            instance.maxBytes = maxBytes;
+        }
+        return instance;
+    }
+
+    BinaryDatasetCache(File directory, long maxBytes, long minFileSize) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.minFileSize = minFileSize;
+    }
+
+    /**
+     * Return the cached copy of the dataset at {@code path},  or null if there is none or it is out of date.
+     *
+     * @param path          path of the source text file
+     * @param genomeId      id of the genome used to canonicalize chromosome names
+     * @param headings      data headings parsed from the source file header
+     * @param hasEndLocations true if the source file has an end column
+     */
+    public Entry open(String path, String genomeId, String[] headings, boolean hasEndLocations) {
+
+        File source = getSourceFile(path);
+        if (source == null) {
+            return null;
+        }
+        File file = new File(directory, getFileName(source, genomeId));
+        if (!file.exists()) {
+            return null;
+        }
+
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            long fileLength = raf.length();
+            if (fileLength < 16 || raf.readInt() != MAGIC || raf.readInt() != VERSION) {
+                throw new IOException("Not a dataset cache file");
+            }
+            raf.seek(fileLength - 8);
+            long indexPosition = raf.readLong();
+            if (indexPosition < 8 || indexPosition > fileLength - 8) {
+                throw new IOException("Invalid index position: " + indexPosition);
+            }
+            ByteBuffer index = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, indexPosition,
+                    fileLength - 8 - indexPosition);
+
+            if (index.getLong() != source.length() || index.getLong() != source.lastModified() ||
+                    !genomeId.equals(getString(index)) || (index.get() != 0) != hasEndLocations) {
+                return null;
+            }
+            String[] cachedHeadings = new String[index.getInt()];
+            for (int i = 0; i < cachedHeadings.length; i++) {
+                cachedHeadings[i] = getString(index);
+            }
+            if (!Arrays.equals(headings, cachedHeadings)) {
+                return null;
+            }
+
+            Entry entry = new Entry(file, headings, hasEndLocations);
+            entry.logNormalized = index.get() != 0;
+            entry.dataMin = index.getFloat();
+            entry.dataMax = index.getFloat();
+
+            int nLongest = index.getInt();
+            for (int i = 0; i < nLongest; i++) {
+                String chr = getString(index);
+                entry.longestFeatureMap.put(chr, index.getInt());
+            }
+
+            int nBlocks = index.getInt();
+            for (int i = 0; i < nBlocks; i++) {
+                Block block = new Block();
+                block.chr = getString(index);
+                block.textPosition = index.getLong();
+                block.nRows = index.getInt();
+                block.position = index.getLong();
+                block.length = index.getLong();
+                entry.blocks.put(block.textPosition, block);
+            }
+
+            file.setLastModified(System.currentTimeMillis());
+            return entry;
+
+        } catch (Exception e) {
+            // Partially written,  or an older format
+            log.info("Error reading dataset cache file " + file.getName() + ": " + e.getMessage());
+            file.delete();
+            return null;
+        } finally {
+            if (raf != null) try {
+                raf.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Start a cached copy of the dataset at {@code path}.  Returns null if the source is not a local file large
+     * enough to be worth caching.
+     */
+    public Writer create(String path, String genomeId, String[] headings, boolean hasEndLocations) {
+
+        File source = getSourceFile(path);
+        if (source == null || source.length() < minFileSize) {
+            return null;
+        }
+        try {
+            return new Writer(source, genomeId, headings, hasEndLocations);
+        } catch (IOException e) {
+            log.error("Error creating dataset cache file", e);
+            return null;
+        }
+    }
+
+    private static File getSourceFile(String path) {
+        if (path == null || FileUtils.isRemote(path)) {
+            return null;
+        }
+        File file = new File(path);
+        return file.isFile() ? file : null;
+    }
+
+    /**
+     * Delete the least recently used files,  other than {@code keep},  until the total size is within the limit.
+     */
+    private synchronized void evict(File keep) {
+        CacheFileUtils.evict(directory, SUFFIX, maxBytes, keep);
+    }
+
+    static String getFileName(File source, String genomeId) {
+        return CacheFileUtils.getFileName(source.getAbsolutePath() + "|" + genomeId, SUFFIX);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+
+    /**
+     * Location of one chromosome's data in the cache file.  Blocks are keyed by the position of the chromosome's
+     * first row in the text file,  as recorded in {@link ChromosomeSummary#getStartPosition()}.
+     */
+    static class Block {
+        String chr;
+        long textPosition;
+        int nRows;
+        long position;
+        long length;
+    }
+
+    /**
+     * A valid cached copy of a dataset.
+     */
+    public static class Entry {
+
+        private final File file;
+        private final String[] headings;
+        private final boolean hasEndLocations;
+        private final Map<Long, Block> blocks = new LinkedHashMap<Long, Block>();
+        private final Map<String, Integer> longestFeatureMap = new HashMap<String, Integer>();
+        private boolean logNormalized;
+        private float dataMin;
+        private float dataMax;
+
+        Entry(File file, String[] headings, boolean hasEndLocations) {
+            this.file = file;
+            this.headings = headings;
+            this.hasEndLocations = hasEndLocations;
+        }
+
+        /**
+         * Return summaries equivalent to those produced by scanning the text file.
+         */
+        public List<ChromosomeSummary> getSummaries() {
+            List<ChromosomeSummary> summaries = new ArrayList<ChromosomeSummary>(blocks.size());
+            for (Block block : blocks.values()) {
+                ChromosomeSummary summary = new ChromosomeSummary(block.chr, block.textPosition);
+                summary.setNDataPoints(block.nRows);
+                summaries.add(summary);
+            }
+            return summaries;
+        }
+
+        public Map<String, Integer> getLongestFeatureMap() {
+            return longestFeatureMap;
+        }
+
+        public boolean isLogNormalized() {
+            return logNormalized;
+        }
+
+        public float getDataMin() {
+            return dataMin;
+        }
+
+        public float getDataMax() {
+            return dataMax;
+        }
+
+        /**
+         * Load data for the chromosome described by {@code chrSummary}.  Returns null if there is no block for it,
+         * or the block is too large to map.
+         *
+         * @param includeProbes false to skip decoding probe names
+         */
+        public ChromosomeData loadChromosomeData(ChromosomeSummary chrSummary, boolean includeProbes) throws IOException {
+
+            Block block = blocks.get(chrSummary.getStartPosition());
+            if (block == null || block.length > Integer.MAX_VALUE) {
+                return null;
+            }
+
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                ByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, block.position, block.length);
+                int n = block.nRows;
+
+                ChromosomeData cd = new ChromosomeData(block.chr);
+                int[] starts = new int[n];
+                buffer.asIntBuffer().get(starts);
+                buffer.position(buffer.position() + 4 * n);
+                cd.setStartLocations(starts);
+
+                if (hasEndLocations) {
+                    int[] ends = new int[n];
+                    buffer.asIntBuffer().get(ends);
+                    buffer.position(buffer.position() + 4 * n);
+                    cd.setEndLocations(ends);
+                }
+
+                for (String h : headings) {
+                    float[] data = new float[n];
+                    buffer.asFloatBuffer().get(data);
+                    buffer.position(buffer.position() + 4 * n);
+                    cd.setData(h, data);
+                }
+
+                if (includeProbes) {
+                    int[] offsets = new int[n + 1];
+                    buffer.asIntBuffer().get(offsets);
+                    buffer.position(buffer.position() + 4 * (n + 1));
+                    byte[] bytes = new byte[offsets[n]];
+                    buffer.get(bytes);
+                    String[] probes = new String[n];
+                    for (int i = 0; i < n; i++) {
+                        probes[i] = new String(bytes, offsets[i], offsets[i + 1] - offsets[i], UTF8);
+                    }
+                    cd.setProbes(probes);
+                }
+                return cd;
+            } finally {
+                raf.close();
+            }
+        }
+    }
+
+
+    /**
+     * Writes a cache file chromosome by chromosome while the source is scanned.  The file is only visible to
+     * {@link #open} after {@link #finish} succeeds.
+     */
+    public class Writer {
+
+        private final File source;
+        private final long sourceLength;
+        private final long sourceLastModified;
+        private final String genomeId;
+        private final String[] headings;
+        private final boolean hasEndLocations;
+        private final List<Block> blocks = new ArrayList<Block>();
+
+        private File tmpFile;
+        private FileOutputStream fos;
+        private FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        private long position = 0;
+
+        Writer(File source, String genomeId, String[] headings, boolean hasEndLocations) throws IOException {
+            this.source = source;
+            this.sourceLength = source.length();
+            this.sourceLastModified = source.lastModified();
+            this.genomeId = genomeId;
+            this.headings = headings;
+            this.hasEndLocations = hasEndLocations;
+
+            tmpFile = File.createTempFile("dataset", ".tmp", directory);
+            fos = new FileOutputStream(tmpFile);
+            channel = fos.getChannel();
+            putInt(MAGIC);
+            putInt(VERSION);
+        }
+
+        /**
+         * Append the data for one contiguous run of rows for a chromosome.
+         *
+         * @param textPosition position of the first row in the text file
+         * @param ends         end locations,  or null if the file has none
+         * @param data         one column per heading,  in heading order
+         */
+        public void addChromosome(String chr, long textPosition, int[] starts, int[] ends, List<String> probes,
+                                  float[][] data) throws IOException {
+
+            Block block = new Block();
+            block.chr = chr;
+            block.textPosition = textPosition;
+            block.nRows = starts.length;
+            block.position = position;
+
+            putInts(starts);
+            if (hasEndLocations) {
+                putInts(ends);
+            }
+            for (float[] column : data) {
+                for (float v : column) {
+                    ensure(4);
+                    buffer.putFloat(v);
+                }
+                position += 4L * column.length;
+            }
+
+            byte[][] probeBytes = new byte[probes.size()][];
+            int[] offsets = new int[probeBytes.length + 1];
+            for (int i = 0; i < probeBytes.length; i++) {
+                probeBytes[i] = probes.get(i).getBytes(UTF8);
+                offsets[i + 1] = offsets[i] + probeBytes[i].length;
+            }
+            putInts(offsets);
+            for (byte[] b : probeBytes) {
+                putBytes(b);
+            }
+
+            block.length = position - block.position;
+            blocks.add(block);
+        }
+
+        /**
+         * Write the index and publish the cache file.  Returns false if the file could not be published.
+         */
+        public boolean finish(Map<String, Integer> longestFeatureMap, boolean logNormalized,
+                              float dataMin, float dataMax) throws IOException {
+
+            long indexPosition = position;
+            putLong(sourceLength);
+            putLong(sourceLastModified);
+            putString(genomeId);
+            putByte(hasEndLocations);
+            putInt(headings.length);
+            for (String h : headings) {
+                putString(h);
+            }
+            putByte(logNormalized);
+            ensure(8);
+            buffer.putFloat(dataMin);
+            buffer.putFloat(dataMax);
+            position += 8;
+
+            putInt(longestFeatureMap.size());
+            for (Map.Entry<String, Integer> entry : longestFeatureMap.entrySet()) {
+                putString(entry.getKey());
+                putInt(entry.getValue());
+            }
+
+            putInt(blocks.size());
+            for (Block block : blocks) {
+                putString(block.chr);
+                putLong(block.textPosition);
+                putInt(block.nRows);
+                putLong(block.position);
+                putLong(block.length);
+            }
+            putLong(indexPosition);
+            flush();
+            fos.close();
+            fos = null;
+
+            if (tmpFile.length() > maxBytes) {
+                log.info("Dataset " + source.getName() + " is too large for the dataset cache");
+                abort();
+                return false;
+            }
+
+            File file = new File(directory, getFileName(source, genomeId));
+            synchronized (BinaryDatasetCache.this) {
+                file.delete();
+                if (!tmpFile.renameTo(file)) {
+                    abort();
+                    return false;
+                }
+                tmpFile = null;
+                evict(file);
+            }
+            return true;
+        }
+
+        /**
+         * Discard the partially written file.  Does nothing if the file has been published.
+         */
+        public void abort() {
+            if (fos != null) {
+                try {
+                    fos.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+                fos = null;
+            }
+            if (tmpFile != null) {
+                tmpFile.delete();
+                tmpFile = null;
+            }
+        }
+
+        private void ensure(int n) throws IOException {
+            if (buffer.remaining() < n) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void putByte(boolean b) throws IOException {
+            ensure(1);
+            buffer.put((byte) (b ? 1 : 0));
+            position++;
+        }
+
+        private void putInt(int v) throws IOException {
+            ensure(4);
+            buffer.putInt(v);
+            position += 4;
+        }
+
+        private void putLong(long v) throws IOException {
+            ensure(8);
+            buffer.putLong(v);
+            position += 8;
+        }
+
+        private void putInts(int[] values) throws IOException {
+            for (int v : values) {
+                ensure(4);
+                buffer.putInt(v);
+            }
+            position += 4L * values.length;
+        }
+
+        private void putBytes(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                ensure(1);
+                int n = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, n);
+                offset += n;
+            }
+            position += bytes.length;
+        }
+
+        private void putString(String s) throws IOException {
+            byte[] bytes = s.getBytes(UTF8);
+            putInt(bytes.length);
+            putBytes(bytes);
+        }
+    }
+}
@@ -84,6 +84,10 @@ public class DatasetDataSource extends AbstractDataSource {
     }
 
 
+    public Dataset getDataset() {
+        return dataset;
+    }
+
     @Override
     protected DataTile getRawData(String chr, int startLocation, int endLocation) {
 
@@ -60,8 +60,12 @@ public class IGVDataset implements Dataset {
     private Map<String, Integer> longestFeatureMap;
 
     public IGVDataset(ResourceLocator locator, Genome genome) {
+        this(new IGVDatasetParser(locator, genome), genome);
+    }
+
+    IGVDataset(IGVDatasetParser parser, Genome genome) {
 
-        parser = new IGVDatasetParser(locator, genome);
+        this.parser = parser;
 
         List<ChromosomeSummary> summaries = parser.scan(this);
 
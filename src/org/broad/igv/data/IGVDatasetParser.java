@@ -72,14 +72,24 @@ public class IGVDatasetParser {
     private boolean hasCalls = false;
     private Genome genome;
     private IGV igv;
+    private BinaryDatasetCache cache;
+    private BinaryDatasetCache.Entry cachedData;
 
 
     private int startBase = 0;
 
     public IGVDatasetParser(ResourceLocator copyNoFile, Genome genome) {
+        this(copyNoFile, genome, BinaryDatasetCache.getInstance());
+    }
+
+    /**
+     * @param cache cache of binary dataset copies,  or null to always parse the text file
+     */
+    IGVDatasetParser(ResourceLocator copyNoFile, Genome genome, BinaryDatasetCache cache) {
         this.dataResourceLocator = copyNoFile;
         this.genome = genome;
         this.igv = IGV.hasInstance() ? IGV.getInstance() : null;
+        this.cache = cache;
     }
 
     private void setColumnDefaults() {
@@ -156,7 +166,8 @@ public class IGVDatasetParser {
     }
 
     /**
-     * Scan the datafile for chromosome breaks.
+     * Scan the datafile for chromosome breaks.  If a binary copy of the file is cached only the header is read,
+     * otherwise a copy is written to the cache during the scan.
      *
      * @param dataset
      * @return
@@ -181,6 +192,8 @@ public class IGVDatasetParser {
         int headerRows = 0;
         int count = 0;
 
+        BinaryDatasetCache.Writer cacheWriter = null;
+
         boolean logNormalized;
         try {
 
@@ -230,6 +243,19 @@ public class IGVDatasetParser {
 
             dataset.setDataHeadings(headings);
 
+            if (cache != null) {
+                cachedData = cache.open(dataResourceLocator.getPath(), genome.getId(), headings, hasEndLocations);
+                if (cachedData != null) {
+                    List<ChromosomeSummary> cachedSummaries = scanCachedData(dataset, headings);
+                    if (cachedSummaries != null) {
+                        return cachedSummaries;
+                    }
+                }
+                if (probeColumn >= 0) {
+                    cacheWriter = cache.create(dataResourceLocator.getPath(), genome.getId(), headings, hasEndLocations);
+                }
+            }
+
             // Infer if the data is logNormalized by looking for negative data values.
             // Assume it is not until proven otherwise
             logNormalized = false;
@@ -258,6 +284,7 @@ public class IGVDatasetParser {
                         if (chrSummary != null) {
                             updateWholeGenome(chrSummary.getName(), dataset, headings, wgData);
                             chrSummary.setNDataPoints(nRows);
+                            cacheWriter = writeCachedChromosome(cacheWriter, chrSummary, wgData);
                         }
 
                         // Shart the next chromosome
@@ -281,10 +308,12 @@ public class IGVDatasetParser {
                                 count + headerRows, nextLine);
                     }
 
+                    int end = -1;
                     int length = 1;
                     if (hasEndLocations) {
                         try {
-                            length = ParsingUtils.parseInt(tokens[endColumn].trim()) - location + 1;
+                            end = ParsingUtils.parseInt(tokens[endColumn].trim());
+                            length = end - location + 1;
 
                         } catch (NumberFormatException numberFormatException) {
                             log.error("Column " + tokens[endColumn] + " is not a number");
@@ -303,6 +332,19 @@ public class IGVDatasetParser {
 
                     wgData.locations.add(location);
 
+                    if (cacheWriter != null) {
+                        // loadChromosomeData rejects rows with missing data columns,  leave that to the text parser
+                        if (tokens.length <= firstDataColumn + (headings.length - 1) * skipColumns) {
+                            cacheWriter.abort();
+                            cacheWriter = null;
+                        } else {
+                            wgData.probes.add(new String(tokens[probeColumn]));
+                            if (hasEndLocations) {
+                                wgData.ends.add(end);
+                            }
+                        }
+                    }
+
                     for (int idx = 0; idx < headings.length; idx++) {
                         int i = firstDataColumn + idx * skipColumns;
 
@@ -327,6 +369,19 @@ public class IGVDatasetParser {
 
             dataset.setLongestFeatureMap(longestFeatureMap);
 
+            if (chrSummary != null) {
+                cacheWriter = writeCachedChromosome(cacheWriter, chrSummary, wgData);
+            }
+            if (cacheWriter != null) {
+                try {
+                    if (cacheWriter.finish(longestFeatureMap, logNormalized, dataMin, dataMax)) {
+                        cachedData = cache.open(dataResourceLocator.getPath(), genome.getId(), headings, hasEndLocations);
+                    }
+                } catch (IOException e) {
+                    log.error("Error writing dataset cache file", e);
+                }
+            }
+
         } catch (ParserException pe) {
             throw pe;
         } catch (FileNotFoundException e) {
@@ -341,6 +396,9 @@ public class IGVDatasetParser {
                 throw new RuntimeException(e);
             }
         } finally {
+            if (cacheWriter != null) {
+                cacheWriter.abort();
+            }
             if (is != null) {
                 try {
                     is.close();
@@ -363,6 +421,70 @@ public class IGVDatasetParser {
         return chrSummaries;
     }
 
+    /**
+     * Set the dataset properties normally computed by the scan from the cached copy of the file.
+     *
+     * @return the chromosome summaries,  or null if the cached copy could not be read
+     */
+    private List<ChromosomeSummary> scanCachedData(IGVDataset dataset, String[] headings) {
+
+        List<ChromosomeSummary> summaries = cachedData.getSummaries();
+        try {
+            if (genome.getHomeChromosome().equals(Globals.CHR_ALL)) {
+                for (ChromosomeSummary summary : summaries) {
+                    ChromosomeData cd = cachedData.loadChromosomeData(summary, false);
+                    if (cd == null) {
+                        // Block too large to map
+                        dataset.setGenomeSummary(null);
+                        cachedData = null;
+                        return null;
+                    }
+                    Map<String, float[]> data = new HashMap(headings.length);
+                    for (String h : headings) {
+                        data.put(h, cd.getData(h));
+                    }
+                    updateWholeGenome(summary.getName(), dataset, headings, cd.getStartLocations(), data);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Error reading dataset cache file", e);
+            dataset.setGenomeSummary(null);
+            cachedData = null;
+            return null;
+        }
+
+        dataset.setLongestFeatureMap(new HashMap(cachedData.getLongestFeatureMap()));
+        dataset.setLogNormalized(cachedData.isLogNormalized());
+        dataset.setDataMin(cachedData.getDataMin());
+        dataset.setDataMax(cachedData.getDataMax());
+        return summaries;
+    }
+
+    /**
+     * Append the data for the chromosome just scanned to the cache file.
+     *
+     * @return the writer,  or null if writing failed
+     */
+    private BinaryDatasetCache.Writer writeCachedChromosome(BinaryDatasetCache.Writer cacheWriter,
+                                                            ChromosomeSummary chrSummary, WholeGenomeData wgData) {
+        if (cacheWriter == null) {
+            return null;
+        }
+        float[][] data = new float[wgData.headings.length][];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = wgData.data.get(wgData.headings[i]).toArray();
+        }
+        try {
+            cacheWriter.addChromosome(chrSummary.getName(), chrSummary.getStartPosition(), wgData.locations.toArray(),
+                    hasEndLocations ? wgData.ends.toArray() : null, wgData.probes, data);
+            return cacheWriter;
+        } catch (IOException e) {
+            log.error("Error writing dataset cache file", e);
+            cacheWriter.abort();
+            return null;
+        }
+    }
+
     private void updateLongestFeature(Map<String, Integer> longestFeatureMap, String thisChr, int length) {
         if (longestFeatureMap.containsKey(thisChr)) {
             longestFeatureMap.put(thisChr, Math.max(longestFeatureMap.get(thisChr), length));
@@ -394,6 +516,18 @@ public class IGVDatasetParser {
      */
     public ChromosomeData loadChromosomeData(ChromosomeSummary chrSummary, String[] dataHeaders) {
 
+        if (cachedData != null) {
+            try {
+                ChromosomeData cd = cachedData.loadChromosomeData(chrSummary, true);
+                if (cd != null) {
+                    return cd;
+                }
+            } catch (IOException e) {
+                log.error("Error reading dataset cache file,  reverting to " + dataResourceLocator.getPath(), e);
+                cachedData = null;
+            }
+        }
+
         // InputStream is = null;
         try {
             int skipColumns = hasCalls ? 2 : 1;
@@ -666,8 +800,14 @@ public class IGVDatasetParser {
             for (String s : wgData.headings) {
                 tmp.put(s, wgData.data.get(s).toArray());
             }
+            updateWholeGenome(currentChromosome, dataset, headings, locations, tmp);
+        }
+    }
 
+    private void updateWholeGenome(String currentChromosome, IGVDataset dataset, String[] headings,
+                                   int[] locations, Map<String, float[]> tmp) {
 
+        if (locations.length > 0) {
             GenomeSummaryData genomeSummary = dataset.getGenomeSummary();
             if (genomeSummary == null) {
                 genomeSummary = new GenomeSummaryData(genome, headings);
@@ -684,6 +824,10 @@ public class IGVDatasetParser {
         IntArrayList locations = new IntArrayList(50000);
         Map<String, FloatArrayList> data = new HashMap();
 
+        // Only collected while writing a cache file
+        List<String> probes = new ArrayList();
+        IntArrayList ends = new IntArrayList();
+
         WholeGenomeData(String[] headings) {
             this.headings = headings;
             for (String h : headings) {
@@ -0,0 +1,370 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.data;
+
+import org.apache.log4j.Logger;
+import org.broad.igv.DirectoryManager;
+import org.broad.igv.PreferenceManager;
+import org.broad.igv.feature.LocusScore;
+import org.broad.igv.track.WindowFunction;
+import org.broad.igv.util.CacheFileUtils;
+import org.broad.igv.util.HttpUtils;
+import org.broad.igv.util.ParsingUtils;
+
+import java.io.*;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A persistent, size-bounded cache of summary scores computed on the fly from raw data,  a second level behind the
+ * in-memory tile caches of {@link AbstractDataSource} and {@link org.broad.igv.tdf.TDFDataSource}.  Each entry is a
+ * small gzipped binary file in the "summary" directory under the IGV directory,  named by a digest of its key.
+ * Files are evicted least recently used first once the total size exceeds the SUMMARY_CACHE_SIZE preference.
+ * <p/>
+ * Keys start with a file identity (see {@link #getFileIdentity(String)}),  so entries computed from a file that has
+ * since changed are never read.  Only {@link BasicScore}, {@link NamedScore}, and {@link CompositeScore} lists are
+ * stored.
+ */
+public class SummaryTileDiskCache {
+
+    private static Logger log = Logger.getLogger(SummaryTileDiskCache.class);
+
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".sum";
+
+    private static final byte BASIC = 0;
+    private static final byte NAMED = 1;
+    private static final byte COMPOSITE = 2;
+
+    private static SummaryTileDiskCache instance;
+
+    private final File directory;
+    private long maxBytes;
+    private long currentBytes = 0;
+
+    // File name -> size,  in access order.  Loaded from the directory on first use.
+    private LinkedHashMap<String, Long> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Return the shared cache,  or null if it is disabled or the cache directory is not available.
+     */
+    public static synchronized SummaryTileDiskCache getInstance() {
+        long maxBytes = PreferenceManager.getInstance().getAsInt(PreferenceManager.SUMMARY_CACHE_SIZE) * 1024L * 1024L;
+        if (maxBytes <= 0) {
+            return null;
+        }
+        if (instance == null) {
+            File dir = DirectoryManager.getSummaryCacheDirectory();
+            if (dir == null) {
+                return null;
+            }
+            instance = new SummaryTileDiskCache(dir, maxBytes);
+        } else {
+            instance.setMaxBytes(maxBytes);
+        }
+        return instance;
+    }
+
+    SummaryTileDiskCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Return a string identifying the current contents of the file or URL at {@code path}: the path, content length,
+     * modification time, and for http resources the ETag.  Returns null if neither the length nor the modification
+     * time can be determined.
+     */
+    public static String getFileIdentity(String path) {
+        if (path == null) {
+            return null;
+        }
+        long length = ParsingUtils.getContentLength(path);
+        long lastModified = ParsingUtils.getLastModified(path);
+        if (length < 0 && lastModified <= 0) {
+            return null;
+        }
+        String etag = null;
+        if (path.startsWith("http:") || path.startsWith("https:")) {
+            try {
+                etag = HttpUtils.getInstance().getHeaderField(new URL(path), "ETag");
+            } catch (IOException e) {
+                log.info("Could not read ETag for " + path);
+            }
+        }
+        return path + "|" + length + "|" + lastModified + (etag == null ? "" : "|" + etag);
+    }
+
+    synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        if (entries != null) {
+            evict();
+        }
+    }
+
+    /**
+     * Return the scores stored under {@code key},  or null if there are none.
+     *
+     * @param windowFunction window function assigned to composite scores
+     */
+    public List<LocusScore> get(String key, WindowFunction windowFunction) {
+
+        String name = getFileName(key);
+        synchronized (this) {
+            if (getEntries().get(name) == null) {      // Also moves the entry to the end of the access order
+                misses.incrementAndGet();
+                return null;
+            }
+        }
+
+        File file = new File(directory, name);
+        DataInputStream dis = null;
+        try {
+            dis = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));
+            if (dis.readInt() != VERSION || !key.equals(dis.readUTF())) {
+                misses.incrementAndGet();
+                return null;
+            }
+            List<LocusScore> scores = readScores(dis, windowFunction);
+            file.setLastModified(System.currentTimeMillis());
+            hits.incrementAndGet();
+            return scores;
+        } catch (IOException e) {
+            // Removed by another IGV instance,  or partially written
+            log.info("Error reading summary cache file " + file.getName() + ": " + e.getMessage());
+            remove(name);
+            misses.incrementAndGet();
+            return null;
+        } finally {
+            if (dis != null) try {
+                dis.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Store the scores under {@code key}.  Lists containing score types that cannot be stored are ignored.
+     */
+    public void put(String key, List<LocusScore> scores) {
+
+        for (LocusScore score : scores) {
+            Class c = score.getClass();
+            if (c != BasicScore.class && c != NamedScore.class && c != CompositeScore.class) {
+                return;
+            }
+        }
+
+        String name = getFileName(key);
+        File tmpFile = null;
+        DataOutputStream dos = null;
+        try {
+            tmpFile = File.createTempFile("summary", ".tmp", directory);
+            dos = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tmpFile))));
+            dos.writeInt(VERSION);
+            dos.writeUTF(key);
+            writeScores(dos, scores);
+            dos.close();
+            dos = null;
+
+            File file = new File(directory, name);
+            synchronized (this) {
+                file.delete();
+                if (!tmpFile.renameTo(file)) {
+                    tmpFile.delete();
+                    return;
+                }
+                Long previous = getEntries().put(name, file.length());
+                if (previous != null) {
+                    currentBytes -= previous;
+                }
+                currentBytes += file.length();
+                evict();
+            }
+        } catch (IOException e) {
+            log.error("Error writing summary cache file", e);
+            if (tmpFile != null) tmpFile.delete();
+        } finally {
+            if (dos != null) try {
+                dos.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        for (String name : getEntries().keySet()) {
+            new File(directory, name).delete();
+        }
+        entries.clear();
+        currentBytes = 0;
+    }
+
+    public synchronized long getCurrentBytes() {
+        getEntries();
+        return currentBytes;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private synchronized void remove(String name) {
+        Long size = getEntries().remove(name);
+        if (size != null) {
+            currentBytes -= size;
+        }
+        new File(directory, name).delete();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> iter = entries.entrySet().iterator();
+        while (currentBytes > maxBytes && iter.hasNext()) {
+            Map.Entry<String, Long> entry = iter.next();
+            currentBytes -= entry.getValue();
+            new File(directory, entry.getKey()).delete();
+            iter.remove();
+        }
+    }
+
+    /**
+     * Return the entry table,  loading it from the cache directory ordered by last use on first call.
+     */
+    private LinkedHashMap<String, Long> getEntries() {
+        if (entries == null) {
+            entries = new LinkedHashMap<String, Long>(256, 0.75f, true);
+            for (File f : CacheFileUtils.listFiles(directory, SUFFIX)) {
+                entries.put(f.getName(), f.length());
+                currentBytes += f.length();
+            }
+            evict();
+        }
+        return entries;
+    }
+
+    static String getFileName(String key) {
+        return CacheFileUtils.getFileName(key, SUFFIX);
+    }
+
+
+    private static void writeScores(DataOutputStream dos, List<LocusScore> scores) throws IOException {
+        dos.writeInt(scores.size());
+        for (LocusScore score : scores) {
+            if (score instanceof CompositeScore) {
+                CompositeScore cs = (CompositeScore) score;
+                dos.writeByte(COMPOSITE);
+                writeLocation(dos, score);
+                float[] data = cs.data == null ? new float[0] : cs.data;
+                dos.writeInt(data.length);
+                for (float v : data) {
+                    dos.writeFloat(v);
+                }
+                writeStrings(dos, cs.probes);
+            } else if (score instanceof NamedScore) {
+                dos.writeByte(NAMED);
+                writeLocation(dos, score);
+                writeString(dos, ((NamedScore) score).getProbe());
+            } else {
+                dos.writeByte(BASIC);
+                writeLocation(dos, score);
+            }
+        }
+    }
+
+    private static List<LocusScore> readScores(DataInputStream dis, WindowFunction windowFunction) throws IOException {
+        int n = dis.readInt();
+        List<LocusScore> scores = new ArrayList<LocusScore>(n);
+        for (int i = 0; i < n; i++) {
+            byte type = dis.readByte();
+            int start = dis.readInt();
+            int end = dis.readInt();
+            float value = dis.readFloat();
+            if (type == COMPOSITE) {
+                float[] data = new float[dis.readInt()];
+                for (int j = 0; j < data.length; j++) {
+                    data[j] = dis.readFloat();
+                }
+                String[] probes = readStrings(dis);
+                scores.add(new CompositeScore(start, end, value, data, probes, windowFunction));
+            } else if (type == NAMED) {
+                scores.add(new NamedScore(start, end, value, readString(dis)));
+            } else {
+                scores.add(new BasicScore(start, end, value));
+            }
+        }
+        return scores;
+    }
+
+    private static void writeLocation(DataOutputStream dos, LocusScore score) throws IOException {
+        dos.writeInt(score.getStart());
+        dos.writeInt(score.getEnd());
+        dos.writeFloat(score.getScore());
+    }
+
+    private static void writeString(DataOutputStream dos, String s) throws IOException {
+        dos.writeBoolean(s != null);
+        if (s != null) {
+            dos.writeUTF(s);
+        }
+    }
+
+    private static String readString(DataInputStream dis) throws IOException {
+        return dis.readBoolean() ? dis.readUTF() : null;
+    }
+
+    private static void writeStrings(DataOutputStream dos, String[] strings) throws IOException {
+        dos.writeInt(strings == null ? -1 : strings.length);
+        if (strings != null) {
+            for (String s : strings) {
+                writeString(dos, s);
+            }
+        }
+    }
+
+    private static String[] readStrings(DataInputStream dis) throws IOException {
+        int n = dis.readInt();
+        if (n < 0) {
+            return null;
+        }
+        String[] strings = new String[n];
+        for (int i = 0; i < n; i++) {
+            strings[i] = readString(dis);
+        }
+        return strings;
+    }
+}
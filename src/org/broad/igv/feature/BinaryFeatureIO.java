@@ -0,0 +1,258 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.feature;
+
+import org.broad.igv.util.collections.MultiMap;
+
+import java.awt.*;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.*;
+import java.util.List;
+
+/**
+ * Compact binary encoding of {@link BasicFeature} lists,  used to snapshot gene annotations so they can be restored
+ * without re-parsing the source file.  Strings are written through a table so repeated values (chromosome names,
+ * types,  attribute keys) are stored once.
+ * <p/>
+ * Only plain {@code BasicFeature} and {@code Exon} instances are supported,  see {@link #canWrite(java.util.List)}.
+ */
+public class BinaryFeatureIO {
+
+    private static final int NULL_STRING = -1;
+    private static final int NEW_STRING = -2;
+
+    /**
+     * Return true if every feature in the list can be round-tripped by this class.  Subclasses of BasicFeature
+     * carry state we don't know about,  so they are excluded.
+     */
+    public static boolean canWrite(List<? extends htsjdk.tribble.Feature> features) {
+        for (htsjdk.tribble.Feature f : features) {
+            if (f == null || f.getClass() != BasicFeature.class) {
+                return false;
+            }
+            List<Exon> exons = ((BasicFeature) f).exons;
+            if (exons != null) {
+                for (Exon exon : exons) {
+                    if (exon == null || exon.getClass() != Exon.class) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    public static void writeFeatures(DataOutputStream dos, List<? extends htsjdk.tribble.Feature> features) throws IOException {
+        Writer writer = new Writer(dos);
+        dos.writeInt(features.size());
+        for (htsjdk.tribble.Feature f : features) {
+            BasicFeature bf = (BasicFeature) f;
+            writer.writeAbstractFeature(bf);
+            dos.writeInt(bf.level);
+            dos.writeFloat(bf.score);
+            dos.writeFloat(bf.confidence);
+            writer.writeString(bf.identifier);
+            writer.writeString(bf.link);
+            dos.writeInt(bf.getThickStart());
+            dos.writeInt(bf.getThickEnd());
+            if (bf.parentIds == null) {
+                dos.writeInt(-1);
+            } else {
+                dos.writeInt(bf.parentIds.length);
+                for (String id : bf.parentIds) {
+                    writer.writeString(id);
+                }
+            }
+            if (bf.exons == null) {
+                dos.writeInt(-1);
+            } else {
+                dos.writeInt(bf.exons.size());
+                for (Exon exon : bf.exons) {
+                    writer.writeAbstractFeature(exon);
+                    dos.writeInt(exon.getNumber());
+                    dos.writeInt(exon.getCdStart());
+                    dos.writeInt(exon.getCdEnd());
+                    dos.writeBoolean(exon.isNonCoding());
+                    dos.writeInt(exon.getMrnaBase());
+                }
+            }
+        }
+    }
+
+    public static List<htsjdk.tribble.Feature> readFeatures(DataInputStream dis) throws IOException {
+        Reader reader = new Reader(dis);
+        int nFeatures = dis.readInt();
+        List<htsjdk.tribble.Feature> features = new ArrayList<htsjdk.tribble.Feature>(nFeatures);
+        for (int i = 0; i < nFeatures; i++) {
+            BasicFeature bf = new BasicFeature();
+            reader.readAbstractFeature(bf);
+            bf.level = dis.readInt();
+            bf.score = dis.readFloat();
+            bf.confidence = dis.readFloat();
+            bf.identifier = reader.readString();
+            bf.link = reader.readString();
+            bf.setThickStart(dis.readInt());
+            bf.setThickEnd(dis.readInt());
+            int nParents = dis.readInt();
+            if (nParents >= 0) {
+                bf.parentIds = new String[nParents];
+                for (int p = 0; p < nParents; p++) {
+                    bf.parentIds[p] = reader.readString();
+                }
+            }
+            int nExons = dis.readInt();
+            if (nExons >= 0) {
+                bf.exons = new ArrayList<Exon>(nExons);
+                for (int e = 0; e < nExons; e++) {
+                    Exon exon = new Exon(null, 0, 0, Strand.NONE);
+                    reader.readAbstractFeature(exon);
+                    exon.setNumber(dis.readInt());
+                    int codingStart = dis.readInt();
+                    int codingEnd = dis.readInt();
+                    exon.setNonCoding(dis.readBoolean());
+                    exon.setCodingStart(codingStart);
+                    exon.setCodingEnd(codingEnd);
+                    exon.setMrnaBase(dis.readInt());
+                    bf.exons.add(exon);
+                }
+            }
+            features.add(bf);
+        }
+        return features;
+    }
+
+
+    private static class Writer {
+
+        DataOutputStream dos;
+        Map<String, Integer> strings = new HashMap<String, Integer>();
+
+        Writer(DataOutputStream dos) {
+            this.dos = dos;
+        }
+
+        void writeString(String s) throws IOException {
+            if (s == null) {
+                dos.writeInt(NULL_STRING);
+                return;
+            }
+            Integer idx = strings.get(s);
+            if (idx == null) {
+                strings.put(s, strings.size());
+                byte[] bytes = s.getBytes("UTF-8");
+                dos.writeInt(NEW_STRING);
+                dos.writeInt(bytes.length);
+                dos.write(bytes);
+            } else {
+                dos.writeInt(idx);
+            }
+        }
+
+        void writeAbstractFeature(AbstractFeature f) throws IOException {
+            writeString(f.chromosome);
+            dos.writeInt(f.start);
+            dos.writeInt(f.end);
+            dos.writeByte(f.strand == null ? -1 : f.strand.ordinal());
+            writeString(f.type);
+            writeString(f.name);
+            writeString(f.description);
+            dos.writeInt(f.readingFrame);
+            if (f.color == null) {
+                dos.writeBoolean(false);
+            } else {
+                dos.writeBoolean(true);
+                dos.writeInt(f.color.getRGB());
+            }
+            if (f.attributes == null) {
+                dos.writeInt(-1);
+            } else {
+                Set<String> keys = f.attributes.keys();
+                dos.writeInt(keys.size());
+                for (String key : keys) {
+                    writeString(key);
+                    List<String> values = f.attributes.getAll(key);
+                    dos.writeInt(values.size());
+                    for (String value : values) {
+                        writeString(value);
+                    }
+                }
+            }
+        }
+    }
+
+    private static class Reader {
+
+        DataInputStream dis;
+        List<String> strings = new ArrayList<String>();
+
+        Reader(DataInputStream dis) {
+            this.dis = dis;
+        }
+
+        String readString() throws IOException {
+            int idx = dis.readInt();
+            if (idx == NULL_STRING) {
+                return null;
+            } else if (idx == NEW_STRING) {
+                byte[] bytes = new byte[dis.readInt()];
+                dis.readFully(bytes);
+                String s = new String(bytes, "UTF-8");
+                strings.add(s);
+                return s;
+            } else {
+                return strings.get(idx);
+            }
+        }
+
+        void readAbstractFeature(AbstractFeature f) throws IOException {
+            f.chromosome = readString();
+            f.start = dis.readInt();
+            f.end = dis.readInt();
+            int strand = dis.readByte();
+            f.strand = strand < 0 ? null : Strand.values()[strand];
+            f.type = readString();
+            f.name = readString();
+            f.description = readString();
+            f.readingFrame = dis.readInt();
+            if (dis.readBoolean()) {
+                f.color = new Color(dis.readInt(), true);
+            }
+            int nKeys = dis.readInt();
+            if (nKeys >= 0) {
+                f.attributes = new MultiMap<String, String>(Math.max(nKeys, 1));
+                for (int k = 0; k < nKeys; k++) {
+                    String key = readString();
+                    int nValues = dis.readInt();
+                    for (int v = 0; v < nValues; v++) {
+                        f.attributes.put(key, readString());
+                    }
+                }
+            }
+        }
+    }
+}
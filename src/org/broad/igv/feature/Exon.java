@@ -72,6 +72,10 @@ public class Exon extends AbstractFeature implements IExon {
         this.mrnaBase = base;
     }
 
+    int getMrnaBase() {
+        return mrnaBase;
+    }
+
     /**
      * Get amino acid number based on genomic coordinate.
      * Genome coordinate MUST be 0-based
@@ -285,6 +289,10 @@ public class Exon extends AbstractFeature implements IExon {
         this.number = number;
     }
 
+    int getNumber() {
+        return number;
+    }
+
     public String getURL() {
         return null;  //To change body of implemented methods use File | Settings | File Templates.
     }
@@ -26,6 +26,7 @@
 package org.broad.igv.feature;
 
 import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.feature.tribble.UCSCCodec;
 import htsjdk.tribble.AsciiFeatureCodec;
 import htsjdk.tribble.Feature;
 import htsjdk.tribble.FeatureCodec;
@@ -52,4 +53,12 @@ public class FeatureCodecParser extends AbstractFeatureParser {
     protected Feature parseLine(String nextLine) {
         return codec.decode(nextLine);
     }
+
+    /**
+     * @return true if the features read so far carry gff style attributes.  The codec registers their ID, Alias,
+     * and Symbol values with FeatureDB.
+     */
+    public boolean isGffTags() {
+        return gffTags || (codec instanceof UCSCCodec && ((UCSCCodec) codec).isGffTags());
+    }
 }
@@ -27,7 +27,6 @@ package org.broad.igv.feature;
 
 //~--- non-JDK imports --------------------------------------------------------
 
-import com.jidesoft.utils.SortedList;
 import org.apache.log4j.Logger;
 import org.broad.igv.Globals;
 import org.broad.igv.feature.genome.Genome;
@@ -46,43 +45,64 @@ import java.util.*;
 public class FeatureDB {
 
     private static Logger log = Logger.getLogger(FeatureDB.class);
+    private static final int MAX_DUPLICATE_COUNT = 20;
+
     /**
-     * Map for all features other than genes.
+     * Index of all searchable names.  Reads take no locks,  see {@link FeatureNameIndex}.
      */
-    //private static Map<String, NamedFeature> featureMap = new HashMap(10000);
-    private static Map<String, List<NamedFeature>> featureMap = Collections.synchronizedSortedMap(new TreeMap<String, List<NamedFeature>>());
-    private static final int MAX_DUPLICATE_COUNT = 20;
+    private static final FeatureNameIndex index =
+            new FeatureNameIndex(FeatureComparator.get(true), MAX_DUPLICATE_COUNT + 1);
+
+    /**
+     * Threads on which features should not be indexed,  see {@link #setIndexingEnabled(boolean)}
+     */
+    private static final ThreadLocal<Boolean> indexingDisabled = new ThreadLocal<Boolean>();
 
     public static void addFeature(NamedFeature feature, Genome genome) {
+        if (!isIndexingEnabled() || !isOnGenome(feature, genome)) {
+            return;
+        }
+        List<String> names = new ArrayList<String>(4);
+        getNames(feature, names);
+        for (String name : names) {
+            index.put(name.toUpperCase(), feature);
+        }
+    }
+
+    /**
+     * Collect the names a feature can be searched by:  its name,  its identifier,  and short attribute values of
+     * the feature and its exons.
+     */
+    static void getNames(NamedFeature feature, List<String> names) {
 
         final String name = feature.getName();
         if (name != null && name.length() > 0 && !name.equals(".")) {
-            put(name, feature, genome);
+            names.add(name);
         }
         if (feature instanceof IGVFeature) {
             final IGVFeature igvFeature = (IGVFeature) feature;
             final String id = igvFeature.getIdentifier();
             if (id != null && id.length() > 0) {
-                put(id, feature, genome);
+                names.add(id);
             }
 
-            addByAttributes(igvFeature, genome);
+            addByAttributes(igvFeature, names);
 
             List<Exon> exons = igvFeature.getExons();
             if (exons != null) {
                 for (Exon exon : exons) {
-                    addByAttributes(exon, genome);
+                    addByAttributes(exon, names);
                 }
             }
         }
     }
 
-    private static void addByAttributes(IGVFeature igvFeature, Genome genome) {
+    private static void addByAttributes(IGVFeature igvFeature, List<String> names) {
         MultiMap<String, String> attributes = igvFeature.getAttributes();
         if (attributes != null) {
             for (String value : attributes.values()) {
                 if (value.length() < 20) {
-                    put(value, igvFeature, genome);
+                    names.add(value);
                 }
             }
         }
@@ -98,73 +118,41 @@ public class FeatureDB {
      * @return true if successfully added, false if not
      */
     static boolean put(String name, NamedFeature feature, Genome genome) {
-        String key = name.toUpperCase();
+        if (!isIndexingEnabled() || !isOnGenome(feature, genome)) {
+            return false;
+        }
+        return index.put(name.toUpperCase(), feature);
+    }
+
+    private static boolean isOnGenome(NamedFeature feature, Genome genome) {
         if (!Globals.isHeadless()) {
             Genome currentGenome = genome != null ? genome : GenomeManager.getInstance().getCurrentGenome();
             if (currentGenome != null && currentGenome.getChromosome(feature.getChr()) == null) {
                 return false;
             }
         }
-
-        synchronized (featureMap) {
-            List<NamedFeature> currentList = featureMap.get(key);
-            if (currentList == null) {
-                List<NamedFeature> newList = new SortedList<NamedFeature>(
-                        new ArrayList<NamedFeature>(), FeatureComparator.get(true));
-                boolean added = newList.add(feature);
-                if (added) {
-                    featureMap.put(key, newList);
-                }
-                return added;
-            } else {
-                // Don't let list grow without bounds
-                if (currentList.size() > MAX_DUPLICATE_COUNT) {
-                    return false;
-                }
-
-                return currentList.add(feature);
-
-            }
-        }
+        return true;
     }
 
-    /*
-        String key = name.toUpperCase();
-
-        Genome currentGenome = GenomeManager.getInstance().getCurrentGenome();
-        if (currentGenome == null || currentGenome.getChromosome(feature.getChr()) != null) {
-            NamedFeature currentFeature = featureMap.get(key);
-            if (currentFeature == null) {
-                featureMap.put(key, feature);
-            } else {
-                // If there are multiple features, prefer the one that is NOT on a "random" chromosome.
-                // This is a hack, but an important one for the human assemblies
-                String featureChr = feature.getChr().toLowerCase();
-                String currentFeatureChr = currentFeature.getChr();
-                if (featureChr.contains("random") || featureChr.contains("chrun") || featureChr.contains("hap")) {
-                    return;
-                } else if (currentFeatureChr.contains("random") || currentFeatureChr.contains("chrun") ||
-                        currentFeatureChr.contains("hap")) {
-                    featureMap.put(key, feature);
-                    return;
-                }
-
-                // If there are multiple features, use or keep the longest one
-                int w1 = currentFeature.getEnd() - currentFeature.getStart();
-                int w2 = feature.getEnd() - feature.getStart();
-                if (w2 > w1) {
-                    featureMap.put(key, feature);
-                }
-
-            }
-
-        }
+    private static boolean isIndexingEnabled() {
+        return indexingDisabled.get() == null;
+    }
 
+    /**
+     * Enable or disable adding features to the database on the current thread.  Used while reading files for
+     * {@link FeatureNameCache},  which indexes the names itself,  as some codecs add the features they decode.
      */
+    static void setIndexingEnabled(boolean enabled) {
+        if (enabled) {
+            indexingDisabled.remove();
+        } else {
+            indexingDisabled.set(Boolean.TRUE);
+        }
+    }
 
 
     public static void addFeature(String name, NamedFeature feature, Genome genome) {
-        put(name.toUpperCase(), feature, genome);
+        put(name, feature, genome);
     }
 
 
@@ -172,20 +160,51 @@ public class FeatureDB {
     }
 
 
+    /**
+     * Add a collection of features,  typically all features of a track,  as a single table of the index.
+     */
     public static void addFeatures(List<htsjdk.tribble.Feature> features, Genome genome) {
+        if (!isIndexingEnabled()) {
+            return;
+        }
+        FeatureNameIndex.Builder builder = index.newBuilder();
+        List<String> names = new ArrayList<String>(4);
         for (htsjdk.tribble.Feature feature : features) {
-            if (feature instanceof IGVFeature)
-                addFeature((IGVFeature) feature, genome);
+            if (feature instanceof IGVFeature) {
+                IGVFeature igvFeature = (IGVFeature) feature;
+                if (isOnGenome(igvFeature, genome)) {
+                    names.clear();
+                    getNames(igvFeature, names);
+                    for (String name : names) {
+                        builder.add(name.toUpperCase(), igvFeature);
+                    }
+                }
+            }
         }
+        index.addAll(builder);
     }
 
+    /**
+     * Add a table of names of features which are not loaded,  see {@link FeatureNameCache}
+     */
+    static void addNameTable(FeatureNameIndex.MappedTable table) {
+        index.addMapped(table);
+    }
+
+    static FeatureNameIndex.Builder newBuilder() {
+        return index.newBuilder();
+    }
 
+
+    /**
+     * Remove all features.  Concurrent searches see the features from before or after the call,  not a mix.
+     */
     public static void clearFeatures() {
-        featureMap.clear();
+        index.clear();
     }
 
     static int size() {
-        return featureMap.size();
+        return index.size();
     }
 
     /**
@@ -193,7 +212,7 @@ public class FeatureDB {
      */
     public static NamedFeature getFeature(String name) {
         String nm = name.trim().toUpperCase();
-        List<NamedFeature> features = featureMap.get(nm);
+        List<NamedFeature> features = index.get(nm);
 
         if (features != null) {
             return features.get(0);
@@ -207,12 +226,6 @@ public class FeatureDB {
      * an exact match. Current implementation will match anything
      * for which name is at the beginning, including but not limited to
      * exact matches.
-     * <p/>
-     * NOTE: "It is imperative that the user manually synchronize
-     * on [this sorted map] when iterating over any of its
-     * collection views, or the collections views of any of its
-     * subMap, headMap or tailMap views". See
-     * <a href="http://docs.oracle.com/javase/6/docs/api/java/util/Collections.html#synchronizedSortedMap%28java.util.SortedMap%29> here</a>
      *
      * @param name : Search string. Features which begin with this
      *             string will be found.
@@ -220,9 +233,7 @@ public class FeatureDB {
      */
     static Map<String, List<NamedFeature>> getFeaturesMap(String name) {
         String nm = name.trim().toUpperCase();
-        SortedMap<String, List<NamedFeature>> treeMap = (SortedMap) featureMap;
-        //Search is inclusive to first argument, exclusive to second
-        return treeMap.subMap(nm, nm + Character.MAX_VALUE);
+        return index.getByPrefix(nm, Integer.MAX_VALUE);
     }
 
     /**
@@ -248,25 +259,17 @@ public class FeatureDB {
      */
     public static List<NamedFeature> getFeaturesList(String name, int limit, boolean longestOnly) {
 
-        //Note: We are iterating over submap, this needs
-        //to be synchronized over the main map.
-        synchronized (featureMap) {
-            Map<String, List<NamedFeature>> resultMap = getFeaturesMap(name);
-            Set<String> names = resultMap.keySet();
-            Iterator<String> nameIter = names.iterator();
-            ArrayList<NamedFeature> features = new ArrayList<NamedFeature>((Math.min(limit, names.size())));
-            int ii = 0;
-            while (nameIter.hasNext() && ii < limit) {
-                List<NamedFeature> subFeats = resultMap.get(nameIter.next());
-                if (longestOnly) {
-                    features.add(subFeats.get(0));
-                } else {
-                    features.addAll(subFeats);
-                }
-                ii++;
+        String nm = name.trim().toUpperCase();
+        Map<String, List<NamedFeature>> resultMap = index.getByPrefix(nm, limit);
+        ArrayList<NamedFeature> features = new ArrayList<NamedFeature>(resultMap.size());
+        for (List<NamedFeature> subFeats : resultMap.values()) {
+            if (longestOnly) {
+                features.add(subFeats.get(0));
+            } else {
+                features.addAll(subFeats);
             }
-            return features;
         }
+        return features;
     }
 
 
@@ -291,29 +294,26 @@ public class FeatureDB {
         }
 
         Map<Integer, BasicFeature> results = new HashMap<Integer, BasicFeature>();
-        List<NamedFeature> possibles = featureMap.get(nm);
+        List<NamedFeature> possibles = index.get(nm);
 
         if (possibles != null) {
-            synchronized (featureMap) {
-                for (NamedFeature f : possibles) {
-                    if (!(f instanceof BasicFeature)) {
-                        continue;
-                    }
+            for (NamedFeature f : possibles) {
+                if (!(f instanceof BasicFeature)) {
+                    continue;
+                }
 
-                    BasicFeature bf = (BasicFeature) f;
-                    Codon c = bf.getCodon(currentGenome, proteinPosition);
-                    if (c == null) {
-                        continue;
-                    }
-                    if (c.getAminoAcid().equalsByName(refAA)) {
-                        Set<String> snps = AminoAcidManager.getInstance().getMappingSNPs(c.getSequence(),
-                                AminoAcidManager.getAminoAcidByName(mutAA));
-                        if (snps.size() >= 1) {
-                            results.put(c.getGenomePositions()[0], bf);
-                        }
+                BasicFeature bf = (BasicFeature) f;
+                Codon c = bf.getCodon(currentGenome, proteinPosition);
+                if (c == null) {
+                    continue;
+                }
+                if (c.getAminoAcid().equalsByName(refAA)) {
+                    Set<String> snps = AminoAcidManager.getInstance().getMappingSNPs(c.getSequence(),
+                            AminoAcidManager.getAminoAcidByName(mutAA));
+                    if (snps.size() >= 1) {
+                        results.put(c.getGenomePositions()[0], bf);
                     }
                 }
-
             }
         }
 
@@ -340,37 +340,34 @@ public class FeatureDB {
         }
 
         Map<Integer, BasicFeature> results = new HashMap<Integer, BasicFeature>();
-        List<NamedFeature> possibles = featureMap.get(nm);
+        List<NamedFeature> possibles = index.get(nm);
         String tempNT;
         String brefNT = refNT.toUpperCase();
 
         if (possibles != null) {
-            synchronized (featureMap) {
-                for (NamedFeature f : possibles) {
-                    if (!(f instanceof BasicFeature)) {
-                        continue;
-                    }
-
-                    BasicFeature bf = (BasicFeature) f;
+            for (NamedFeature f : possibles) {
+                if (!(f instanceof BasicFeature)) {
+                    continue;
+                }
 
-                    int genomePosition = bf.featureToGenomePosition(new int[]{startPosition - 1})[0];
-                    if (genomePosition < 0) {
-                        continue;
-                    }
-                    final byte[] nuclSequence = currentGenome.getSequence(bf.getChr(), genomePosition, genomePosition + 1);
-                    if (nuclSequence == null) {
-                        continue;
-                    }
-                    tempNT = new String(nuclSequence);
-                    if (bf.getStrand() == Strand.NEGATIVE) {
-                        tempNT = AminoAcidManager.getNucleotideComplement(tempNT);
-                    }
+                BasicFeature bf = (BasicFeature) f;
 
-                    if (tempNT.toUpperCase().equals(brefNT)) {
-                        results.put(genomePosition, bf);
-                    }
+                int genomePosition = bf.featureToGenomePosition(new int[]{startPosition - 1})[0];
+                if (genomePosition < 0) {
+                    continue;
+                }
+                final byte[] nuclSequence = currentGenome.getSequence(bf.getChr(), genomePosition, genomePosition + 1);
+                if (nuclSequence == null) {
+                    continue;
+                }
+                tempNT = new String(nuclSequence);
+                if (bf.getStrand() == Strand.NEGATIVE) {
+                    tempNT = AminoAcidManager.getNucleotideComplement(tempNT);
                 }
 
+                if (tempNT.toUpperCase().equals(brefNT)) {
+                    results.put(genomePosition, bf);
+                }
             }
         }
 
@@ -0,0 +1,258 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.feature;
+
+import htsjdk.tribble.AbstractFeatureReader;
+import htsjdk.tribble.CloseableTribbleIterator;
+import htsjdk.tribble.Feature;
+import htsjdk.tribble.FeatureCodec;
+import org.apache.log4j.Logger;
+import org.broad.igv.DirectoryManager;
+import org.broad.igv.PreferenceManager;
+import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.feature.genome.GenomeManager;
+import org.broad.igv.feature.tribble.CodecFactory;
+import org.broad.igv.util.CacheFileUtils;
+import org.broad.igv.util.FileUtils;
+import org.broad.igv.util.ResourceLocator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A persistent cache of feature name tables for indexed feature files.  Only the features in view are read from an
+ * indexed file,  so normally only their names can be searched.  With this cache enabled the whole file is read once
+ * in the background,  and the names and loci of its features are written to a table in the "names" directory under
+ * the IGV directory.  On later loads the table is memory mapped and searched in place,  see
+ * {@link FeatureNameIndex.MappedTable},  so the names are searchable without reading the file or holding the
+ * names on the heap.
+ * <p/>
+ * A table is only used if the source file length and modification time,  and the genome,  match those recorded
+ * when it was written.  Files are evicted least recently used first once the total size exceeds the
+ * NAME_INDEX_CACHE_SIZE preference.  The cache is disabled when the preference is 0,  the default.
+ */
+public class FeatureNameCache {
+
+    private static Logger log = Logger.getLogger(FeatureNameCache.class);
+
+    static final String SUFFIX = ".names";
+
+    private static final ExecutorService scanExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "feature-names-" + count.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        }
+    });
+
+    private static FeatureNameCache instance;
+
+    private final File directory;
+    private long maxBytes;
+
+    /**
+     * Files being scanned,  so a file loaded twice is only scanned once
+     */
+    private final Set<String> pending = Collections.synchronizedSet(new HashSet<String>());
+
+    /**
+     * Return the shared cache,  or null if it is disabled or the cache directory is not available.
+     */
+    public static synchronized FeatureNameCache getInstance() {
+        long maxBytes = PreferenceManager.getInstance().getAsInt(PreferenceManager.NAME_INDEX_CACHE_SIZE) * 1024L * 1024L;
+        if (maxBytes <= 0) {
+            return null;
+        }
+        if (instance == null) {
+            File dir = DirectoryManager.getNameIndexDirectory();
+            if (dir == null) {
+                return null;
+            }
+            instance = new FeatureNameCache(dir, maxBytes);
+        } else {
+            instance.maxBytes = maxBytes;
+        }
+        return instance;
+    }
+
+    FeatureNameCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Make the feature names of the file at {@code locator} searchable through {@link FeatureDB}.  If there is no
+     * current table for the file one is built in the background,  and added once complete if {@code genome} is
+     * still the current genome.
+     */
+    public void load(final ResourceLocator locator, final Genome genome) {
+
+        final File source = getSourceFile(locator);
+        if (source == null || genome == null) {
+            return;
+        }
+
+        FeatureNameIndex.MappedTable table = open(source, genome);
+        if (table != null) {
+            FeatureDB.addNameTable(table);
+            return;
+        }
+
+        final String key = getFileName(source, genome.getId());
+        if (pending.add(key)) {
+            scanExecutor.submit(new Runnable() {
+                public void run() {
+                    try {
+                        FeatureNameIndex.MappedTable table = build(locator, source, genome);
+                        if (table != null && GenomeManager.getInstance().getCurrentGenome() == genome) {
+                            FeatureDB.addNameTable(table);
+                        }
+                    } catch (Exception e) {
+                        log.error("Error indexing feature names of " + locator.getPath(), e);
+                    } finally {
+                        pending.remove(key);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Return the current table for {@code source},  or null if there is none.
+     */
+    FeatureNameIndex.MappedTable open(File source, Genome genome) {
+        File file = new File(directory, getFileName(source, genome.getId()));
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            FeatureNameIndex.MappedTable table = FeatureNameIndex.open(file, getSourceKey(source, genome));
+            if (table == null) {
+                // Out of date
+                file.delete();
+            } else {
+                file.setLastModified(System.currentTimeMillis());
+            }
+            return table;
+        } catch (IOException e) {
+            log.info("Error reading feature name table " + file.getName() + ": " + e.getMessage());
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Read every feature of the file,  and write and open a table of their names.
+     */
+    FeatureNameIndex.MappedTable build(ResourceLocator locator, File source, Genome genome) throws IOException {
+
+        FeatureCodec codec = CodecFactory.getCodec(locator, genome);
+        if (codec == null) {
+            return null;
+        }
+
+        FeatureNameIndex.Builder builder = FeatureDB.newBuilder();
+        List<String> names = new ArrayList<String>(4);
+        AbstractFeatureReader reader = AbstractFeatureReader.getFeatureReader(locator.getPath(),
+                ResourceLocator.indexFile(locator), codec, false);
+        CloseableTribbleIterator<Feature> iter = null;
+        FeatureDB.setIndexingEnabled(false);
+        try {
+            iter = reader.iterator();
+            while (iter.hasNext()) {
+                Feature f = iter.next();
+                if (!(f instanceof NamedFeature) || genome.getChromosome(f.getChr()) == null) {
+                    continue;
+                }
+                names.clear();
+                FeatureDB.getNames((NamedFeature) f, names);
+                if (names.isEmpty()) {
+                    continue;
+                }
+                String name = ((NamedFeature) f).getName();
+                if (name == null || name.length() == 0 || name.equals(".")) {
+                    name = names.get(0);
+                }
+                NamedFeature locus = new FeatureNameIndex.NamedLocus(name, f.getChr(), f.getStart(), f.getEnd());
+                for (String n : names) {
+                    builder.add(n.toUpperCase(), locus);
+                }
+            }
+        } finally {
+            FeatureDB.setIndexingEnabled(true);
+            if (iter != null) iter.close();
+            reader.close();
+        }
+
+        File file = new File(directory, getFileName(source, genome.getId()));
+        File tmpFile = File.createTempFile(file.getName(), ".tmp", directory);
+        try {
+            FeatureNameIndex.write(tmpFile, builder.build(), getSourceKey(source, genome));
+            synchronized (this) {
+                file.delete();
+                if (!tmpFile.renameTo(file)) {
+                    return null;
+                }
+                evict(file);
+            }
+        } finally {
+            tmpFile.delete();
+        }
+        return FeatureNameIndex.open(file, getSourceKey(source, genome));
+    }
+
+    private static File getSourceFile(ResourceLocator locator) {
+        String path = locator.getPath();
+        if (path == null || FileUtils.isRemote(path)) {
+            return null;
+        }
+        File file = new File(path);
+        return file.isFile() ? file : null;
+    }
+
+    private static String getSourceKey(File source, Genome genome) {
+        return source.getAbsolutePath() + "|" + source.length() + "|" + source.lastModified() + "|" + genome.getId();
+    }
+
+    /**
+     * Delete the least recently used files,  other than {@code keep},  until the total size is within the limit.
+     */
+    private synchronized void evict(File keep) {
+        CacheFileUtils.evict(directory, SUFFIX, maxBytes, keep);
+    }
+
+    static String getFileName(File source, String genomeId) {
+        return CacheFileUtils.getFileName(source.getAbsolutePath() + "|" + genomeId, SUFFIX);
+    }
+}
@@ -0,0 +1,734 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.feature;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * A case-insensitive,  prefix searchable index of feature names,  the storage behind {@link FeatureDB}.
+ * <p/>
+ * Names are held in immutable sorted string tables.  Each table stores its keys in a single char array with an
+ * offset array,  so an entry costs a few bytes plus its name rather than a String, a map node, and a list.
+ * Features added in bulk (e.g. all features of a track) become a new table,  features added one at a time go to a
+ * small concurrent write buffer which is converted to a table once it fills.  Tables are merged as they accumulate
+ * so lookups only search a handful of them.
+ * <p/>
+ * Writers are serialized,  but readers take no locks:  they search an immutable snapshot of the tables and the
+ * concurrent buffer.
+ * <p/>
+ * Tables of names and loci can also be written to disk,  see {@link #write(java.io.File, Table, String)},  and
+ * searched in place by memory mapping them,  see {@link #open(java.io.File, String)}.  These are used to search
+ * names of features which are not loaded.
+ * <p/>
+ * Keys are expected to be upper case.
+ */
+public class FeatureNameIndex {
+
+    private static final int MAGIC = 0x49474e58;
+    private static final int VERSION = 1;
+
+    /**
+     * Number of keys in the write buffer before it is converted to a table.
+     */
+    static final int BUFFER_SIZE = 10000;
+
+    private final Comparator<? super NamedFeature> comparator;
+    private final int maxValues;
+    private final Object writeLock = new Object();
+    private volatile State state;
+
+    /**
+     * @param comparator order of the features for each name,  best first
+     * @param maxValues  maximum number of features kept for each name
+     */
+    public FeatureNameIndex(Comparator<? super NamedFeature> comparator, int maxValues) {
+        this.comparator = comparator;
+        this.maxValues = maxValues;
+        this.state = new State(new MemoryTable[0], new MappedTable[0]);
+    }
+
+    /**
+     * Add a single feature.  Returns false if it was already present,  or the name already has the maximum number
+     * of better features in the write buffer.
+     */
+    public boolean put(String key, NamedFeature feature) {
+        synchronized (writeLock) {
+            State current = state;
+            NamedFeature[] values = current.buffer.get(key);
+            NamedFeature[] newValues;
+            if (values == null) {
+                newValues = new NamedFeature[]{feature};
+            } else {
+                if (contains(values, feature)) {
+                    return false;
+                }
+                newValues = mergeValues(values, new NamedFeature[]{feature});
+                if (!contains(newValues, feature)) {
+                    return false;
+                }
+            }
+            current.buffer.put(key, newValues);
+            if (current.buffer.size() >= BUFFER_SIZE) {
+                flush();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Add all features collected by {@code builder} as a single table.
+     */
+    public void addAll(Builder builder) {
+        if (builder.size() == 0) {
+            return;
+        }
+        MemoryTable table = builder.build();
+        synchronized (writeLock) {
+            State current = state;
+            state = new State(compact(current.tables, table), current.mapped, current.buffer);
+        }
+    }
+
+    /**
+     * Add a table opened from disk.  A table for the same source replaces any previously added.
+     */
+    public void addMapped(MappedTable table) {
+        synchronized (writeLock) {
+            State current = state;
+            List<MappedTable> mapped = new ArrayList<MappedTable>(current.mapped.length + 1);
+            for (MappedTable t : current.mapped) {
+                if (!t.source.equals(table.source)) {
+                    mapped.add(t);
+                }
+            }
+            mapped.add(table);
+            state = new State(current.tables, mapped.toArray(new MappedTable[mapped.size()]), current.buffer);
+        }
+    }
+
+    /**
+     * Convert the write buffer to a table.
+     */
+    public void flush() {
+        synchronized (writeLock) {
+            State current = state;
+            if (current.buffer.isEmpty()) {
+                return;
+            }
+            int n = current.buffer.size();
+            String[] keys = new String[n];
+            Object[] values = new Object[n];
+            int i = 0;
+            for (Map.Entry<String, NamedFeature[]> entry : current.buffer.entrySet()) {
+                keys[i] = entry.getKey();
+                NamedFeature[] v = entry.getValue();
+                values[i] = v.length == 1 ? v[0] : v;
+                i++;
+            }
+            MemoryTable table = new MemoryTable(keys, values);
+            state = new State(compact(current.tables, table), current.mapped);
+        }
+    }
+
+    /**
+     * Remove all names.  The index is replaced as a whole,  so a concurrent reader sees either every name present
+     * before the call or none of them,  never a partially cleared index.
+     */
+    public void clear() {
+        synchronized (writeLock) {
+            state = new State(new MemoryTable[0], new MappedTable[0]);
+        }
+    }
+
+    /**
+     * The number of names in the index.  Names present in more than one table are counted once per table.
+     */
+    public int size() {
+        State current = state;
+        int size = current.buffer.size();
+        for (Table t : current.tables) size += t.size();
+        for (Table t : current.mapped) size += t.size();
+        return size;
+    }
+
+    /**
+     * Return the features for {@code key},  best first,  or null if there are none.
+     */
+    public List<NamedFeature> get(String key) {
+        State current = state;
+        NamedFeature[] result = current.buffer.get(key);
+        for (Table table : current.all()) {
+            int idx = table.find(key);
+            if (idx >= 0) {
+                result = result == null ? table.values(idx) : mergeValues(result, table.values(idx));
+            }
+        }
+        return result == null ? null : Collections.unmodifiableList(Arrays.asList(result));
+    }
+
+    /**
+     * Return the first {@code limit} names starting with {@code prefix},  in order,  and their features.
+     */
+    public SortedMap<String, List<NamedFeature>> getByPrefix(String prefix, int limit) {
+        State current = state;
+        SortedMap<String, NamedFeature[]> matches = new TreeMap<String, NamedFeature[]>();
+
+        int count = 0;
+        for (Map.Entry<String, NamedFeature[]> entry : current.buffer.tailMap(prefix).entrySet()) {
+            if (!entry.getKey().startsWith(prefix) || count++ >= limit) break;
+            matches.put(entry.getKey(), entry.getValue());
+        }
+        for (Table table : current.all()) {
+            count = 0;
+            for (int i = table.lowerBound(prefix); i < table.size() && count < limit; i++, count++) {
+                if (!table.keyStartsWith(i, prefix)) break;
+                String key = table.key(i);
+                NamedFeature[] values = matches.get(key);
+                matches.put(key, values == null ? table.values(i) : mergeValues(values, table.values(i)));
+            }
+        }
+
+        SortedMap<String, List<NamedFeature>> result = new TreeMap<String, List<NamedFeature>>();
+        for (Map.Entry<String, NamedFeature[]> entry : matches.entrySet()) {
+            if (result.size() >= limit) break;
+            result.put(entry.getKey(), Collections.unmodifiableList(Arrays.asList(entry.getValue())));
+        }
+        return result;
+    }
+
+    public Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Append {@code table} and merge the most recent tables while they are of similar size,  so the number of
+     * tables grows logarithmically with the number of names.
+     */
+    private MemoryTable[] compact(MemoryTable[] tables, MemoryTable table) {
+        LinkedList<MemoryTable> list = new LinkedList<MemoryTable>(Arrays.asList(tables));
+        list.add(table);
+        while (list.size() > 1) {
+            MemoryTable last = list.get(list.size() - 1);
+            MemoryTable previous = list.get(list.size() - 2);
+            if (2 * last.size() < previous.size()) {
+                break;
+            }
+            list.removeLast();
+            list.removeLast();
+            list.add(merge(previous, last));
+        }
+        return list.toArray(new MemoryTable[list.size()]);
+    }
+
+    private MemoryTable merge(MemoryTable a, MemoryTable b) {
+        int na = a.size();
+        int nb = b.size();
+        String[] keys = new String[na + nb];
+        Object[] values = new Object[na + nb];
+        int i = 0, j = 0, n = 0;
+        while (i < na || j < nb) {
+            int cmp = i == na ? 1 : j == nb ? -1 : a.key(i).compareTo(b.key(j));
+            if (cmp < 0) {
+                keys[n] = a.key(i);
+                values[n] = a.values[i++];
+            } else if (cmp > 0) {
+                keys[n] = b.key(j);
+                values[n] = b.values[j++];
+            } else {
+                keys[n] = a.key(i);
+                NamedFeature[] merged = mergeValues(a.values(i++), b.values(j++));
+                values[n] = merged.length == 1 ? merged[0] : merged;
+            }
+            n++;
+        }
+        return new MemoryTable(Arrays.copyOf(keys, n), Arrays.copyOf(values, n));
+    }
+
+    /**
+     * Merge two lists of features sorted best first,  dropping duplicates and anything past {@code maxValues}.
+     */
+    private NamedFeature[] mergeValues(NamedFeature[] a, NamedFeature[] b) {
+        NamedFeature[] merged = new NamedFeature[Math.min(maxValues, a.length + b.length)];
+        int i = 0, j = 0, n = 0;
+        while (n < merged.length && (i < a.length || j < b.length)) {
+            NamedFeature next;
+            if (j == b.length || (i < a.length && comparator.compare(a[i], b[j]) <= 0)) {
+                next = a[i++];
+            } else {
+                next = b[j++];
+            }
+            if (!contains(merged, n, next)) {
+                merged[n++] = next;
+            }
+        }
+        return n == merged.length ? merged : Arrays.copyOf(merged, n);
+    }
+
+    private static boolean contains(NamedFeature[] values, NamedFeature feature) {
+        return contains(values, values.length, feature);
+    }
+
+    private static boolean contains(NamedFeature[] values, int n, NamedFeature feature) {
+        for (int i = 0; i < n; i++) {
+            if (values[i] == feature) return true;
+        }
+        return false;
+    }
+
+
+    /**
+     * Write {@code table},  whose features must be entries of a table built by this index,  to {@code file} in a
+     * form which can be opened with {@link #open(java.io.File, String)}.  Only the names and loci of the features
+     * are written.
+     *
+     * @param source a string identifying the table contents,  for example the path of the file it indexes
+     */
+    public static void write(File file, Table table, String source) throws IOException {
+
+        int n = table.size();
+        List<String> chrs = new ArrayList<String>();
+        Map<String, Integer> chrIndeces = new HashMap<String, Integer>();
+        int m = 0;
+        long keyChars = 0;
+        long nameChars = 0;
+        for (int i = 0; i < n; i++) {
+            keyChars += table.keyLength(i);
+            for (NamedFeature f : table.values(i)) {
+                if (!chrIndeces.containsKey(f.getChr())) {
+                    chrIndeces.put(f.getChr(), chrs.size());
+                    chrs.add(f.getChr());
+                }
+                String name = f.getName();
+                nameChars += name == null ? 0 : name.length();
+                m++;
+            }
+        }
+
+        if (getDataLength(n, m, keyChars, nameChars) > Integer.MAX_VALUE) {
+            throw new IOException("Too many names to write a name index: " + n);
+        }
+
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+        try {
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeUTF(source);
+            dos.writeInt(n);
+            dos.writeInt(m);
+            dos.writeInt((int) keyChars);
+            dos.writeInt((int) nameChars);
+            dos.writeInt(chrs.size());
+            for (String chr : chrs) {
+                dos.writeUTF(chr);
+            }
+
+            // Key offsets, value offsets
+            int offset = 0;
+            for (int i = 0; i < n; i++) {
+                dos.writeInt(offset);
+                offset += table.keyLength(i);
+            }
+            dos.writeInt(offset);
+            offset = 0;
+            for (int i = 0; i < n; i++) {
+                dos.writeInt(offset);
+                offset += table.values(i).length;
+            }
+            dos.writeInt(offset);
+
+            // Loci and name offsets
+            for (int i = 0; i < n; i++) {
+                for (NamedFeature f : table.values(i)) dos.writeInt(chrIndeces.get(f.getChr()));
+            }
+            for (int i = 0; i < n; i++) {
+                for (NamedFeature f : table.values(i)) dos.writeInt(f.getStart());
+            }
+            for (int i = 0; i < n; i++) {
+                for (NamedFeature f : table.values(i)) dos.writeInt(f.getEnd());
+            }
+            offset = 0;
+            for (int i = 0; i < n; i++) {
+                for (NamedFeature f : table.values(i)) {
+                    dos.writeInt(offset);
+                    offset += f.getName() == null ? 0 : f.getName().length();
+                }
+            }
+            dos.writeInt(offset);
+
+            // Characters
+            for (int i = 0; i < n; i++) {
+                dos.writeChars(table.key(i));
+            }
+            for (int i = 0; i < n; i++) {
+                for (NamedFeature f : table.values(i)) {
+                    if (f.getName() != null) dos.writeChars(f.getName());
+                }
+            }
+        } finally {
+            dos.close();
+        }
+    }
+
+    /**
+     * Open a table written by {@link #write(java.io.File, Table, String)}.  Returns null if the file is not a
+     * table for {@code source}.
+     */
+    public static MappedTable open(File file, String source) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            if (raf.length() < 8 || raf.readInt() != MAGIC || raf.readInt() != VERSION ||
+                    !source.equals(raf.readUTF())) {
+                return null;
+            }
+            int n = raf.readInt();
+            int m = raf.readInt();
+            int keyChars = raf.readInt();
+            int nameChars = raf.readInt();
+            String[] chrs = new String[raf.readInt()];
+            for (int i = 0; i < chrs.length; i++) {
+                chrs[i] = raf.readUTF();
+            }
+            long headerLength = raf.getFilePointer();
+            long dataLength = getDataLength(n, m, keyChars, nameChars);
+            if (headerLength + dataLength != raf.length()) {
+                throw new IOException("Unexpected length for name index " + file.getName());
+            }
+            ByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, headerLength, dataLength);
+            return new MappedTable(source, buffer, n, m, keyChars, chrs);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Size of the mapped part of a table file,  which must be addressable with int positions.
+     */
+    private static long getDataLength(long n, long m, long keyChars, long nameChars) {
+        return 4 * (2 * (n + 1) + 4 * m + 1) + 2 * (keyChars + nameChars);
+    }
+
+
+    /**
+     * The tables and buffer at one point in time.  Replaced,  never modified,  apart from the buffer which is
+     * thread safe.
+     */
+    private static class State {
+        final MemoryTable[] tables;
+        final MappedTable[] mapped;
+        final ConcurrentSkipListMap<String, NamedFeature[]> buffer;
+
+        State(MemoryTable[] tables, MappedTable[] mapped) {
+            this(tables, mapped, new ConcurrentSkipListMap<String, NamedFeature[]>());
+        }
+
+        State(MemoryTable[] tables, MappedTable[] mapped, ConcurrentSkipListMap<String, NamedFeature[]> buffer) {
+            this.tables = tables;
+            this.mapped = mapped;
+            this.buffer = buffer;
+        }
+
+        List<Table> all() {
+            List<Table> all = new ArrayList<Table>(tables.length + mapped.length);
+            all.addAll(Arrays.asList(tables));
+            all.addAll(Arrays.asList(mapped));
+            return all;
+        }
+    }
+
+    /**
+     * Collects features for a new table.
+     */
+    public class Builder {
+
+        private final Map<String, Object> entries = new HashMap<String, Object>();
+
+        private Builder() {
+        }
+
+        public void add(String key, NamedFeature feature) {
+            Object current = entries.get(key);
+            if (current == null) {
+                entries.put(key, feature);
+            } else if (current instanceof NamedFeature) {
+                if (current != feature) {
+                    List<NamedFeature> list = new ArrayList<NamedFeature>(4);
+                    list.add((NamedFeature) current);
+                    list.add(feature);
+                    entries.put(key, list);
+                }
+            } else {
+                List<NamedFeature> list = (List<NamedFeature>) current;
+                if (!list.contains(feature)) {
+                    list.add(feature);
+                }
+            }
+        }
+
+        public int size() {
+            return entries.size();
+        }
+
+        public MemoryTable build() {
+            String[] keys = entries.keySet().toArray(new String[entries.size()]);
+            Arrays.sort(keys);
+            Object[] values = new Object[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                Object v = entries.get(keys[i]);
+                if (v instanceof NamedFeature) {
+                    values[i] = v;
+                } else {
+                    List<NamedFeature> list = (List<NamedFeature>) v;
+                    Collections.sort(list, comparator);
+                    values[i] = list.subList(0, Math.min(maxValues, list.size())).toArray(new NamedFeature[0]);
+                }
+            }
+            return new MemoryTable(keys, values);
+        }
+    }
+
+
+    /**
+     * An immutable sorted table of names and their features.
+     */
+    public static abstract class Table {
+
+        public abstract int size();
+
+        abstract int keyStart(int i);
+
+        abstract int keyLength(int i);
+
+        abstract char keyChar(int position);
+
+        /**
+         * Features for the i'th name,  best first.  The array must not be modified.
+         */
+        abstract NamedFeature[] values(int i);
+
+        String key(int i) {
+            int start = keyStart(i);
+            int length = keyLength(i);
+            char[] chars = new char[length];
+            for (int c = 0; c < length; c++) {
+                chars[c] = keyChar(start + c);
+            }
+            return new String(chars);
+        }
+
+        int compareKey(int i, String s) {
+            int start = keyStart(i);
+            int length = keyLength(i);
+            int n = Math.min(length, s.length());
+            for (int c = 0; c < n; c++) {
+                char c1 = keyChar(start + c);
+                char c2 = s.charAt(c);
+                if (c1 != c2) {
+                    return c1 - c2;
+                }
+            }
+            return length - s.length();
+        }
+
+        boolean keyStartsWith(int i, String prefix) {
+            if (keyLength(i) < prefix.length()) {
+                return false;
+            }
+            int start = keyStart(i);
+            for (int c = 0; c < prefix.length(); c++) {
+                if (keyChar(start + c) != prefix.charAt(c)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Index of the first key >= {@code s}
+         */
+        int lowerBound(String s) {
+            int lo = 0;
+            int hi = size();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (compareKey(mid, s) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * Index of {@code key},  or -1 if it is not in the table
+         */
+        int find(String key) {
+            int idx = lowerBound(key);
+            return idx < size() && compareKey(idx, key) == 0 ? idx : -1;
+        }
+    }
+
+    /**
+     * A table held on the heap.  Features are a single NamedFeature,  or an array for names with several.
+     */
+    public static class MemoryTable extends Table {
+
+        private final char[] chars;
+        private final int[] offsets;
+        private final Object[] values;
+
+        MemoryTable(String[] keys, Object[] values) {
+            int length = 0;
+            for (String key : keys) length += key.length();
+            this.chars = new char[length];
+            this.offsets = new int[keys.length + 1];
+            int offset = 0;
+            for (int i = 0; i < keys.length; i++) {
+                offsets[i] = offset;
+                keys[i].getChars(0, keys[i].length(), chars, offset);
+                offset += keys[i].length();
+            }
+            offsets[keys.length] = offset;
+            this.values = values;
+        }
+
+        public int size() {
+            return values.length;
+        }
+
+        int keyStart(int i) {
+            return offsets[i];
+        }
+
+        int keyLength(int i) {
+            return offsets[i + 1] - offsets[i];
+        }
+
+        char keyChar(int position) {
+            return chars[position];
+        }
+
+        NamedFeature[] values(int i) {
+            Object v = values[i];
+            return v instanceof NamedFeature ? new NamedFeature[]{(NamedFeature) v} : (NamedFeature[]) v;
+        }
+    }
+
+    /**
+     * A table searched in place in a memory mapped file.  Features are {@link NamedLocus} objects created on demand.
+     * Only absolute reads are made from the buffer,  so it can be shared between threads.
+     */
+    public static class MappedTable extends Table {
+
+        private final String source;
+        private final ByteBuffer buffer;
+        private final int n;
+        private final String[] chrs;
+
+        private final int valueOffsetsPosition;
+        private final int chrPosition;
+        private final int startPosition;
+        private final int endPosition;
+        private final int nameOffsetsPosition;
+        private final int keyCharsPosition;
+        private final int nameCharsPosition;
+
+        MappedTable(String source, ByteBuffer buffer, int n, int m, int keyChars, String[] chrs) {
+            this.source = source;
+            this.buffer = buffer;
+            this.n = n;
+            this.chrs = chrs;
+            valueOffsetsPosition = 4 * (n + 1);
+            chrPosition = valueOffsetsPosition + 4 * (n + 1);
+            startPosition = chrPosition + 4 * m;
+            endPosition = startPosition + 4 * m;
+            nameOffsetsPosition = endPosition + 4 * m;
+            keyCharsPosition = nameOffsetsPosition + 4 * (m + 1);
+            nameCharsPosition = keyCharsPosition + 2 * keyChars;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public int size() {
+            return n;
+        }
+
+        int keyStart(int i) {
+            return buffer.getInt(4 * i);
+        }
+
+        int keyLength(int i) {
+            return buffer.getInt(4 * (i + 1)) - buffer.getInt(4 * i);
+        }
+
+        char keyChar(int position) {
+            return buffer.getChar(keyCharsPosition + 2 * position);
+        }
+
+        NamedFeature[] values(int i) {
+            int first = buffer.getInt(valueOffsetsPosition + 4 * i);
+            int last = buffer.getInt(valueOffsetsPosition + 4 * (i + 1));
+            NamedFeature[] values = new NamedFeature[last - first];
+            for (int v = first; v < last; v++) {
+                String chr = chrs[buffer.getInt(chrPosition + 4 * v)];
+                int start = buffer.getInt(startPosition + 4 * v);
+                int end = buffer.getInt(endPosition + 4 * v);
+                int nameStart = buffer.getInt(nameOffsetsPosition + 4 * v);
+                int nameEnd = buffer.getInt(nameOffsetsPosition + 4 * (v + 1));
+                char[] name = new char[nameEnd - nameStart];
+                for (int c = 0; c < name.length; c++) {
+                    name[c] = buffer.getChar(nameCharsPosition + 2 * (nameStart + c));
+                }
+                values[v - first] = new NamedLocus(new String(name), chr, start, end);
+            }
+            return values;
+        }
+    }
+
+    /**
+     * The name and location of a feature which is not loaded.
+     */
+    public static class NamedLocus extends Locus {
+
+        private final String name;
+
+        public NamedLocus(String name, String chr, int start, int end) {
+            super(chr, start, end);
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+    }
+}
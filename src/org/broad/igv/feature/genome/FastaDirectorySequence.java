@@ -25,6 +25,7 @@
 
 package org.broad.igv.feature.genome;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.util.*;
 
@@ -35,7 +36,7 @@ import java.util.*;
  * @date 3/24/12
  */
 
-public class FastaDirectorySequence implements Sequence {
+public class FastaDirectorySequence implements Sequence, Closeable {
 
     Map<String, FastaIndexedSequence> sequenceMap;
     List<String> chromosomeNames;
@@ -99,4 +100,10 @@ public class FastaDirectorySequence implements Sequence {
     public int getChromosomeLength(String chrname) {
         return chrLengths.get(chrname);
     }
+
+    public void close() throws IOException {
+        for (FastaIndexedSequence fastaSequence : new HashSet<FastaIndexedSequence>(getFastaSequences())) {
+            fastaSequence.close();
+        }
+    }
 }
@@ -25,23 +25,28 @@
 
 package org.broad.igv.feature.genome;
 
-import htsjdk.samtools.seekablestream.SeekableStream;
 import org.apache.log4j.Logger;
 import org.broad.igv.util.ParsingUtils;
-import org.broad.igv.util.stream.IGVSeekableStreamFactory;
+import org.broad.igv.util.stream.PositionalReader;
 
-import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Implementation of Sequence backed by an indexed fasta file
+ * <p/>
+ * The file is kept open until {@link #close()}.  Local files are memory mapped one contig at a time, on first
+ * access,  other files (or contigs that cannot be mapped) are read with positional reads.
  *
  * @author jrobinso
  * @date 8/7/11
  */
-public class FastaIndexedSequence implements Sequence {
+public class FastaIndexedSequence implements Sequence, Closeable {
 
     static Logger log = Logger.getLogger(FastaIndexedSequence.class);
 
@@ -51,9 +56,30 @@ public class FastaIndexedSequence implements Sequence {
 
     private final ArrayList<String> chromoNamesList;
 
+    private final PositionalReader reader;
+
+    /**
+     * Map of contig name -> mapped bytes of the contig.  Contigs which could not be mapped map to an empty buffer.
+     */
+    private final ConcurrentHashMap<String, ByteBuffer> contigBuffers = new ConcurrentHashMap<String, ByteBuffer>();
+
+    private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
+
+    private volatile boolean useMemoryMap;
+
     public FastaIndexedSequence(String path) throws IOException {
+        this(path, true);
+    }
+
+    /**
+     * @param path
+     * @param useMemoryMap - if true, and the file is local, contigs are memory mapped
+     * @throws IOException
+     */
+    public FastaIndexedSequence(String path, boolean useMemoryMap) throws IOException {
 
         this.path = path;
+        this.useMemoryMap = useMemoryMap && !path.toLowerCase().endsWith(".gz");
         contentLength = ParsingUtils.getContentLength(path);
 
         String indexPath = path + ".fai";
@@ -66,6 +92,7 @@ public class FastaIndexedSequence implements Sequence {
 
         index = new FastaIndex(indexPath);
         chromoNamesList = new ArrayList<String>(index.getSequenceNames());
+        reader = PositionalReader.getReader(path);
     }
 
 
@@ -124,32 +151,34 @@ public class FastaIndexedSequence implements Sequence {
                 return null;
             }
 
-            // Read all the bytes in the range.  This will include endline characters
-            byte[] allBytes = readBytes(startByte, endByte);
-
-            // Create the array for the sequence -- this will be "allBytes" without the endline characters.
-            ByteArrayOutputStream bos = new ByteArrayOutputStream(end - start);
-
-            int srcPos = 0;
-            int desPos = 0;
-            // Copy first line
-            final int allBytesLength = allBytes.length;
-            if (offset > 0) {
-                int nBases = Math.min(end - start, basesPerLine - offset);
-                bos.write(allBytes, srcPos, nBases);
-                srcPos += (nBases + nEndBytes);
-                desPos += nBases;
+            // Source of the bytes in the range,  this will include endline characters.
+            ByteBuffer src;
+            int srcPos;
+            ByteBuffer contigBuffer = getContigBuffer(idxEntry);
+            if (contigBuffer != null) {
+                src = contigBuffer.duplicate();
+                srcPos = (int) (startByte - position);
+            } else {
+                src = ByteBuffer.wrap(reader.readBytes(startByte, (int) (endByte - startByte)));
+                srcPos = 0;
             }
+            final int srcEnd = (int) Math.min(src.limit(), srcPos + endByte - startByte);
 
-            while (srcPos < allBytesLength) {
-                int nBases = Math.min(basesPerLine, allBytesLength - srcPos);
-                bos.write(allBytes, srcPos, nBases);
-                srcPos += (nBases + nEndBytes);
-                desPos += nBases;
+            // Copy the bases, skipping endline characters, directly into the result
+            final int nBases = end - start;
+            byte[] seq = new byte[nBases];
+            int desPos = 0;
+            int lineBases = basesPerLine - offset;
+            while (desPos < nBases && srcPos < srcEnd) {
+                int n = Math.min(Math.min(lineBases, nBases - desPos), srcEnd - srcPos);
+                src.position(srcPos);
+                src.get(seq, desPos, n);
+                desPos += n;
+                srcPos += (n + nEndBytes);
+                lineBases = basesPerLine;
             }
 
-
-            return bos.toByteArray();
+            return desPos == nBases ? seq : Arrays.copyOf(seq, desPos);
 
         } catch (IOException e) {
             e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
@@ -159,34 +188,60 @@ public class FastaIndexedSequence implements Sequence {
     }
 
 
-    @Override
-    public byte getBase(String chr, int position) {
-        throw new RuntimeException("getBase() is not implemented for class " + FastaIndexedSequence.class.getName());
-    }
-
-
     /**
-     * Read the bytes between file position posStart and posEnd
-     *
-     * @throws IOException
+     * Return the memory mapped bytes for the contig,  or null if the contig is not mapped.  Contigs are mapped
+     * on first access.
      */
-    private byte[] readBytes(long posStart, long posEnd) throws IOException {
+    private ByteBuffer getContigBuffer(FastaIndex.FastaSequenceIndexEntry idxEntry) {
 
-        SeekableStream ss = null;
-        try {
-            ss = IGVSeekableStreamFactory.getInstance().getStreamFor(path);
-            int nBytes = (int) (posEnd - posStart);
-            byte[] bytes = new byte[nBytes];
-            ss.seek(posStart);
-            ss.readFully(bytes);
-            return bytes;
-        } finally {
-            if (ss != null) {
-                ss.close();
+        if (!useMemoryMap) {
+            return null;
+        }
+
+        String contig = idxEntry.getContig();
+        ByteBuffer buffer = contigBuffers.get(contig);
+        if (buffer == null) {
+            long position = idxEntry.getPosition();
+            int basesPerLine = idxEntry.getBasesPerLine();
+            long nLines = (idxEntry.getSize() + basesPerLine - 1) / basesPerLine;
+            long size = Math.min(nLines * idxEntry.getBytesPerLine(), contentLength - position);
+            buffer = EMPTY_BUFFER;
+            if (size > 0 && size <= Integer.MAX_VALUE) {
+                try {
+                    ByteBuffer mapped = reader.map(position, size);
+                    if (mapped != null) {
+                        buffer = mapped;
+                    } else {
+                        useMemoryMap = false;    // Resource does not support mapping
+                    }
+                } catch (IOException e) {
+                    log.warn("Could not map sequence " + contig + " of " + path + ", using direct reads", e);
+                }
+            }
+            ByteBuffer existing = contigBuffers.putIfAbsent(contig, buffer);
+            if (existing != null) {
+                buffer = existing;
             }
         }
+        return buffer == EMPTY_BUFFER ? null : buffer;
     }
 
+    /**
+     * Close the file and drop the contig mappings.  The mappings themselves are released when they are garbage
+     * collected,  there is no portable way to unmap them explicitly.
+     */
+    public void close() throws IOException {
+        useMemoryMap = false;
+        contigBuffers.clear();
+        reader.close();
+    }
+
+    @Override
+    public byte getBase(String chr, int position) {
+        throw new RuntimeException("getBase() is not implemented for class " + FastaIndexedSequence.class.getName());
+    }
+
+
     @Override
     public List<String> getChromosomeNames() {
         return chromoNamesList;
@@ -42,6 +42,7 @@ import org.broad.igv.track.FeatureTrack;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Simple model of a genome.  Keeps an ordered list of Chromosomes, an alias table, and genome position offsets
@@ -60,7 +61,7 @@ public class Genome {
     private long totalLength = -1;
     private long nominalLength = -1;
     private Map<String, Long> cumulativeOffsets = new HashMap();
-    private Map<String, String> chrAliasTable;
+    private ConcurrentHashMap<String, String> chrAliasTable;
     private Sequence sequence;
     private FeatureTrack geneTrack;
     private String species;
@@ -74,7 +75,7 @@ public class Genome {
     public Genome(String id, String displayName, Sequence sequence, boolean chromosOrdered) {
         this.id = id;
         this.displayName = displayName;
-        this.chrAliasTable = new HashMap<String, String>();
+        this.chrAliasTable = new ConcurrentHashMap<String, String>();
         this.sequence = sequence;
         chromosomeNames = sequence.getChromosomeNames();
 
@@ -112,7 +113,7 @@ public class Genome {
     public Genome(String id, List<Chromosome> chromosomes) {
         this.id = id;
         this.displayName = id;
-        this.chrAliasTable = new HashMap<String, String>();
+        this.chrAliasTable = new ConcurrentHashMap<String, String>();
         this.sequence = null;
 
         chromosomeNames = new ArrayList<String>(chromosomes.size());
@@ -126,16 +127,24 @@ public class Genome {
     }
 
 
+    /**
+     * Return the canonical name for the chromosome alias {@code str}.  The alias table is concurrent,  feature files
+     * may be decoded on several threads at once (see {@link org.broad.igv.track.ChunkedFeatureLoader}).
+     */
     public String getCanonicalChrName(String str) {
         if (str == null) {
             return str;
         } else {
             //We intern strings used as chromosomes
             //to prevent storing multiple times
-            if (!chrAliasTable.containsKey(str)) {
-                chrAliasTable.put(str, str);
+            String chr = chrAliasTable.get(str);
+            if (chr == null) {
+                chr = chrAliasTable.putIfAbsent(str, str);
+                if (chr == null) {
+                    chr = str;
+                }
             }
-            return chrAliasTable.get(str);
+            return chr;
         }
     }
 
@@ -152,7 +161,7 @@ public class Genome {
      */
     public void addChrAliases(Collection<Collection<String>> synonymsList) {
 
-        if(chrAliasTable == null) chrAliasTable = new HashMap<String, String>();
+        if(chrAliasTable == null) chrAliasTable = new ConcurrentHashMap<String, String>();
 
         // Convert names to a set for fast "contains" testing.
         Set<String> chrNameSet = new HashSet<String>(chromosomeNames);
@@ -443,6 +452,21 @@ public class Genome {
     }
 
 
+    /**
+     * Release resources held by the reference sequence,  such as open files and memory mapped contigs.  Called
+     * when the genome is replaced,  the sequence cannot be read afterwards.
+     */
+    public void dispose() {
+        if (sequence instanceof Closeable) {
+            try {
+                ((Closeable) sequence).close();
+            } catch (IOException e) {
+                log.error("Error closing sequence for genome " + id, e);
+            }
+        }
+    }
+
+
     public void setCytobands(LinkedHashMap<String, List<Cytoband>> chrCytoMap) {
 
         for (Map.Entry<String, List<Cytoband>> entry : chrCytoMap.entrySet()) {
@@ -118,7 +118,11 @@ public class GenomeManager {
         if (currentGenome != null) {
             PreferenceManager.getInstance().setDefaultGenome(currentGenome.getId());
         }
+        Genome previousGenome = this.currentGenome;
         this.currentGenome = currentGenome;
+        if (previousGenome != null && previousGenome != currentGenome) {
+            previousGenome.dispose();
+        }
     }
 
     public boolean isServerGenomeListUnreachable() {
@@ -377,9 +381,23 @@ public class GenomeManager {
         boolean isFasta = genomeDescriptor.isFasta();
         String[] fastaFiles = genomeDescriptor.getFastaFileNames();
 
+        // A snapshot of the parsed archive contents,  if one is available.  Otherwise start a new one to be
+        // filled in as the archive is parsed.
+        GenomeSnapshotCache snapshotCache = GenomeSnapshotCache.getInstance();
+        GenomeSnapshotCache.Snapshot snapshot = snapshotCache == null ? null : snapshotCache.get(archiveFile);
+        GenomeSnapshotCache.Snapshot newSnapshot = null;
+        if (snapshot == null && snapshotCache != null) {
+            newSnapshot = new GenomeSnapshotCache.Snapshot();
+        }
+
         LinkedHashMap<String, List<Cytoband>> cytobandMap = null;
         if (genomeDescriptor.hasCytobands()) {
-            cytobandMap = loadCytobandFile(genomeDescriptor);
+            if (snapshot != null && snapshot.cytobands != null) {
+                cytobandMap = snapshot.cytobands;
+            } else {
+                cytobandMap = loadCytobandFile(genomeDescriptor);
+                if (newSnapshot != null) newSnapshot.cytobands = cytobandMap;
+            }
         }
 
 
@@ -410,14 +428,24 @@ public class GenomeManager {
             newGenome.setCytobands(cytobandMap);
         }
 
-        Collection<Collection<String>> aliases = loadChrAliases(genomeDescriptor);
+        Collection<Collection<String>> aliases;
+        if (snapshot != null) {
+            aliases = snapshot.aliases;
+        } else {
+            aliases = loadChrAliases(genomeDescriptor);
+            if (newSnapshot != null) newSnapshot.aliases = aliases;
+        }
         if (aliases != null) {
             newGenome.addChrAliases(aliases);
         }
 
         InputStream geneStream = null;
         String geneFileName = genomeDescriptor.getGeneFileName();
-        if (geneFileName != null) {
+        if (geneFileName != null && snapshot != null && snapshot.genes != null) {
+            FeatureTrack geneFeatureTrack = restoreGeneTrack(newGenome, snapshot.genes,
+                    genomeDescriptor.getGeneTrackName(), genomeDescriptor.getUrl());
+            newGenome.setGeneTrack(geneFeatureTrack);
+        } else if (geneFileName != null) {
             try {
                 geneStream = genomeDescriptor.getGeneStream();
                 if (geneFileName.endsWith(".gbk")) {
@@ -429,7 +457,7 @@ public class GenomeManager {
                     BufferedReader reader = new BufferedReader(new InputStreamReader(geneStream));
                     FeatureTrack geneFeatureTrack = createGeneTrack(newGenome, reader,
                             geneFileName, genomeDescriptor.getGeneTrackName(),
-                            genomeDescriptor.getUrl());
+                            genomeDescriptor.getUrl(), newSnapshot);
 
                     newGenome.setGeneTrack(geneFeatureTrack);
                 }
@@ -439,6 +467,10 @@ public class GenomeManager {
         }
 
         genomeDescriptor.close();
+
+        if (newSnapshot != null) {
+            snapshotCache.put(archiveFile, newSnapshot);
+        }
         return newGenome;
     }
 
@@ -613,83 +645,70 @@ public class GenomeManager {
         Map<String, ZipEntry> zipEntries = new HashMap();
         ZipFile zipFile = new ZipFile(f);
 
-        FileInputStream fileInputStream = null;
-        try {
-            fileInputStream = new FileInputStream(f);
-            ZipInputStream zipInputStream = new ZipInputStream(fileInputStream);
-            ZipEntry zipEntry = zipInputStream.getNextEntry();
-
-            while (zipEntry != null) {
-                String zipEntryName = zipEntry.getName();
-                zipEntries.put(zipEntryName, zipEntry);
-
-                if (zipEntryName.equalsIgnoreCase(Globals.GENOME_ARCHIVE_PROPERTY_FILE_NAME)) {
-                    InputStream inputStream = zipFile.getInputStream(zipEntry);
-                    Properties properties = new Properties();
-                    properties.load(inputStream);
-
-                    String cytobandZipEntryName = properties.getProperty(Globals.GENOME_ARCHIVE_CYTOBAND_FILE_KEY);
-                    String geneFileName = properties.getProperty(Globals.GENOME_ARCHIVE_GENE_FILE_KEY);
-                    String chrAliasFileName = properties.getProperty(Globals.GENOME_CHR_ALIAS_FILE_KEY);
-                    String sequenceLocation = properties.getProperty(Globals.GENOME_ARCHIVE_SEQUENCE_FILE_LOCATION_KEY);
-
-                    if ((sequenceLocation != null) && !HttpUtils.isRemoteURL(sequenceLocation)) {
-                        File sequenceFolder = null;
-                        // Relative or absolute location? We use a few redundant methods to check,
-                        //since we don't know what platform the file was created on or is running on
-                        sequenceFolder = new File(sequenceLocation);
-                        boolean isAbsolutePath = sequenceFolder.isAbsolute() ||
-                                sequenceLocation.startsWith("/") || sequenceLocation.startsWith("\\");
-                        if (!isAbsolutePath) {
-                            sequenceFolder = new File(f.getParent(), sequenceLocation);
-                        }
-                        sequenceLocation = sequenceFolder.getCanonicalPath();
-                        sequenceLocation.replace('\\', '/');
+        // Read the entry list from the central directory,  rather than inflating every entry with a ZipInputStream
+        Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry zipEntry = entries.nextElement();
+            String zipEntryName = zipEntry.getName();
+            zipEntries.put(zipEntryName, zipEntry);
+
+            if (zipEntryName.equalsIgnoreCase(Globals.GENOME_ARCHIVE_PROPERTY_FILE_NAME)) {
+                InputStream inputStream = zipFile.getInputStream(zipEntry);
+                Properties properties = new Properties();
+                properties.load(inputStream);
+
+                String cytobandZipEntryName = properties.getProperty(Globals.GENOME_ARCHIVE_CYTOBAND_FILE_KEY);
+                String geneFileName = properties.getProperty(Globals.GENOME_ARCHIVE_GENE_FILE_KEY);
+                String chrAliasFileName = properties.getProperty(Globals.GENOME_CHR_ALIAS_FILE_KEY);
+                String sequenceLocation = properties.getProperty(Globals.GENOME_ARCHIVE_SEQUENCE_FILE_LOCATION_KEY);
+
+                if ((sequenceLocation != null) && !HttpUtils.isRemoteURL(sequenceLocation)) {
+                    File sequenceFolder = null;
+                    // Relative or absolute location? We use a few redundant methods to check,
+                    //since we don't know what platform the file was created on or is running on
+                    sequenceFolder = new File(sequenceLocation);
+                    boolean isAbsolutePath = sequenceFolder.isAbsolute() ||
+                            sequenceLocation.startsWith("/") || sequenceLocation.startsWith("\\");
+                    if (!isAbsolutePath) {
+                        sequenceFolder = new File(f.getParent(), sequenceLocation);
                     }
-
-                    boolean chrNamesAltered = parseBooleanPropertySafe(properties, "filenamesAltered");
-                    boolean fasta = parseBooleanPropertySafe(properties, "fasta");
-                    boolean fastaDirectory = parseBooleanPropertySafe(properties, "fastaDirectory");
-                    boolean chromosomesAreOrdered = parseBooleanPropertySafe(properties, Globals.GENOME_ORDERED_KEY);
-                    boolean hasCustomSequenceLocation = parseBooleanPropertySafe(properties, Globals.GENOME_ARCHIVE_CUSTOM_SEQUENCE_LOCATION_KEY);
-
-
-                    String fastaFileNameString = properties.getProperty("fastaFiles");
-                    String url = properties.getProperty(Globals.GENOME_URL_KEY);
-
-
-                    // The new descriptor
-                    genomeDescriptor = new GenomeZipDescriptor(
-                            properties.getProperty(Globals.GENOME_ARCHIVE_NAME_KEY),
-                            chrNamesAltered,
-                            properties.getProperty(Globals.GENOME_ARCHIVE_ID_KEY),
-                            cytobandZipEntryName,
-                            geneFileName,
-                            chrAliasFileName,
-                            properties.getProperty(Globals.GENOME_GENETRACK_NAME, "Gene"),
-                            sequenceLocation,
-                            hasCustomSequenceLocation,
-                            zipFile,
-                            zipEntries,
-                            chromosomesAreOrdered,
-                            fasta,
-                            fastaDirectory,
-                            fastaFileNameString);
-
-                    if (url != null) {
-                        genomeDescriptor.setUrl(url);
-                    }
-
+                    sequenceLocation = sequenceFolder.getCanonicalPath();
+                    sequenceLocation.replace('\\', '/');
                 }
-                zipEntry = zipInputStream.getNextEntry();
-            }
-        } finally {
-            try {
-                if (fileInputStream != null) {
-                    fileInputStream.close();
+
+                boolean chrNamesAltered = parseBooleanPropertySafe(properties, "filenamesAltered");
+                boolean fasta = parseBooleanPropertySafe(properties, "fasta");
+                boolean fastaDirectory = parseBooleanPropertySafe(properties, "fastaDirectory");
+                boolean chromosomesAreOrdered = parseBooleanPropertySafe(properties, Globals.GENOME_ORDERED_KEY);
+                boolean hasCustomSequenceLocation = parseBooleanPropertySafe(properties, Globals.GENOME_ARCHIVE_CUSTOM_SEQUENCE_LOCATION_KEY);
+
+
+                String fastaFileNameString = properties.getProperty("fastaFiles");
+                String url = properties.getProperty(Globals.GENOME_URL_KEY);
+
+
+                // The new descriptor
+                genomeDescriptor = new GenomeZipDescriptor(
+                        properties.getProperty(Globals.GENOME_ARCHIVE_NAME_KEY),
+                        chrNamesAltered,
+                        properties.getProperty(Globals.GENOME_ARCHIVE_ID_KEY),
+                        cytobandZipEntryName,
+                        geneFileName,
+                        chrAliasFileName,
+                        properties.getProperty(Globals.GENOME_GENETRACK_NAME, "Gene"),
+                        sequenceLocation,
+                        hasCustomSequenceLocation,
+                        zipFile,
+                        zipEntries,
+                        chromosomesAreOrdered,
+                        fasta,
+                        fastaDirectory,
+                        fastaFileNameString);
+
+                if (url != null) {
+                    genomeDescriptor.setUrl(url);
                 }
-            } catch (IOException ex) {
-                log.warn("Error closing imported genome zip stream!", ex);
+
             }
         }
         return genomeDescriptor;
@@ -1026,13 +1045,14 @@ public class GenomeManager {
     }
 
     /**
-     * Delete .genome files from the cache directory
+     * Delete .genome files,  and snapshots of parsed genomes,  from the cache directory
      */
     public void clearGenomeCache() {
 
         File[] files = DirectoryManager.getGenomeCacheDirectory().listFiles();
         for (File file : files) {
-            if (file.getName().toLowerCase().endsWith(Globals.GENOME_FILE_EXTENSION)) {
+            if (file.getName().toLowerCase().endsWith(Globals.GENOME_FILE_EXTENSION) ||
+                    file.getName().endsWith(GenomeSnapshotCache.SUFFIX)) {
                 file.delete();
             }
         }
@@ -1550,6 +1570,15 @@ public class GenomeManager {
      */
     public FeatureTrack createGeneTrack(Genome genome, BufferedReader reader, String geneFileName, String geneTrackName,
                                         String annotationURL) {
+        return createGeneTrack(genome, reader, geneFileName, geneTrackName, annotationURL, null);
+    }
+
+    /**
+     * @param snapshot if not null,  the parsed genes are recorded in this snapshot if they can be restored from it
+     *                 unchanged
+     */
+    private FeatureTrack createGeneTrack(Genome genome, BufferedReader reader, String geneFileName, String geneTrackName,
+                                         String annotationURL, GenomeSnapshotCache.Snapshot snapshot) {
 
         FeatureDB.clearFeatures();
         FeatureTrack geneFeatureTrack = null;
@@ -1568,25 +1597,52 @@ public class GenomeManager {
                         "<br>Annotations for genome: " + genome.getId() + " will not be loaded.");
             } else {
                 List<htsjdk.tribble.Feature> genes = parser.loadFeatures(reader, genome);
-                String name = geneTrackName;
-                if (name == null) name = "Genes";
-
-                String id = genome.getId() + "_genes";
-                geneFeatureTrack = new FeatureTrack(id, name, new FeatureCollectionSource(genes, genome));
-                geneFeatureTrack.setMinimumHeight(5);
-                geneFeatureTrack.setHeight(35);
-                geneFeatureTrack.setTrackType(TrackType.GENE);
-                geneFeatureTrack.setColor(Color.BLUE.darker());
                 TrackProperties props = parser.getTrackProperties();
-                if (props != null) {
-                    geneFeatureTrack.setProperties(parser.getTrackProperties());
+                geneFeatureTrack = newGeneTrack(genome, genes, geneTrackName, props, annotationURL);
+
+                // Only parsers which register all of their features with FeatureDB,  by name only,  can be restored
+                // by restoreGeneTrack.  Codecs with gffTags also register attribute values.  Track properties are
+                // not part of the snapshot.
+                boolean gffTags = parser instanceof FeatureCodecParser && ((FeatureCodecParser) parser).isGffTags();
+                if (snapshot != null && props == null && !gffTags &&
+                        (parser instanceof AbstractFeatureParser || parser instanceof GFFParser) &&
+                        BinaryFeatureIO.canWrite(genes)) {
+                    snapshot.genes = genes;
                 }
-                geneFeatureTrack.setUrl(annotationURL);
             }
         }
         return geneFeatureTrack;
     }
 
+    /**
+     * Create the annotation track for the genome from genes restored from a snapshot,  registering them with
+     * FeatureDB as the parser would have.
+     */
+    private FeatureTrack restoreGeneTrack(Genome genome, List<htsjdk.tribble.Feature> genes, String geneTrackName,
+                                          String annotationURL) {
+        FeatureDB.clearFeatures();
+        FeatureDB.addFeatures(genes, genome);
+        return newGeneTrack(genome, genes, geneTrackName, null, annotationURL);
+    }
+
+    private FeatureTrack newGeneTrack(Genome genome, List<htsjdk.tribble.Feature> genes, String geneTrackName,
+                                      TrackProperties props, String annotationURL) {
+        String name = geneTrackName;
+        if (name == null) name = "Genes";
+
+        String id = genome.getId() + "_genes";
+        FeatureTrack geneFeatureTrack = new FeatureTrack(id, name, new FeatureCollectionSource(genes, genome));
+        geneFeatureTrack.setMinimumHeight(5);
+        geneFeatureTrack.setHeight(35);
+        geneFeatureTrack.setTrackType(TrackType.GENE);
+        geneFeatureTrack.setColor(Color.BLUE.darker());
+        if (props != null) {
+            geneFeatureTrack.setProperties(props);
+        }
+        geneFeatureTrack.setUrl(annotationURL);
+        return geneFeatureTrack;
+    }
+
     /**
      * Create an annotation track for the genome from a supplied list of features
      *
@@ -0,0 +1,277 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.feature.genome;
+
+import org.apache.log4j.Logger;
+import org.broad.igv.DirectoryManager;
+import org.broad.igv.Globals;
+import org.broad.igv.feature.BinaryFeatureIO;
+import org.broad.igv.feature.Cytoband;
+import org.broad.igv.util.CacheFileUtils;
+
+import java.io.*;
+import java.util.*;
+import java.util.List;
+
+/**
+ * Binary snapshots of the parsed contents of ".genome" archives:  cytobands,  chromosome aliases,  and gene
+ * annotations.  Restoring a snapshot replaces unzipping and parsing the text files in the archive,  which for large
+ * annotation files dominates genome load time.
+ * <p/>
+ * Snapshots live in the genome cache directory,  named by a digest of the archive path.  A snapshot is only used if
+ * the archive length and modification time,  and the IGV version,  match those recorded when it was written.
+ * <p/>
+ * File layout:
+ * <pre>
+ *   int magic, int version, IGV version, archive path, archive length, archive modification time
+ *   cytobands:  int chromosome count (-1 if none),  per chromosome name and band list
+ *   aliases:  int group count (-1 if none),  per group the alias list
+ *   genes:  boolean present,  features as written by {@link BinaryFeatureIO}
+ * </pre>
+ */
+public class GenomeSnapshotCache {
+
+    private static Logger log = Logger.getLogger(GenomeSnapshotCache.class);
+
+    private static final int MAGIC = 0x49474753;
+    private static final int VERSION = 1;
+    static final String SUFFIX = ".snapshot";
+
+    private static GenomeSnapshotCache instance;
+
+    private final File directory;
+
+    /**
+     * Return the shared cache,  or null if the genome cache directory is not available.
+     */
+    public static synchronized GenomeSnapshotCache getInstance() {
+        if (instance == null) {
+            File dir = DirectoryManager.getGenomeCacheDirectory();
+            if (dir == null) {
+                return null;
+            }
+            instance = new GenomeSnapshotCache(dir);
+        }
+        return instance;
+    }
+
+    GenomeSnapshotCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Return the snapshot of {@code archive},  or null if there is none or it is out of date.
+     */
+    public Snapshot get(File archive) {
+        File file = getSnapshotFile(archive);
+        if (!file.exists()) {
+            return null;
+        }
+
+        DataInputStream dis = null;
+        try {
+            dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+            if (dis.readInt() != MAGIC || dis.readInt() != VERSION) {
+                throw new IOException("Not a genome snapshot file");
+            }
+            if (!String.valueOf(Globals.VERSION).equals(dis.readUTF()) ||
+                    !archive.getAbsolutePath().equals(dis.readUTF()) ||
+                    dis.readLong() != archive.length() ||
+                    dis.readLong() != archive.lastModified()) {
+                return null;
+            }
+
+            Snapshot snapshot = new Snapshot();
+
+            int nChrs = dis.readInt();
+            if (nChrs >= 0) {
+                snapshot.cytobands = new LinkedHashMap<String, List<Cytoband>>();
+                for (int i = 0; i < nChrs; i++) {
+                    String chr = dis.readUTF();
+                    int nBands = dis.readInt();
+                    List<Cytoband> bands = new ArrayList<Cytoband>(nBands);
+                    for (int b = 0; b < nBands; b++) {
+                        Cytoband band = new Cytoband(chr);
+                        band.setName(dis.readUTF());
+                        band.setStart(dis.readInt());
+                        band.setEnd(dis.readInt());
+                        band.setType(dis.readChar());
+                        band.setStain(dis.readShort());
+                        bands.add(band);
+                    }
+                    snapshot.cytobands.put(chr, bands);
+                }
+            }
+
+            int nAliasGroups = dis.readInt();
+            if (nAliasGroups >= 0) {
+                snapshot.aliases = new ArrayList<Collection<String>>(nAliasGroups);
+                for (int i = 0; i < nAliasGroups; i++) {
+                    int n = dis.readInt();
+                    Collection<String> synonyms = new ArrayList<String>(n);
+                    for (int s = 0; s < n; s++) {
+                        synonyms.add(dis.readUTF());
+                    }
+                    snapshot.aliases.add(synonyms);
+                }
+            }
+
+            if (dis.readBoolean()) {
+                snapshot.genes = BinaryFeatureIO.readFeatures(dis);
+            }
+            return snapshot;
+
+        } catch (Exception e) {
+            // Partially written,  or an older format
+            log.info("Error reading genome snapshot " + file.getName() + ": " + e.getMessage());
+            closeQuietly(dis);
+            dis = null;
+            file.delete();
+            return null;
+        } finally {
+            closeQuietly(dis);
+        }
+    }
+
+    /**
+     * Write a snapshot of {@code archive}.  Failures are logged and otherwise ignored,  the archive will simply be
+     * parsed again next time.
+     */
+    public void put(File archive, Snapshot snapshot) {
+        File file = getSnapshotFile(archive);
+        File tmpFile = null;
+        DataOutputStream dos = null;
+        try {
+            tmpFile = File.createTempFile(file.getName(), ".tmp", directory);
+            dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 64 * 1024));
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeUTF(String.valueOf(Globals.VERSION));
+            dos.writeUTF(archive.getAbsolutePath());
+            dos.writeLong(archive.length());
+            dos.writeLong(archive.lastModified());
+
+            if (snapshot.cytobands == null) {
+                dos.writeInt(-1);
+            } else {
+                dos.writeInt(snapshot.cytobands.size());
+                for (Map.Entry<String, List<Cytoband>> entry : snapshot.cytobands.entrySet()) {
+                    dos.writeUTF(entry.getKey());
+                    dos.writeInt(entry.getValue().size());
+                    for (Cytoband band : entry.getValue()) {
+                        dos.writeUTF(band.getName() == null ? "" : band.getName());
+                        dos.writeInt(band.getStart());
+                        dos.writeInt(band.getEnd());
+                        dos.writeChar(band.getType());
+                        dos.writeShort(band.getStain());
+                    }
+                }
+            }
+
+            if (snapshot.aliases == null) {
+                dos.writeInt(-1);
+            } else {
+                dos.writeInt(snapshot.aliases.size());
+                for (Collection<String> synonyms : snapshot.aliases) {
+                    dos.writeInt(synonyms.size());
+                    for (String s : synonyms) {
+                        dos.writeUTF(s);
+                    }
+                }
+            }
+
+            dos.writeBoolean(snapshot.genes != null);
+            if (snapshot.genes != null) {
+                BinaryFeatureIO.writeFeatures(dos, snapshot.genes);
+            }
+
+            dos.close();
+            dos = null;
+            file.delete();
+            if (tmpFile.renameTo(file)) {
+                tmpFile = null;
+            }
+        } catch (IOException e) {
+            log.info("Error writing genome snapshot for " + archive.getName() + ": " + e.getMessage());
+        } finally {
+            closeQuietly(dos);
+            if (tmpFile != null) {
+                tmpFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Delete all snapshots in the cache directory.
+     */
+    public void clear() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File f : files) {
+            if (f.getName().endsWith(SUFFIX)) {
+                f.delete();
+            }
+        }
+    }
+
+    File getSnapshotFile(File archive) {
+        return new File(directory, CacheFileUtils.getFileName(archive.getAbsolutePath(), SUFFIX));
+    }
+
+    private static void closeQuietly(Closeable c) {
+        if (c != null) try {
+            c.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+
+    /**
+     * The parsed contents of a genome archive.  Any component may be null if the archive does not define it,  or
+     * (for genes) if the annotations could not be snapshotted.
+     */
+    public static class Snapshot {
+
+        LinkedHashMap<String, List<Cytoband>> cytobands;
+        Collection<Collection<String>> aliases;
+        List<htsjdk.tribble.Feature> genes;
+
+        public LinkedHashMap<String, List<Cytoband>> getCytobands() {
+            return cytobands;
+        }
+
+        public Collection<Collection<String>> getAliases() {
+            return aliases;
+        }
+
+        public List<htsjdk.tribble.Feature> getGenes() {
+            return genes;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.feature.genome;
+
+import org.broad.igv.util.collections.IntArrayList;
+
+/**
+ * A tile of reference sequence packed 2 bits per base.  Bases other than A, C, G, and T (N, IUPAC codes, gaps) are
+ * kept as runs of the exact byte, soft masked (lower case) a, c, g, and t as runs of positions to lower case.  A tile
+ * whose runs would take more memory than the raw bytes, for example a protein sequence, is stored unpacked.
+ */
+class SequenceTile {
+
+    private static final byte[] BASES = {'A', 'C', 'G', 'T'};
+
+    final String chr;
+    final int tileNo;
+    private final int start;
+    private final int size;
+    private final boolean empty;
+
+    private byte[] raw;
+    private byte[] packed;
+    private int[] otherStart;
+    private int[] otherEnd;
+    private byte[] otherBase;
+    private int[] lowerStart;
+    private int[] lowerEnd;
+
+    /**
+     * @param bytes the sequence,  or null if the sequence source has no data for the tile
+     */
+    SequenceTile(String chr, int tileNo, int start, byte[] bytes) {
+        this.chr = chr;
+        this.tileNo = tileNo;
+        this.start = start;
+        this.empty = bytes == null;
+        this.size = bytes == null ? 0 : bytes.length;
+        if (bytes != null) {
+            pack(bytes);
+        }
+    }
+
+    private static int code(byte b) {
+        switch (b) {
+            case 'A':
+            case 'a':
+                return 0;
+            case 'C':
+            case 'c':
+                return 1;
+            case 'G':
+            case 'g':
+                return 2;
+            case 'T':
+            case 't':
+                return 3;
+            default:
+                return -1;
+        }
+    }
+
+    private void pack(byte[] bytes) {
+
+        byte[] packed = new byte[(size + 3) / 4];
+        IntArrayList otherStart = new IntArrayList();
+        IntArrayList otherEnd = new IntArrayList();
+        IntArrayList otherBase = new IntArrayList();
+        IntArrayList lowerStart = new IntArrayList();
+        IntArrayList lowerEnd = new IntArrayList();
+
+        int otherRun = 0;         // Number of runs,  the last run is open while it is being extended
+        int lowerRun = 0;
+        for (int i = 0; i < size; i++) {
+            byte b = bytes[i];
+            int code = code(b);
+            if (code < 0) {
+                if (otherRun > 0 && otherEnd.get(otherRun - 1) == i && otherBase.get(otherRun - 1) == b) {
+                    otherEnd.set(otherRun - 1, i + 1);
+                } else {
+                    otherStart.add(i);
+                    otherEnd.add(i + 1);
+                    otherBase.add(b);
+                    otherRun++;
+                }
+            } else {
+                packed[i >> 2] |= code << ((i & 3) << 1);
+                if (b >= 'a') {
+                    if (lowerRun > 0 && lowerEnd.get(lowerRun - 1) == i) {
+                        lowerEnd.set(lowerRun - 1, i + 1);
+                    } else {
+                        lowerStart.add(i);
+                        lowerEnd.add(i + 1);
+                        lowerRun++;
+                    }
+                }
+            }
+        }
+
+        if (packed.length + 9L * otherRun + 8L * lowerRun >= size) {
+            this.raw = bytes;
+            return;
+        }
+        this.packed = packed;
+        this.otherStart = otherStart.toArray();
+        this.otherEnd = otherEnd.toArray();
+        this.otherBase = new byte[otherRun];
+        for (int i = 0; i < otherRun; i++) {
+            this.otherBase[i] = (byte) otherBase.get(i);
+        }
+        this.lowerStart = lowerStart.toArray();
+        this.lowerEnd = lowerEnd.toArray();
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Return true if the sequence source returned no data for this tile
+     */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * Approximate heap footprint of the tile,  used to enforce the cache limit
+     */
+    public long getMemorySize() {
+        long bytes = 64 + chr.length() * 2;
+        if (raw != null) {
+            bytes += raw.length;
+        } else if (packed != null) {
+            bytes += packed.length + 9L * otherBase.length + 8L * lowerStart.length;
+        }
+        return bytes;
+    }
+
+    /**
+     * Return the base at {@code offset} from the tile start
+     */
+    public byte getBase(int offset) {
+        if (raw != null) {
+            return raw[offset];
+        }
+        int run = findRun(otherStart, otherEnd, offset);
+        if (run >= 0 && otherStart[run] <= offset) {
+            return otherBase[run];
+        }
+        byte b = BASES[(packed[offset >> 2] >> ((offset & 3) << 1)) & 3];
+        run = findRun(lowerStart, lowerEnd, offset);
+        if (run >= 0 && lowerStart[run] <= offset) {
+            b += 'a' - 'A';
+        }
+        return b;
+    }
+
+    /**
+     * Copy {@code len} bases starting at {@code offset} from the tile start to {@code dest}.
+     */
+    public void copy(int offset, byte[] dest, int destPos, int len) {
+        if (raw != null) {
+            System.arraycopy(raw, offset, dest, destPos, len);
+            return;
+        }
+        int end = offset + len;
+        for (int i = offset; i < end; i++) {
+            dest[destPos + i - offset] = BASES[(packed[i >> 2] >> ((i & 3) << 1)) & 3];
+        }
+        int run = findRun(lowerStart, lowerEnd, offset);
+        for (int r = run < 0 ? lowerStart.length : run; r < lowerStart.length && lowerStart[r] < end; r++) {
+            int from = Math.max(offset, lowerStart[r]);
+            int to = Math.min(end, lowerEnd[r]);
+            for (int i = from; i < to; i++) {
+                dest[destPos + i - offset] += 'a' - 'A';
+            }
+        }
+        run = findRun(otherStart, otherEnd, offset);
+        for (int r = run < 0 ? otherStart.length : run; r < otherStart.length && otherStart[r] < end; r++) {
+            int from = Math.max(offset, otherStart[r]);
+            int to = Math.min(end, otherEnd[r]);
+            for (int i = from; i < to; i++) {
+                dest[destPos + i - offset] = otherBase[r];
+            }
+        }
+    }
+
+    /**
+     * Return the index of the first run ending after {@code offset},  or -1 if there is none.
+     */
+    private static int findRun(int[] starts, int[] ends, int offset) {
+        int lo = 0;
+        int hi = ends.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ends[mid] <= offset) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo < ends.length ? lo : -1;
+    }
+}
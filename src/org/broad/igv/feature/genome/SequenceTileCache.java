@@ -0,0 +1,301 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.feature.genome;
+
+import org.apache.log4j.Logger;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A size-bounded cache of {@link SequenceTile}s.  Unlike a soft reference cache the tiles are only dropped by
+ * explicit eviction,  least recently used first once the total tile size exceeds the limit.  A tile being loaded by
+ * one thread is waited for,  not loaded again,  by others.
+ * <p/>
+ * When a request moves to a new tile the neighbouring tiles are loaded on a background thread,  so panning across a
+ * tile boundary does not wait on the sequence source.
+ */
+class SequenceTileCache {
+
+    private static Logger log = Logger.getLogger(SequenceTileCache.class);
+
+    /**
+     * Maximum number of queued prefetch requests.  Older requests are dropped when the user pans faster than tiles
+     * can be loaded.
+     */
+    private static final int MAX_PENDING_PREFETCH = 4;
+
+    private static ExecutorService prefetchExecutor;
+
+    private final Sequence sequence;
+    private final int tileSize;
+    private long maxBytes;
+    private long currentBytes = 0;
+    private boolean prefetch = true;
+
+    private final LinkedHashMap<TileKey, SequenceTile> tiles = new LinkedHashMap<TileKey, SequenceTile>(64, 0.75f, true);
+    private final Map<TileKey, FutureTask<SequenceTile>> inFlight = new HashMap<TileKey, FutureTask<SequenceTile>>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong prefetches = new AtomicLong();
+
+    SequenceTileCache(Sequence sequence, int tileSize, long maxBytes) {
+        this.sequence = sequence;
+        this.tileSize = tileSize;
+        this.maxBytes = maxBytes;
+    }
+
+    private static synchronized ExecutorService getPrefetchExecutor() {
+        if (prefetchExecutor == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(MAX_PENDING_PREFETCH), new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "sequence-prefetch");
+                    t.setDaemon(true);
+                    return t;
+                }
+            }, new ThreadPoolExecutor.DiscardOldestPolicy());
+            prefetchExecutor = executor;
+        }
+        return prefetchExecutor;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    public void setPrefetch(boolean prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    /**
+     * Return the tile,  loading it from the sequence if needed.  Returns null if the tile lies past the
+     * representable coordinate range.
+     *
+     * @param neighbours if true load the adjacent tiles in the background
+     */
+    public SequenceTile getTile(String chr, int tileNo, boolean neighbours) {
+
+        int start = tileNo * tileSize;
+        if (tileNo < 0 || start + tileSize <= start) {
+            return null;
+        }
+
+        TileKey key = new TileKey(chr, tileNo);
+        SequenceTile tile = get(key);
+        if (tile != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            tile = load(key);
+        }
+
+        if (neighbours && prefetch) {
+            prefetch(chr, tileNo + 1);
+            prefetch(chr, tileNo - 1);
+        }
+        return tile;
+    }
+
+    private SequenceTile load(TileKey key) {
+        FutureTask<SequenceTile> task;
+        boolean owner = false;
+        synchronized (this) {
+            SequenceTile tile = tiles.get(key);
+            if (tile != null) {
+                return tile;
+            }
+            task = inFlight.get(key);
+            if (task == null) {
+                task = new FutureTask<SequenceTile>(new TileLoader(key));
+                inFlight.put(key, task);
+                owner = true;
+            }
+        }
+        if (owner) {
+            task.run();
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted loading sequence " + key.chr, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Load a tile in the background.  This is only an optimization,  so errors are logged and otherwise ignored,  and
+     * nothing which can fail (including the chromosome length lookup) is done on the calling thread.
+     */
+    private void prefetch(String chr, int tileNo) {
+        if (tileNo < 0) {
+            return;
+        }
+        final TileKey key = new TileKey(chr, tileNo);
+        synchronized (this) {
+            if (tiles.containsKey(key) || inFlight.containsKey(key)) {
+                return;
+            }
+        }
+        getPrefetchExecutor().execute(new Runnable() {
+            public void run() {
+                synchronized (SequenceTileCache.this) {
+                    if (tiles.containsKey(key) || inFlight.containsKey(key)) {
+                        return;
+                    }
+                }
+                try {
+                    if (isPastEnd(key)) {
+                        return;
+                    }
+                    prefetches.incrementAndGet();
+                    load(key);
+                } catch (Exception e) {
+                    log.error("Error prefetching sequence " + key.chr + ":" + key.tileNo, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Return true if the tile starts past the end of its chromosome.  Sequences without chromosome lengths (e.g.
+     * IGVSequence without cytobands) throw from getChromosomeLength,  in that case the tile is loaded anyway.
+     */
+    private boolean isPastEnd(TileKey key) {
+        int chrLength;
+        try {
+            chrLength = sequence.getChromosomeLength(key.chr);
+        } catch (RuntimeException e) {
+            return false;
+        }
+        return chrLength > 0 && (long) key.tileNo * tileSize >= chrLength;
+    }
+
+    private synchronized SequenceTile get(TileKey key) {
+        return tiles.get(key);
+    }
+
+    private synchronized void put(TileKey key, SequenceTile tile) {
+        SequenceTile previous = tiles.put(key, tile);
+        if (previous != null) {
+            currentBytes -= previous.getMemorySize();
+        }
+        currentBytes += tile.getMemorySize();
+        evict();
+    }
+
+    private void evict() {
+        Iterator<SequenceTile> iter = tiles.values().iterator();
+        while (currentBytes > maxBytes && iter.hasNext()) {
+            currentBytes -= iter.next().getMemorySize();
+            iter.remove();
+        }
+    }
+
+    public synchronized void clear() {
+        tiles.clear();
+        currentBytes = 0;
+    }
+
+    public synchronized int getTileCount() {
+        return tiles.size();
+    }
+
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getPrefetches() {
+        return prefetches.get();
+    }
+
+
+    private class TileLoader implements Callable<SequenceTile> {
+
+        final TileKey key;
+
+        TileLoader(TileKey key) {
+            this.key = key;
+        }
+
+        public SequenceTile call() {
+            try {
+                int start = key.tileNo * tileSize;
+                int end = start + tileSize; // <=  UCSC coordinate conventions (end base not inclusive)
+                byte[] seq = sequence.getSequence(key.chr, start, end);
+                SequenceTile tile = new SequenceTile(key.chr, key.tileNo, start, seq);
+                put(key, tile);
+                return tile;
+            } finally {
+                synchronized (SequenceTileCache.this) {
+                    inFlight.remove(key);
+                }
+            }
+        }
+    }
+
+    private static class TileKey {
+
+        final String chr;
+        final int tileNo;
+
+        TileKey(String chr, int tileNo) {
+            this.chr = chr;
+            this.tileNo = tileNo;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof TileKey)) return false;
+            TileKey other = (TileKey) o;
+            return tileNo == other.tileNo && chr.equals(other.chr);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * chr.hashCode() + tileNo;
+        }
+    }
+}
@@ -30,42 +30,54 @@
 package org.broad.igv.feature.genome;
 
 import org.apache.log4j.Logger;
-import org.broad.igv.util.ObjectCache;
+import org.broad.igv.PreferenceManager;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.Hashtable;
 import java.util.List;
 
 /**
  * A wrapper class that provides caching for on-disk, queried, and web-service Sequence implementations.
+ * <p/>
+ * Sequence is cached in 2-bit packed tiles (see {@link SequenceTile}) in a cache bounded by the SEQUENCE_CACHE_SIZE
+ * preference.  Neighbouring tiles are prefetched in the background as requests move from tile to tile.
  *
  * @author jrobinso
  */
-public class SequenceWrapper implements Sequence {
+public class SequenceWrapper implements Sequence, Closeable {
 
     private static Logger log = Logger.getLogger(SequenceWrapper.class);
     private static boolean cacheSequences = true;
     private static int tileSize = 1000000;
 
     private Sequence sequence;
-    private ObjectCache<String, SequenceTile> sequenceCache = new ObjectCache<String, SequenceTile>(50);
+    private SequenceTileCache sequenceCache;
+
+    /**
+     * The most recently used tile.  Consecutive getBase calls usually fall in the same tile,  this skips the cache
+     * lookup for them.
+     */
+    private volatile SequenceTile lastTile;
 
 
     public SequenceWrapper(Sequence sequence) {
         this.sequence = sequence;
+        int cacheSizeMB = PreferenceManager.getInstance().getAsInt(PreferenceManager.SEQUENCE_CACHE_SIZE);
+        this.sequenceCache = new SequenceTileCache(sequence, tileSize, cacheSizeMB * 1024L * 1024L);
     }
 
     public byte getBase(String chr, int position) {
         if (cacheSequences) {
-            int tileNo = position / tileSize;
+            int tileNo = position / sequenceCache.getTileSize();
 
-            // Get first chunk
             SequenceTile tile = getSequenceTile(chr, tileNo);
-            int offset = position - tile.getStart();
-            byte[] bytes = tile.bytes;
-            if (bytes == null) {
+            if (tile == null) {
                 return 0;
-            } else if (offset > 0 && offset < bytes.length) {
-                return bytes[offset];
+            }
+            int offset = position - tile.getStart();
+            if (offset >= 0 && offset < tile.getSize()) {
+                return tile.getBase(offset);
             } else {
                 return 0;
             }
@@ -97,17 +109,13 @@ public class SequenceWrapper implements Sequence {
     public byte[] getSequence(String chr, int start, int end) {
         if (cacheSequences) {
             byte[] seqbytes = new byte[end - start];
+            int tileSize = sequenceCache.getTileSize();
             int startTile = start / tileSize;
             int endTile = end / tileSize;
 
             // Get first chunk
             SequenceTile tile = getSequenceTile(chr, startTile);
-            if (tile == null) {
-                return null;
-            }
-
-            byte[] tileBytes = tile.getBytes();
-            if (tileBytes == null) {
+            if (tile == null || tile.isEmpty()) {
                 return null;
             }
 
@@ -123,21 +131,21 @@ public class SequenceWrapper implements Sequence {
             }
 
             // # of bytes to copy.  Note that only one of fromOffset or toOffset is non-zero.
-            int nBytes = Math.min(tileBytes.length - Math.abs(fromOffset), seqbytes.length - Math.abs(toOffset));
+            int nBytes = Math.max(0, Math.min(tile.getSize() - Math.abs(fromOffset), seqbytes.length - Math.abs(toOffset)));
 
             // Copy first chunk
-            System.arraycopy(tileBytes, fromOffset, seqbytes, toOffset, nBytes);
+            tile.copy(fromOffset, seqbytes, toOffset, nBytes);
 
             // If multiple chunks ...
             for (int t = startTile + 1; t <= endTile; t++) {
                 tile = getSequenceTile(chr, t);
-                if (tile == null) {
+                if (tile == null || tile.isEmpty()) {
                     break;
                 }
 
                 int nNext = Math.min(seqbytes.length - nBytes, tile.getSize());
 
-                System.arraycopy(tile.getBytes(), 0, seqbytes, nBytes, nNext);
+                tile.copy(0, seqbytes, nBytes, nNext);
                 nBytes += nNext;
             }
 
@@ -149,23 +157,51 @@ public class SequenceWrapper implements Sequence {
 
 
     private SequenceTile getSequenceTile(String chr, int tileNo) {
-        String key = getKey(chr, tileNo);
-        SequenceTile tile = sequenceCache.get(key);
+        SequenceTile tile = lastTile;
+        if (tile != null && tile.tileNo == tileNo && tile.chr.equals(chr)) {
+            return tile;
+        }
+        tile = sequenceCache.getTile(chr, tileNo, true);
+        if (tile != null) {
+            lastTile = tile;
+        }
+        return tile;
+    }
 
-        if (tile == null) {
-            int start = tileNo * tileSize;
-            int end = start + tileSize; // <=  UCSC coordinate conventions (end base not inclusive)
+    /**
+     * Number of tile requests served from the cache.  Requests served by the most recently used tile are not counted.
+     */
+    public long getCacheHits() {
+        return sequenceCache.getHits();
+    }
 
-            if (end <= start) {
-                return null;
-            }
+    /**
+     * Number of tile requests which had to load (or wait for) the tile.
+     */
+    public long getCacheMisses() {
+        return sequenceCache.getMisses();
+    }
 
-            byte[] seq = sequence.getSequence(chr, start, end);
-            tile = new SequenceTile(start, seq);
-            sequenceCache.put(key, tile);
-        }
+    /**
+     * Number of tiles loaded in the background ahead of a request.
+     */
+    public long getCachePrefetches() {
+        return sequenceCache.getPrefetches();
+    }
 
-        return tile;
+    /**
+     * Current size of the cached tiles in bytes.
+     */
+    public long getCacheSize() {
+        return sequenceCache.getCurrentBytes();
+    }
+
+    void setCacheMaxBytes(long maxBytes) {
+        sequenceCache.setMaxBytes(maxBytes);
+    }
+
+    void setPrefetch(boolean prefetch) {
+        sequenceCache.setPrefetch(prefetch);
     }
 
     /**
@@ -201,29 +237,22 @@ public class SequenceWrapper implements Sequence {
     }
 
     public void clearCache() {
+        if (log.isDebugEnabled()) {
+            log.debug("Clearing sequence cache: " + sequenceCache.getTileCount() + " tiles, " +
+                    sequenceCache.getCurrentBytes() + " bytes, " + getCacheHits() + " hits, " +
+                    getCacheMisses() + " misses, " + getCachePrefetches() + " prefetches");
+        }
         sequenceCache.clear();
+        lastTile = null;
     }
 
-    static class SequenceTile {
-
-        private int start;
-        private byte[] bytes;
-
-        SequenceTile(int start, byte[] bytes) {
-            this.start = start;
-            this.bytes = bytes;
-        }
-
-        public int getStart() {
-            return start;
-        }
-
-        public int getSize() {
-            return bytes == null ? 0 : bytes.length;
-        }
-
-        public byte[] getBytes() {
-            return bytes;
+    /**
+     * Clear the cache and close the wrapped sequence,  if it holds open files.
+     */
+    public void close() throws IOException {
+        clearCache();
+        if (sequence instanceof Closeable) {
+            ((Closeable) sequence).close();
         }
     }
 
@@ -28,6 +28,7 @@ package org.broad.igv.feature.tribble;
 import htsjdk.samtools.util.LocationAware;
 import org.apache.log4j.Logger;
 import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.variant.vcf.GenotypeMatrix;
 import org.broad.igv.variant.vcf.VCFVariant;
 import htsjdk.tribble.Feature;
 import htsjdk.tribble.FeatureCodec;
@@ -36,9 +37,12 @@ import htsjdk.tribble.readers.AsciiLineReader;
 import htsjdk.tribble.readers.AsciiLineReaderIterator;
 import htsjdk.tribble.readers.PositionalBufferedStream;
 import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFHeader;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
 
 /**
  * @author Jacob Silterra
@@ -51,6 +55,10 @@ public class BCF2WrapperCodec implements FeatureCodec<VCFVariant, PositionalBuff
     FeatureCodec<VariantContext, PositionalBufferedStream> wrappedCodec;
     Genome genome;
 
+    private List<String> sampleNames;
+    private Map<String, Integer> sampleIndices;
+    private GenotypeMatrix genotypes;
+
     public BCF2WrapperCodec(FeatureCodec<VariantContext, PositionalBufferedStream> wrappedCodec, Genome genome) {
         this.wrappedCodec = wrappedCodec;
         this.genome = genome;
@@ -63,7 +71,17 @@ public class BCF2WrapperCodec implements FeatureCodec<VCFVariant, PositionalBuff
             return null;
         }
         String chr = genome == null ? vc.getChr() : genome.getCanonicalChrName(vc.getChr());
-        return new VCFVariant(vc, chr);
+        if (sampleNames == null || sampleNames.isEmpty() || !vc.hasGenotypes()) {
+            return new VCFVariant(vc, chr);
+        }
+
+        // Consecutive variants share a genotype matrix block
+        if (genotypes == null || genotypes.isFull()) {
+            genotypes = new GenotypeMatrix(sampleNames, sampleIndices, GenotypeMatrix.getBlockCapacity(sampleNames.size()));
+        }
+        int column = genotypes.addColumn();
+        genotypes.setGenotypes(column, vc);
+        return new VCFVariant(vc, chr, genotypes, column);
 
     }
 
@@ -74,7 +92,13 @@ public class BCF2WrapperCodec implements FeatureCodec<VCFVariant, PositionalBuff
 
     @Override
     public FeatureCodecHeader readHeader(PositionalBufferedStream stream) throws IOException {
-        return this.wrappedCodec.readHeader(stream);
+        FeatureCodecHeader header = this.wrappedCodec.readHeader(stream);
+        if (header != null && header.getHeaderValue() instanceof VCFHeader) {
+            sampleNames = ((VCFHeader) header.getHeaderValue()).getGenotypeSamples();
+            sampleIndices = GenotypeMatrix.indexSamples(sampleNames);
+            genotypes = null;
+        }
+        return header;
     }
 
     @Override
@@ -36,8 +36,10 @@ import org.broad.igv.feature.genome.Genome;
 import org.broad.igv.track.TrackProperties;
 import org.broad.igv.ui.IGV;
 import org.broad.igv.ui.color.ColorUtilities;
+import org.broad.igv.util.ByteTokenizer;
 import org.broad.igv.util.ParsingUtils;
 import org.broad.igv.util.StringUtils;
+import org.broad.igv.util.collections.ByteStringDictionary;
 import org.broad.igv.util.collections.CI;
 import org.broad.igv.util.collections.MultiMap;
 import htsjdk.tribble.AsciiFeatureCodec;
@@ -64,7 +66,7 @@ import java.util.*;
  * UCSC GTF  http://genome.ucsc.edu/FAQ/FAQformat#format4
  * Feature type definitions http://www.ebi.ac.uk/embl/Documentation/FT_definitions/feature_table.html#7.2
  */
-public class GFFCodec extends AsciiFeatureCodec<Feature> {
+public class GFFCodec extends AsciiFeatureCodec<Feature> implements ByteLineDecoder<Feature> {
 
     private static Logger log = Logger.getLogger(GFFCodec.class);
 
@@ -87,6 +89,12 @@ public class GFFCodec extends AsciiFeatureCodec<Feature> {
     private Genome genome;
     private boolean fastaSection = false;
 
+    // State for decoding from byte buffers,  reused from line to line
+    private ByteTokenizer byteTokens = new ByteTokenizer(16);
+    private ByteStringDictionary dictionary = new ByteStringDictionary();
+    private String lastChrToken;
+    private String lastChr;
+
     public enum Version {
         GFF2, GFF3
     }
@@ -253,6 +261,68 @@ public class GFFCodec extends AsciiFeatureCodec<Feature> {
 
         helper.parseAttributes(attributeString, attributes);
 
+        String phaseString = tokens[7].trim();
+        int phase = phaseString.equals(".") ? -1 : Integer.parseInt(phaseString);
+
+        return createFeature(chromosome, start, end, strand, featureType, phase, attributes, attributeString);
+    }
+
+    /**
+     * Decode a line held in a byte buffer.  Equivalent to {@link #decode(String)},  but columns are located and
+     * numbers parsed in place,  and chromosome names, feature types, and attribute keys are shared through a
+     * dictionary.  Comment and directive lines,  and lines with malformed numbers,  are passed to the String decoder.
+     */
+    public BasicFeature decode(byte[] buffer, int start, int end) {
+
+        if (fastaSection) {
+            return null;
+        }
+        if (start < end && buffer[start] == '#') {
+            return decode(ByteTokenizer.toString(buffer, start, end));
+        }
+
+        int nTokens = byteTokens.split(buffer, start, end, (byte) '\t');
+        if (nTokens < 9) {
+            return null;
+        }
+
+        byteTokens.trim(0);
+        byteTokens.trim(2);
+        String featureType = byteTokens.getString(2, dictionary);
+        if (ignoredTypes.contains(featureType)) {
+            return null;
+        }
+
+        String chromosome = getChr(byteTokens.getString(0, dictionary));
+
+        int featureStart;
+        int featureEnd;
+        int phase;
+        try {
+            featureStart = byteTokens.parseInt(3) - 1;
+            featureEnd = byteTokens.parseInt(4);
+            byteTokens.trim(7);
+            phase = byteTokens.equals(7, ".") ? -1 : byteTokens.parseInt(7);
+        } catch (NumberFormatException e) {
+            // Let the String decoder report it
+            return decode(ByteTokenizer.toString(buffer, start, end));
+        }
+        if (featureStart < 0) {
+            return decode(ByteTokenizer.toString(buffer, start, end));
+        }
+
+        Strand strand = byteTokens.equals(6, "-") ? Strand.NEGATIVE :
+                (byteTokens.equals(6, "+") ? Strand.POSITIVE : Strand.NONE);
+
+        MultiMap<String, String> attributes = new MultiMap<String, String>();
+        helper.parseAttributes(buffer, byteTokens.getStart(8), byteTokens.getEnd(8), attributes, dictionary);
+
+        return createFeature(chromosome, featureStart, featureEnd, strand, featureType, phase, attributes, null);
+    }
+
+    private BasicFeature createFeature(String chromosome, int start, int end, Strand strand, String featureType,
+                                       int phase, MultiMap<String, String> attributes, String attributeString) {
+
         String id = helper.getID(attributes, featureType);
         String[] parentIds = helper.getParentIds(attributes, attributeString);
 
@@ -270,11 +340,7 @@ public class GFFCodec extends AsciiFeatureCodec<Feature> {
             }
         }
 
-        String phaseString = tokens[7].trim();
-        if (!phaseString.equals(".")) {
-            int phaseNum = Integer.parseInt(phaseString);
-            f.setReadingFrame(phaseNum);
-        }
+        f.setReadingFrame(phase);
 
         f.setName(helper.getName(attributes));
         f.setType(featureType);
@@ -302,6 +368,17 @@ public class GFFCodec extends AsciiFeatureCodec<Feature> {
 
     }
 
+    private String getChr(String chrToken) {
+        if (genome == null) {
+            return chrToken;
+        }
+        if (chrToken != lastChrToken) {
+            lastChrToken = chrToken;
+            lastChr = genome.getCanonicalChrName(chrToken);
+        }
+        return lastChr;
+    }
+
     public Object getHeader() {
         return header;
     }
@@ -317,6 +394,23 @@ public class GFFCodec extends AsciiFeatureCodec<Feature> {
         return strand;
     }
 
+    /**
+     * Split an attribute column on semicolons,  as with {@code StringUtils.breakQuotedString(description.trim(), ';')}
+     */
+    static int splitAttributes(ByteTokenizer tokenizer, byte[] buffer, int start, int end) {
+        return tokenizer.splitQuoted(buffer, trimStart(buffer, start, end), trimEnd(buffer, start, end), (byte) ';');
+    }
+
+    static int trimStart(byte[] buffer, int start, int end) {
+        while (start < end && (buffer[start] & 0xff) <= ' ') start++;
+        return start;
+    }
+
+    static int trimEnd(byte[] buffer, int start, int end) {
+        while (end > start && (buffer[end - 1] & 0xff) <= ' ') end--;
+        return end;
+    }
+
     static StringBuffer buf = new StringBuffer();
 
     static String getDescription(MultiMap<String, String> attributes, String type) {
@@ -334,6 +428,11 @@ public class GFFCodec extends AsciiFeatureCodec<Feature> {
 
         void parseAttributes(String attributeString, MultiMap<String, String> map);
 
+        /**
+         * Parse the attribute column held in buffer[start, end).  Keys are shared through {@code keys}.
+         */
+        void parseAttributes(byte[] buffer, int start, int end, MultiMap<String, String> map, ByteStringDictionary keys);
+
         String getID(MultiMap<String, String> attributes, String type);
 
         void setUrlDecoding(boolean b);
@@ -391,6 +490,68 @@ public class GFFCodec extends AsciiFeatureCodec<Feature> {
             }
         }
 
+        private ByteTokenizer kvTokens;
+
+        /**
+         * Byte buffer equivalent of {@link #parseAttributes(String, MultiMap)}
+         */
+        public void parseAttributes(byte[] buffer, int start, int end, MultiMap<String, String> kvalues,
+                                    ByteStringDictionary keys) {
+
+            if (kvTokens == null) kvTokens = new ByteTokenizer(32);
+            int nPairs = splitAttributes(kvTokens, buffer, start, end);
+            for (int i = 0; i < nPairs; i++) {
+                int kvStart = kvTokens.getStart(i);
+                int kvEnd = kvTokens.getEnd(i);
+
+                // Split on the first space,  or failing that the first '='.  Only the first two tokens are used.
+                int delim = ByteTokenizer.indexOf(buffer, kvStart, kvEnd, (byte) ' ');
+                if (delim < 0) {
+                    delim = ByteTokenizer.indexOf(buffer, kvStart, kvEnd, (byte) '=');
+                    if (delim < 0 || !hasNonDelimiter(buffer, delim + 1, kvEnd, (byte) '=')) {
+                        continue;
+                    }
+                }
+                byte delimiter = buffer[delim];
+                int valueEnd = ByteTokenizer.indexOf(buffer, delim + 1, kvEnd, delimiter);
+                if (valueEnd < 0) valueEnd = kvEnd;
+
+                String key = getKey(buffer, kvStart, delim, keys);
+                String value = removeQuotes(buffer, trimStart(buffer, delim + 1, valueEnd), trimEnd(buffer, delim + 1, valueEnd));
+                kvalues.put(key, value);
+            }
+        }
+
+        private static boolean hasNonDelimiter(byte[] buffer, int start, int end, byte delimiter) {
+            for (int i = start; i < end; i++) {
+                if (buffer[i] != delimiter) return true;
+            }
+            return false;
+        }
+
+        private static String getKey(byte[] buffer, int start, int end, ByteStringDictionary keys) {
+            int s = trimStart(buffer, start, end);
+            int e = trimEnd(buffer, start, end);
+            if (ByteTokenizer.indexOf(buffer, s, e, (byte) '"') < 0) {
+                return keys.get(buffer, s, e);
+            } else {
+                return StringUtils.intern(ByteTokenizer.toString(buffer, s, e).replace("\"", ""));
+            }
+        }
+
+        private static String removeQuotes(byte[] buffer, int start, int end) {
+            int firstQuote = ByteTokenizer.indexOf(buffer, start, end, (byte) '"');
+            if (firstQuote < 0) {
+                return ByteTokenizer.toString(buffer, start, end);
+            }
+            // The common case,  a single quoted value
+            if (firstQuote == start && end - start >= 2 && buffer[end - 1] == '"' &&
+                    ByteTokenizer.indexOf(buffer, start + 1, end - 1, (byte) '"') < 0) {
+                return ByteTokenizer.toString(buffer, start + 1, end - 1);
+            }
+            return ByteTokenizer.toString(buffer, start, end).replace("\"", "");
+        }
+
         /**
          * @param attributes
          * @param attributeString
@@ -513,6 +674,48 @@ public class GFFCodec extends AsciiFeatureCodec<Feature> {
             }
         }
 
+        private ByteTokenizer kvTokens;
+        private ByteTokenizer tokens;
+
+        /**
+         * Byte buffer equivalent of {@link #parseAttributes(String, MultiMap)}
+         */
+        public void parseAttributes(byte[] buffer, int start, int end, MultiMap<String, String> kvalues,
+                                    ByteStringDictionary keys) {
+
+            if (kvTokens == null) {
+                kvTokens = new ByteTokenizer(32);
+                tokens = new ByteTokenizer(4);
+            }
+            int nPairs = splitAttributes(kvTokens, buffer, start, end);
+            for (int i = 0; i < nPairs; i++) {
+                int nValues = tokens.splitQuoted(buffer, kvTokens.getStart(i), kvTokens.getEnd(i), (byte) '=');
+                if (nValues > 0) {
+                    String key;
+                    String value;
+                    if (useUrlDecoding && needsDecoding(tokens, 0)) {
+                        key = StringUtils.intern(StringUtils.decodeURL(tokens.getString(0)));
+                    } else {
+                        key = tokens.getString(0, keys);
+                    }
+                    if (nValues == 1) {
+                        value = "";
+                    } else if (useUrlDecoding && needsDecoding(tokens, 1)) {
+                        value = StringUtils.decodeURL(tokens.getString(1));
+                    } else {
+                        value = tokens.getString(1);
+                    }
+                    kvalues.put(key, value);
+                } else {
+                    log.info("No attributes: " + ByteTokenizer.toString(buffer, start, end));
+                }
+            }
+        }
+
+        private static boolean needsDecoding(ByteTokenizer tokens, int token) {
+            return tokens.contains(token, (byte) '%') || tokens.contains(token, (byte) '+');
+        }
+
         public void setUrlDecoding(boolean useUrlDecoding) {
             this.useUrlDecoding = useUrlDecoding;
         }
@@ -33,10 +33,14 @@ import org.broad.igv.cli_plugin.LineFeatureEncoder;
 import org.broad.igv.feature.*;
 import org.broad.igv.feature.genome.Genome;
 import org.broad.igv.ui.color.ColorUtilities;
+import org.broad.igv.util.ByteTokenizer;
 import org.broad.igv.util.StringUtils;
+import org.broad.igv.util.collections.ByteStringDictionary;
 import org.broad.igv.util.collections.MultiMap;
 import htsjdk.tribble.Feature;
 
+import java.awt.*;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
@@ -48,7 +52,8 @@ import java.util.regex.Pattern;
  * Date: Dec 20, 2009
  * Time: 10:15:49 PM
  */
-public class IGVBEDCodec extends UCSCCodec<BasicFeature> implements LineFeatureEncoder<Feature>, LineFeatureDecoder<BasicFeature> {
+public class IGVBEDCodec extends UCSCCodec<BasicFeature> implements LineFeatureEncoder<Feature>, LineFeatureDecoder<BasicFeature>,
+        ByteLineDecoder<BasicFeature> {
 
     private static final Logger log = Logger.getLogger(IGVBEDCodec.class);
 
@@ -260,6 +265,200 @@ public class IGVBEDCodec extends UCSCCodec<BasicFeature> implements LineFeatureE
     }
 
 
+    // State for decoding from byte buffers,  reused from line to line
+    private ByteTokenizer byteTokens = new ByteTokenizer(16);
+    private ByteTokenizer exonSizeTokens = new ByteTokenizer(64);
+    private ByteTokenizer exonStartTokens = new ByteTokenizer(64);
+    private ByteStringDictionary dictionary = new ByteStringDictionary();
+    private Map<String, Color> colorCache = new HashMap<String, Color>();
+    private String lastChrToken;
+    private String lastChr;
+
+    /**
+     * Decode a line held in a byte buffer.  Equivalent to {@link #decode(String)},  but fields are located and
+     * numbers parsed in place,  and chromosome names and colors are shared through a dictionary.  Files with gffTags,
+     * splice junction and gapped peak files,  and lines with malformed numbers are passed to the String decoder.
+     */
+    public BasicFeature decode(byte[] buffer, int start, int end) {
+
+        if (isGffTags() || featureType != FeatureType.BED) {
+            return decode(ByteTokenizer.toString(buffer, start, end));
+        }
+
+        if (ByteTokenizer.startsWith(buffer, start, end, "#") || ByteTokenizer.startsWith(buffer, start, end, "track") ||
+                ByteTokenizer.startsWith(buffer, start, end, "browser")) {
+            return null;
+        }
+
+        int tokenCount = byteTokens.splitWhitespace(buffer, start, end);
+        if (tokenCount == 1 && byteTokens.getLength(0) == 0) {
+            return null;
+        }
+
+        try {
+            return decodeByteTokens(tokenCount);
+        } catch (NumberFormatException e) {
+            // Let the String decoder handle or report it
+            return decode(ByteTokenizer.toString(buffer, start, end));
+        }
+    }
+
+    private BasicFeature decodeByteTokens(int tokenCount) {
+
+        if (tokenCount < 2) {
+            return null;
+        }
+
+        String chr = getChr(byteTokens.getString(0, dictionary));
+        int start = byteTokens.parseInt(1);
+        int end = tokenCount > 2 ? byteTokens.parseInt(2) : start + 1;
+
+        BasicFeature feature = new BasicFeature(chr, start, end);
+
+        // Name
+        if (tokenCount > 3) {
+            String name;
+            if (byteTokens.contains(3, (byte) '"')) {
+                name = byteTokens.getString(3).replace("\"", "");
+            } else {
+                name = byteTokens.getString(3);
+            }
+            if (name.equals(".")) name = "";
+            feature.setName(name);
+            feature.setIdentifier(name);
+        }
+
+        // Score
+        if (tokenCount > 4) {
+            float score;
+            if (isSmallInteger(4)) {
+                score = byteTokens.parseInt(4);
+            } else {
+                try {
+                    score = Float.parseFloat(byteTokens.getString(4));
+                } catch (NumberFormatException e) {
+                    return feature;
+                }
+            }
+            feature.setScore(score);
+        }
+
+        // Strand
+        if (tokenCount > 5) {
+            byte strand = byteTokens.getBuffer()[byteTokens.getStart(5)];
+            if (strand == '-') {
+                feature.setStrand(Strand.NEGATIVE);
+            } else if (strand == '+') {
+                feature.setStrand(Strand.POSITIVE);
+            } else {
+                feature.setStrand(Strand.NONE);
+            }
+        }
+
+        // Thick ends
+        if (tokenCount > 7) {
+            try {
+                int thickStart = byteTokens.parseInt(6);
+                int thickEnd = byteTokens.parseInt(7);
+                if (thickStart >= start && thickEnd <= end) {
+                    feature.setThickStart(thickStart);
+                    feature.setThickEnd(thickEnd);
+                }
+            } catch (NumberFormatException e) {
+                return feature;
+            }
+        }
+
+        // Color
+        if (tokenCount > 8 && !byteTokens.equals(8, ".")) {
+            String colorString = byteTokens.getString(8, dictionary);
+            Color color = colorCache.get(colorString);
+            if (color == null) {
+                color = ColorUtilities.stringToColor(colorString);
+                colorCache.put(colorString, color);
+            }
+            feature.setColor(color);
+        }
+
+        // Exons
+        if (tokenCount > 11) {
+            createExons(start, feature, chr, feature.getStrand());
+        }
+
+        return feature;
+    }
+
+    /**
+     * Exons from the byte tokens,  see {@link #createExons(int, String[], BasicFeature, String, Strand)}
+     */
+    private void createExons(int start, BasicFeature gene, String chr, Strand strand) throws NumberFormatException {
+
+        int cdStart = byteTokens.parseInt(6);
+        int cdEnd = byteTokens.parseInt(7);
+        int exonCount = byteTokens.parseInt(9);
+
+        byte[] buffer = byteTokens.getBuffer();
+        int nSizes = splitList(exonSizeTokens, buffer, byteTokens.getStart(10), byteTokens.getEnd(10));
+        int nStarts = splitList(exonStartTokens, buffer, byteTokens.getStart(11), byteTokens.getEnd(11));
+
+        int exonNumber = (strand == Strand.NEGATIVE ? exonCount : 1);
+
+        if (nStarts == nSizes) {
+            for (int i = 0; i < nStarts; i++) {
+                int exonStart = start + exonStartTokens.parseInt(i);
+                int exonEnd = exonStart + exonSizeTokens.parseInt(i);
+                Exon exon = new Exon(chr, exonStart, exonEnd, strand);
+                exon.setCodingStart(cdStart);
+                exon.setCodingEnd(cdEnd);
+                gene.addExon(exon);
+
+                exon.setNumber(exonNumber);
+                if (strand == Strand.NEGATIVE) {
+                    exonNumber--;
+                } else {
+                    exonNumber++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Split a comma separated list,  dropping trailing empty elements as {@code Globals.commaPattern.split} does.
+     */
+    private static int splitList(ByteTokenizer tokenizer, byte[] buffer, int start, int end) {
+        int n = tokenizer.split(buffer, start, end, (byte) ',');
+        if (n > 1) {
+            while (n > 0 && tokenizer.getLength(n - 1) == 0) n--;
+        }
+        return n;
+    }
+
+    /**
+     * True if the token is a string of at most 7 digits,  and so converts exactly to a float.
+     */
+    private boolean isSmallInteger(int token) {
+        int s = byteTokens.getStart(token);
+        int e = byteTokens.getEnd(token);
+        if (e - s > 7) return false;
+        byte[] buffer = byteTokens.getBuffer();
+        for (int i = s; i < e; i++) {
+            if (buffer[i] < '0' || buffer[i] > '9') return false;
+        }
+        return true;
+    }
+
+    private String getChr(String chrToken) {
+        if (genome == null) {
+            return chrToken;
+        }
+        if (chrToken != lastChrToken) {
+            lastChrToken = chrToken;
+            lastChr = genome.getCanonicalChrName(chrToken);
+        }
+        return lastChr;
+    }
+
+
     /**
      * This function returns true iff the File potentialInput can be parsed by this
      * codec.
@@ -28,13 +28,18 @@ package org.broad.igv.feature.tribble;
 import org.apache.log4j.Logger;
 import org.broad.igv.feature.genome.Genome;
 import org.broad.igv.variant.Variant;
+import org.broad.igv.variant.vcf.GenotypeMatrix;
 import org.broad.igv.variant.vcf.VCFVariant;
 import htsjdk.tribble.AsciiFeatureCodec;
 import htsjdk.tribble.Feature;
 import htsjdk.tribble.readers.LineIterator;
 import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFHeader;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 
 /**
  * @author Jim Robinson
@@ -47,6 +52,10 @@ public class VCFWrapperCodec extends AsciiFeatureCodec<VCFVariant> {
     AsciiFeatureCodec wrappedCodec;
     Genome genome;
 
+    private List<String> sampleNames;
+    private Map<String, Integer> sampleIndices;
+    private GenotypeMatrix genotypes;
+
     public VCFWrapperCodec(AsciiFeatureCodec wrappedCodec, Genome genome) {
         super(VCFVariant.class);
         this.wrappedCodec = wrappedCodec;
@@ -64,32 +73,50 @@ public class VCFWrapperCodec extends AsciiFeatureCodec<VCFVariant> {
         // but does not currently support missing only certain elements of a field.
         // IGV is much more permissive.
 
-        VariantContext vc = null;
         try {
-            vc = (VariantContext) wrappedCodec.decode(line);
-            //The genotype fields are loaded lazily, we force parsing here to
-            //catch the exception if necessary
-            if (vc != null) vc.getSampleNames();
+            VariantContext vc = (VariantContext) wrappedCodec.decode(line);
+            return vc == null ? null : createVariant(vc, line);
         } catch (NumberFormatException e) {
             String msg = String.format("NumberFormatException on line: %s \n Attempting to reformat by replacing ,., with ,0,", line);
             log.warn(msg);
             String refLine = line.replaceAll(",\\.", ",0");
             refLine = refLine.replaceAll("\\.,", "0,");
-            vc = (VariantContext) wrappedCodec.decode(refLine);
+            VariantContext vc = (VariantContext) wrappedCodec.decode(refLine);
+            return vc == null ? null : createVariant(vc, refLine);
         }
+    }
 
+    /**
+     * Genotypes of consecutive variants share a {@link GenotypeMatrix} block.  For VCF 4.x the calls are parsed
+     * directly from the line,  and the htsjdk genotypes are only decoded if a sample's attributes are requested.
+     * Otherwise,  or if the line is unusual,  the genotypes are decoded here so malformed values are found now.
+     */
+    private VCFVariant createVariant(VariantContext vc, String line) {
 
-        if (vc == null) {
-            return null;
-        }
         String chr = genome == null ? vc.getChr() : genome.getCanonicalChrName(vc.getChr());
-        return new VCFVariant(vc, chr);
+        if (sampleNames == null || sampleNames.isEmpty() || !vc.hasGenotypes()) {
+            return new VCFVariant(vc, chr);
+        }
 
+        if (genotypes == null || genotypes.isFull()) {
+            genotypes = new GenotypeMatrix(sampleNames, sampleIndices, GenotypeMatrix.getBlockCapacity(sampleNames.size()));
+        }
+        int column = genotypes.addColumn();
+        if (!(wrappedCodec instanceof VCFCodec) || !genotypes.parseGenotypes(column, line, vc.getAlleles())) {
+            genotypes.setGenotypes(column, vc);
+        }
+        return new VCFVariant(vc, chr, genotypes, column);
     }
 
     @Override
     public Object readActualHeader(LineIterator reader) {
-        return wrappedCodec.readActualHeader(reader);
+        Object header = wrappedCodec.readActualHeader(reader);
+        if (header instanceof VCFHeader) {
+            sampleNames = ((VCFHeader) header).getGenotypeSamples();
+            sampleIndices = GenotypeMatrix.indexSamples(sampleNames);
+            genotypes = null;
+        }
+        return header;
     }
 
     /**
@@ -43,30 +43,61 @@ import org.broad.igv.util.LongRunningTask;
 import org.broad.igv.util.NamedRunnable;
 import org.broad.igv.util.ResourceLocator;
 
+import javax.swing.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 public class AlignmentDataManager implements IAlignmentDataManager {
 
     private static Logger log = Logger.getLogger(AlignmentDataManager.class);
 
     /**
-     * Caches for loaded alignments and the relevant packing
+     * Upper bound on the estimated memory held by loaded intervals,  divided evenly between the live data managers
      */
-    private PositionCache<AlignmentInterval> loadedIntervalCache = new PositionCache<AlignmentInterval>();
-    private PositionCache<PackedAlignments> packedAlignmentsCache = new PositionCache<PackedAlignments>();
+    private static final long MAX_CACHE_BYTES = Runtime.getRuntime().maxMemory() / 4;
+
+    /**
+     * Data managers sharing the cache budget.  Managers are removed on {@link #dispose()},  or when collected.
+     */
+    private static final Set<AlignmentDataManager> liveManagers =
+            Collections.newSetFromMap(new WeakHashMap<AlignmentDataManager, Boolean>());
+
+    private static final PositionCache.Weigher<AlignmentInterval> INTERVAL_WEIGHER =
+            new PositionCache.Weigher<AlignmentInterval>() {
+                public long weigh(AlignmentInterval interval) {
+                    return interval.getEstimatedSize();
+                }
+            };
+
+    /**
+     * Caches for loaded alignments and the relevant packing.  The packing cache is replaced wholesale on repack.
+     */
+    private PositionCache<AlignmentInterval> loadedIntervalCache =
+            new PositionCache<AlignmentInterval>(INTERVAL_WEIGHER, MAX_CACHE_BYTES);
+    private volatile PositionCache<PackedAlignments> packedAlignmentsCache = new PositionCache<PackedAlignments>();
+
+    /**
+     * In-flight loads,  keyed by frame name.  A request covered by any of these waits on it rather than
+     * loading again.
+     */
+    private final ConcurrentMap<String, PendingLoad> pendingLoads = new ConcurrentHashMap<String, PendingLoad>();
 
     private ResourceLocator locator;
     private HashMap<String, String> chrMappings = new HashMap();
-    private volatile boolean isLoading = false;
     private AlignmentTileLoader reader;
     private CoverageTrack coverageTrack;
     private Map<String, PEStats> peStats;
     private AlignmentTrack.ExperimentType experimentType;
     private SpliceJunctionHelper.LoadOptions loadOptions;
     private Object loadLock = new Object();
+    private Object packLock = new Object();
     private boolean showAlignments = true;
 
     /**
@@ -82,6 +113,29 @@ public class AlignmentDataManager implements IAlignmentDataManager {
         peStats = new HashMap();
         initLoadOptions();
         initChrMap(genome);
+        synchronized (liveManagers) {
+            liveManagers.add(this);
+            rebalanceCaches();
+        }
+    }
+
+    /**
+     * Return this manager's share of the loaded interval budget
+     */
+    static long getCacheBudget() {
+        synchronized (liveManagers) {
+            return MAX_CACHE_BYTES / Math.max(1, liveManagers.size());
+        }
+    }
+
+    /**
+     * Apply the current share of the budget to every live manager.  Caller holds the liveManagers lock.
+     */
+    private static void rebalanceCaches() {
+        long budget = MAX_CACHE_BYTES / Math.max(1, liveManagers.size());
+        for (AlignmentDataManager manager : liveManagers) {
+            manager.loadedIntervalCache.setMaxWeight(budget);
+        }
     }
 
     void initLoadOptions() {
@@ -174,6 +228,19 @@ public class AlignmentDataManager implements IAlignmentDataManager {
         return loadedIntervalCache.getForRange(range);
     }
 
+    /**
+     * Return true if alignments covering the current view of the frame are loaded,  or if the frame is
+     * zoomed out too far to show alignments.
+     */
+    public boolean isLoaded(ReferenceFrame frame) {
+        String chr = frame.getChrName();
+        if (frame.getScale() > getMinVisibleScale() || chr.equals(Globals.CHR_ALL)) {
+            return true;
+        }
+        AlignmentInterval interval = loadedIntervalCache.getForRange(frame.getCurrentRange());
+        return interval != null && interval.contains(chr, (int) frame.getOrigin(), (int) frame.getEnd());
+    }
+
     /**
      * Sort rows group by group
      *
@@ -215,71 +282,97 @@ public class AlignmentDataManager implements IAlignmentDataManager {
     boolean packAlignments(AlignmentTrack.RenderOptions renderOptions) {
 
         List<ReferenceFrame> frameList = FrameManager.getFrames();
-        List<AlignmentInterval> intervalList = new ArrayList<AlignmentInterval>(frameList.size());
 
-        this.packedAlignmentsCache.clear();
-        this.packedAlignmentsCache.setMaxEntries(2 * intervalList.size());
+        synchronized (packLock) {
+            // Readers continue to use the current packing until the new one is complete
+            PositionCache<PackedAlignments> newCache = new PositionCache<PackedAlignments>();
+            newCache.setMaxEntries(2 * frameList.size());
 
-        for (ReferenceFrame frame : frameList) {
-            AlignmentInterval interval = loadedIntervalCache.getForRange(frame.getCurrentRange());
+            boolean packed = true;
+            for (ReferenceFrame frame : frameList) {
+                AlignmentInterval interval = loadedIntervalCache.getForRange(frame.getCurrentRange());
 
-            if (interval == null) {
-                return false;
-            }
+                if (interval == null) {
+                    packed = false;
+                    break;
+                }
 
-            final AlignmentPacker alignmentPacker = new AlignmentPacker();
-            PackedAlignments packedAlignments = alignmentPacker.packAlignments(interval, renderOptions);
+                final AlignmentPacker alignmentPacker = new AlignmentPacker();
+                PackedAlignments packedAlignments = alignmentPacker.packAlignments(interval, renderOptions);
 
-            //We cache by the interval range because this will generally be buffered/expanded, whereas the frame
-            //will be to-the-pixel (meaning a slight scroll triggers a repack
+                //We cache by the interval range because this will generally be buffered/expanded, whereas the frame
+                //will be to-the-pixel (meaning a slight scroll triggers a repack
 
-            this.packedAlignmentsCache.put(interval.getRange(), packedAlignments);
-        }
+                newCache.put(interval.getRange(), packedAlignments);
+            }
 
-        return true;
+            this.packedAlignmentsCache = newCache;
+            return packed;
+        }
     }
 
     public void load(RenderContext context,
                      AlignmentTrack.RenderOptions renderOptions,
                      boolean expandEnds) {
 
-        synchronized (loadLock) {
-            final String chr = context.getChr();
-            final int start = (int) context.getOrigin();
-            final int end = (int) context.getEndLocation();
-            AlignmentInterval loadedInterval = loadedIntervalCache.getForRange(context.getReferenceFrame().getCurrentRange());
-
-            int adjustedStart = start;
-            int adjustedEnd = end;
-            // Expand the interval by the lesser of  +/- a 2 screens, or max visible range
-            int windowSize = Math.min(4 * (end - start), PreferenceManager.getInstance().getAsInt(PreferenceManager.SAM_MAX_VISIBLE_RANGE) * 1000);
-            int center = (end + start) / 2;
-            int expand = Math.max(end - start, windowSize / 2);
-
-            if (loadedInterval != null) {
-                // First see if we have a loaded interval that fully contain the requested interval.
-                // If so, we don't need to load it
-                if (loadedInterval.contains(chr, start, end)) {
-                    return;
-                }
+        final String chr = context.getChr();
+        final int start = (int) context.getOrigin();
+        final int end = (int) context.getEndLocation();
+        AlignmentInterval loadedInterval = loadedIntervalCache.getForRange(context.getReferenceFrame().getCurrentRange());
+
+        int adjustedStart = start;
+        int adjustedEnd = end;
+        // Expand the interval by the lesser of  +/- a 2 screens, or max visible range
+        int windowSize = Math.min(4 * (end - start), PreferenceManager.getInstance().getAsInt(PreferenceManager.SAM_MAX_VISIBLE_RANGE) * 1000);
+        int center = (end + start) / 2;
+        int expand = Math.max(end - start, windowSize / 2);
+
+        if (loadedInterval != null) {
+            // First see if we have a loaded interval that fully contain the requested interval.
+            // If so, we don't need to load it
+            if (loadedInterval.contains(chr, start, end)) {
+                return;
             }
+        }
 
-            if (expandEnds) {
-                adjustedStart = Math.max(0, Math.min(start, center - expand));
-                adjustedEnd = Math.max(end, center + expand);
+        // Next see if a load in progress,  for any frame,  will cover it
+        for (PendingLoad pendingLoad : pendingLoads.values()) {
+            if (pendingLoad.range.contains(chr, start, end)) {
+                awaitLoad(pendingLoad);
+                return;
             }
-            loadAlignments(chr, adjustedStart, adjustedEnd, renderOptions, context);
         }
 
+        if (expandEnds) {
+            adjustedStart = Math.max(0, Math.min(start, center - expand));
+            adjustedEnd = Math.max(end, center + expand);
+        }
+        loadAlignments(chr, adjustedStart, adjustedEnd, renderOptions, context);
+
     }
 
-    public synchronized PackedAlignments getGroups(RenderContext context, AlignmentTrack.RenderOptions renderOptions) {
+    public PackedAlignments getGroups(RenderContext context, AlignmentTrack.RenderOptions renderOptions) {
         load(context, renderOptions, false);
         Range range = context.getReferenceFrame().getCurrentRange();
-        if (!packedAlignmentsCache.containsRange(range)) {
-            packAlignments(renderOptions);
+        PackedAlignments packedAlignments = packedAlignmentsCache.getForRange(range);
+        if (packedAlignments != null) {
+            return packedAlignments;
         }
-        return packedAlignmentsCache.getForRange(context.getReferenceFrame().getCurrentRange());
+        synchronized (packLock) {
+            if (!packedAlignmentsCache.containsRange(range)) {
+                packAlignments(renderOptions);
+            }
+            packedAlignments = packedAlignmentsCache.getForRange(range);
+            if (packedAlignments == null) {
+                // Frames not managed by FrameManager,  e.g. those of batch snapshots,  are packed individually
+                AlignmentInterval interval = loadedIntervalCache.getForRange(range);
+                if (interval != null) {
+                    packedAlignments = (new AlignmentPacker()).packAlignments(interval, renderOptions);
+                    packedAlignmentsCache.put(interval.getRange(), packedAlignments);
+                }
+            }
+        }
+        return packedAlignments;
     }
 
     public void clear() {
@@ -295,23 +388,30 @@ public class AlignmentDataManager implements IAlignmentDataManager {
         }
     }
 
-    public synchronized void loadAlignments(final String chr, final int start, final int end,
-                                            final AlignmentTrack.RenderOptions renderOptions,
-                                            final RenderContext context) {
-
-        if (isLoading || chr.equals(Globals.CHR_ALL)) {
-            return;
+    /**
+     * Release loaded alignments and return this manager's share of the cache budget to the others.
+     */
+    public void dispose() {
+        dumpAlignments();
+        synchronized (liveManagers) {
+            if (liveManagers.remove(this)) {
+                rebalanceCaches();
+            }
         }
-        loadedIntervalCache.setMaxEntries(2 * FrameManager.getFrames().size());
-        isLoading = true;
+    }
 
-        NamedRunnable runnable = new NamedRunnable() {
+    public void loadAlignments(final String chr, final int start, final int end,
+                               final AlignmentTrack.RenderOptions renderOptions,
+                               final RenderContext context) {
 
-            public String getName() {
-                return "loadAlignments";
-            }
+        if (chr.equals(Globals.CHR_ALL)) {
+            return;
+        }
 
-            public void run() {
+        // One load at a time per frame.  If this frame is already loading,  a repaint follows its completion.
+        final String frameName = context.getReferenceFrame().getName();
+        final PendingLoad pendingLoad = new PendingLoad(new Range(chr, start, end), new Callable<AlignmentInterval>() {
+            public AlignmentInterval call() throws Exception {
 
                 log.debug("Loading alignments: " + chr + ":" + start + "-" + end + " for " + AlignmentDataManager.this);
 
@@ -320,13 +420,61 @@ public class AlignmentDataManager implements IAlignmentDataManager {
 
                 packAlignments(renderOptions);
                 getEventBus().post(new DataLoadedEvent(context));
+                return loadedInterval;
+            }
+        });
+        PendingLoad currentLoad = pendingLoads.putIfAbsent(frameName, pendingLoad);
+        if (currentLoad != null) {
+            awaitLoad(currentLoad);
+            return;
+        }
+
+        int nFrames = FrameManager.getFrames().size();
+        loadedIntervalCache.setMaxEntries(2 * nFrames);
+        loadedIntervalCache.setMinEntries(nFrames);
+        loadedIntervalCache.setMaxWeight(getCacheBudget());    // Managers may have been collected
 
-                isLoading = false;
+        NamedRunnable runnable = new NamedRunnable() {
+
+            public String getName() {
+                return "loadAlignments";
+            }
+
+            public void run() {
+                try {
+                    pendingLoad.run();
+                    pendingLoad.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+                } finally {
+                    pendingLoads.remove(frameName, pendingLoad);
+                }
             }
         };
         LongRunningTask.submit(runnable);
     }
 
+    /**
+     * Wait for an in-flight load to complete,  unless called from the event dispatch thread in which case
+     * the completed load triggers a repaint instead.  This matches {@link LongRunningTask#submit(Runnable)},
+     * which loads synchronously off the event thread.
+     */
+    private void awaitLoad(PendingLoad pendingLoad) {
+        if (SwingUtilities.isEventDispatchThread() && !Globals.isBatch()) {
+            return;
+        }
+        try {
+            pendingLoad.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error("Error loading alignments", e.getCause());
+        }
+    }
+
     AlignmentInterval loadInterval(String chr, int start, int end, AlignmentTrack.RenderOptions renderOptions) {
 
         String sequence = chrMappings.containsKey(chr) ? chrMappings.get(chr) : chr;
@@ -349,8 +497,12 @@ public class AlignmentDataManager implements IAlignmentDataManager {
         }
 
         SpliceJunctionHelper spliceJunctionHelper = new SpliceJunctionHelper(this.loadOptions);
-        AlignmentTileLoader.AlignmentTile t = reader.loadTile(sequence, start, end, spliceJunctionHelper,
-                downsampleOptions, peStats, bisulfiteContext, showAlignments, monitor);
+        AlignmentTileLoader.AlignmentTile t;
+        synchronized (loadLock) {
+            // The underlying reader supports a single open iterator
+            t = reader.loadTile(sequence, start, end, spliceJunctionHelper,
+                    downsampleOptions, peStats, bisulfiteContext, showAlignments, monitor);
+        }
 
         List<Alignment> alignments = t.getAlignments();
         List<DownsampledInterval> downsampledIntervals = t.getDownsampledIntervals();
@@ -448,6 +600,19 @@ public class AlignmentDataManager implements IAlignmentDataManager {
         clear();
     }
 
+    /**
+     * A load of the given range,  shared by all requests it covers
+     */
+    private static class PendingLoad extends FutureTask<AlignmentInterval> {
+
+        final Range range;
+
+        PendingLoad(Range range, Callable<AlignmentInterval> callable) {
+            super(callable);
+            this.range = range;
+        }
+    }
+
     public static class DownsampleOptions {
         private boolean downsample;
         private int sampleWindowSize;
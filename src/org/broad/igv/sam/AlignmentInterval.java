@@ -40,6 +40,14 @@ public class AlignmentInterval extends Locus {
 
     private static Logger log = Logger.getLogger(AlignmentInterval.class);
 
+    /**
+     * Approximate per-object overhead of an alignment record,  and per-position cost of dense counts.
+     * Used only for cache sizing.
+     */
+    private static final int ALIGNMENT_OVERHEAD = 400;
+    private static final int COMPACT_ALIGNMENT_OVERHEAD = 24;   // view object and list slot,  columns counted per store
+    private static final int DENSE_COUNT_BYTES_PER_BASE = 20 * 4;
+
     Genome genome;
     private AlignmentCounts counts;
     private List<Alignment> alignments;
@@ -163,6 +171,38 @@ public class AlignmentInterval extends Locus {
         return new Range(getChr(), getStart(), getEnd());
     }
 
+    /**
+     * Rough estimate of the memory held by this interval,  in bytes.  Used to bound the alignment cache.
+     */
+    public long getEstimatedSize() {
+        long size = 0;
+        List<Alignment> alignments = this.alignments;
+        if (alignments != null) {
+            Set<ColumnarAlignmentStore> stores = null;
+            for (Alignment a : alignments) {
+                if (a instanceof ColumnarAlignmentStore.ColumnarAlignment) {
+                    if (stores == null) stores = new HashSet<ColumnarAlignmentStore>();
+                    stores.add(((ColumnarAlignmentStore.ColumnarAlignment) a).getStore());
+                    size += COMPACT_ALIGNMENT_OVERHEAD;
+                } else {
+                    // Read bases and qualities
+                    size += ALIGNMENT_OVERHEAD + 2L * Math.max(0, a.getAlignmentEnd() - a.getAlignmentStart());
+                }
+            }
+            if (stores != null) {
+                for (ColumnarAlignmentStore store : stores) {
+                    size += store.getStorageSize();
+                }
+            }
+        }
+        if (counts instanceof PackedAlignmentCounts) {
+            size += ((PackedAlignmentCounts) counts).getStorageSize();
+        } else if (counts != null) {
+            size += (long) DENSE_COUNT_BYTES_PER_BASE * counts.getNumberOfPoints();
+        }
+        return size;
+    }
+
     public void dumpAlignments() {
         if (this.alignments != null) this.alignments.clear();
     }
@@ -34,8 +34,11 @@ import com.google.common.collect.Table;
 import org.apache.log4j.Logger;
 import org.broad.igv.feature.Range;
 import org.broad.igv.feature.Strand;
+import org.broad.igv.util.collections.IntArrayList;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Packs alignments such that there is no overlap
@@ -50,18 +53,27 @@ public class AlignmentPacker {
      * Minimum gap between the end of one alignment and start of another.
      */
     public static final int MIN_ALIGNMENT_SPACING = 5;
-    private static final Comparator<Alignment> lengthComparator = new Comparator<Alignment>() {
-        public int compare(Alignment row1, Alignment row2) {
-            return (row2.getEnd() - row2.getStart()) -
-                    (row1.getEnd() - row2.getStart());
 
+    /**
+     * Groups are packed concurrently when the interval has at least this many alignments.
+     */
+    static final int PARALLEL_PACK_THRESHOLD = 10000;
+
+    private static final int N_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private static final ExecutorService packExecutor = Executors.newFixedThreadPool(N_THREADS, new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "alignment-pack-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
         }
-    };
+    });
 
     private static final String NULL_GROUP_VALUE = "Because google-guava tables don't support a null key, we use a special value" +
             " for null keys. It doesn't matter much what it is, but we want to avoid collisions. I find it unlikely that " +
             " this sentence will ever be used as a group value";
-    public static final int tenMB = 10000000;
 
     /**
      * Allocates each alignment to row such that there is no overlap.
@@ -106,19 +118,15 @@ public class AlignmentPacker {
             Comparator<String> groupComparator = getGroupComparator(renderOptions.groupByOption);
             Collections.sort(keys, groupComparator);
 
-            for (String key : keys) {
-                if(key.equals(NULL_GROUP_VALUE)) continue;
-                List<Row> alignmentRows = new ArrayList<Row>(10000);
-                List<Alignment> group = groupedAlignments.get(key);
-                pack(group, isPairedAlignments, alignmentRows);
-                packedAlignments.put(key, alignmentRows);
-            }
-
             //Put null valued group at end
-            List<Row> alignmentRows = new ArrayList<Row>(10000);
-            List<Alignment> group = groupedAlignments.get(NULL_GROUP_VALUE);
-            pack(group, isPairedAlignments, alignmentRows);
-            packedAlignments.put("", alignmentRows);
+            keys.remove(NULL_GROUP_VALUE);
+            keys.add(NULL_GROUP_VALUE);
+
+            List<List<Row>> groupRows = packGroups(keys, groupedAlignments, isPairedAlignments);
+            for (int i = 0; i < keys.size(); i++) {
+                String key = keys.get(i);
+                packedAlignments.put(key.equals(NULL_GROUP_VALUE) ? "" : key, groupRows.get(i));
+            }
         }
 
         List<AlignmentInterval> tmp = new ArrayList<AlignmentInterval>();
@@ -127,37 +135,84 @@ public class AlignmentPacker {
     }
 
 
-    private void pack(List<Alignment> alList, boolean pairAlignments, List<Row> alignmentRows) {
+    /**
+     * Pack each group, in parallel if the groups are large enough to be worth it.
+     *
+     * @return rows for each key,  in key order
+     */
+    private List<List<Row>> packGroups(List<String> keys,
+                                       final Map<String, List<Alignment>> groupedAlignments,
+                                       final boolean isPairedAlignments) {
 
-        Map<String, PairedAlignment> pairs = null;
-        if (pairAlignments) {
-            pairs = new HashMap<String, PairedAlignment>(1000);
+        int total = 0;
+        for (List<Alignment> group : groupedAlignments.values()) {
+            total += group.size();
         }
 
-        // Allocate alignemnts to buckets for each range.
-        // We use priority queues to keep the buckets sorted by alignment length.  However this  is probably a needless
-        // complication,  any collection type would do.
+        List<List<Row>> result = new ArrayList<List<Row>>(keys.size());
+        if (N_THREADS == 1 || groupedAlignments.size() < 2 || total < PARALLEL_PACK_THRESHOLD) {
+            for (String key : keys) {
+                List<Row> alignmentRows = new ArrayList<Row>(10000);
+                pack(groupedAlignments.get(key), isPairedAlignments, alignmentRows);
+                result.add(alignmentRows);
+            }
+            return result;
+        }
 
-        int totalCount = 0;
+        List<Future<List<Row>>> futures = new ArrayList<Future<List<Row>>>(keys.size());
+        for (final String key : keys) {
+            futures.add(packExecutor.submit(new Callable<List<Row>>() {
+                public List<Row> call() {
+                    List<Row> alignmentRows = new ArrayList<Row>();
+                    pack(groupedAlignments.get(key), isPairedAlignments, alignmentRows);
+                    return alignmentRows;
+                }
+            }));
+        }
+        try {
+            for (Future<List<Row>> future : futures) {
+                result.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            for (Future<List<Row>> future : futures) {
+                future.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while packing alignments", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new RuntimeException(cause);
+        }
+        return result;
+    }
 
+    /**
+     * Allocate alignments to rows.  The result is the same as filling one row at a time, left to right, with the
+     * next alignment starting at least MIN_ALIGNMENT_SPACING past the end of the previous one:  alignments are
+     * visited once in start order (longest first for equal starts) and each is placed in the lowest numbered row
+     * that is free at its start.  Occupied rows are kept in a min-heap keyed by the position they free up at,  free
+     * rows in a bit set, so packing is O(n log rows).
+     */
+    private void pack(List<Alignment> alList, boolean pairAlignments, List<Row> alignmentRows) {
 
         if (alList == null || alList.size() == 0) return;
 
-        Range curRange = getAlignmentListRange(alList);
-
-        BucketCollection bucketCollection;
-
-        // Use dense buckets for < 10,000,000 bp windows sparse otherwise
-        int bpLength = curRange.getLength();
+        long t0 = System.currentTimeMillis();
 
-        if (bpLength < tenMB) {
-            bucketCollection = new DenseBucketCollection(bpLength, curRange);
-        } else {
-            bucketCollection = new SparseBucketCollection(curRange);
+        Map<String, PairedAlignment> pairs = null;
+        if (pairAlignments) {
+            pairs = new HashMap<String, PairedAlignment>(1000);
         }
 
-
+        Range curRange = getAlignmentListRange(alList);
         int curRangeStart = curRange.getStart();
+        int bpLength = curRange.getLength();
+
+        List<Alignment> toPack = new ArrayList<Alignment>(alList.size());
+        IntArrayList startList = new IntArrayList(alList.size());
+        IntArrayList endList = new IntArrayList(alList.size());
         for (Alignment al : alList) {
 
             if (al.isMapped()) {
@@ -178,81 +233,124 @@ public class AlignmentPacker {
                     }
                 }
 
-                // Negative "bucketNumbers" can arise with soft clips at the left edge of the chromosome. Allocate
-                // these alignments to the first bucket.
-                int bucketNumber = Math.max(0, al.getStart() - curRangeStart);
-                if (bucketNumber < bucketCollection.getBucketCount()) {
-                    PriorityQueue<Alignment> bucket = bucketCollection.get(bucketNumber);
-                    if (bucket == null) {
-                        bucket = new PriorityQueue<Alignment>(5, lengthComparator);
-                        bucketCollection.set(bucketNumber, bucket);
-                    }
-                    bucket.add(alignment);
-                    totalCount++;
+                // Negative offsets can arise with soft clips at the left edge of the chromosome. Pack
+                // these alignments as if they started at the beginning of the range.
+                int offset = Math.max(0, al.getStart() - curRangeStart);
+                if (offset < bpLength) {
+                    toPack.add(alignment);
+                    startList.add(curRangeStart + offset);
+                    endList.add(alignment.getEnd());
                 } else {
                     log.debug("Alignment out of bounds. name: " + alignment.getReadName() + " startPos:" + alignment.getStart());
                 }
             }
         }
-        bucketCollection.finishedAdding();
 
+        // Sort once by start,  then largest end first.  For pairs the end used for ordering is that of the first
+        // mate,  as it was when the alignment was added.
+        int n = toPack.size();
+        int[] starts = startList.toArray();
+        int[] order = sortedIndex(starts, endList.toArray());
 
         // Now allocate alignments to rows.
-        long t0 = System.currentTimeMillis();
-        int allocatedCount = 0;
-        Row currentRow = new Row();
-
-        while (allocatedCount < totalCount) {
-
-
-            curRange = bucketCollection.getRange();
-
-            curRangeStart = curRange.getStart();
-            int nextStart = curRangeStart;
-            List<Integer> emptyBuckets = new ArrayList<Integer>(100);
-
-            while (true) {
-                int bucketNumber = nextStart - curRangeStart;
-                PriorityQueue<Alignment> bucket = bucketCollection.getNextBucket(bucketNumber, emptyBuckets);
-
-                // Pull the next alignment out of the bucket and add to the current row
-                if (bucket != null) {
-                    Alignment alignment = bucket.remove();
-                    currentRow.addAlignment(alignment);
-                    allocatedCount++;
-
-                    nextStart = alignment.getEnd() + MIN_ALIGNMENT_SPACING;
-
-                }
-
-                //Reached the end of this range, move to the next
-                if (bucket == null || nextStart > curRange.getEnd()) {
-                    //Remove empty buckets.  This has no affect on the dense implementation,
-                    //they are removed on the fly, but is needed for the sparse implementation
-                    bucketCollection.removeBuckets(emptyBuckets);
-                    emptyBuckets.clear();
-                    break;
-                }
+        List<Row> rows = new ArrayList<Row>();
+        LongHeap busyRows = new LongHeap();   // (free position << 32) | row number
+        BitSet freeRows = new BitSet();
+        int lowestFreeRow = -1;
+        for (int i = 0; i < n; i++) {
+            int idx = order[i];
+            int start = starts[idx];
+
+            while (busyRows.size() > 0 && (int) (busyRows.peek() >> 32) <= start) {
+                int r = (int) (busyRows.poll() & 0xFFFFFFFFL);
+                freeRows.set(r);
+                if (lowestFreeRow < 0 || r < lowestFreeRow) lowestFreeRow = r;
             }
 
-
-            // We've reached the end of the interval,  start a new row
-            if (currentRow.alignments.size() > 0) {
-                alignmentRows.add(currentRow);
+            int rowNumber;
+            if (lowestFreeRow >= 0) {
+                rowNumber = lowestFreeRow;
+                freeRows.clear(rowNumber);
+                lowestFreeRow = freeRows.nextSetBit(rowNumber + 1);
+            } else {
+                rowNumber = rows.size();
+                rows.add(new Row());
             }
-            currentRow = new Row();
+            rows.get(rowNumber).addAlignment(toPack.get(idx));
+            long nextStart = toPack.get(idx).getEnd() + MIN_ALIGNMENT_SPACING;
+            busyRows.add((nextStart << 32) | rowNumber);
         }
+        alignmentRows.addAll(rows);
+
         if (log.isDebugEnabled()) {
             long dt = System.currentTimeMillis() - t0;
             log.debug("Packed alignments in " + dt);
         }
+    }
+
+    /**
+     * Return the indices 0..n-1 ordered by start ascending, then end descending, then index.  Input is normally
+     * already sorted by start,  in which case only runs of equal start are sorted.  Otherwise falls back to a merge
+     * sort on the primitive arrays.
+     */
+    static int[] sortedIndex(int[] starts, int[] ends) {
+        int n = starts.length;
+        int[] order = new int[n];
+        boolean sortedByStart = true;
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+            if (i > 0 && starts[i] < starts[i - 1]) sortedByStart = false;
+        }
+        if (sortedByStart) {
+            int runStart = 0;
+            for (int i = 1; i <= n; i++) {
+                if (i == n || starts[i] != starts[runStart]) {
+                    if (i - runStart > 1) insertionSort(order, runStart, i, starts, ends);
+                    runStart = i;
+                }
+            }
+        } else if (n > 1) {
+            mergeSort(order, new int[n], 0, n, starts, ends);
+        }
+        return order;
+    }
 
-        // Add the last row
-        if (currentRow != null && currentRow.alignments.size() > 0) {
-            alignmentRows.add(currentRow);
+    private static void insertionSort(int[] a, int from, int to, int[] starts, int[] ends) {
+        for (int i = from + 1; i < to; i++) {
+            int v = a[i];
+            int j = i - 1;
+            while (j >= from && compare(a[j], v, starts, ends) > 0) {
+                a[j + 1] = a[j];
+                j--;
+            }
+            a[j + 1] = v;
         }
+    }
 
+    private static void mergeSort(int[] a, int[] tmp, int from, int to, int[] starts, int[] ends) {
+        if (to - from < 8) {
+            insertionSort(a, from, to, starts, ends);
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(a, tmp, from, mid, starts, ends);
+        mergeSort(a, tmp, mid, to, starts, ends);
+        if (compare(a[mid - 1], a[mid], starts, ends) <= 0) {
+            return;
+        }
+        System.arraycopy(a, from, tmp, from, to - from);
+        int i = from, j = mid, k = from;
+        while (i < mid && j < to) {
+            a[k++] = compare(tmp[i], tmp[j], starts, ends) <= 0 ? tmp[i++] : tmp[j++];
+        }
+        while (i < mid) a[k++] = tmp[i++];
+        while (j < to) a[k++] = tmp[j++];
+    }
 
+    private static int compare(int i1, int i2, int[] starts, int[] ends) {
+        if (starts[i1] != starts[i2]) return starts[i1] < starts[i2] ? -1 : 1;
+        if (ends[i1] != ends[i2]) return ends[i1] > ends[i2] ? -1 : 1;
+        return i1 - i2;
     }
 
 
@@ -335,190 +433,55 @@ public class AlignmentPacker {
         return null;
     }
 
-    static interface BucketCollection {
-
-        Range getRange();
-
-        void set(int idx, PriorityQueue<Alignment> bucket);
-
-        PriorityQueue<Alignment> get(int idx);
-
-        PriorityQueue<Alignment> getNextBucket(int bucketNumber, Collection<Integer> emptyBuckets);
-
-        void removeBuckets(Collection<Integer> emptyBuckets);
-
-        void finishedAdding();
-
-        int getBucketCount();
-    }
-
     /**
-     * Dense array implementation of BucketCollection.  Assumption is all or nearly all the genome region is covered
-     * with reads.
+     * Minimal 4-ary min-heap of primitive longs,  avoids boxing in the packing loop.  The wider fan out halves the
+     * depth of a binary heap, poll() is the hot spot when packing deep coverage.
      */
-    static class DenseBucketCollection implements BucketCollection {
+    static class LongHeap {
 
-        Range range;
-        int lastBucketNumber = -1;
-        final PriorityQueue[] bucketArray;
+        private long[] heap = new long[64];
+        private int size = 0;
 
-        DenseBucketCollection(int bucketCount, Range range) {
-            this.bucketArray = new PriorityQueue[bucketCount];
-            this.range = range;
+        int size() {
+            return size;
         }
 
-        public void set(int idx, PriorityQueue<Alignment> bucket) {
-            bucketArray[idx] = bucket;
+        long peek() {
+            return heap[0];
         }
 
-        public PriorityQueue<Alignment> get(int idx) {
-            return bucketArray[idx];
-        }
-
-        public int getBucketCount() {
-            return this.bucketArray.length;
-        }
-
-        public Range getRange() {
-            return range;
-        }
-
-        /**
-         * Return the next occupied bucket after bucketNumber
-         *
-         * @param bucketNumber
-         * @param emptyBuckets ignored
-         * @return
-         */
-        public PriorityQueue<Alignment> getNextBucket(int bucketNumber, Collection<Integer> emptyBuckets) {
-
-            if (bucketNumber == lastBucketNumber) {
-                // TODO -- detect inf loop here
+        void add(long v) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
             }
-
-            PriorityQueue<Alignment> bucket = null;
-            while (bucketNumber < bucketArray.length) {
-
-                if (bucketNumber < 0) {
-                    System.out.println();
-                }
-
-                bucket = bucketArray[bucketNumber];
-                if (bucket != null) {
-                    if (bucket.isEmpty()) {
-                        bucketArray[bucketNumber] = null;
-                        bucket = null;
-                    } else {
-                        return bucket;
-                    }
-                }
-                bucketNumber++;
-            }
-            return null;
-        }
-
-        public void removeBuckets(Collection<Integer> emptyBuckets) {
-            // Nothing to do, empty buckets are removed "on the fly"
-        }
-
-        public void finishedAdding() {
-            // nothing to do
-        }
-    }
-
-
-    /**
-     * "Sparse" implementation of an alignment BucketCollection.  Assumption is there are small clusters of alignments
-     * along the genome, with mostly "white space".
-     */
-    static class SparseBucketCollection implements BucketCollection {
-
-        Range range;
-        boolean finished = false;
-        List<Integer> keys;
-        final HashMap<Integer, PriorityQueue<Alignment>> buckets;
-
-        SparseBucketCollection(Range range) {
-            this.range = range;
-            this.buckets = new HashMap(1000);
-        }
-
-        public void set(int idx, PriorityQueue<Alignment> bucket) {
-            if (finished) {
-                log.error("Error: bucket added after finishAdding() called");
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 2;
+                if (heap[parent] <= v) break;
+                heap[i] = heap[parent];
+                i = parent;
             }
-            buckets.put(idx, bucket);
-        }
-
-        public PriorityQueue<Alignment> get(int idx) {
-            return buckets.get(idx);
-        }
-
-        public Range getRange() {
-            return range;
+            heap[i] = v;
         }
 
-        /**
-         * Return the next occupied bucket at or after after bucketNumber.
-         *
-         * @param bucketNumber -- the hash bucket index for the alignments, essential the position relative to the start
-         *                     of this packing interval
-         * @return the next occupied bucket at or after bucketNumber, or null if there are none.
-         */
-        public PriorityQueue<Alignment> getNextBucket(int bucketNumber, Collection<Integer> emptyBuckets) {
-
-            PriorityQueue<Alignment> bucket = null;
-            int min = 0;
-            int max = keys.size() - 1;
-
-            // Get close to the right index, rather than scan from the beginning
-            while ((max - min) > 5) {
-                int mid = (max + min) / 2;
-                Integer key = keys.get(mid);
-                if (key > bucketNumber) {
-                    max = mid;
-                } else {
-                    min = mid;
-                }
-            }
-
-            // Now march from min to max until we cross bucketNumber
-            for (int i = min; i < keys.size(); i++) {
-                Integer key = keys.get(i);
-                if (key >= bucketNumber) {
-                    bucket = buckets.get(key);
-                    if (bucket.isEmpty()) {
-                        emptyBuckets.add(key);
-                        bucket = null;
-                    } else {
-                        return bucket;
-                    }
+        long poll() {
+            long result = heap[0];
+            long v = heap[--size];
+            int i = 0;
+            while (true) {
+                int child = 4 * i + 1;
+                if (child >= size) break;
+                int last = Math.min(child + 4, size);
+                int min = child;
+                for (int c = child + 1; c < last; c++) {
+                    if (heap[c] < heap[min]) min = c;
                 }
+                if (v <= heap[min]) break;
+                heap[i] = heap[min];
+                i = min;
             }
-            return null;     // No bucket found
-        }
-
-        public void removeBuckets(Collection<Integer> emptyBuckets) {
-
-            if (emptyBuckets.isEmpty()) {
-                return;
-            }
-
-            for (Integer i : emptyBuckets) {
-                buckets.remove(i);
-            }
-            keys = new ArrayList<Integer>(buckets.keySet());
-            Collections.sort(keys);
-        }
-
-        public void finishedAdding() {
-            finished = true;
-            keys = new ArrayList<Integer>(buckets.keySet());
-            Collections.sort(keys);
-        }
-
-        public int getBucketCount() {
-            return Integer.MAX_VALUE;
+            heap[i] = v;
+            return result;
         }
     }
 
@@ -502,9 +502,11 @@ public class AlignmentRenderer implements FeatureRenderer {
             path.quadTo(midX, topY, endX, botY);
             path.quadTo(midX, topY - 2, startX, botY);
             path.closePath();
-            arcsByStart.add(path);
-            arcsByEnd.add(path);
-            curveMap.put(path, pair);
+            synchronized (curveMap) {
+                arcsByStart.add(path);
+                arcsByEnd.add(path);
+                curveMap.put(path, pair);
+            }
             gLine.setColor(alignmentColor2);
 
             gLine.draw(path);
@@ -1314,19 +1316,25 @@ public class AlignmentRenderer implements FeatureRenderer {
     public SortedSet<Shape> curveOverlap(double x) {
         QuadCurve2D tcurve = new QuadCurve2D.Double();
         tcurve.setCurve(x, 0, x, 0, x, 0);
-        SortedSet overlap = new TreeSet(arcsByStart.headSet(tcurve, true));
-        overlap.retainAll(arcsByEnd.tailSet(tcurve, true));
-        return overlap;
+        synchronized (curveMap) {
+            SortedSet overlap = new TreeSet(arcsByStart.headSet(tcurve, true));
+            overlap.retainAll(arcsByEnd.tailSet(tcurve, true));
+            return overlap;
+        }
     }
 
 
     public Alignment getAlignmentForCurve(Shape curve) {
-        return curveMap.get(curve);
+        synchronized (curveMap) {
+            return curveMap.get(curve);
+        }
     }
 
     public void clearCurveMaps() {
-        curveMap.clear();
-        arcsByStart.clear();
-        arcsByEnd.clear();
+        synchronized (curveMap) {
+            curveMap.clear();
+            arcsByStart.clear();
+            arcsByEnd.clear();
+        }
     }
 }
@@ -191,7 +191,11 @@ public class AlignmentTileLoader {
                     continue;
                 }
 
-                t.addRecord(record, reducedMemory);
+                Alignment stored = t.addRecord(record, reducedMemory);
+                if (stored != record && mappedMates.get(readName) == record) {
+                    // Mate sequence might still arrive,  make sure it reaches the retained alignment
+                    mappedMates.put(readName, stored);
+                }
 
                 alignmentCount++;
                 int interval = Globals.isTesting() ? 100000 : 1000;
@@ -342,6 +346,11 @@ public class AlignmentTileLoader {
         private int offset = 0;
         private int indelLimit;
 
+        /**
+         * Columnar storage for retained alignments,  null unless compact alignment storage is enabled
+         */
+        private ColumnarAlignmentStore alignmentStore;
+
         AlignmentTile(int start,
                       int end,
                       SpliceJunctionHelper spliceJunctionHelper,
@@ -365,6 +374,8 @@ public class AlignmentTileLoader {
                 this.counts = new ReducedMemoryAlignment.ReducedMemoryAlignmentCounts(start, end, 25);
             } else if ((end - start) > 10000000) {
                 this.counts = new SparseAlignmentCounts(start, end, bisulfiteContext);
+            } else if (PreferenceManager.getInstance().getAsBoolean(PreferenceManager.SAM_COMPACT_COUNTS)) {
+                this.counts = new PackedAlignmentCounts(start, end, bisulfiteContext);
             } else {
                 this.counts = new DenseAlignmentCounts(start, end, bisulfiteContext);
             }
@@ -386,6 +397,12 @@ public class AlignmentTileLoader {
             } else {
                 alignments = new ArrayList<Alignment>(16000);
             }
+
+            PreferenceManager prefMgr = PreferenceManager.getInstance();
+            if (showAlignments && !reducedMemory && prefMgr.getAsBoolean(PreferenceManager.SAM_COMPACT_ALIGNMENTS)) {
+                alignmentStore = new ColumnarAlignmentStore(
+                        prefMgr.getAsBoolean(PreferenceManager.SAM_COMPACT_ALIGNMENTS_OFF_HEAP));
+            }
         }
 
         public int getStart() {
@@ -402,8 +419,10 @@ public class AlignmentTileLoader {
          * Add an alignment record to this tile.  This record is not necessarily retained after down-sampling.
          * <p/>
          * // * @param alignment
+         *
+         * @return the alignment as retained by the tile,  which might be a reduced or compact copy of the record
          */
-        public void addRecord(Alignment alignment, boolean reducedMemory) {
+        public Alignment addRecord(Alignment alignment, boolean reducedMemory) {
 
             if (reducedMemory) {
                 alignment = new ReducedMemoryAlignment(alignment, this.indelLimit);
@@ -426,11 +445,15 @@ public class AlignmentTileLoader {
                     attemptAddRecordDownsampled(alignment);
 
                 } else {
+                    if (alignmentStore != null) {
+                        alignment = alignmentStore.add(alignment);
+                    }
                     alignments.add(alignment);
                 }
             }
 
             alignment.finish();
+            return alignment;
         }
 
         /**
@@ -551,6 +574,13 @@ public class AlignmentTileLoader {
             };
             Collections.sort(this.alignments, alignmentSorter);
 
+            // Down-sampled alignments are only final now,  move the survivors to the store in display order
+            if (alignmentStore != null) {
+                for (ListIterator<Alignment> iter = this.alignments.listIterator(); iter.hasNext(); ) {
+                    iter.set(alignmentStore.add(iter.next()));
+                }
+            }
+
             //Only keep the intervals for which count > 0
             List<DownsampledInterval> tmp = new ArrayList<DownsampledInterval>(this.downsampledIntervals.size());
             for (DownsampledInterval interval : this.downsampledIntervals) {
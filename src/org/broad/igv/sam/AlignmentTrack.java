@@ -325,6 +325,11 @@ public class AlignmentTrack extends AbstractTrack implements AlignmentTrackEvent
         dataManager.load(context, renderOptions, true);
     }
 
+    @Override
+    public boolean isReadyToPaint(ReferenceFrame frame) {
+        return dataManager.isLoaded(frame);
+    }
+
     public void render(RenderContext context, Rectangle rect) {
 
         dataPanel = context.getPanel();
@@ -412,11 +417,11 @@ public class AlignmentTrack extends AbstractTrack implements AlignmentTrackEvent
             int visHeight = visibleRect.height;
             int depth = dataManager.getNLevels();
             if (depth == 0) {
-                squishedHeight = Math.min(maxSquishedHeight, Math.max(1, expandedHeight));
+                h = Math.min(maxSquishedHeight, Math.max(1, expandedHeight));
             } else {
-                squishedHeight = Math.min(maxSquishedHeight, Math.max(1, Math.min(expandedHeight, visHeight / depth)));
+                h = Math.min(maxSquishedHeight, Math.max(1, Math.min(expandedHeight, visHeight / depth)));
             }
-            h = squishedHeight;
+            squishedHeight = (int) h;
         }
 
         // Loop through groups
@@ -1027,7 +1032,7 @@ public class AlignmentTrack extends AbstractTrack implements AlignmentTrackEvent
     public void dispose() {
         super.dispose();
         clearCaches();
-        dataManager.dumpAlignments();
+        dataManager.dispose();
         dataManager = null;
         removed = true;
         setVisible(false);
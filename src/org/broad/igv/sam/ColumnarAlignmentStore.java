@@ -0,0 +1,1211 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.sam;
+
+import htsjdk.samtools.BinaryTagCodec;
+import htsjdk.samtools.CigarElement;
+import htsjdk.samtools.CigarOperator;
+import htsjdk.samtools.SAMBinaryTagAndValue;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMTagUtil;
+import htsjdk.samtools.ValidationStringency;
+import htsjdk.samtools.util.BinaryCodec;
+import org.broad.igv.PreferenceManager;
+import org.broad.igv.feature.Strand;
+import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.track.WindowFunction;
+
+import java.awt.*;
+import java.io.ByteArrayOutputStream;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Column oriented storage for the alignments of a single {@link AlignmentTileLoader.AlignmentTile}.
+ * <p/>
+ * Instead of retaining a SAMRecord, block arrays, and strings for every read, the fields of each record are
+ * appended to primitive columns (positions, flags, packed bases, qualities, cigar operators) and repeated
+ * strings and low cardinality tags are interned in small dictionaries.  Tags that are usually unique to a read
+ * (MD, SA, array values, ...) are stored in BAM binary form in a per-row byte column instead.  The alignments
+ * handed back to the tile are {@link ColumnarAlignment} views which hold only a row index and a soft reference
+ * to their decoded alignment blocks.  The columns can optionally be allocated outside the java heap.
+ * <p/>
+ * Bases are stored as 4 bit BAM codes, 2 per byte, so that ambiguity codes are preserved.  The few reads with
+ * characters outside that alphabet are kept verbatim in a side table.
+ */
+public class ColumnarAlignmentStore {
+
+    private static final byte[] BASE_CODES = "=ACMGRSVTWYHKDBN".getBytes();
+    private static final byte[] BASE_INDEX = new byte[256];
+    private static final String CIGAR_OPERATORS = "MIDNSHP=X";
+    private static final Strand[] STRANDS = Strand.values();
+
+    // String tags which are usually unique to a read,  stored per row rather than in the tag dictionary
+    private static final Set<String> ROW_TAGS = new HashSet<String>(Arrays.asList(
+            "MD", "SA", "XA", "OA", "OC", "MC", "OQ", "BQ", "E2", "U2", "R2", "Q2", "CS", "CQ"));
+
+    // Entry in the tags column for a tag stored in the row tag column
+    private static final int ROW_TAG = -1;
+
+    static {
+        Arrays.fill(BASE_INDEX, (byte) -1);
+        for (int i = 0; i < BASE_CODES.length; i++) {
+            BASE_INDEX[BASE_CODES[i]] = (byte) i;
+        }
+    }
+
+    private static final int READ_PAIRED_FLAG = 0x1;
+    private static final int PROPER_PAIR_FLAG = 0x2;
+    private static final int READ_UNMAPPED_FLAG = 0x4;
+    private static final int MATE_UNMAPPED_FLAG = 0x8;
+    private static final int READ_STRAND_FLAG = 0x10;
+    private static final int MATE_STRAND_FLAG = 0x20;
+    private static final int FIRST_OF_PAIR_FLAG = 0x40;
+    private static final int SECOND_OF_PAIR_FLAG = 0x80;
+    private static final int NOT_PRIMARY_ALIGNMENT_FLAG = 0x100;
+    private static final int READ_FAILS_VENDOR_QUALITY_CHECK_FLAG = 0x200;
+    private static final int DUPLICATE_READ_FLAG = 0x400;
+    private static final int SUPPLEMENTARY_ALIGNMENT_FLAG = 0x800;
+
+    // Layout of the "info" column:  sam flags | mapq | first-of-pair strand | second-of-pair strand | orientation
+    private static final int FLAG_MASK = 0xFFF;
+    private static final int MAPQ_SHIFT = 12;
+    private static final int FIRST_STRAND_SHIFT = 20;
+    private static final int SECOND_STRAND_SHIFT = 22;
+    private static final int ORIENTATION_SHIFT = 24;
+
+    // Upper bound on bases per store,  keeps base and quality offsets within an int
+    private static final int MAX_BASES = 1 << 30;
+
+    private static final int INITIAL_ROWS = 1024;
+
+    private final boolean showSoftClipped;
+    private int size = 0;
+    private int baseCount = 0;
+
+    // One entry per alignment
+    private final IntColumn starts;
+    private final IntColumn ends;
+    private final IntColumn alignmentStarts;
+    private final IntColumn alignmentEnds;
+    private final IntColumn info;
+    private final IntColumn insertSizes;
+    private final IntColumn mateStarts;
+    private final IntColumn chrs;
+    private final IntColumn mateChrs;
+    private final IntColumn readGroups;
+
+    // One entry per alignment, plus a trailing entry.  Row i spans [offsets[i], offsets[i+1])
+    private final IntColumn nameOffsets;
+    private final IntColumn baseOffsets;
+    private final IntColumn cigarOffsets;
+    private final IntColumn tagOffsets;
+    private final IntColumn rowTagOffsets;
+
+    private final ByteColumn names;
+    private final ByteColumn bases;        // 4 bit codes, 2 per byte
+    private final ByteColumn qualities;
+    private final IntColumn cigars;        // length << 4 | operator
+    private final IntColumn tags;          // tag dictionary ids, or ROW_TAG
+    private final ByteColumn rowTags;      // BAM encoded tags
+
+    private final Dictionary<String> chrNames = new Dictionary<String>();
+    private final Dictionary<String[]> readGroupInfo = new Dictionary<String[]>();   // read group, sample, library
+    private final Dictionary<String> orientations = new Dictionary<String>();
+    private final Dictionary<SAMRecord.SAMTagAndValue> tagValues = new Dictionary<SAMRecord.SAMTagAndValue>();
+    private long tagValuesSize = 0;
+
+    // Sparse per-alignment data
+    private Map<Integer, Color> tagColors;
+    private Map<Integer, byte[]> rawBases;
+    private Set<Integer> missingQualities;
+    private volatile Map<Integer, String> mateSequences;
+
+    // Reference names of the source records,  where they differ from the canonical chromosome name
+    private Map<String, String> referenceNames;
+
+    public ColumnarAlignmentStore(boolean offHeap) {
+
+        this.showSoftClipped = PreferenceManager.getInstance().getAsBoolean(PreferenceManager.SAM_SHOW_SOFT_CLIPPED);
+
+        starts = new IntColumn(INITIAL_ROWS, offHeap);
+        ends = new IntColumn(INITIAL_ROWS, offHeap);
+        alignmentStarts = new IntColumn(INITIAL_ROWS, offHeap);
+        alignmentEnds = new IntColumn(INITIAL_ROWS, offHeap);
+        info = new IntColumn(INITIAL_ROWS, offHeap);
+        insertSizes = new IntColumn(INITIAL_ROWS, offHeap);
+        mateStarts = new IntColumn(INITIAL_ROWS, offHeap);
+        chrs = new IntColumn(INITIAL_ROWS, offHeap);
+        mateChrs = new IntColumn(INITIAL_ROWS, offHeap);
+        readGroups = new IntColumn(INITIAL_ROWS, offHeap);
+
+        nameOffsets = new IntColumn(INITIAL_ROWS + 1, offHeap);
+        baseOffsets = new IntColumn(INITIAL_ROWS + 1, offHeap);
+        cigarOffsets = new IntColumn(INITIAL_ROWS + 1, offHeap);
+        tagOffsets = new IntColumn(INITIAL_ROWS + 1, offHeap);
+        rowTagOffsets = new IntColumn(INITIAL_ROWS + 1, offHeap);
+        nameOffsets.add(0);
+        baseOffsets.add(0);
+        cigarOffsets.add(0);
+        tagOffsets.add(0);
+        rowTagOffsets.add(0);
+
+        names = new ByteColumn(INITIAL_ROWS * 32, offHeap);
+        bases = new ByteColumn(INITIAL_ROWS * 64, offHeap);
+        qualities = new ByteColumn(INITIAL_ROWS * 128, offHeap);
+        cigars = new IntColumn(INITIAL_ROWS * 2, offHeap);
+        tags = new IntColumn(INITIAL_ROWS * 4, offHeap);
+        rowTags = new ByteColumn(INITIAL_ROWS * 32, offHeap);
+    }
+
+    /**
+     * Copy an alignment into the store.  Only SAM/BAM records are stored, and not those carrying flow signals.
+     *
+     * @param alignment
+     * @return a view of the stored alignment, or {@code alignment} itself if it was not stored
+     */
+    public Alignment add(Alignment alignment) {
+
+        if (!(alignment instanceof PicardAlignment)) {
+            return alignment;
+        }
+        PicardAlignment al = (PicardAlignment) alignment;
+        AlignmentBlock[] blocks = al.getAlignmentBlocks();
+        if (blocks != null && blocks.length > 0 && blocks[0].hasFlowSignals()) {
+            return alignment;
+        }
+        SAMRecord record = al.getRecord();
+        byte[] readBases = record.getReadBases();
+        if ((long) baseCount + readBases.length > MAX_BASES) {
+            return alignment;
+        }
+        int orientation = orientations.intern(al.getPairOrientation(), al.getPairOrientation());
+        if (orientation > 0xFF) {
+            return alignment;
+        }
+
+        final int row = size++;
+
+        starts.add(al.getStart());
+        ends.add(al.getEnd());
+        alignmentStarts.add(al.getAlignmentStart());
+        alignmentEnds.add(al.getAlignmentEnd());
+        info.add((record.getFlags() & FLAG_MASK) |
+                (Math.min(0xFF, al.getMappingQuality()) << MAPQ_SHIFT) |
+                (strandCode(al.getFirstOfPairStrand()) << FIRST_STRAND_SHIFT) |
+                (strandCode(al.getSecondOfPairStrand()) << SECOND_STRAND_SHIFT) |
+                (orientation << ORIENTATION_SHIFT));
+        insertSizes.add(al.getInferredInsertSize());
+        chrs.add(chrNames.intern(al.getChr(), al.getChr()));
+        addReferenceName(al.getChr(), record.getReferenceName());
+
+        ReadMate mate = al.getMate();
+        mateStarts.add(mate == null ? -1 : mate.getStart());
+        mateChrs.add(mate == null ? -1 : chrNames.intern(mate.getChr(), mate.getChr()));
+        if (mate != null) {
+            addReferenceName(mate.getChr(), record.getMateReferenceName());
+        }
+
+        String readGroup = al.getReadGroup();
+        readGroups.add(readGroup == null ? -1 :
+                readGroupInfo.intern(readGroup, new String[]{readGroup, al.getSample(), al.getLibrary()}));
+
+        String readName = record.getReadName();
+        for (int i = 0; i < readName.length(); i++) {
+            names.add((byte) readName.charAt(i));
+        }
+        nameOffsets.add(names.size());
+
+        byte[] readQualities = record.getBaseQualities();
+        boolean encoded = true;
+        for (int i = 0; i < readBases.length; i++) {
+            byte code = BASE_INDEX[readBases[i] & 0xFF];
+            if (code < 0) {
+                encoded = false;
+                code = (byte) (BASE_CODES.length - 1);
+            }
+            addBaseCode(code);
+            qualities.add(i < readQualities.length ? readQualities[i] : (byte) 126);
+        }
+        baseOffsets.add(baseCount);
+        if (!encoded) {
+            if (rawBases == null) rawBases = new HashMap<Integer, byte[]>();
+            rawBases.put(row, readBases);
+        }
+        if (readQualities.length == 0 && readBases.length > 0) {
+            if (missingQualities == null) missingQualities = new HashSet<Integer>();
+            missingQualities.add(row);
+        }
+
+        for (CigarElement element : record.getCigar().getCigarElements()) {
+            int op = CIGAR_OPERATORS.indexOf(CigarOperator.enumToCharacter(element.getOperator()));
+            cigars.add((element.getLength() << 4) | op);
+        }
+        cigarOffsets.add(cigars.size());
+
+        Color color = al.getColor();
+        ByteArrayOutputStream rowTagBytes = null;
+        BinaryTagCodec rowTagCodec = null;
+        for (SAMRecord.SAMTagAndValue tv : record.getAttributes()) {
+            if (isRowTag(tv)) {
+                if (rowTagCodec == null) {
+                    rowTagBytes = new ByteArrayOutputStream();
+                    rowTagCodec = new BinaryTagCodec(new BinaryCodec(rowTagBytes));
+                }
+                rowTagCodec.writeTag(SAMTagUtil.getSingleton().makeBinaryTag(tv.tag), tv.value, false);
+                tags.add(ROW_TAG);
+                continue;
+            }
+            int nValues = tagValues.size();
+            int id = tagValues.intern(new TagKey(tv.tag, tv.value), tv);
+            if (tagValues.size() > nValues) {
+                tagValuesSize += 64 + getValueSize(tv.value);
+            }
+            tags.add(id);
+            if (color != null && tv.tag.equals("YC")) {
+                if (tagColors == null) tagColors = new HashMap<Integer, Color>();
+                tagColors.put(id, color);
+            }
+        }
+        tagOffsets.add(tags.size());
+        if (rowTagBytes != null) {
+            for (byte b : rowTagBytes.toByteArray()) {
+                rowTags.add(b);
+            }
+        }
+        rowTagOffsets.add(rowTags.size());
+
+        if (al.mateSequence != null) {
+            setMateSequence(row, al.mateSequence);
+        }
+
+        return new ColumnarAlignment(row);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return approximate number of bytes held by this store, on or off the java heap
+     */
+    public long getStorageSize() {
+        long storageSize = 0;
+        for (IntColumn column : new IntColumn[]{starts, ends, alignmentStarts, alignmentEnds, info, insertSizes,
+                mateStarts, chrs, mateChrs, readGroups, nameOffsets, baseOffsets, cigarOffsets, tagOffsets,
+                rowTagOffsets, cigars, tags}) {
+            storageSize += column.getStorageSize();
+        }
+        storageSize += names.getStorageSize() + bases.getStorageSize() + qualities.getStorageSize() +
+                rowTags.getStorageSize();
+        // Dictionary entries and sparse maps,  roughly
+        storageSize += 64L * (chrNames.size() + readGroupInfo.size() + orientations.size()) + tagValuesSize;
+        if (rawBases != null) {
+            for (byte[] raw : rawBases.values()) storageSize += 64 + raw.length;
+        }
+        if (mateSequences != null) {
+            for (String sequence : mateSequences.values()) storageSize += 64 + 2L * sequence.length();
+        }
+        return storageSize;
+    }
+
+    /**
+     * @return true if the tag is stored in the row tag column,  rather than interned in the tag dictionary
+     */
+    private static boolean isRowTag(SAMRecord.SAMTagAndValue tv) {
+        Object value = tv.value;
+        return value instanceof byte[] || value instanceof short[] || value instanceof int[] ||
+                value instanceof float[] || (value instanceof String && ROW_TAGS.contains(tv.tag));
+    }
+
+    /**
+     * @return approximate number of bytes held by a tag value
+     */
+    private static long getValueSize(Object value) {
+        if (value instanceof String) return 2L * ((String) value).length();
+        if (value instanceof byte[]) return ((byte[]) value).length;
+        if (value instanceof short[]) return 2L * ((short[]) value).length;
+        if (value instanceof int[]) return 4L * ((int[]) value).length;
+        if (value instanceof float[]) return 4L * ((float[]) value).length;
+        return 16;
+    }
+
+    /**
+     * Decode the tags of {@code row} stored in the row tag column,  in record order
+     */
+    private List<SAMRecord.SAMTagAndValue> getRowTags(int row) {
+        int from = rowTagOffsets.get(row);
+        int to = rowTagOffsets.get(row + 1);
+        if (from == to) {
+            return Collections.emptyList();
+        }
+        byte[] binary = new byte[to - from];
+        for (int i = 0; i < binary.length; i++) {
+            binary[i] = rowTags.get(from + i);
+        }
+        List<SAMRecord.SAMTagAndValue> rowTagValues = new ArrayList<SAMRecord.SAMTagAndValue>();
+        SAMTagUtil tagUtil = SAMTagUtil.getSingleton();
+        for (SAMBinaryTagAndValue tv = BinaryTagCodec.readTags(binary, 0, binary.length, ValidationStringency.SILENT);
+             tv != null; tv = tv.getNext()) {
+            rowTagValues.add(new SAMRecord.SAMTagAndValue(tagUtil.makeStringTag(tv.tag), tv.value));
+        }
+        return rowTagValues;
+    }
+
+    private static int strandCode(Strand strand) {
+        return strand == null ? Strand.NONE.ordinal() : strand.ordinal();
+    }
+
+    private void addBaseCode(byte code) {
+        if ((baseCount & 1) == 0) {
+            bases.add((byte) (code << 4));
+        } else {
+            int last = bases.size() - 1;
+            bases.set(last, (byte) (bases.get(last) | code));
+        }
+        baseCount++;
+    }
+
+    private byte decodeBase(byte[] raw, int readIndex, int baseIndex) {
+        if (raw != null) {
+            return raw[readIndex];
+        }
+        byte b = bases.get(baseIndex >> 1);
+        return BASE_CODES[(baseIndex & 1) == 0 ? (b >> 4) & 0xF : b & 0xF];
+    }
+
+    private byte[] getRawBases(int row) {
+        return rawBases == null ? null : rawBases.get(row);
+    }
+
+    private int getReadLength(int row) {
+        return baseOffsets.get(row + 1) - baseOffsets.get(row);
+    }
+
+    private void addReferenceName(String chr, String referenceName) {
+        if (referenceName != null && !referenceName.equals(chr)) {
+            if (referenceNames == null) referenceNames = new HashMap<String, String>();
+            if (!referenceNames.containsKey(chr)) referenceNames.put(chr, referenceName);
+        }
+    }
+
+    private String getReferenceName(String chr) {
+        String referenceName = referenceNames == null ? null : referenceNames.get(chr);
+        return referenceName == null ? chr : referenceName;
+    }
+
+    private void setMateSequence(int row, String sequence) {
+        if (mateSequences == null) {
+            synchronized (this) {
+                if (mateSequences == null) mateSequences = new ConcurrentHashMap<Integer, String>();
+            }
+        }
+        mateSequences.put(row, sequence);
+    }
+
+    private String getMateSequence(int row) {
+        return mateSequences == null ? null : mateSequences.get(row);
+    }
+
+    private boolean operatorIsMatch(char operator) {
+        return operator == SAMAlignment.MATCH || operator == SAMAlignment.PERFECT_MATCH ||
+                operator == SAMAlignment.MISMATCH || (showSoftClipped && operator == SAMAlignment.SOFT_CLIP);
+    }
+
+
+    /**
+     * View of a single row of the store.  All state other than the row index lives in the store columns.
+     */
+    public final class ColumnarAlignment implements Alignment {
+
+        private final int row;
+        private volatile SoftReference<Layout> layoutRef;
+
+        ColumnarAlignment(int row) {
+            this.row = row;
+        }
+
+        ColumnarAlignmentStore getStore() {
+            return ColumnarAlignmentStore.this;
+        }
+
+        private int getFlags() {
+            return info.get(row) & FLAG_MASK;
+        }
+
+        public String getReadName() {
+            int from = nameOffsets.get(row);
+            char[] chars = new char[nameOffsets.get(row + 1) - from];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = (char) (names.get(from + i) & 0xFF);
+            }
+            return new String(chars);
+        }
+
+        public String getReadSequence() {
+            int readLength = getReadLength(row);
+            if (readLength == 0) {
+                return SAMRecord.NULL_SEQUENCE_STRING;
+            }
+            byte[] raw = getRawBases(row);
+            int offset = baseOffsets.get(row);
+            byte[] sequence = new byte[readLength];
+            for (int i = 0; i < readLength; i++) {
+                sequence[i] = decodeBase(raw, i, offset + i);
+            }
+            return new String(sequence);
+        }
+
+        public String getChr() {
+            return chrNames.get(chrs.get(row));
+        }
+
+        public String getContig() {
+            return getChr();
+        }
+
+        public int getStart() {
+            return starts.get(row);
+        }
+
+        public void setStart(int start) {
+            starts.set(row, start);
+            layoutRef = null;
+        }
+
+        public int getEnd() {
+            return ends.get(row);
+        }
+
+        public void setEnd(int end) {
+            ends.set(row, end);
+        }
+
+        public int getAlignmentStart() {
+            return alignmentStarts.get(row);
+        }
+
+        public int getAlignmentEnd() {
+            return alignmentEnds.get(row);
+        }
+
+        public boolean contains(double location) {
+            return location >= getStart() && location < getEnd();
+        }
+
+        public AlignmentBlock[] getAlignmentBlocks() {
+            return layout().blocks;
+        }
+
+        public AlignmentBlock[] getInsertions() {
+            return layout().insertions;
+        }
+
+        public char[] getGapTypes() {
+            return layout().gapTypes;
+        }
+
+        public String getCigarString() {
+            int from = cigarOffsets.get(row);
+            int to = cigarOffsets.get(row + 1);
+            if (from == to) {
+                return SAMRecord.NO_ALIGNMENT_CIGAR;
+            }
+            StringBuilder buf = new StringBuilder();
+            for (int i = from; i < to; i++) {
+                int cigar = cigars.get(i);
+                buf.append(cigar >>> 4).append(CIGAR_OPERATORS.charAt(cigar & 0xF));
+            }
+            return buf.toString();
+        }
+
+        public int getInferredInsertSize() {
+            return insertSizes.get(row);
+        }
+
+        public int getMappingQuality() {
+            return (info.get(row) >>> MAPQ_SHIFT) & 0xFF;
+        }
+
+        public float getScore() {
+            return getMappingQuality();
+        }
+
+        public ReadMate getMate() {
+            int mateChr = mateChrs.get(row);
+            if (mateChr < 0) {
+                return null;
+            }
+            int flags = getFlags();
+            return new ReadMate(chrNames.get(mateChr), mateStarts.get(row),
+                    (flags & MATE_STRAND_FLAG) != 0, (flags & MATE_UNMAPPED_FLAG) != 0);
+        }
+
+        public Strand getReadStrand() {
+            return isNegativeStrand() ? Strand.NEGATIVE : Strand.POSITIVE;
+        }
+
+        public boolean isProperPair() {
+            return (getFlags() & (READ_PAIRED_FLAG | PROPER_PAIR_FLAG)) == (READ_PAIRED_FLAG | PROPER_PAIR_FLAG);
+        }
+
+        public boolean isMapped() {
+            return (getFlags() & READ_UNMAPPED_FLAG) == 0;
+        }
+
+        public boolean isPaired() {
+            return (getFlags() & READ_PAIRED_FLAG) != 0;
+        }
+
+        public boolean isFirstOfPair() {
+            return isPaired() && (getFlags() & FIRST_OF_PAIR_FLAG) != 0;
+        }
+
+        public boolean isSecondOfPair() {
+            return isPaired() && (getFlags() & SECOND_OF_PAIR_FLAG) != 0;
+        }
+
+        public boolean isNegativeStrand() {
+            return (getFlags() & READ_STRAND_FLAG) != 0;
+        }
+
+        public boolean isDuplicate() {
+            return (getFlags() & DUPLICATE_READ_FLAG) != 0;
+        }
+
+        public boolean isPrimary() {
+            return (getFlags() & NOT_PRIMARY_ALIGNMENT_FLAG) == 0;
+        }
+
+        public boolean isSupplementary() {
+            return (getFlags() & SUPPLEMENTARY_ALIGNMENT_FLAG) != 0;
+        }
+
+        public boolean isVendorFailedRead() {
+            return (getFlags() & READ_FAILS_VENDOR_QUALITY_CHECK_FLAG) != 0;
+        }
+
+        public byte getBase(double position) {
+            int basePosition = (int) position;
+            for (AlignmentBlock block : getAlignmentBlocks()) {
+                if (block.contains(basePosition)) {
+                    return block.getBase(basePosition - block.getStart());
+                }
+            }
+            return 0;
+        }
+
+        public byte getPhred(double position) {
+            int basePosition = (int) position;
+            for (AlignmentBlock block : getAlignmentBlocks()) {
+                if (block.contains(basePosition)) {
+                    return block.getQuality(basePosition - block.getStart());
+                }
+            }
+            return 0;
+        }
+
+        public Object getAttribute(String key) {
+            // SAM alignment tag keys must be of length 2
+            if (key.length() == 2) {
+                boolean hasRowTags = false;
+                for (int i = tagOffsets.get(row); i < tagOffsets.get(row + 1); i++) {
+                    int id = tags.get(i);
+                    if (id == ROW_TAG) {
+                        hasRowTags = true;
+                        continue;
+                    }
+                    SAMRecord.SAMTagAndValue tv = tagValues.get(id);
+                    if (tv.tag.equals(key)) {
+                        return tv.value;
+                    }
+                }
+                if (hasRowTags) {
+                    for (SAMRecord.SAMTagAndValue tv : getRowTags(row)) {
+                        if (tv.tag.equals(key)) {
+                            return tv.value;
+                        }
+                    }
+                }
+                return null;
+            }
+            return key.equals("TEMPLATE_ORIENTATION") ? getPairOrientation() : null;
+        }
+
+        List<SAMRecord.SAMTagAndValue> getAttributes() {
+            int from = tagOffsets.get(row);
+            int to = tagOffsets.get(row + 1);
+            List<SAMRecord.SAMTagAndValue> attributes = new ArrayList<SAMRecord.SAMTagAndValue>(to - from);
+            Iterator<SAMRecord.SAMTagAndValue> rowTagValues = null;
+            for (int i = from; i < to; i++) {
+                int id = tags.get(i);
+                if (id == ROW_TAG) {
+                    if (rowTagValues == null) rowTagValues = getRowTags(row).iterator();
+                    attributes.add(rowTagValues.next());
+                } else {
+                    attributes.add(tagValues.get(id));
+                }
+            }
+            return attributes;
+        }
+
+        public void setMateSequence(String sequence) {
+            ColumnarAlignmentStore.this.setMateSequence(row, sequence);
+        }
+
+        public String getPairOrientation() {
+            return orientations.get(info.get(row) >>> ORIENTATION_SHIFT);
+        }
+
+        public Strand getFirstOfPairStrand() {
+            return STRANDS[(info.get(row) >>> FIRST_STRAND_SHIFT) & 0x3];
+        }
+
+        public Strand getSecondOfPairStrand() {
+            return STRANDS[(info.get(row) >>> SECOND_STRAND_SHIFT) & 0x3];
+        }
+
+        public Color getColor() {
+            if (tagColors == null) {
+                return null;
+            }
+            for (int i = tagOffsets.get(row); i < tagOffsets.get(row + 1); i++) {
+                Color color = tagColors.get(tags.get(i));
+                if (color != null) {
+                    return color;
+                }
+            }
+            return null;
+        }
+
+        public String getSample() {
+            int readGroup = readGroups.get(row);
+            return readGroup < 0 ? null : readGroupInfo.get(readGroup)[1];
+        }
+
+        public String getReadGroup() {
+            int readGroup = readGroups.get(row);
+            return readGroup < 0 ? null : readGroupInfo.get(readGroup)[0];
+        }
+
+        public String getLibrary() {
+            int readGroup = readGroups.get(row);
+            return readGroup < 0 ? null : readGroupInfo.get(readGroup)[2];
+        }
+
+        public String getClipboardString(double location) {
+            return SAMAlignment.getValueString(this, location,
+                    PicardAlignment.getAttributeString(getAttributes(), false), getMateSequence(row));
+        }
+
+        public String getValueString(double position, WindowFunction windowFunction) {
+            return SAMAlignment.getValueString(this, position,
+                    PicardAlignment.getAttributeString(getAttributes(), true), getMateSequence(row));
+        }
+
+        public void finish() {
+        }
+
+        /**
+         * Rebuild the SAM record this row was copied from,  for export.  Reference names are those of the source
+         * file,  unsigned array tags are written as signed.
+         *
+         * @param header header of the source file
+         */
+        SAMRecord toSAMRecord(SAMFileHeader header) {
+            SAMRecord record = new SAMRecord(header);
+            record.setReadName(getReadName());
+            record.setFlags(getFlags());
+            record.setReferenceName(getReferenceName(getChr()));
+            record.setAlignmentStart(getAlignmentStart() + 1);
+            record.setMappingQuality(getMappingQuality());
+            record.setCigarString(getCigarString());
+            int mateChr = mateChrs.get(row);
+            if (mateChr >= 0) {
+                record.setMateReferenceName(getReferenceName(chrNames.get(mateChr)));
+                record.setMateAlignmentStart(mateStarts.get(row) + 1);
+            }
+            record.setInferredInsertSize(getInferredInsertSize());
+
+            int readLength = getReadLength(row);
+            if (readLength == 0) {
+                record.setReadBases(SAMRecord.NULL_SEQUENCE);
+                record.setBaseQualities(SAMRecord.NULL_QUALS);
+            } else {
+                record.setReadString(getReadSequence());
+                if (missingQualities != null && missingQualities.contains(row)) {
+                    record.setBaseQualities(SAMRecord.NULL_QUALS);
+                } else {
+                    int offset = baseOffsets.get(row);
+                    byte[] readQualities = new byte[readLength];
+                    for (int i = 0; i < readLength; i++) {
+                        readQualities[i] = qualities.get(offset + i);
+                    }
+                    record.setBaseQualities(readQualities);
+                }
+            }
+
+            for (SAMRecord.SAMTagAndValue tv : getAttributes()) {
+                record.setAttribute(tv.tag, tv.value);
+            }
+            return record;
+        }
+
+        /**
+         * Return the alignment blocks, insertions, and gaps,  decoding them on first use.  The result is softly
+         * held so that painting a read does not decode it once per block accessor.
+         */
+        private Layout layout() {
+            SoftReference<Layout> ref = layoutRef;
+            Layout layout = ref == null ? null : ref.get();
+            if (layout == null) {
+                layout = decodeLayout();
+                layoutRef = new SoftReference<Layout>(layout);
+            }
+            return layout;
+        }
+
+        /**
+         * Decode the alignment blocks, insertions, and gaps.  Follows the rules of
+         * {@link SAMAlignment#createAlignmentBlocks}, with the soft clip setting in effect when the
+         * store was created.
+         */
+        private Layout decodeLayout() {
+
+            final int start = getStart();
+            final int readLength = getReadLength(row);
+            final int baseOffset = baseOffsets.get(row);
+            final byte[] raw = getRawBases(row);
+            final int from = cigarOffsets.get(row);
+            final int to = cigarOffsets.get(row + 1);
+
+            Layout layout = new Layout();
+            if (from == to) {
+                layout.blocks = new AlignmentBlock[]{
+                        new ColumnarAlignmentBlock(start, readLength, baseOffset, 0, raw, readLength, false)};
+                return layout;
+            }
+
+            // Concatenate consecutive operators of the same type and remove padding
+            int[] lengths = new int[to - from];
+            char[] operators = new char[to - from];
+            int nOperators = 0;
+            for (int i = from; i < to; i++) {
+                int cigar = cigars.get(i);
+                char op = CIGAR_OPERATORS.charAt(cigar & 0xF);
+                if (op == SAMAlignment.PADDING) {
+                    continue;
+                }
+                if (nOperators > 0 && operators[nOperators - 1] == op) {
+                    lengths[nOperators - 1] += cigar >>> 4;
+                } else {
+                    operators[nOperators] = op;
+                    lengths[nOperators] = cigar >>> 4;
+                    nOperators++;
+                }
+            }
+
+            int nInsertions = 0;
+            int nBlocks = 0;
+            int nGaps = 0;
+            int softClippedBaseCount = 0;
+            boolean firstOperator = true;
+            char prevOp = 0;
+            for (int i = 0; i < nOperators; i++) {
+                char op = operators[i];
+                if (op == SAMAlignment.HARD_CLIP) {
+                    continue;
+                }
+                if (operatorIsMatch(op)) {
+                    nBlocks++;
+                    if (operatorIsMatch(prevOp)) {
+                        nGaps++;
+                    }
+                } else if (op == SAMAlignment.DELETION || op == SAMAlignment.SKIPPED_REGION) {
+                    nGaps++;
+                } else if (op == SAMAlignment.INSERTION) {
+                    nInsertions++;
+                    nGaps++;
+                }
+                if (firstOperator && op == SAMAlignment.SOFT_CLIP) {
+                    softClippedBaseCount += lengths[i];
+                }
+                if (op != SAMAlignment.SOFT_CLIP) {
+                    firstOperator = false;
+                }
+                prevOp = op;
+            }
+
+            layout.blocks = new AlignmentBlock[nBlocks];
+            layout.insertions = new AlignmentBlock[nInsertions];
+            if (nGaps > 0) {
+                layout.gapTypes = new char[nGaps];
+            }
+
+            int fromIdx = showSoftClipped ? 0 : softClippedBaseCount;
+            int blockStart = start;
+            int blockIdx = 0;
+            int insertionIdx = 0;
+            int gapIdx = 0;
+            prevOp = 0;
+            for (int i = 0; i < nOperators; i++) {
+                char op = operators[i];
+                int nBases = lengths[i];
+                if (op == SAMAlignment.HARD_CLIP) {
+                    continue;
+                }
+                if (operatorIsMatch(op)) {
+                    layout.blocks[blockIdx++] = new ColumnarAlignmentBlock(blockStart, nBases, baseOffset, fromIdx,
+                            raw, readLength, op == SAMAlignment.SOFT_CLIP);
+                    fromIdx += nBases;
+                    blockStart += nBases;
+                    if (operatorIsMatch(prevOp)) {
+                        layout.gapTypes[gapIdx++] = SAMAlignment.ZERO_GAP;
+                    }
+                } else if (op == SAMAlignment.DELETION || op == SAMAlignment.SKIPPED_REGION) {
+                    blockStart += nBases;
+                    layout.gapTypes[gapIdx++] = op;
+                } else if (op == SAMAlignment.INSERTION) {
+                    layout.gapTypes[gapIdx++] = SAMAlignment.ZERO_GAP;
+                    layout.insertions[insertionIdx++] = new ColumnarAlignmentBlock(blockStart, nBases, baseOffset,
+                            fromIdx, raw, readLength, false);
+                    fromIdx += nBases;
+                }
+                prevOp = op;
+            }
+            return layout;
+        }
+
+        @Override
+        public String toString() {
+            return getReadName() + " " + getChr() + ":" + (getAlignmentStart() + 1) + " " + getCigarString();
+        }
+    }
+
+    private static class Layout {
+        AlignmentBlock[] blocks;
+        AlignmentBlock[] insertions;
+        char[] gapTypes;
+    }
+
+    /**
+     * Alignment block decoded from the base and quality columns.  Bases are filled with '=' for reads without
+     * sequence, and '?' where the cigar extends past the read sequence, as {@link AlignmentBlockImpl} does.
+     */
+    private final class ColumnarAlignmentBlock implements AlignmentBlock {
+
+        private final int start;
+        private final int length;
+        private final int baseIndex;      // index of the first base in the base and quality columns
+        private final int readIndex;      // offset of the first base within the read
+        private final byte[] raw;
+        private final byte fill;          // 0 if the bases are available
+        private final boolean softClipped;
+        private volatile byte[] blockBases;
+        private volatile byte[] blockQualities;
+
+        ColumnarAlignmentBlock(int start, int length, int baseOffset, int readIndex, byte[] raw, int readLength,
+                               boolean softClipped) {
+            this.start = start;
+            this.length = length;
+            this.baseIndex = baseOffset + readIndex;
+            this.readIndex = readIndex;
+            this.raw = raw;
+            this.softClipped = softClipped;
+            if (readLength == 0) {
+                fill = '=';
+            } else if (readLength - readIndex < length) {
+                fill = '?';
+            } else {
+                fill = 0;
+            }
+        }
+
+        public boolean contains(int position) {
+            int offset = position - start;
+            return offset >= 0 && offset < length;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        public byte getBase(int offset) {
+            if (offset >= length) {
+                return 0;
+            }
+            return fill != 0 ? fill : decodeBase(raw, readIndex + offset, baseIndex + offset);
+        }
+
+        public byte[] getBases() {
+            if (blockBases == null) {
+                byte[] b = new byte[length];
+                for (int i = 0; i < length; i++) {
+                    b[i] = getBase(i);
+                }
+                blockBases = b;
+            }
+            return blockBases;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public byte getQuality(int offset) {
+            return fill != 0 || offset >= length ? (byte) 126 : qualities.get(baseIndex + offset);
+        }
+
+        public byte[] getQualities() {
+            if (blockQualities == null) {
+                byte[] q = new byte[length];
+                for (int i = 0; i < length; i++) {
+                    q[i] = getQuality(i);
+                }
+                blockQualities = q;
+            }
+            return blockQualities;
+        }
+
+        public int getEnd() {
+            return start + length;
+        }
+
+        public boolean isSoftClipped() {
+            return softClipped;
+        }
+
+        public void reduce(Genome genome) {
+        }
+
+        public boolean hasBases() {
+            return true;
+        }
+
+        public FlowSignalSubContext getFlowSignalSubContext(int offset) {
+            return null;
+        }
+
+        public boolean hasFlowSignals() {
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return "[block " + (softClipped ? "softClipped " : " ") + start + "-" + getEnd() + " " +
+                    new String(getBases()) + "]";
+        }
+    }
+
+    /**
+     * Interns values by key, assigning sequential ids
+     */
+    private static class Dictionary<T> {
+
+        private final List<T> values = new ArrayList<T>();
+        private final Map<Object, Integer> ids = new HashMap<Object, Integer>();
+
+        int intern(Object key, T value) {
+            Integer id = ids.get(key);
+            if (id == null) {
+                id = values.size();
+                values.add(value);
+                ids.put(key, id);
+            }
+            return id;
+        }
+
+        T get(int id) {
+            return values.get(id);
+        }
+
+        int size() {
+            return values.size();
+        }
+    }
+
+    /**
+     * Dictionary key for a tag value.  Array values are stored per row,  see {@link #isRowTag}.
+     */
+    private static class TagKey {
+
+        private final String tag;
+        private final Object value;
+
+        TagKey(String tag, Object value) {
+            this.tag = tag;
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TagKey)) return false;
+            TagKey other = (TagKey) o;
+            return tag.equals(other.tag) && value.equals(other.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * tag.hashCode() + value.hashCode();
+        }
+    }
+
+    /**
+     * Growable int column, backed by an array or by a direct buffer
+     */
+    static class IntColumn {
+
+        private int[] array;
+        private IntBuffer buffer;
+        private int size = 0;
+
+        IntColumn(int capacity, boolean offHeap) {
+            if (offHeap) {
+                buffer = allocate(capacity);
+            } else {
+                array = new int[capacity];
+            }
+        }
+
+        private static IntBuffer allocate(int capacity) {
+            return ByteBuffer.allocateDirect(4 * capacity).order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+
+        void add(int value) {
+            if (size == capacity()) {
+                grow();
+            }
+            set(size++, value);
+        }
+
+        int get(int index) {
+            return array != null ? array[index] : buffer.get(index);
+        }
+
+        void set(int index, int value) {
+            if (array != null) {
+                array[index] = value;
+            } else {
+                buffer.put(index, value);
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        private int capacity() {
+            return array != null ? array.length : buffer.capacity();
+        }
+
+        private void grow() {
+            int capacity = (int) Math.min(Integer.MAX_VALUE / 4, 2L * capacity());
+            if (array != null) {
+                array = Arrays.copyOf(array, capacity);
+            } else {
+                IntBuffer grown = allocate(capacity);
+                IntBuffer src = buffer.duplicate();
+                src.position(0);
+                src.limit(size);
+                grown.put(src);
+                buffer = grown;
+            }
+        }
+
+        long getStorageSize() {
+            return 4L * capacity();
+        }
+    }
+
+    /**
+     * Growable byte column, backed by an array or by a direct buffer
+     */
+    static class ByteColumn {
+
+        private byte[] array;
+        private ByteBuffer buffer;
+        private int size = 0;
+
+        ByteColumn(int capacity, boolean offHeap) {
+            if (offHeap) {
+                buffer = ByteBuffer.allocateDirect(capacity);
+            } else {
+                array = new byte[capacity];
+            }
+        }
+
+        void add(byte value) {
+            if (size == capacity()) {
+                grow();
+            }
+            set(size++, value);
+        }
+
+        byte get(int index) {
+            return array != null ? array[index] : buffer.get(index);
+        }
+
+        void set(int index, byte value) {
+            if (array != null) {
+                array[index] = value;
+            } else {
+                buffer.put(index, value);
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        private int capacity() {
+            return array != null ? array.length : buffer.capacity();
+        }
+
+        private void grow() {
+            int capacity = (int) Math.min(Integer.MAX_VALUE - 8, 2L * capacity());
+            if (array != null) {
+                array = Arrays.copyOf(array, capacity);
+            } else {
+                ByteBuffer grown = ByteBuffer.allocateDirect(capacity);
+                ByteBuffer src = buffer.duplicate();
+                src.position(0);
+                src.limit(size);
+                grown.put(src);
+                buffer = grown;
+            }
+        }
+
+        long getStorageSize() {
+            return capacity();
+        }
+    }
+}
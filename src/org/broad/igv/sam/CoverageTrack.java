@@ -228,7 +228,7 @@ public class CoverageTrack extends AbstractTrack {
 
             DataRange newRange = new DataRange(0, max);
             newRange.setType(getDataRange().getType());
-            super.setDataRange(newRange);
+            setAutoscaleDataRange(newRange);
 
         }
     }
@@ -274,6 +274,25 @@ public class CoverageTrack extends AbstractTrack {
         return scores;
     }
 
+    @Override
+    public void load(RenderContext context) {
+        if (dataManager != null && !dataManager.isLoaded(context.getReferenceFrame())) {
+            dataManager.load(context, renderOptions, true);
+        }
+    }
+
+    @Override
+    public boolean isReadyToPaint(ReferenceFrame frame) {
+        return dataManager == null || dataManager.isLoaded(frame);
+    }
+
+    @Override
+    public void prefetch(String chr, int start, int end, int zoom) {
+        if (dataSource != null) {
+            dataSource.getSummaryScoresForRange(chr, start, end, zoom);
+        }
+    }
+
     public void overlay(RenderContext context, Rectangle rect) {
 
         float maxRange = PreferenceManager.getInstance().getAsFloat(PreferenceManager.SAM_MAX_VISIBLE_RANGE);
@@ -0,0 +1,407 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.sam;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Dense alignment counts backed by compact, interleaved storage.  Functionally equivalent to
+ * {@link DenseAlignmentCounts}, but all counters for a position are stored next to each other in
+ * blocks of {@link #BLOCK_SIZE} positions.  Each block starts out with byte precision and is promoted to
+ * short, then int, only when one of its values overflows.  Blocks with no coverage are never allocated.
+ * <p/>
+ * Strand totals and the total quality are not stored,  they are derived from the per-base counters.
+ *
+ * @see DenseAlignmentCounts
+ */
+public class PackedAlignmentCounts extends BaseAlignmentCounts {
+
+    private static Logger log = Logger.getLogger(PackedAlignmentCounts.class);
+
+    static final int BLOCK_SHIFT = 8;
+    static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+    // Count slots.  Base slots are ordered A, C, G, T, N;  negative strand slots follow the positive strand ones
+    private static final int POS = 0;
+    private static final int NEG = 5;
+    private static final int POS_DEL = 10;
+    private static final int NEG_DEL = 11;
+    private static final int INS = 12;
+    private static final int N_COUNT_SLOTS = 13;
+
+    // Quality slots, ordered A, C, G, T, N
+    private static final int N_QUALITY_SLOTS = 5;
+
+    private final int nPts;
+    private final PackedBlocks counts;
+    private final PackedBlocks qualities;
+
+    /**
+     * We store the maximum number of counts over intervals
+     * For autoscaling, doesn't have to be super precise
+     */
+    protected static int MAX_COUNT_INTERVAL = DenseAlignmentCounts.MAX_COUNT_INTERVAL;
+    protected int[] maxCounts;
+
+    public PackedAlignmentCounts(int start, int end, AlignmentTrack.BisulfiteContext bisulfiteContext) {
+        super(start, end, bisulfiteContext);
+
+        nPts = end - start;
+        int nBlocks = (nPts + BLOCK_SIZE - 1) >> BLOCK_SHIFT;
+        counts = new PackedBlocks(nBlocks, N_COUNT_SLOTS);
+        qualities = new PackedBlocks(nBlocks, N_QUALITY_SLOTS);
+
+        maxCounts = new int[(nPts / MAX_COUNT_INTERVAL) + 1];
+        log.debug("nPts: " + nPts + " maxCounts.length: " + maxCounts.length);
+    }
+
+    /**
+     * Map a nucleotide to its slot index,  or -1 if it is not one of ACGTN
+     */
+    private static int baseIndex(byte b) {
+        switch (b) {
+            case 'a':
+            case 'A':
+                return 0;
+            case 'c':
+            case 'C':
+                return 1;
+            case 'g':
+            case 'G':
+                return 2;
+            case 't':
+            case 'T':
+                return 3;
+            case 'n':
+            case 'N':
+                return 4;
+            default:
+                return -1;
+        }
+    }
+
+    private boolean inRange(int offset, int pos) {
+        if (offset < 0 || offset >= nPts) {
+            if (log.isDebugEnabled()) {
+                log.debug("Position out of range: " + pos + " (valid range - " + start + "-" + end);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    public int getNumberOfPoints() {
+        return end - start;
+    }
+
+    @Override
+    public int getMaxCount(int strt, int end) {
+
+        if (maxCounts == null || maxCounts.length == 0) return 1;
+
+        strt = Math.max(0, strt);
+        end = Math.min(getEnd(), end);
+        int startMCI = Math.max(0, (strt - this.start) / MAX_COUNT_INTERVAL);
+        int endMCI = Math.max(0, (end - this.start) / MAX_COUNT_INTERVAL);
+        endMCI = Math.min(endMCI, maxCounts.length - 1);
+        int max = maxCounts[startMCI];
+        for (int mci = startMCI + 1; mci <= endMCI; mci++) {
+            max = Math.max(max, maxCounts[mci]);
+        }
+        return max;
+    }
+
+    public void finish() {
+        // Noop
+    }
+
+    private int getStrandTotal(int offset, int strand, int delSlot) {
+        int total = counts.sum(offset, strand, 5);
+        if (countDeletedBasesCovered) {
+            total += counts.get(offset, delSlot);
+        }
+        return total;
+    }
+
+    private int getTotal(int offset) {
+        return getStrandTotal(offset, POS, POS_DEL) + getStrandTotal(offset, NEG, NEG_DEL);
+    }
+
+    public int getTotalCount(int pos) {
+        int offset = pos - start;
+        return inRange(offset, pos) ? getTotal(offset) : 0;
+    }
+
+    public int getTotalQuality(int pos) {
+        int offset = pos - start;
+        return inRange(offset, pos) ? qualities.sum(offset, 0, N_QUALITY_SLOTS) : 0;
+    }
+
+    public int getCount(int pos, byte b) {
+        int offset = pos - start;
+        if (!inRange(offset, pos)) {
+            return 0;
+        }
+        int idx = baseIndex(b);
+        if (idx < 0) {
+            log.debug("Unknown nucleotide: " + b);
+            return 0;
+        }
+        return counts.get(offset, POS + idx) + counts.get(offset, NEG + idx);
+    }
+
+    public int getNegCount(int pos, byte b) {
+        int offset = pos - start;
+        if (!inRange(offset, pos)) {
+            return 0;
+        }
+        int idx = baseIndex(b);
+        if (idx < 0) {
+            log.error("Unknown nucleotide: " + b);
+            return 0;
+        }
+        return counts.get(offset, NEG + idx);
+    }
+
+    public int getPosCount(int pos, byte b) {
+        int offset = pos - start;
+        if (!inRange(offset, pos)) {
+            return 0;
+        }
+        int idx = baseIndex(b);
+        if (idx < 0) {
+            log.error("Unknown nucleotide: " + b);
+            return 0;
+        }
+        return counts.get(offset, POS + idx);
+    }
+
+    public int getDelCount(int pos) {
+        int offset = pos - start;
+        return inRange(offset, pos) ? counts.get(offset, POS_DEL) + counts.get(offset, NEG_DEL) : 0;
+    }
+
+    public int getInsCount(int pos) {
+        int offset = pos - start;
+        return inRange(offset, pos) ? counts.get(offset, INS) : 0;
+    }
+
+    public int getQuality(int pos, byte b) {
+        int offset = pos - start;
+        if (offset < 0 || offset >= nPts) {
+            log.error("Position out of range: " + pos + " (valid range - " + start + "-" + end);
+            return 0;
+        }
+        int idx = baseIndex(b);
+        if (idx < 0) {
+            log.error("Unknown nucleotide: " + b);
+            return 0;
+        }
+        return qualities.get(offset, idx);
+    }
+
+
+    protected void incrementDeletion(int pos, boolean negativeStrand) {
+        int offset = pos - start;
+        if (offset >= 0 && offset < nPts) {
+            counts.add(offset, negativeStrand ? NEG_DEL : POS_DEL, 1);
+        }
+    }
+
+    protected void incrementInsertion(AlignmentBlock insBlock) {
+        int pos = insBlock.getStart();
+        int offset = pos - start;
+        // Insertions are between bases.  increment count on either side
+        if (offset >= 0 && offset < nPts) {
+            counts.add(offset, INS, 1);
+            offset--;
+            if (offset >= 0) {
+                counts.add(offset, INS, 1);
+            }
+        }
+    }
+
+
+    protected void incBlockCounts(AlignmentBlock block, boolean isNegativeStrand) {
+        int start = block.getStart();
+        byte[] bases = block.getBases();
+        if (bases != null) {
+            for (int i = 0; i < bases.length; i++) {
+                int pos = start + i;
+                // NOTE:  the direct access block.qualities is intentional,  profiling reveals this to be a critical bottleneck
+                byte q = ((AlignmentBlockImpl) block).qualities[i];
+                // TODO -- handle "=" in cigar string with no read bases
+                byte n = bases[i];
+                incPositionCount(pos, n, q, isNegativeStrand);
+            }
+        }
+    }
+
+    protected void incPositionCount(int pos, byte b, byte q, boolean isNegativeStrand) {
+
+        int offset = pos - start;
+        if (offset >= 0 && offset < nPts) {
+            // Everything else is counted as "N".  This might be an actual "N",  or an ambiguity code
+            int idx = baseIndex(b);
+            if (idx < 0) idx = 4;
+
+            counts.add(offset, (isNegativeStrand ? NEG : POS) + idx, 1);
+            qualities.add(offset, idx, q);
+            updateMaxCount(offset);
+        }
+    }
+
+    private void updateMaxCount(int offset) {
+        int tmp = getTotal(offset);
+        int maxCountInt = offset / MAX_COUNT_INTERVAL;
+        if (tmp > maxCounts[maxCountInt]) {
+            maxCounts[maxCountInt] = tmp;
+        }
+    }
+
+    /**
+     * Approximate number of bytes used by the count arrays,  excluding object overhead.
+     */
+    long getStorageSize() {
+        return counts.getStorageSize() + qualities.getStorageSize() + 4L * maxCounts.length;
+    }
+
+
+    /**
+     * A fixed number of non-negative counters per position, stored interleaved in blocks of {@link #BLOCK_SIZE}
+     * positions.  Exactly one of the byte, short, or int arrays is allocated for a touched block.  Values are
+     * treated as unsigned in the narrower representations,  and any value that doesn't fit (including a
+     * negative one) promotes the whole block to the next width.
+     */
+    static class PackedBlocks {
+
+        private final int nSlots;
+        private final byte[][] byteBlocks;
+        private final short[][] shortBlocks;
+        private final int[][] intBlocks;
+
+        PackedBlocks(int nBlocks, int nSlots) {
+            this.nSlots = nSlots;
+            byteBlocks = new byte[nBlocks][];
+            shortBlocks = new short[nBlocks][];
+            intBlocks = new int[nBlocks][];
+        }
+
+        int get(int offset, int slot) {
+            int blockIdx = offset >> BLOCK_SHIFT;
+            int idx = (offset & BLOCK_MASK) * nSlots + slot;
+            byte[] bb = byteBlocks[blockIdx];
+            if (bb != null) {
+                return bb[idx] & 0xFF;
+            }
+            short[] sb = shortBlocks[blockIdx];
+            if (sb != null) {
+                return sb[idx] & 0xFFFF;
+            }
+            int[] ib = intBlocks[blockIdx];
+            return ib == null ? 0 : ib[idx];
+        }
+
+        /**
+         * Return the sum of {@code n} consecutive slots,  starting at {@code firstSlot}
+         */
+        int sum(int offset, int firstSlot, int n) {
+            int blockIdx = offset >> BLOCK_SHIFT;
+            int idx = (offset & BLOCK_MASK) * nSlots + firstSlot;
+            int total = 0;
+            byte[] bb = byteBlocks[blockIdx];
+            if (bb != null) {
+                for (int i = idx; i < idx + n; i++) total += bb[i] & 0xFF;
+                return total;
+            }
+            short[] sb = shortBlocks[blockIdx];
+            if (sb != null) {
+                for (int i = idx; i < idx + n; i++) total += sb[i] & 0xFFFF;
+                return total;
+            }
+            int[] ib = intBlocks[blockIdx];
+            if (ib != null) {
+                for (int i = idx; i < idx + n; i++) total += ib[i];
+            }
+            return total;
+        }
+
+        void add(int offset, int slot, int delta) {
+            int blockIdx = offset >> BLOCK_SHIFT;
+            int idx = (offset & BLOCK_MASK) * nSlots + slot;
+
+            int[] ib = intBlocks[blockIdx];
+            if (ib != null) {
+                ib[idx] += delta;
+                return;
+            }
+
+            short[] sb = shortBlocks[blockIdx];
+            if (sb == null) {
+                byte[] bb = byteBlocks[blockIdx];
+                if (bb == null) {
+                    bb = new byte[BLOCK_SIZE * nSlots];
+                    byteBlocks[blockIdx] = bb;
+                }
+                int v = (bb[idx] & 0xFF) + delta;
+                if (v >= 0 && v <= 0xFF) {
+                    bb[idx] = (byte) v;
+                    return;
+                }
+                sb = new short[bb.length];
+                for (int i = 0; i < bb.length; i++) {
+                    sb[i] = (short) (bb[i] & 0xFF);
+                }
+                byteBlocks[blockIdx] = null;
+                shortBlocks[blockIdx] = sb;
+            }
+
+            int v = (sb[idx] & 0xFFFF) + delta;
+            if (v >= 0 && v <= 0xFFFF) {
+                sb[idx] = (short) v;
+                return;
+            }
+            ib = new int[sb.length];
+            for (int i = 0; i < sb.length; i++) {
+                ib[i] = sb[i] & 0xFFFF;
+            }
+            ib[idx] = v;
+            shortBlocks[blockIdx] = null;
+            intBlocks[blockIdx] = ib;
+        }
+
+        long getStorageSize() {
+            long size = 0;
+            for (int i = 0; i < intBlocks.length; i++) {
+                if (byteBlocks[i] != null) size += byteBlocks[i].length;
+                else if (shortBlocks[i] != null) size += 2L * shortBlocks[i].length;
+                else if (intBlocks[i] != null) size += 4L * intBlocks[i].length;
+            }
+            return size;
+        }
+    }
+}
@@ -227,10 +227,19 @@ public class PicardAlignment extends SAMAlignment implements Alignment {
     }
 
     protected String getAttributeString(boolean truncate) {
+        return getAttributeString(getRecord().getAttributes(), truncate);
+    }
+
+    /**
+     * Format optional tags for the popup text.  Array valued tags are not shown.
+     *
+     * @param attributes
+     * @param truncate   if true break long values into lines of at most 70 characters
+     * @return
+     */
+    static String getAttributeString(List<SAMRecord.SAMTagAndValue> attributes, boolean truncate) {
 
         StringBuffer buf = new StringBuffer();
-        SAMRecord record = getRecord();
-        List<SAMRecord.SAMTagAndValue> attributes = record.getAttributes();
         if (attributes != null && !attributes.isEmpty()) {
 
             for (SAMRecord.SAMTagAndValue tag : attributes) {
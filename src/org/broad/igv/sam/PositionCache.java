@@ -26,76 +26,280 @@
 package org.broad.igv.sam;
 
 import org.broad.igv.feature.Range;
-import org.broad.igv.util.collections.LRUCache;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Stores objects by position so they can be looked up by inexact position (contains)
+ * <p/>
+ * Entries are indexed per chromosome in a concurrent map sorted by start position, so lookups do not lock
+ * and only visit ranges that start at or before the query.  The cache is bounded both by entry count and,
+ * if a {@link Weigher} is supplied, by the total estimated size of its values.  Least recently used entries
+ * are evicted first.
  *
  * @author jacob, jrobinso
  * @date 2014-Jan-10
  */
 class PositionCache<V> {
 
-    private LRUCache<Range, V> intervals;
-
     private static final int MIN_MAX_ENTRIES = 10;
 
+    private static final Comparator<Range> START_COMPARATOR = new Comparator<Range>() {
+        public int compare(Range r1, Range r2) {
+            if (r1.getStart() != r2.getStart()) {
+                return r1.getStart() < r2.getStart() ? -1 : 1;
+            }
+            return r1.getEnd() < r2.getEnd() ? -1 : (r1.getEnd() == r2.getEnd() ? 0 : 1);
+        }
+    };
+
+    private final ConcurrentMap<String, ChrIndex<V>> index = new ConcurrentHashMap<String, ChrIndex<V>>();
+
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicLong totalWeight = new AtomicLong();
+
+    private final Weigher<V> weigher;
+    private volatile long maxWeight;
+    private volatile int maxEntries = MIN_MAX_ENTRIES;
+    private volatile int minEntries = 1;
+
     public PositionCache() {
-        intervals = new LRUCache<Range, V>(MIN_MAX_ENTRIES);
+        this(null, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param weigher   estimates the size of a value, in bytes
+     * @param maxWeight maximum total weight of the cached values.  The weight limit never reduces the cache
+     *                  below {@link #setMinEntries(int)} entries.
+     */
+    public PositionCache(Weigher<V> weigher, long maxWeight) {
+        this.weigher = weigher;
+        this.maxWeight = maxWeight;
     }
 
-    public PositionCache(PositionCache<V> cache){
-        this.intervals = new LRUCache<Range, V>(MIN_MAX_ENTRIES);
-        this.intervals.putAll(cache.intervals);
+    public PositionCache(PositionCache<V> cache) {
+        this(cache.weigher, cache.maxWeight);
+        this.maxEntries = cache.maxEntries;
+        this.minEntries = cache.minEntries;
+        for (ChrIndex<V> chrIndex : cache.index.values()) {
+            for (Map.Entry<Range, Entry<V>> e : chrIndex.ranges.entrySet()) {
+                put(e.getKey(), e.getValue().value);
+            }
+        }
     }
 
-    /** Add the specified interval to the cache. Replaces any existing interval
+    /**
+     * Add the specified interval to the cache. Replaces any existing interval
      * which contains the given range
+     *
      * @param range
      * @param value
      * @return The old interval, null if it didn't exist
      */
     public V put(Range range, V value) {
-        Range currentRangeKey = getKeyForRange(range);
-        Range keyToUse = currentRangeKey != null ? currentRangeKey : range;
-        return intervals.put(keyToUse, value);
+        ChrIndex<V> chrIndex = getChrIndex(range.getChr(), true);
+        Entry<V> entry = new Entry<V>(value, weigh(value), clock.incrementAndGet());
+        V old = null;
+        synchronized (chrIndex) {
+            Range currentRangeKey = chrIndex.find(range.getChr(), range.getStart(), range.getEnd());
+            Range keyToUse = currentRangeKey != null ? currentRangeKey : range;
+            Entry<V> oldEntry = chrIndex.ranges.put(keyToUse, entry);
+            if (oldEntry != null) {
+                totalWeight.addAndGet(-oldEntry.weight);
+                old = oldEntry.value;
+            }
+            chrIndex.maxLength = Math.max(chrIndex.maxLength, keyToUse.getLength());
+        }
+        totalWeight.addAndGet(entry.weight);
+        evict();
+        return old;
+    }
 
+    public V getForRange(Range range) {
+        ChrIndex<V> chrIndex = getChrIndex(range.getChr(), false);
+        if (chrIndex == null) {
+            return null;
+        }
+        Range key = chrIndex.find(range.getChr(), range.getStart(), range.getEnd());
+        if (key == null) {
+            return null;
+        }
+        Entry<V> entry = chrIndex.ranges.get(key);
+        if (entry == null) {
+            return null;   // Evicted since the lookup
+        }
+        entry.lastAccess = clock.incrementAndGet();
+        return entry.value;
     }
 
-    public V getForRange(Range range){
-        Range key = getKeyForRange(range);
-        return key != null ? intervals.get(key) : null;
+    public boolean containsRange(Range range) {
+        ChrIndex<V> chrIndex = getChrIndex(range.getChr(), false);
+        return chrIndex != null && chrIndex.find(range.getChr(), range.getStart(), range.getEnd()) != null;
     }
 
-    private Range getKeyForRange(Range range) {
-        String chr = range.getChr();
-        for (Range cachedRange : intervals.keySet()) {
-            if (cachedRange.contains(chr, range.getStart(), range.getEnd())) {
-                return cachedRange;
+    public Collection<V> values() {
+        ArrayList<V> values = new ArrayList<V>();
+        for (ChrIndex<V> chrIndex : index.values()) {
+            for (Entry<V> entry : chrIndex.ranges.values()) {
+                values.add(entry.value);
             }
         }
-        return null;
+        return values;
     }
 
+    public int size() {
+        int size = 0;
+        for (ChrIndex<V> chrIndex : index.values()) {
+            size += chrIndex.ranges.size();
+        }
+        return size;
+    }
 
-    public boolean containsRange(Range range) {
-        return getKeyForRange(range) != null;
+    /**
+     * @return the total estimated size of the cached values,  0 if this cache has no {@link Weigher}
+     */
+    public long getTotalWeight() {
+        return totalWeight.get();
     }
 
-    public Collection<V> values() {
-        return new ArrayList<V>(this.intervals.values());
+    public synchronized void clear() {
+        for (ChrIndex<V> chrIndex : index.values()) {
+            synchronized (chrIndex) {
+                for (Entry<V> entry : chrIndex.ranges.values()) {
+                    totalWeight.addAndGet(-entry.weight);
+                }
+                chrIndex.ranges.clear();
+                chrIndex.maxLength = 0;
+            }
+        }
     }
 
-    public void clear() {
-        this.intervals.clear();
+    public void setMaxEntries(int inMaxEntries) {
+        maxEntries = Math.max(MIN_MAX_ENTRIES, inMaxEntries);
+        evict();
     }
 
-    public synchronized void setMaxEntries(int inMaxEntries){
-        int newMax = Math.max(MIN_MAX_ENTRIES, inMaxEntries);
-        intervals.setMaxEntries(newMax);
+    /**
+     * Set the number of entries retained regardless of weight,  typically the number of visible frames.
+     */
+    public void setMinEntries(int minEntries) {
+        this.minEntries = Math.max(1, minEntries);
+        evict();
+    }
+
+    public void setMaxWeight(long maxWeight) {
+        this.maxWeight = maxWeight;
+        evict();
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    private long weigh(V value) {
+        return weigher == null || value == null ? 0 : weigher.weigh(value);
+    }
+
+    private ChrIndex<V> getChrIndex(String chr, boolean create) {
+        String key = chr == null ? "" : chr;
+        ChrIndex<V> chrIndex = index.get(key);
+        if (chrIndex == null && create) {
+            chrIndex = new ChrIndex<V>();
+            ChrIndex<V> existing = index.putIfAbsent(key, chrIndex);
+            if (existing != null) {
+                chrIndex = existing;
+            }
+        }
+        return chrIndex;
+    }
+
+    /**
+     * Remove least recently used entries until both the entry count and total weight are within bounds.
+     * Writes are rare compared to lookups,  so a linear search for the eldest entry is acceptable here.
+     */
+    private synchronized void evict() {
+        while (true) {
+            int size = size();
+            boolean overWeight = size > minEntries && totalWeight.get() > maxWeight;
+            if (size <= 1 || (size <= maxEntries && !overWeight)) {
+                return;
+            }
+            ChrIndex<V> eldestIndex = null;
+            Range eldestKey = null;
+            long eldestAccess = Long.MAX_VALUE;
+            for (ChrIndex<V> chrIndex : index.values()) {
+                for (Map.Entry<Range, Entry<V>> e : chrIndex.ranges.entrySet()) {
+                    if (e.getValue().lastAccess < eldestAccess) {
+                        eldestAccess = e.getValue().lastAccess;
+                        eldestKey = e.getKey();
+                        eldestIndex = chrIndex;
+                    }
+                }
+            }
+            if (eldestKey == null) {
+                return;
+            }
+            synchronized (eldestIndex) {
+                Entry<V> removed = eldestIndex.ranges.remove(eldestKey);
+                if (removed != null) {
+                    totalWeight.addAndGet(-removed.weight);
+                }
+            }
+        }
+    }
+
+    /**
+     * Estimates the memory used by a cached value
+     */
+    public static interface Weigher<V> {
+        long weigh(V value);
+    }
+
+    private static class Entry<V> {
+        final V value;
+        final long weight;
+        volatile long lastAccess;
+
+        Entry(V value, long weight, long lastAccess) {
+            this.value = value;
+            this.weight = weight;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    /**
+     * Ranges of a single chromosome,  sorted by start.  Mutations are synchronized on the index,  lookups are not.
+     */
+    private static class ChrIndex<V> {
+
+        final ConcurrentSkipListMap<Range, Entry<V>> ranges = new ConcurrentSkipListMap<Range, Entry<V>>(START_COMPARATOR);
+
+        /**
+         * Length of the longest range ever added,  bounds the backward search in {@link #find}
+         */
+        volatile int maxLength;
+
+        Range find(String chr, int start, int end) {
+            int queryStart = start < 0 ? 0 : start;
+            Range probe = new Range(chr, queryStart, Integer.MAX_VALUE);
+            int minStart = queryStart - maxLength;
+            for (Range cachedRange : ranges.headMap(probe, true).descendingKeySet()) {
+                if (cachedRange.getStart() < minStart) {
+                    break;
+                }
+                if (cachedRange.contains(chr, start, end)) {
+                    return cachedRange;
+                }
+            }
+            return null;
+        }
     }
 
 }
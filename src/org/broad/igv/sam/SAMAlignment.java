@@ -504,41 +504,55 @@ public abstract class SAMAlignment implements Alignment {
     }
 
     private String getValueStringImpl(double position, boolean truncate) {
+        return getValueString(this, position, getAttributeString(truncate), mateSequence);
+    }
+
+    /**
+     * Build the popup / clipboard text for an alignment.  Shared with views that do not extend this class,
+     * such as {@link ColumnarAlignmentStore.ColumnarAlignment}.
+     *
+     * @param al
+     * @param position        genomic position (0 based) of the mouse
+     * @param attributeString formatted optional tags, possibly empty
+     * @param mateSequence    sequence of an unmapped mate, or null
+     * @return
+     */
+    static String getValueString(Alignment al, double position, String attributeString, String mateSequence) {
 
         StringBuffer buf = new StringBuffer();
 
-        buf.append("Read name = " + getReadName() + "<br>");
+        buf.append("Read name = " + al.getReadName() + "<br>");
 
-        String sample = getSample();
+        String sample = al.getSample();
         if (sample != null) {
             buf.append("Sample = " + sample + "<br>");
         }
-        String readGroup = getReadGroup();
+        String readGroup = al.getReadGroup();
         if (sample != null) {
             buf.append("Read group = " + readGroup + "<br>");
         }
 
-        String cigarString = getCigarString();
+        String cigarString = al.getCigarString();
         if (cigarString.length() > 80) {
             cigarString = cigarString.substring(0, 80) + "...";
         }
 
         buf.append("----------------------" + "<br>");
         int basePosition = (int) position;
-        buf.append("Location = " + getChr() + ":" + DECIMAL_FORMAT.format(1 + (long) position) + "<br>");
-        buf.append("Alignment start = " + DECIMAL_FORMAT.format(getAlignmentStart() + 1) + " (" + (isNegativeStrand() ? "-" : "+") + ")<br>");
+        buf.append("Location = " + al.getChr() + ":" + DECIMAL_FORMAT.format(1 + (long) position) + "<br>");
+        buf.append("Alignment start = " + DECIMAL_FORMAT.format(al.getAlignmentStart() + 1) + " (" + (al.isNegativeStrand() ? "-" : "+") + ")<br>");
         buf.append("Cigar = " + cigarString + "<br>");
-        buf.append("Mapped = " + (isMapped() ? "yes" : "no") + "<br>");
-        buf.append("Mapping quality = " + getMappingQuality() + "<br>");
-        buf.append("Secondary = " + (isPrimary() ? "no" : "yes") + "<br>");
-        buf.append("Supplementary = " + (isSupplementary() ? "yes" : "no") + "<br>");
-        buf.append("Duplicate = " + (isDuplicate() ? "yes" : "no") + "<br>");
-        buf.append("Failed QC = " + (isVendorFailedRead() ? "yes" : "no") + "<br>");
+        buf.append("Mapped = " + (al.isMapped() ? "yes" : "no") + "<br>");
+        buf.append("Mapping quality = " + al.getMappingQuality() + "<br>");
+        buf.append("Secondary = " + (al.isPrimary() ? "no" : "yes") + "<br>");
+        buf.append("Supplementary = " + (al.isSupplementary() ? "yes" : "no") + "<br>");
+        buf.append("Duplicate = " + (al.isDuplicate() ? "yes" : "no") + "<br>");
+        buf.append("Failed QC = " + (al.isVendorFailedRead() ? "yes" : "no") + "<br>");
         buf.append("----------------------<br>");
 
         // First check insertions.  Position is zero based, block coords 1 based
-        if (this.insertions != null) {
-            for (AlignmentBlock block : this.insertions) {
+        if (al.getInsertions() != null) {
+            for (AlignmentBlock block : al.getInsertions()) {
                 double insertionLeft = block.getStart() - .25;
                 double insertionRight = block.getStart() + .25;
                 if (position > insertionLeft && position < insertionRight) {
@@ -577,13 +591,13 @@ public abstract class SAMAlignment implements Alignment {
 
         Genome genome = GenomeManager.getInstance().getCurrentGenome();
 
-        for (AlignmentBlock block : this.alignmentBlocks) {
+        for (AlignmentBlock block : al.getAlignmentBlocks()) {
             if (block.contains(basePosition)) {
                 int offset = basePosition - block.getStart();
                 byte base = block.getBase(offset);
 
-                if (base == 0 && this.getReadSequence().equals("=") && !block.isSoftClipped() && genome != null) {
-                    base = genome.getReference(chr, basePosition);
+                if (base == 0 && al.getReadSequence().equals("=") && !block.isSoftClipped() && genome != null) {
+                    base = genome.getReference(al.getChr(), basePosition);
 
                 }
 
@@ -599,31 +613,30 @@ public abstract class SAMAlignment implements Alignment {
             }
         }
 
-        if (this.isPaired()) {
+        if (al.isPaired()) {
             buf.append("----------------------<br>");
-            buf.append("Mate is mapped = " + (getMate().isMapped() ? "yes" : "no") + "<br>");
-            if (getMate().isMapped()) {
-                buf.append("Mate start = " + getMate().positionString() + "<br>");
+            buf.append("Mate is mapped = " + (al.getMate().isMapped() ? "yes" : "no") + "<br>");
+            if (al.getMate().isMapped()) {
+                buf.append("Mate start = " + al.getMate().positionString() + "<br>");
                 //buf.append("Pair is proper = " + (getProperPairFlag() ? "yes" : "no") + "<br>");
-                if (getChr().equals(getMate().getChr())) {
-                    buf.append("Insert size = " + getInferredInsertSize() + "<br>");
+                if (al.getChr().equals(al.getMate().getChr())) {
+                    buf.append("Insert size = " + al.getInferredInsertSize() + "<br>");
                 }
             }
-            if (isFirstOfPair()) {
+            if (al.isFirstOfPair()) {
                 buf.append("First in pair<br>");
             }
-            if (isSecondOfPair()) {
+            if (al.isSecondOfPair()) {
                 buf.append("Second in pair<br>");
             }
-            if (getPairOrientation().length() > 0) {
-                buf.append("Pair orientation = " + getPairOrientation() + "<br>");
+            if (al.getPairOrientation().length() > 0) {
+                buf.append("Pair orientation = " + al.getPairOrientation() + "<br>");
             }
         }
 
-        String attributeString = getAttributeString(truncate);
         if (attributeString != null && attributeString.length() > 0) {
             buf.append("----------------------");
-            buf.append(getAttributeString(truncate));
+            buf.append(attributeString);
         }
 
 
@@ -167,7 +167,8 @@ public class SAMWriter {
 
     /**
      * Takes an iterator of Alignments, and returns an iterable/iterator
-     * consisting only of the SamAlignments contained therein.
+     * consisting only of the SamAlignments contained therein.  Compacted alignments
+     * ({@link ColumnarAlignmentStore.ColumnarAlignment}) are converted back to SamAlignments.
      * Can also be used to filter by position
      */
     public static class SamAlignmentIterable implements Iterable<PicardAlignment>, Iterator<PicardAlignment> {
@@ -177,8 +178,18 @@ public class SAMWriter {
         private String chr = null;
         private int start = -1;
         private int end = -1;
+        private SAMFileHeader header;
 
         public SamAlignmentIterable(Iterator<Alignment> alignments, String chr, int start, int end) {
+            this(alignments, chr, start, end, null);
+        }
+
+        /**
+         * @param header header for records rebuilt from compacted alignments
+         */
+        public SamAlignmentIterable(Iterator<Alignment> alignments, String chr, int start, int end,
+                                    SAMFileHeader header) {
+            this.header = header;
             this.alignments = alignments;
             this.chr = chr;
             this.start = start;
@@ -193,6 +204,9 @@ public class SAMWriter {
                 next = alignments.next();
                 if (next instanceof PicardAlignment && passLocFilter(next)) {
                     nextAlignment = (PicardAlignment) next;
+                } else if (next instanceof ColumnarAlignmentStore.ColumnarAlignment && passLocFilter(next)) {
+                    SAMRecord record = ((ColumnarAlignmentStore.ColumnarAlignment) next).toSAMRecord(header);
+                    nextAlignment = new PicardAlignment(record);
                 }
             }
         }
@@ -255,7 +269,7 @@ public class SAMWriter {
 
         Range range = new Range(sequence, start, end);
         Iterator<Alignment> iter = dataManager.getLoadedInterval(range).getAlignmentIterator();
-        Iterator<PicardAlignment> samIter = new SamAlignmentIterable(iter, sequence, start, end);
+        Iterator<PicardAlignment> samIter = new SamAlignmentIterable(iter, sequence, start, end, fileHeader);
 
         SAMWriter writer = new SAMWriter(fileHeader);
         return writer.writeToFile(outFile, samIter, true);
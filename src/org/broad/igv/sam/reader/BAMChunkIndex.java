@@ -0,0 +1,169 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.sam.reader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * Minimal reader for BAM index (.bai) files.  Resolves a query region to the list of BGZF chunks, as virtual
+ * file offset pairs, that must be read.  Used by {@link ParallelBAMIterator},  which reads the BAM file directly
+ * rather than through htsjdk.
+ */
+public class BAMChunkIndex {
+
+    private static final int MAX_BINS = 37450;      // bin id of the metadata pseudo-bin
+    private static final int LINEAR_SHIFT = 14;
+
+    private final List<ReferenceIndex> references;
+
+    public BAMChunkIndex(File indexFile) throws IOException {
+
+        FileInputStream fis = new FileInputStream(indexFile);
+        ByteBuffer buffer;
+        try {
+            FileChannel channel = fis.getChannel();
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) ;
+            buffer.flip();
+        } finally {
+            fis.close();
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        byte[] magic = new byte[4];
+        buffer.get(magic);
+        if (magic[0] != 'B' || magic[1] != 'A' || magic[2] != 'I' || magic[3] != 1) {
+            throw new IOException("Not a BAM index: " + indexFile.getAbsolutePath());
+        }
+
+        int nRef = buffer.getInt();
+        references = new ArrayList<ReferenceIndex>(nRef);
+        for (int i = 0; i < nRef; i++) {
+            ReferenceIndex ref = new ReferenceIndex();
+            int nBin = buffer.getInt();
+            for (int b = 0; b < nBin; b++) {
+                int bin = buffer.getInt();
+                int nChunk = buffer.getInt();
+                long[] chunks = new long[2 * nChunk];
+                for (int c = 0; c < chunks.length; c++) {
+                    chunks[c] = buffer.getLong();
+                }
+                if (bin != MAX_BINS) {
+                    ref.bins.put(bin, chunks);
+                }
+            }
+            int nIntv = buffer.getInt();
+            ref.linearIndex = new long[nIntv];
+            for (int l = 0; l < nIntv; l++) {
+                ref.linearIndex[l] = buffer.getLong();
+            }
+            references.add(ref);
+        }
+    }
+
+    /**
+     * Return the chunks overlapping a region,  sorted and merged.
+     *
+     * @param refIndex index of the sequence in the BAM header
+     * @param start    1-based start, inclusive
+     * @param end      1-based end, inclusive
+     * @return list of {start, end} virtual file offsets
+     */
+    public List<long[]> getChunks(int refIndex, int start, int end) {
+
+        List<long[]> chunks = new ArrayList<long[]>();
+        if (refIndex < 0 || refIndex >= references.size()) {
+            return chunks;
+        }
+        ReferenceIndex ref = references.get(refIndex);
+
+        int beg = Math.max(0, start - 1);
+        int regionEnd = Math.min(end, 1 << 29);
+        if (regionEnd <= beg) {
+            return chunks;
+        }
+
+        long minOffset = 0;
+        if (ref.linearIndex.length > 0) {
+            minOffset = ref.linearIndex[Math.min(beg >> LINEAR_SHIFT, ref.linearIndex.length - 1)];
+        }
+
+        for (int bin : regionToBins(beg, regionEnd)) {
+            long[] binChunks = ref.bins.get(bin);
+            if (binChunks == null) continue;
+            for (int c = 0; c < binChunks.length; c += 2) {
+                if (binChunks[c + 1] > minOffset) {
+                    chunks.add(new long[]{binChunks[c], binChunks[c + 1]});
+                }
+            }
+        }
+
+        Collections.sort(chunks, new Comparator<long[]>() {
+            public int compare(long[] c1, long[] c2) {
+                return c1[0] < c2[0] ? -1 : (c1[0] == c2[0] ? 0 : 1);
+            }
+        });
+
+        // Merge chunks that overlap or share a BGZF block
+        List<long[]> merged = new ArrayList<long[]>(chunks.size());
+        long[] last = null;
+        for (long[] chunk : chunks) {
+            if (last != null && (chunk[0] >>> 16) <= (last[1] >>> 16)) {
+                last[1] = Math.max(last[1], chunk[1]);
+            } else {
+                last = chunk;
+                merged.add(chunk);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Bins that may contain features overlapping [beg, end),  per the SAM specification.
+     */
+    static List<Integer> regionToBins(int beg, int end) {
+        List<Integer> bins = new ArrayList<Integer>();
+        --end;
+        bins.add(0);
+        for (int k = 1 + (beg >> 26); k <= 1 + (end >> 26); ++k) bins.add(k);
+        for (int k = 9 + (beg >> 23); k <= 9 + (end >> 23); ++k) bins.add(k);
+        for (int k = 73 + (beg >> 20); k <= 73 + (end >> 20); ++k) bins.add(k);
+        for (int k = 585 + (beg >> 17); k <= 585 + (end >> 17); ++k) bins.add(k);
+        for (int k = 4681 + (beg >> 14); k <= 4681 + (end >> 14); ++k) bins.add(k);
+        return bins;
+    }
+
+    private static class ReferenceIndex {
+        Map<Integer, long[]> bins = new HashMap<Integer, long[]>();
+        long[] linearIndex;
+    }
+}
@@ -36,6 +36,7 @@ import htsjdk.samtools.SAMRecordIterator;
 import htsjdk.samtools.SAMSequenceRecord;
 import htsjdk.samtools.util.CloseableIterator;
 import org.apache.log4j.Logger;
+import org.broad.igv.PreferenceManager;
 import org.broad.igv.sam.EmptyAlignmentIterator;
 import org.broad.igv.sam.PicardAlignment;
 import org.broad.igv.ui.util.MessageUtils;
@@ -55,9 +56,22 @@ public class BAMFileReader implements AlignmentReader<PicardAlignment> {
     SAMFileReader reader;
     SAMFileHeader header;
 
+    private File bamFile;
+    private File indexFile;
+    private BAMChunkIndex chunkIndex;
+    private boolean chunkIndexFailed = false;
+
+    /**
+     * If true queries and iteration use {@link ParallelBAMIterator},  which inflates and decodes on a thread pool
+     */
+    private boolean parallelDecode;
+
     public BAMFileReader(File bamFile) {
+        this.bamFile = bamFile;
+        this.parallelDecode = Runtime.getRuntime().availableProcessors() > 1 &&
+                PreferenceManager.getInstance().getAsBoolean(PreferenceManager.SAM_PARALLEL_DECODE);
         try {
-            File indexFile = findIndexFile(bamFile);
+            indexFile = findIndexFile(bamFile);
             reader = new SAMFileReader(bamFile, indexFile);
             reader.setValidationStringency(ValidationStringency.SILENT);
             loadHeader();
@@ -106,7 +120,21 @@ public class BAMFileReader implements AlignmentReader<PicardAlignment> {
         return reader.hasIndex();
     }
 
+    public void setParallelDecode(boolean parallelDecode) {
+        this.parallelDecode = parallelDecode;
+    }
+
     public CloseableIterator<PicardAlignment> query(String sequence, int start, int end, boolean contained) {
+
+        if (parallelDecode && header != null) {
+            BAMChunkIndex index = getChunkIndex();
+            int refIndex = header.getSequenceIndex(sequence);
+            if (index != null && refIndex >= 0) {
+                return new ParallelBAMIterator(bamFile, header, index.getChunks(refIndex, start + 1, end),
+                        refIndex, start + 1, end, contained);
+            }
+        }
+
         SAMRecordIterator query = null;
         try {
             query = reader.query(sequence, start + 1, end, contained);
@@ -121,9 +149,31 @@ public class BAMFileReader implements AlignmentReader<PicardAlignment> {
     }
 
     public CloseableIterator<PicardAlignment> iterator() {
+        if (parallelDecode && header != null) {
+            try {
+                return ParallelBAMIterator.iterate(bamFile, header);
+            } catch (IOException e) {
+                log.error("Error opening " + bamFile + " for parallel decoding", e);
+            }
+        }
         return new WrappedIterator(reader.iterator());
     }
 
+    /**
+     * @return the chunk index for parallel queries,  loaded on first use.  Null if there is no usable index.
+     */
+    private synchronized BAMChunkIndex getChunkIndex() {
+        if (chunkIndex == null && indexFile != null && !chunkIndexFailed) {
+            try {
+                chunkIndex = new BAMChunkIndex(indexFile);
+            } catch (Exception e) {
+                log.error("Error loading index " + indexFile + ",  parallel decoding disabled", e);
+                chunkIndexFailed = true;
+            }
+        }
+        return chunkIndex;
+    }
+
     /**
      * Look for BAM index file according to standard naming convention.  Slightly modified version of Picard
      * function of the same name.
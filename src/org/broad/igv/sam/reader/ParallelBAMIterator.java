@@ -0,0 +1,559 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.sam.reader;
+
+import htsjdk.samtools.BAMRecordCodec;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.ValidationStringency;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.CloseableIterator;
+import org.apache.log4j.Logger;
+import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.feature.genome.GenomeManager;
+import org.broad.igv.sam.PicardAlignment;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Pipelined iterator over the records of a BAM file.
+ * <p/>
+ * A reader thread reads compressed BGZF blocks for a list of chunks and hands them, in groups, to a shared
+ * worker pool for inflation.  A framer thread collects the inflated data in file order, splits it into records,
+ * and submits batches of records back to the pool to be decoded into {@link PicardAlignment}s.  Decoded batches
+ * are consumed in file order,  so iteration order is the same as a sequential read.  Both hand-offs are bounded
+ * queues, which limits the amount of data in flight.
+ */
+public class ParallelBAMIterator implements CloseableIterator<PicardAlignment> {
+
+    private static Logger log = Logger.getLogger(ParallelBAMIterator.class);
+
+    static final int N_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private static final ExecutorService decodeExecutor = Executors.newFixedThreadPool(N_THREADS, new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "bam-decode-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private static final int BLOCKS_PER_TASK = 16;        // up to 1 MB inflated
+    private static final int RECORDS_PER_BATCH = 2000;
+    private static final int QUEUE_CAPACITY = 2 * N_THREADS;
+
+    private final File bamFile;
+    private final SAMFileHeader header;
+    private final List<long[]> chunks;
+    private final int refIndex;
+    private final int start;
+    private final int end;
+    private final boolean contained;
+
+    private final BlockingQueue<Future<Piece>> pieces = new ArrayBlockingQueue<Future<Piece>>(QUEUE_CAPACITY);
+    private final BlockingQueue<Future<List<PicardAlignment>>> batches =
+            new ArrayBlockingQueue<Future<List<PicardAlignment>>>(QUEUE_CAPACITY);
+    private final Future<Piece> endOfPieces = completed(null);
+    private final Future<List<PicardAlignment>> endOfBatches = completed(null);
+
+    private final Thread readerThread;
+    private final Thread framerThread;
+    private volatile boolean closed = false;
+
+    private Iterator<PicardAlignment> current;
+    private boolean done = false;
+
+    /**
+     * Iterate over records in the given chunks overlapping (or contained in) a region
+     *
+     * @param chunks   {start, end} virtual file offsets, in file order
+     * @param refIndex index of the query sequence,  or -1 to return all records in the chunks
+     * @param start    1-based start of the region, inclusive
+     * @param end      1-based end of the region, inclusive
+     */
+    public ParallelBAMIterator(File bamFile, SAMFileHeader header, List<long[]> chunks,
+                               int refIndex, int start, int end, boolean contained) {
+        this.bamFile = bamFile;
+        this.header = header;
+        this.chunks = chunks;
+        this.refIndex = refIndex;
+        this.start = start;
+        this.end = end;
+        this.contained = contained;
+
+        // Chromosome aliases are interned lazily in an unsynchronized map,  do it here rather than on the workers
+        Genome genome = GenomeManager.getInstance().getCurrentGenome();
+        if (genome != null) {
+            for (SAMSequenceRecord seq : header.getSequenceDictionary().getSequences()) {
+                genome.getCanonicalChrName(seq.getSequenceName());
+            }
+            genome.getCanonicalChrName(SAMRecord.NO_ALIGNMENT_REFERENCE_NAME);
+        }
+
+        readerThread = new Thread(new Runnable() {
+            public void run() {
+                readBlocks();
+            }
+        }, "bam-block-reader");
+        framerThread = new Thread(new Runnable() {
+            public void run() {
+                frameRecords();
+            }
+        }, "bam-record-framer");
+        readerThread.setDaemon(true);
+        framerThread.setDaemon(true);
+        readerThread.start();
+        framerThread.start();
+    }
+
+    /**
+     * Iterate over all records in the file,  in file order.
+     */
+    public static ParallelBAMIterator iterate(File bamFile, SAMFileHeader header) throws IOException {
+        long firstRecord = getFirstRecordOffset(bamFile);
+        List<long[]> chunks = new ArrayList<long[]>(1);
+        chunks.add(new long[]{firstRecord, Long.MAX_VALUE});
+        return new ParallelBAMIterator(bamFile, header, chunks, -1, 0, Integer.MAX_VALUE, false);
+    }
+
+    /**
+     * @return the virtual file offset of the first record, following the header
+     */
+    static long getFirstRecordOffset(File bamFile) throws IOException {
+        BlockCompressedInputStream is = new BlockCompressedInputStream(bamFile);
+        try {
+            DataInputStream dis = new DataInputStream(is);
+            byte[] magic = new byte[4];
+            dis.readFully(magic);
+            if (magic[0] != 'B' || magic[1] != 'A' || magic[2] != 'M' || magic[3] != 1) {
+                throw new IOException("Not a BAM file: " + bamFile.getAbsolutePath());
+            }
+            skipFully(dis, readInt(dis));                 // header text
+            int nRef = readInt(dis);
+            for (int i = 0; i < nRef; i++) {
+                skipFully(dis, readInt(dis) + 4);         // name and length
+            }
+            return is.getFilePointer();
+        } finally {
+            is.close();
+        }
+    }
+
+    private static int readInt(DataInputStream dis) throws IOException {
+        int b0 = dis.readUnsignedByte();
+        int b1 = dis.readUnsignedByte();
+        int b2 = dis.readUnsignedByte();
+        int b3 = dis.readUnsignedByte();
+        return b0 | (b1 << 8) | (b2 << 16) | (b3 << 24);
+    }
+
+    private static void skipFully(DataInputStream dis, int n) throws IOException {
+        dis.readFully(new byte[n]);
+    }
+
+    public boolean hasNext() {
+        while (!done && (current == null || !current.hasNext())) {
+            Future<List<PicardAlignment>> next = take(batches);
+            if (next == endOfBatches) {
+                done = true;
+            } else {
+                current = get(next).iterator();
+            }
+        }
+        return !done;
+    }
+
+    public PicardAlignment next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException("Remove not supported");
+    }
+
+    public void close() {
+        if (closed) return;
+        closed = true;
+        done = true;
+        readerThread.interrupt();
+        framerThread.interrupt();
+        for (Future<Piece> f : pieces) f.cancel(false);
+        for (Future<List<PicardAlignment>> f : batches) f.cancel(false);
+        pieces.clear();
+        batches.clear();
+    }
+
+    private <T> T take(BlockingQueue<T> queue) {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            close();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static <T> T get(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private static <T> void putQuietly(BlockingQueue<T> queue, T value) {
+        try {
+            queue.put(value);
+        } catch (InterruptedException e) {
+            // Iterator closed
+        }
+    }
+
+    private static <T> Future<T> completed(final T value) {
+        FutureTask<T> task = new FutureTask<T>(new Callable<T>() {
+            public T call() {
+                return value;
+            }
+        });
+        task.run();
+        return task;
+    }
+
+    private static <T> Future<T> failed(final Throwable t) {
+        FutureTask<T> task = new FutureTask<T>(new Callable<T>() {
+            public T call() throws Exception {
+                if (t instanceof Exception) throw (Exception) t;
+                throw new ExecutionException(t);
+            }
+        });
+        task.run();
+        return task;
+    }
+
+    /**
+     * Reader stage.  Reads the BGZF blocks covering each chunk and submits them for inflation.
+     */
+    private void readBlocks() {
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(bamFile, "r");
+            for (long[] chunk : chunks) {
+                long blockAddress = chunk[0] >>> 16;
+                long endAddress = chunk[1] >>> 16;
+                int endOffset = (int) (chunk[1] & 0xFFFF);
+                int skip = (int) (chunk[0] & 0xFFFF);
+                boolean segmentStart = true;
+
+                file.seek(blockAddress);
+                List<byte[]> blocks = new ArrayList<byte[]>(BLOCKS_PER_TASK);
+                while (!closed && (blockAddress < endAddress || (blockAddress == endAddress && endOffset > 0))) {
+                    byte[] block = readBlock(file);
+                    if (block == null) {
+                        break;
+                    }
+                    boolean last = blockAddress == endAddress;
+                    blocks.add(block);
+                    blockAddress += block.length;
+                    if (last || blocks.size() == BLOCKS_PER_TASK) {
+                        pieces.put(decodeExecutor.submit(new InflateTask(blocks, segmentStart ? skip : 0,
+                                last ? endOffset : -1, segmentStart)));
+                        segmentStart = false;
+                        blocks = new ArrayList<byte[]>(BLOCKS_PER_TASK);
+                    }
+                }
+                if (!blocks.isEmpty()) {
+                    pieces.put(decodeExecutor.submit(new InflateTask(blocks, segmentStart ? skip : 0, -1, segmentStart)));
+                }
+                if (closed) return;
+            }
+            pieces.put(endOfPieces);
+        } catch (InterruptedException e) {
+            // Iterator closed
+        } catch (Exception e) {
+            putQuietly(pieces, ParallelBAMIterator.<Piece>failed(e));
+        } finally {
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException e) {
+                    log.error("Error closing " + bamFile, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read one BGZF block,  header included.
+     *
+     * @return the block, or null at end of file
+     */
+    static byte[] readBlock(RandomAccessFile file) throws IOException {
+        byte[] header = new byte[12];
+        int n = file.read(header);
+        if (n <= 0) {
+            return null;
+        }
+        if (n < header.length) {
+            file.readFully(header, n, header.length - n);
+        }
+        if ((header[0] & 0xFF) != 31 || (header[1] & 0xFF) != 139) {
+            throw new IOException("Invalid BGZF block header");
+        }
+        int xlen = (header[10] & 0xFF) | ((header[11] & 0xFF) << 8);
+        byte[] extra = new byte[xlen];
+        file.readFully(extra);
+
+        int blockSize = -1;
+        for (int i = 0; i + 4 <= xlen; ) {
+            int slen = (extra[i + 2] & 0xFF) | ((extra[i + 3] & 0xFF) << 8);
+            if (extra[i] == 'B' && extra[i + 1] == 'C' && slen == 2) {
+                blockSize = ((extra[i + 4] & 0xFF) | ((extra[i + 5] & 0xFF) << 8)) + 1;
+                break;
+            }
+            i += 4 + slen;
+        }
+        if (blockSize < 0) {
+            throw new IOException("Missing BGZF block size");
+        }
+
+        byte[] block = new byte[blockSize];
+        System.arraycopy(header, 0, block, 0, header.length);
+        System.arraycopy(extra, 0, block, header.length, xlen);
+        file.readFully(block, header.length + xlen, blockSize - header.length - xlen);
+        return block;
+    }
+
+    /**
+     * Framer stage.  Splits the inflated stream into records and submits batches for decoding.
+     */
+    private void frameRecords() {
+        byte[] pending = new byte[0];
+        RecordBatch batch = new RecordBatch();
+        try {
+            while (!closed) {
+                Future<Piece> next = pieces.take();
+                if (next == endOfPieces) {
+                    break;
+                }
+                Piece piece = get(next);
+
+                byte[] data;
+                if (piece.segmentStart || pending.length == 0) {
+                    data = piece.data;
+                } else {
+                    data = new byte[pending.length + piece.data.length];
+                    System.arraycopy(pending, 0, data, 0, pending.length);
+                    System.arraycopy(piece.data, 0, data, pending.length, piece.data.length);
+                }
+
+                int pos = 0;
+                while (data.length - pos >= 4) {
+                    int recordLength = 4 + ((data[pos] & 0xFF) | ((data[pos + 1] & 0xFF) << 8) |
+                            ((data[pos + 2] & 0xFF) << 16) | ((data[pos + 3] & 0xFF) << 24));
+                    if (data.length - pos < recordLength) {
+                        break;
+                    }
+                    batch.add(data, pos, recordLength);
+                    pos += recordLength;
+                    if (batch.count == RECORDS_PER_BATCH) {
+                        batches.put(decodeExecutor.submit(new DecodeTask(batch)));
+                        batch = new RecordBatch();
+                    }
+                }
+                pending = Arrays.copyOfRange(data, pos, data.length);
+            }
+            if (closed) return;
+            if (batch.count > 0) {
+                batches.put(decodeExecutor.submit(new DecodeTask(batch)));
+            }
+            batches.put(endOfBatches);
+        } catch (InterruptedException e) {
+            // Iterator closed
+        } catch (Exception e) {
+            putQuietly(batches, ParallelBAMIterator.<List<PicardAlignment>>failed(e));
+        }
+    }
+
+    private boolean accept(SAMRecord record) {
+        if (refIndex < 0) {
+            return true;
+        }
+        if (record.getReferenceIndex() != refIndex) {
+            return false;
+        }
+        int alignmentStart = record.getAlignmentStart();
+        int alignmentEnd = record.getReadUnmappedFlag() ? alignmentStart : record.getAlignmentEnd();
+        return contained ?
+                alignmentStart >= start && alignmentEnd <= end :
+                alignmentStart <= end && alignmentEnd >= start;
+    }
+
+    /**
+     * Inflated data for a run of blocks within one chunk
+     */
+    private static class Piece {
+        final byte[] data;
+        final boolean segmentStart;
+
+        Piece(byte[] data, boolean segmentStart) {
+            this.data = data;
+            this.segmentStart = segmentStart;
+        }
+    }
+
+    private static class InflateTask implements Callable<Piece> {
+
+        private final List<byte[]> blocks;
+        private final int skip;        // offset of the first record in the first block
+        private final int limit;       // end offset in the last block,  or -1 for the whole block
+        private final boolean segmentStart;
+
+        InflateTask(List<byte[]> blocks, int skip, int limit, boolean segmentStart) {
+            this.blocks = blocks;
+            this.skip = skip;
+            this.limit = limit;
+            this.segmentStart = segmentStart;
+        }
+
+        public Piece call() throws IOException, DataFormatException {
+
+            int n = blocks.size();
+            int[] from = new int[n];
+            int[] to = new int[n];
+            int total = 0;
+            for (int i = 0; i < n; i++) {
+                int inflatedSize = getInflatedSize(blocks.get(i));
+                from[i] = i == 0 ? Math.min(skip, inflatedSize) : 0;
+                to[i] = i == n - 1 && limit >= 0 ? Math.min(limit, inflatedSize) : inflatedSize;
+                to[i] = Math.max(to[i], from[i]);
+                total += to[i] - from[i];
+            }
+
+            byte[] data = new byte[total];
+            byte[] buffer = null;
+            Inflater inflater = new Inflater(true);
+            try {
+                int pos = 0;
+                for (int i = 0; i < n; i++) {
+                    byte[] block = blocks.get(i);
+                    int inflatedSize = getInflatedSize(block);
+                    int xlen = (block[10] & 0xFF) | ((block[11] & 0xFF) << 8);
+                    int cdataOffset = 12 + xlen;
+                    inflater.reset();
+                    inflater.setInput(block, cdataOffset, block.length - cdataOffset - 8);
+                    if (from[i] == 0 && to[i] == inflatedSize) {
+                        inflate(inflater, data, pos, inflatedSize);
+                    } else {
+                        if (buffer == null || buffer.length < inflatedSize) buffer = new byte[inflatedSize];
+                        inflate(inflater, buffer, 0, inflatedSize);
+                        System.arraycopy(buffer, from[i], data, pos, to[i] - from[i]);
+                    }
+                    pos += to[i] - from[i];
+                }
+            } finally {
+                inflater.end();
+            }
+            return new Piece(data, segmentStart);
+        }
+
+        /**
+         * @return the ISIZE field from the block trailer
+         */
+        private static int getInflatedSize(byte[] block) {
+            int n = block.length;
+            return (block[n - 4] & 0xFF) | ((block[n - 3] & 0xFF) << 8) | ((block[n - 2] & 0xFF) << 16) |
+                    ((block[n - 1] & 0xFF) << 24);
+        }
+
+        private static void inflate(Inflater inflater, byte[] out, int offset, int length)
+                throws DataFormatException, IOException {
+            int count = 0;
+            while (count < length) {
+                int n = inflater.inflate(out, offset + count, length - count);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary() || inflater.finished())) {
+                    throw new IOException("Truncated BGZF block");
+                }
+                count += n;
+            }
+        }
+    }
+
+    /**
+     * Records framed for decoding, each with its 4 byte length prefix
+     */
+    private static class RecordBatch {
+        byte[] data = new byte[RECORDS_PER_BATCH * 256];
+        int length = 0;
+        int count = 0;
+
+        void add(byte[] src, int offset, int n) {
+            if (length + n > data.length) {
+                data = Arrays.copyOf(data, Math.max(2 * data.length, length + n));
+            }
+            System.arraycopy(src, offset, data, length, n);
+            length += n;
+            count++;
+        }
+    }
+
+    private class DecodeTask implements Callable<List<PicardAlignment>> {
+
+        private final RecordBatch batch;
+
+        DecodeTask(RecordBatch batch) {
+            this.batch = batch;
+        }
+
+        public List<PicardAlignment> call() {
+            BAMRecordCodec codec = new BAMRecordCodec(header);
+            codec.setInputStream(new ByteArrayInputStream(batch.data, 0, batch.length));
+            List<PicardAlignment> alignments = new ArrayList<PicardAlignment>(batch.count);
+            SAMRecord record;
+            while (!closed && (record = codec.decode()) != null) {
+                record.setValidationStringency(ValidationStringency.SILENT);
+                if (accept(record)) {
+                    alignments.add(new PicardAlignment(record));
+                }
+            }
+            return alignments;
+        }
+    }
+}
@@ -33,6 +33,7 @@ import org.apache.commons.math.stat.StatUtils;
 import org.apache.log4j.Logger;
 import org.broad.igv.track.WindowFunction;
 import org.broad.igv.util.collections.DownsampledDoubleArrayList;
+import org.broad.igv.util.collections.QuantileSketch;
 
 import java.util.HashSet;
 import java.util.Set;
@@ -58,6 +59,7 @@ public class Accumulator {
     float value = Float.NaN;
 
     DownsampledDoubleArrayList valueList;  // List used to accumulate values for percentile calculations
+    QuantileSketch sketch;                 // Fixed memory alternative to valueList
 
 
     // Optional -- keep some representative data and probe names for popup text
@@ -65,20 +67,34 @@ public class Accumulator {
     float[] repData;
     String[] repProbes;
 
-    public Accumulator(WindowFunction windowFunction, int nRepValues) {
-        this(windowFunction);
-        if (nRepValues > 0) {
-            this.nRepValues = nRepValues;
-            this.repData = new float[nRepValues];
-            this.repProbes = new String[nRepValues];
-        }
+    public Accumulator(WindowFunction windowFunction) {
+        this(windowFunction, 0, 0);
     }
 
+    public Accumulator(WindowFunction windowFunction, int nRepValues) {
+        this(windowFunction, nRepValues, 0);
+    }
 
-    public Accumulator(WindowFunction windowFunction) {
+    /**
+     * @param windowFunction
+     * @param nRepValues     number of representative values to keep for popup text
+     * @param quantileError  if > 0 percentile window functions are estimated with a fixed memory sketch with this
+     *                       approximate rank error,  otherwise values are buffered (and downsampled past
+     *                       MAX_VALUE_COUNT)
+     */
+    public Accumulator(WindowFunction windowFunction, int nRepValues, double quantileError) {
         this.windowFunction = windowFunction;
         if (PERCENTILE_WINDOW_FUNCTIONS.contains(windowFunction)) {
-            valueList = new DownsampledDoubleArrayList(100, MAX_VALUE_COUNT);
+            if (quantileError > 0) {
+                sketch = QuantileSketch.forRankError(quantileError);
+            } else {
+                valueList = new DownsampledDoubleArrayList(100, MAX_VALUE_COUNT);
+            }
+        }
+        if (nRepValues > 0) {
+            this.nRepValues = nRepValues;
+            this.repData = new float[nRepValues];
+            this.repProbes = new String[nRepValues];
         }
     }
 
@@ -113,7 +129,9 @@ public class Accumulator {
                     sum += nBases * v;
                     break;
                 default:
-                    if (valueList != null) {
+                    if (sketch != null) {
+                        sketch.add(v);
+                    } else if (valueList != null) {
                         valueList.add(v);
                     }
             }
@@ -131,6 +149,9 @@ public class Accumulator {
 
         if (windowFunction == WindowFunction.mean) {
             value = Float.isNaN(sum) ? Float.NaN : sum / basesCovered;
+        } else if (sketch != null) {
+            double p = this.getPercentile(windowFunction);
+            value = p > 0 ? (float) sketch.getQuantile(p / 100) : Float.NaN;
         } else if (valueList != null) {
             if (valueList.size() == 0) {
                 value = Float.NaN;
@@ -149,6 +170,7 @@ public class Accumulator {
         }
 
         valueList = null;
+        sketch = null;
         isFinished = true;
 
     }
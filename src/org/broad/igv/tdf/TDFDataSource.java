@@ -36,6 +36,7 @@ import org.broad.igv.data.BasicScore;
 import org.broad.igv.data.CompositeScore;
 import org.broad.igv.data.CoverageDataSource;
 import org.broad.igv.data.NamedScore;
+import org.broad.igv.data.SummaryTileDiskCache;
 import org.broad.igv.feature.Chromosome;
 import org.broad.igv.feature.LocusScore;
 import org.broad.igv.feature.genome.Genome;
@@ -67,6 +68,9 @@ public class TDFDataSource implements CoverageDataSource {
     float normalizationFactor = 1.0f;
     private Map<String, String> chrNameMap = new HashMap();
 
+    // Identity of the file for the persistent summary cache,  "" if it cannot be determined
+    private String summaryCacheId;
+
 
     public TDFDataSource(TDFReader reader, int trackNumber, String trackName, Genome genome) {
 
@@ -170,7 +174,17 @@ public class TDFDataSource implements CoverageDataSource {
             int startLocation = (int) (tileNumber * tileWidth);
             int endLocation = (int) ((tileNumber + 1) * tileWidth);
 
-            scores = getSummaryScores(querySeq, startLocation, endLocation, zoom);
+            // Summaries computed from raw data are also persisted across sessions
+            SummaryTileDiskCache diskCache = zoom > maxPrecomputedZoom ? SummaryTileDiskCache.getInstance() : null;
+            String diskKey = diskCache == null ? null : getDiskCacheKey(querySeq, zoom, tileNumber, tileWidth);
+            scores = diskKey == null ? null : diskCache.get(diskKey, windowFunction);
+
+            if (scores == null) {
+                scores = getSummaryScores(querySeq, startLocation, endLocation, zoom);
+                if (diskKey != null) {
+                    diskCache.put(diskKey, scores);
+                }
+            }
 
             summaryScoreCache.put(key, scores);
         }
@@ -179,6 +193,20 @@ public class TDFDataSource implements CoverageDataSource {
 
     }
 
+    private synchronized String getDiskCacheKey(String querySeq, int zoom, int tileNumber, double tileWidth) {
+        if (summaryCacheId == null) {
+            String id = SummaryTileDiskCache.getFileIdentity(getPath());
+            summaryCacheId = id == null ? "" : id;
+        }
+        if (summaryCacheId.length() == 0) {
+            return null;
+        }
+        float quantileError = PreferenceManager.getInstance().getQuantileSketchError();
+        return summaryCacheId + "|" + trackNumber + "|" + (genome == null ? "" : genome.getId()) + "|" +
+                querySeq + "|" + tileWidth + "|" + zoom + "|" +
+                tileNumber + "|" + windowFunction + "|" + normalizationFactor + "|" + quantileError;
+    }
+
     protected List<LocusScore> getSummaryScores(String querySeq, int startLocation, int endLocation, int zoom) {
 
         List<LocusScore> scores;
@@ -281,7 +309,8 @@ public class TDFDataSource implements CoverageDataSource {
                 } else {
 
 
-                    Accumulator accumulator = new Accumulator(windowFunction, 5);
+                    double quantileError = PreferenceManager.getInstance().getQuantileSketchError();
+                    Accumulator accumulator = new Accumulator(windowFunction, 5, quantileError);
                     int accumulatedStart = -1;
                     int accumulatedEnd = -1;
                     int lastEndBin = 0;
@@ -321,7 +350,7 @@ public class TDFDataSource implements CoverageDataSource {
                                 if (endBin > lastEndBin || endBin > startBin) {
                                     if (accumulator.hasData()) {
                                         scores.add(getCompositeScore(accumulator, accumulatedStart, accumulatedEnd));
-                                        accumulator = new Accumulator(windowFunction, 5);
+                                        accumulator = new Accumulator(windowFunction, 5, quantileError);
                                     }
                                 }
 
@@ -147,21 +147,28 @@ public class TDFDataset extends TDFEntity {
     }
 
     // TDFTile computeTile(TDFDataset ds, int t, List<LocusScore> scores, String chr)
-    synchronized TDFTile getTile(int t) {
+    TDFTile getTile(int t) {
         String key = getName() + "_" + t;
 
-        TDFTile tile = null;
-        if (!cache.containsKey(key)) {
-            tile = reader.readTile(this, t);
+        synchronized (cache) {
+            if (cache.containsKey(key)) {
+                return cache.get(key);
+            }
+        }
+
+        // Read outside the lock so tiles of this dataset can be loaded concurrently.  Two threads might
+        // occasionally read the same tile,  which is harmless.
+        TDFTile tile = reader.readTile(this, t);
+        synchronized (cache) {
             cache.put(key, tile);
-        } else {
-            tile = cache.get(key);
         }
         return tile;
     }
 
     public void clearCache() {
-        cache.clear();
+        synchronized (cache) {
+            cache.clear();
+        }
     }
 
 
@@ -29,7 +29,6 @@
  */
 package org.broad.igv.tdf;
 
-import htsjdk.samtools.seekablestream.SeekableStream;
 import org.apache.log4j.Logger;
 import org.broad.igv.Globals;
 import org.broad.igv.exceptions.DataLoadException;
@@ -40,7 +39,7 @@ import org.broad.igv.util.CompressionUtils;
 import org.broad.igv.util.ResourceLocator;
 import org.broad.igv.util.StringUtils;
 import org.broad.igv.util.collections.LRUCache;
-import org.broad.igv.util.stream.IGVSeekableStreamFactory;
+import org.broad.igv.util.stream.PositionalReader;
 
 import java.io.IOException;
 import java.nio.BufferUnderflowException;
@@ -56,7 +55,11 @@ public class TDFReader {
     static final Logger log = Logger.getLogger(TDFReader.class);
     public static final int GZIP_FLAG = 0x1;
 
-    private SeekableStream seekableStream = null;
+    /**
+     * Reader for the underlying file.  Reads are thread safe and not serialized, so tiles for tracks sharing a
+     * file can be loaded concurrently.
+     */
+    private PositionalReader positionalReader = null;
     private int version;
     private Map<String, IndexEntry> datasetIndex;
     private Map<String, IndexEntry> groupIndex;
@@ -75,7 +78,16 @@ public class TDFReader {
     boolean compressed = false;
 
     Set<String> chrNames;
-    private final CompressionUtils compressionUtils;
+
+    /**
+     * Tile decompression is done outside of any lock,  each thread gets its own (synchronized) CompressionUtils.
+     */
+    private static final ThreadLocal<CompressionUtils> compressionUtils = new ThreadLocal<CompressionUtils>() {
+        @Override
+        protected CompressionUtils initialValue() {
+            return new CompressionUtils();
+        }
+    };
 
     //private String path;
 
@@ -92,7 +104,7 @@ public class TDFReader {
         this.locator = locator;
         try {
             log.debug("Getting stream");
-            seekableStream = IGVSeekableStreamFactory.getInstance().getStreamFor(locator.getPath());
+            positionalReader = PositionalReader.getReader(locator.getPath());
             log.debug("Reading header");
             readHeader();
             log.debug("Done reading header");
@@ -101,12 +113,11 @@ public class TDFReader {
             log.error("Error loading file: " + locator.getPath(), ex);
             throw new DataLoadException("Error loading file: " + ex.toString(), locator.getPath());
         }
-        compressionUtils = new CompressionUtils();
     }
 
     public void close() {
         try {
-            seekableStream.close();
+            positionalReader.close();
         } catch (IOException e) {
             log.error("Error closing reader for: " + getPath(), e);
         }
@@ -337,7 +348,7 @@ public class TDFReader {
             //readFully(buffer);
             byte[] buffer = readBytes(position, nBytes);
             if (compressed) {
-                buffer = compressionUtils.decompress(buffer);
+                buffer = compressionUtils.get().decompress(buffer);
 
             }
 
@@ -432,11 +443,8 @@ public class TDFReader {
     }
 
 
-    public synchronized byte[] readBytes(long position, int nBytes) throws IOException {
-        seekableStream.seek(position);
-        byte[] buffer = new byte[nBytes];
-        int read = seekableStream.read(buffer, 0, nBytes);
-        return buffer;
+    public byte[] readBytes(long position, int nBytes) throws IOException {
+        return positionalReader.readBytes(position, nBytes);
     }
 
     /**
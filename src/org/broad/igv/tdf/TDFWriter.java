@@ -66,7 +66,16 @@ public class TDFWriter {
     Map<String, IndexEntry> groupIndex = new LinkedHashMap();
     long indexPositionPosition;
     boolean compressed;
-    private final CompressionUtils compressionUtils;
+
+    /**
+     * Tiles may be encoded on multiple threads,  see {@link #encodeTile(TDFTile)}.  Compressor state is per thread.
+     */
+    private final ThreadLocal<CompressionUtils> compressionUtils = new ThreadLocal<CompressionUtils>() {
+        @Override
+        protected CompressionUtils initialValue() {
+            return new CompressionUtils();
+        }
+    };
 
     public TDFWriter(File f,
                      String genomeId,
@@ -101,8 +110,6 @@ public class TDFWriter {
             log.error("Error opening output stream to file: " + file, ex);
             throw new DataLoadException("Error creating file", "" + file);
         }
-
-        compressionUtils = new CompressionUtils();
     }
 
     private void writeHeader(String genomeId,
@@ -186,6 +193,17 @@ public class TDFWriter {
         }
     }
 
+    /**
+     * Close the underlying file without writing the index,  for a write that was abandoned.
+     */
+    public void abortFile() {
+        try {
+            fos.close();
+        } catch (IOException ex) {
+            log.error("Error closing file", ex);
+        }
+    }
+
     private void writeIndexPosition(long indexPosition, int nbytes) {
         try {
             RandomAccessFile raf = new RandomAccessFile(file, "rw");
@@ -238,6 +256,27 @@ public class TDFWriter {
     // Tile layout
 
     public void writeTile(String dsId, int tileNumber, TDFTile tile) throws IOException {
+        writeEncodedTile(dsId, tileNumber, encodeTile(tile));
+    }
+
+    /**
+     * Serialize a tile,  and compress it if this file is compressed.  Unlike the other methods of this class
+     * this can be called concurrently,  the result is written with {@link #writeEncodedTile(String, int, byte[])}.
+     */
+    public byte[] encodeTile(TDFTile tile) throws IOException {
+
+        // Write the tile contents to a byte buffer first,  so we can optionally gzip it
+        BufferedByteWriter buffer = new BufferedByteWriter();
+        tile.writeTo(buffer);
+
+        byte[] bytes = buffer.getBytes();
+        if (compressed) {
+            bytes = compressionUtils.get().compress(bytes);
+        }
+        return bytes;
+    }
+
+    public void writeEncodedTile(String dsId, int tileNumber, byte[] bytes) throws IOException {
 
         TDFDataset dataset = datasetCache.get(dsId);
         if (dataset == null) {
@@ -249,17 +288,6 @@ public class TDFWriter {
         if (tileNumber < dataset.tilePositions.length) {
             dataset.tilePositions[tileNumber] = pos;
 
-            // Write the tile contents to a byte buffer first,  so we can optionally gzip it
-
-
-            BufferedByteWriter buffer = new BufferedByteWriter();
-            tile.writeTo(buffer);
-
-            byte[] bytes = buffer.getBytes();
-            if (compressed) {
-                bytes = compressionUtils.compress(bytes);
-            }
-
             write(bytes);
             int nBytes = bytes.length;
 
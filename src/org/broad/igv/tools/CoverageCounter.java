@@ -25,6 +25,7 @@
 
 package org.broad.igv.tools;
 
+import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.util.CloseableIterator;
 import org.apache.log4j.Logger;
 import org.broad.igv.feature.Chromosome;
@@ -36,14 +37,20 @@ import org.broad.igv.sam.AlignmentBlock;
 import org.broad.igv.sam.ReadMate;
 import org.broad.igv.sam.reader.AlignmentReader;
 import org.broad.igv.sam.reader.AlignmentReaderFactory;
+import org.broad.igv.sam.reader.BAMFileReader;
 import org.broad.igv.tools.parsers.DataConsumer;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Class to compute coverage on an alignment or feature file.  This class is designed to be instantiated and executed
  * from a single thread.
+ * <p/>
+ * If more than one thread is requested (see {@link #setNumThreads(int)}) and the file is indexed, the genome is split
+ * into ranges which are counted concurrently into primitive window buffers.  Results are merged back in genomic
+ * order, so the consumer and wig output are identical to the single threaded engine.
  */
 public class CoverageCounter {
 
@@ -157,6 +164,22 @@ public class CoverageCounter {
     private final static Set<Byte> nucleotidesKeep = new HashSet<Byte>();
     private final static byte[] nucleotides = new byte[]{'A', 'C', 'G', 'T', 'N'};
 
+    /**
+     * Lookup table of base -> index into {@code nucleotides}, -1 for bases that are not counted.
+     */
+    private final static int[] nucleotideIndex = new int[256];
+
+    /**
+     * Number of threads used to count indexed files.  A value of 1 selects the single threaded engine.
+     */
+    private int numThreads = 1;
+
+    /**
+     * Target size, in ints, of the window buffer for each range counted by the multi-threaded engine.  This
+     * determines the size of the ranges the genome is divided into.
+     */
+    static int RANGE_BUFFER_SIZE = 4 * 1024 * 1024;
+
     /**
      * Whether to write wig data to standard out (stdout)
      */
@@ -166,6 +189,10 @@ public class CoverageCounter {
         for (byte b : nucleotides) {
             nucleotidesKeep.add(b);
         }
+        Arrays.fill(nucleotideIndex, -1);
+        for (int i = 0; i < nucleotides.length; i++) {
+            nucleotideIndex[nucleotides[i]] = i;
+        }
     }
 
     /**
@@ -213,6 +240,16 @@ public class CoverageCounter {
         this.postExtFactor = postExtFactor;
     }
 
+    /**
+     * Set the number of threads used for counting.  Values greater than 1 are only honored for indexed files,
+     * non-indexed files are always counted on the calling thread.
+     *
+     * @param numThreads
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+    }
+
     /**
      * Take additional optional command line arguments and parse them
      *
@@ -268,6 +305,37 @@ public class CoverageCounter {
     }
 
 
+    /**
+     * Return the strand an alignment should be counted on, or null if the alignment is filtered.
+     */
+    private Strand getCountStrand(Alignment alignment) {
+        if (!passFilter(alignment)) {
+            return null;
+        }
+        //Sort into the read strand or first-in-pair strand,
+        //depending on input flag. Note that this can
+        //be very unreliable depending on data
+        Strand strand;
+        if (firstInPair) {
+            strand = alignment.getFirstOfPairStrand();
+        } else if (secondInPair) {
+            strand = alignment.getSecondOfPairStrand();
+        } else {
+            strand = alignment.getReadStrand();
+        }
+        return strand.equals(Strand.NONE) ? null : strand;
+    }
+
+    /**
+     * Largest distance, in bp, that a counted position can precede the start of its alignment.  Windows more than
+     * this distance before the current alignment start can be closed.
+     */
+    private int getSortTolerance() {
+        int maxExtFactor = Math.max(extFactor, Math.max(preExtFactor, postExtFactor));
+        return (int) (windowSize * (Math.floor(maxExtFactor / windowSize) + 2));
+    }
+
+
     /**
      * Parse and "count" the alignment file.  The main method.
      * <p/>
@@ -277,9 +345,7 @@ public class CoverageCounter {
      */
     public synchronized void parse() throws IOException {
 
-        int maxExtFactor = Math.max(extFactor, Math.max(preExtFactor, postExtFactor));
-
-        int tolerance = (int) (windowSize * (Math.floor(maxExtFactor / windowSize) + 2));
+        int tolerance = getSortTolerance();
         consumer.setSortTolerance(tolerance);
 
         AlignmentReader reader = null;
@@ -295,33 +361,30 @@ public class CoverageCounter {
 
         try {
 
-            if (queryInterval == null) {
-                reader = AlignmentReaderFactory.getReader(alignmentFile, false);
-                iter = reader.iterator();
+            reader = AlignmentReaderFactory.getReader(alignmentFile, queryInterval != null);
+
+            List<CountRange> ranges = numThreads > 1 && reader.hasIndex() ? planRanges(reader, tolerance) : null;
+
+            if (ranges != null) {
+                parseRanges(ranges, tolerance, wigWriter);
             } else {
-                reader = AlignmentReaderFactory.getReader(alignmentFile, true);
-                iter = reader.query(queryInterval.getChr(), queryInterval.getStart() - 1, queryInterval.getEnd(), false);
-            }
-
-            while (iter != null && iter.hasNext()) {
-                Alignment alignment = iter.next();
-                if (passFilter(alignment)) {
-                    //Sort into the read strand or first-in-pair strand,
-                    //depending on input flag. Note that this can
-                    //be very unreliable depending on data
-                    Strand strand;
-                    if (firstInPair) {
-                        strand = alignment.getFirstOfPairStrand();
-                    } else if (secondInPair) {
-                        strand = alignment.getSecondOfPairStrand();
-                    } else {
-                        strand = alignment.getReadStrand();
-                    }
-                    if (strand.equals(Strand.NONE)) {
-                        //TODO move this into passFilter, or move passFilter here
+
+                if (numThreads > 1 && reader instanceof BAMFileReader) {
+                    // No index to split the work by region, pipeline inflation and decoding instead
+                    ((BAMFileReader) reader).setParallelDecode(true);
+                }
+                if (queryInterval == null) {
+                    iter = reader.iterator();
+                } else {
+                    iter = reader.query(queryInterval.getChr(), queryInterval.getStart() - 1, queryInterval.getEnd(), false);
+                }
+
+                while (iter != null && iter.hasNext()) {
+                    Alignment alignment = iter.next();
+                    Strand strand = getCountStrand(alignment);
+                    if (strand == null) {
                         continue;
                     }
-                    boolean readNegStrand = alignment.isNegativeStrand();
 
                     totalCount++;
 
@@ -340,115 +403,264 @@ public class CoverageCounter {
                         lastChr = alignmentChr;
                     }
 
-                    AlignmentBlock[] blocks = alignment.getAlignmentBlocks();
+                    countAlignment(alignment, strand, counter);
+                }
+            }
+            consumer.setAttribute("totalCount", String.valueOf(totalCount));
+            consumer.parsingComplete();
 
-                    if (blocks != null && !pairedCoverage) {
-                        for (AlignmentBlock block : blocks) {
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
 
-                            if (!block.isSoftClipped()) {
+            if (counter != null) {
+                counter.closeBucketsBefore(Integer.MAX_VALUE, wigWriter);
+            }
+            if (iter != null) {
+                iter.close();
+            }
+            if (reader != null) {
+                reader.close();
+            }
+            if (wigWriter != null) {
+                wigWriter.close();
+            }
 
-                                 int blockStart = block.getStart();
-                                int blockEnd = block.getEnd();
+        }
+    }
 
+    /**
+     * Increment the count of every position covered by the alignment, after applying extension factors.
+     */
+    private void countAlignment(Alignment alignment, Strand strand, PositionCounter counter) {
 
-                                int adjustedStart = block.getStart();
-                                int adjustedEnd = block.getEnd();
+        boolean readNegStrand = alignment.isNegativeStrand();
 
+        AlignmentBlock[] blocks = alignment.getAlignmentBlocks();
 
-                                if (preExtFactor > 0) {
-                                    if (readNegStrand) {
-                                        adjustedEnd = blockEnd + preExtFactor;
-                                    } else {
-                                        adjustedStart = Math.max(0, blockStart - preExtFactor);
-                                    }
-                                }
+        if (blocks != null && !pairedCoverage) {
+            for (AlignmentBlock block : blocks) {
 
-                                // If both postExtFactor and extFactor are specified, postExtFactor takes precedence
-                                if (postExtFactor > 0) {
-                                    if (readNegStrand) {
-                                        adjustedStart = Math.max(0, blockEnd - postExtFactor);
-                                    } else {
-                                        adjustedEnd = blockStart + postExtFactor;
-                                    }
-
-                                } else if (extFactor > 0) {
-                                    // Standard extension option -- extend read on 3' end
-                                    if (readNegStrand) {
-                                        adjustedStart = Math.max(0, adjustedStart - extFactor);
-                                    } else {
-                                        adjustedEnd += extFactor;
-                                    }
-                                }
+                if (!block.isSoftClipped()) {
 
+                    int blockStart = block.getStart();
+                    int blockEnd = block.getEnd();
 
-                                if (queryInterval != null) {
-                                    adjustedStart = Math.max(queryInterval.getStart() - 1, adjustedStart);
-                                    adjustedEnd = Math.min(queryInterval.getEnd(), adjustedEnd);
-                                }
 
-                                byte[] bases = block.getBases();
-                                for (int pos = adjustedStart; pos < adjustedEnd; pos++) {
-                                    byte base = 0;
-                                    int baseIdx = pos - blockStart;
-                                    if (bases != null && baseIdx >= 0 && baseIdx < bases.length) {
-                                        base = bases[baseIdx];
-                                    }
-                                    //int idx = pos - blockStart;
-                                    //byte quality = (idx >= 0 && idx < block.qualities.length) ?
-                                            //block.qualities[pos - blockStart] : (byte) 0;
-                                    counter.incrementCount(pos, base, strand);
-                                }
-                            }
+                    int adjustedStart = block.getStart();
+                    int adjustedEnd = block.getEnd();
+
+
+                    if (preExtFactor > 0) {
+                        if (readNegStrand) {
+                            adjustedEnd = blockEnd + preExtFactor;
+                        } else {
+                            adjustedStart = Math.max(0, blockStart - preExtFactor);
                         }
-                    } else {
-                        int adjustedStart = alignment.getAlignmentStart();
-                        int adjustedEnd = pairedCoverage ?
-                                adjustedStart + Math.abs(alignment.getInferredInsertSize()) :
-                                alignment.getAlignmentEnd();
+                    }
 
+                    // If both postExtFactor and extFactor are specified, postExtFactor takes precedence
+                    if (postExtFactor > 0) {
+                        if (readNegStrand) {
+                            adjustedStart = Math.max(0, blockEnd - postExtFactor);
+                        } else {
+                            adjustedEnd = blockStart + postExtFactor;
+                        }
+
+                    } else if (extFactor > 0) {
+                        // Standard extension option -- extend read on 3' end
                         if (readNegStrand) {
                             adjustedStart = Math.max(0, adjustedStart - extFactor);
                         } else {
                             adjustedEnd += extFactor;
                         }
+                    }
 
-                        if (queryInterval != null) {
-                            adjustedStart = Math.max(queryInterval.getStart() - 1, adjustedStart);
-                            adjustedEnd = Math.min(queryInterval.getEnd(), adjustedEnd);
-                        }
 
+                    if (queryInterval != null) {
+                        adjustedStart = Math.max(queryInterval.getStart() - 1, adjustedStart);
+                        adjustedEnd = Math.min(queryInterval.getEnd(), adjustedEnd);
+                    }
 
-                        for (int pos = adjustedStart; pos < adjustedEnd; pos++) {
-                            counter.incrementCount(pos, (byte) 'N', strand);
+                    byte[] bases = block.getBases();
+                    for (int pos = adjustedStart; pos < adjustedEnd; pos++) {
+                        byte base = 0;
+                        int baseIdx = pos - blockStart;
+                        if (bases != null && baseIdx >= 0 && baseIdx < bases.length) {
+                            base = bases[baseIdx];
                         }
+                        counter.incrementCount(pos, base, strand);
                     }
-
                 }
+            }
+        } else {
+            int adjustedStart = alignment.getAlignmentStart();
+            int adjustedEnd = pairedCoverage ?
+                    adjustedStart + Math.abs(alignment.getInferredInsertSize()) :
+                    alignment.getAlignmentEnd();
 
+            if (readNegStrand) {
+                adjustedStart = Math.max(0, adjustedStart - extFactor);
+            } else {
+                adjustedEnd += extFactor;
             }
-            consumer.setAttribute("totalCount", String.valueOf(totalCount));
-            consumer.parsingComplete();
 
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
+            if (queryInterval != null) {
+                adjustedStart = Math.max(queryInterval.getStart() - 1, adjustedStart);
+                adjustedEnd = Math.min(queryInterval.getEnd(), adjustedEnd);
+            }
 
-            if (counter != null) {
-                counter.closeBucketsBefore(Integer.MAX_VALUE, wigWriter);
+
+            for (int pos = adjustedStart; pos < adjustedEnd; pos++) {
+                counter.incrementCount(pos, (byte) 'N', strand);
             }
-            if (iter != null) {
-                iter.close();
+        }
+    }
+
+
+    /**
+     * Divide the file into ranges for concurrent counting.  Ranges are returned in file order, chromosomes are
+     * taken from the file header.  Returns null if the ranges cannot be determined, in which case the file is
+     * counted sequentially.
+     */
+    private List<CountRange> planRanges(AlignmentReader reader, int tolerance) {
+
+        // Size ranges so the window buffer for each is roughly RANGE_BUFFER_SIZE ints
+        long rangeSize = ((long) RANGE_BUFFER_SIZE / getWindowStride()) * windowSize;
+        rangeSize = Math.max(rangeSize, 4L * tolerance);
+        rangeSize = Math.min(rangeSize, Integer.MAX_VALUE);
+
+        List<CountRange> ranges = new ArrayList<CountRange>();
+        if (queryInterval != null) {
+            addRanges(ranges, 0, queryInterval.getChr(), queryInterval.getStart() - 1, queryInterval.getEnd(), (int) rangeSize);
+        } else {
+            List<String> sequenceNames = reader.getSequenceNames();
+            if (sequenceNames == null) {
+                return null;
             }
-            if (reader != null) {
-                reader.close();
+            SAMFileHeader header = reader.getFileHeader();
+            int seqIndex = 0;
+            for (String seq : sequenceNames) {
+                int length = -1;
+                if (header != null && header.getSequence(seq) != null) {
+                    length = header.getSequence(seq).getSequenceLength();
+                }
+                if (length <= 0 && genome != null && genome.getChromosome(seq) != null) {
+                    length = genome.getChromosome(seq).getLength();
+                }
+                if (length <= 0) {
+                    log.info("Length of sequence " + seq + " is unknown, counting on a single thread");
+                    return null;
+                }
+                addRanges(ranges, seqIndex++, seq, 0, length, (int) rangeSize);
             }
-            if (wigWriter != null) {
-                wigWriter.close();
+        }
+        return ranges;
+    }
+
+    private static void addRanges(List<CountRange> ranges, int seqIndex, String seq, int start, int end, int rangeSize) {
+        for (int s = start; s < end; s += rangeSize) {
+            int e = (int) Math.min((long) s + rangeSize, end);
+            ranges.add(new CountRange(seqIndex, seq, s, e, s == start));
+        }
+    }
+
+    /**
+     * Count the ranges on a pool of {@code numThreads} workers, each with its own reader.  Results are merged in
+     * range order, at most 2 * numThreads range buffers are held in memory at any time.
+     */
+    private void parseRanges(List<CountRange> ranges, int tolerance, WigWriter wigWriter) throws Exception {
+
+        log.info("Counting " + ranges.size() + " ranges with " + numThreads + " threads");
+
+        final BlockingQueue<AlignmentReader> readers = new LinkedBlockingQueue<AlignmentReader>();
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            for (int i = 0; i < numThreads; i++) {
+                readers.add(AlignmentReaderFactory.getReader(alignmentFile, true));
+            }
+
+            int maxPending = 2 * numThreads;
+            LinkedList<Future<WindowCounts>> pending = new LinkedList<Future<WindowCounts>>();
+            Iterator<CountRange> rangeIter = ranges.iterator();
+
+            WindowCounts current = null;
+            while (rangeIter.hasNext() || !pending.isEmpty()) {
+                while (rangeIter.hasNext() && pending.size() < maxPending) {
+                    pending.add(executor.submit(new RangeCountTask(rangeIter.next(), readers, tolerance)));
+                }
+
+                WindowCounts next = pending.removeFirst().get();
+                totalCount += next.alignmentCount;
+                if (next.chr == null) {
+                    continue;     // Nothing counted
+                }
+
+                if (current != null) {
+                    if (current.range.seqIndex == next.range.seqIndex) {
+                        // Windows before the start of the next buffer are complete, the remainder is merged
+                        current.writeWindows(current.origin, next.origin, wigWriter);
+                        current.addTo(next);
+                    } else {
+                        current.writeWindows(current.origin, Integer.MAX_VALUE, wigWriter);
+                    }
+                }
+                current = next;
+            }
+            if (current != null) {
+                current.writeWindows(current.origin, Integer.MAX_VALUE, wigWriter);
             }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        } finally {
+            executor.shutdownNow();
+            for (AlignmentReader r : readers) {
+                r.close();
+            }
+        }
+    }
 
+    /**
+     * Number of ints per window in a {@link WindowCounts} buffer.  The first is the total count, followed by
+     * strand counts or strand x base counts depending on the output options.
+     */
+    private int getWindowStride() {
+        if (outputBases) {
+            return 1 + NUM_STRANDS * nucleotides.length;
+        } else {
+            return outputSeparate ? 1 + NUM_STRANDS : 1;
         }
     }
 
+    /**
+     * Output the window of the given index, the data values in "buffer" are set to the raw counts for the window
+     * and are normalized here by the window size.
+     */
+    private void writeWindow(String chr, int windowIdx, WigWriter wigWriter) {
+
+        // Divide total count by window size.  This is the average count per
+        // base over the window,  so for example 30x coverage remains 30x irrespective of window size.
+        int bucketStartPosition = windowIdx * windowSize;
+        int bucketEndPosition = bucketStartPosition + windowSize;
+        if (genome != null) {
+            Chromosome chromosome = genome.getChromosome(chr);
+            if (chromosome != null) {
+                bucketEndPosition = Math.min(bucketEndPosition, chromosome.getLength());
+            }
+        }
+        int bucketSize = bucketEndPosition - bucketStartPosition;
+
+        for (int col = 0; col < buffer.length; col++) {
+            buffer[col] = buffer[col] / bucketSize;
+        }
+
+        consumer.addData(chr, bucketStartPosition, bucketEndPosition, buffer, null);
+
+        if (wigWriter != null) {
+            wigWriter.addData(chr, bucketStartPosition, bucketEndPosition, buffer);
+        }
+    }
 
     /**
      * The names of tracks which will be created by this parser
@@ -486,7 +698,20 @@ public class CoverageCounter {
         this.writeStdOut = writeStdOut;
     }
 
-    class ReadCounter {
+    /**
+     * Target of the per-position counts produced by {@link #countAlignment(Alignment, Strand, PositionCounter)}.
+     */
+    interface PositionCounter {
+
+        /**
+         * @param position - genomic position
+         * @param base     - nucleotide
+         * @param strand   - which strand to increment count. Should be POSITIVE or NEGATIVE
+         */
+        void incrementCount(int position, byte base, Strand strand);
+    }
+
+    class ReadCounter implements PositionCounter {
 
         String chr;
         /**
@@ -503,7 +728,7 @@ public class CoverageCounter {
          * @param base     - nucleotide
          * @param strand   - which strand to increment count. Should be POSITIVE or NEGATIVE
          */
-        void incrementCount(int position, byte base, Strand strand) {
+        public void incrementCount(int position, byte base, Strand strand) {
             final Counter counter = getCounterForPosition(position);
             int strandNum = strand.equals(Strand.POSITIVE) ? 0 : 1;
             counter.increment(base, strandNum);
@@ -536,18 +761,6 @@ public class CoverageCounter {
             for (Map.Entry<Integer, Counter> entry : counts.entrySet()) {
                 if (entry.getKey() < bucket) {
 
-                    // Divide total count by window size.  This is the average count per
-                    // base over the window,  so for example 30x coverage remains 30x irrespective of window size.
-                    int bucketStartPosition = entry.getKey() * windowSize;
-                    int bucketEndPosition = bucketStartPosition + windowSize;
-                    if (genome != null) {
-                        Chromosome chromosome = genome.getChromosome(chr);
-                        if (chromosome != null) {
-                            bucketEndPosition = Math.min(bucketEndPosition, chromosome.getLength());
-                        }
-                    }
-                    int bucketSize = bucketEndPosition - bucketStartPosition;
-
                     final Counter counter = entry.getValue();
 
                     int col = 0;
@@ -557,12 +770,12 @@ public class CoverageCounter {
                         if (outputSeparate) {
                             //Output strand specific information, if applicable
                             for (int strandNum : output_strands) {
-                                buffer[col] = ((float) counter.getCount(strandNum)) / bucketSize;
+                                buffer[col] = (float) counter.getCount(strandNum);
                                 col++;
                             }
 
                         } else {
-                            buffer[col] = ((float) counter.getTotalCounts()) / bucketSize;
+                            buffer[col] = (float) counter.getTotalCounts();
                             col++;
                         }
 
@@ -571,25 +784,19 @@ public class CoverageCounter {
                         if (outputSeparate) {
                             for (int strandNum : output_strands) {
                                 for (byte base : nucleotides) {
-                                    buffer[col] = ((float) counter.getBaseCount(base, strandNum)) / bucketSize;
+                                    buffer[col] = (float) counter.getBaseCount(base, strandNum);
                                     col++;
                                 }
                             }
                         } else {
                             for (byte base : nucleotides) {
-                                buffer[col] = ((float) counter.getBaseCount(base)) / bucketSize;
+                                buffer[col] = (float) counter.getBaseCount(base);
                                 col++;
                             }
                         }
                     }
 
-
-                    consumer.addData(chr, bucketStartPosition, bucketEndPosition, buffer, null);
-
-                    if (wigWriter != null) {
-                        wigWriter.addData(chr, bucketStartPosition, bucketEndPosition, buffer);
-                    }
-
+                    writeWindow(chr, entry.getKey(), wigWriter);
 
                     bucketsToClose.add(entry.getKey());
                 }
@@ -703,6 +910,221 @@ public class CoverageCounter {
     }
 
 
+    /**
+     * A range of a single sequence counted by one worker of the multi-threaded engine.  Alignments are assigned to
+     * the range containing their start, with the exception of the first range of a sequence (or query) which also
+     * takes alignments starting before it.
+     */
+    static class CountRange {
+
+        final int seqIndex;
+        final String chr;
+        final int start;
+        final int end;
+        final boolean first;
+
+        CountRange(int seqIndex, String chr, int start, int end, boolean first) {
+            this.seqIndex = seqIndex;
+            this.chr = chr;
+            this.start = start;
+            this.end = end;
+            this.first = first;
+        }
+
+        boolean contains(int alignmentStart) {
+            return alignmentStart < end && (first || alignmentStart >= start);
+        }
+    }
+
+
+    /**
+     * Counts the alignments of a single range using a reader borrowed from the shared pool.
+     */
+    class RangeCountTask implements Callable<WindowCounts> {
+
+        CountRange range;
+        BlockingQueue<AlignmentReader> readers;
+        int tolerance;
+
+        RangeCountTask(CountRange range, BlockingQueue<AlignmentReader> readers, int tolerance) {
+            this.range = range;
+            this.readers = readers;
+            this.tolerance = tolerance;
+        }
+
+        public WindowCounts call() throws Exception {
+
+            WindowCounts counts = new WindowCounts(range, tolerance);
+
+            AlignmentReader reader = readers.take();
+            CloseableIterator<Alignment> iter = null;
+            try {
+                iter = reader.query(range.chr, range.start, range.end, false);
+                while (iter.hasNext()) {
+                    Alignment alignment = iter.next();
+                    if (!range.contains(alignment.getAlignmentStart())) {
+                        continue;
+                    }
+                    Strand strand = getCountStrand(alignment);
+                    if (strand == null) {
+                        continue;
+                    }
+                    if (counts.chr == null) {
+                        counts.chr = alignment.getChr();
+                    }
+                    counts.alignmentCount++;
+                    countAlignment(alignment, strand, counts);
+                }
+            } finally {
+                if (iter != null) {
+                    iter.close();
+                }
+                readers.put(reader);
+            }
+            return counts;
+        }
+    }
+
+
+    /**
+     * Counts for a contiguous run of windows, stored in a flat int array.  The counts for window i start at
+     * (i - origin) * stride,  see {@link #getWindowStride()} for the layout.  The buffer grows as needed in both
+     * directions.
+     */
+    class WindowCounts implements PositionCounter {
+
+        final CountRange range;
+        final int stride;
+
+        /**
+         * Chromosome name of the counted alignments, null if nothing was counted.
+         */
+        String chr;
+        int alignmentCount = 0;
+
+        /**
+         * Index of the first window in the buffer
+         */
+        int origin;
+        int[] counts;
+
+        WindowCounts(CountRange range, int tolerance) {
+            this.range = range;
+            this.stride = getWindowStride();
+            this.origin = Math.max(0, range.start - tolerance) / windowSize;
+            long endWindow = ((long) range.end + tolerance) / windowSize;
+            counts = new int[(int) (endWindow - origin + 1) * stride];
+        }
+
+        int getWindowCount() {
+            return counts.length / stride;
+        }
+
+        public void incrementCount(int position, byte base, Strand strand) {
+            int idx = position / windowSize;
+            ensureWindow(idx);
+            int offset = (idx - origin) * stride;
+            int strandNum = strand.equals(Strand.POSITIVE) ? 0 : 1;
+
+            counts[offset]++;
+            if (outputBases) {
+                int baseIdx = nucleotideIndex[base & 0xff];
+                if (baseIdx >= 0) {
+                    counts[offset + 1 + strandNum * nucleotides.length + baseIdx]++;
+                }
+            } else if (outputSeparate) {
+                counts[offset + 1 + strandNum]++;
+            }
+        }
+
+        private void ensureWindow(int idx) {
+            int nWindows = getWindowCount();
+            int end = origin + nWindows;
+            if (idx >= origin && idx < end) {
+                return;
+            }
+            // Grow by at least half the current size to amortize the copies
+            int newOrigin = origin;
+            int newEnd = end;
+            if (idx < origin) {
+                newOrigin = Math.min(idx, Math.max(0, origin - nWindows / 2));
+            } else {
+                newEnd = Math.max(idx + 1, end + nWindows / 2);
+            }
+            int[] newCounts = new int[(newEnd - newOrigin) * stride];
+            System.arraycopy(counts, 0, newCounts, (origin - newOrigin) * stride, counts.length);
+            counts = newCounts;
+            origin = newOrigin;
+        }
+
+        /**
+         * Add the counts for all windows >= target.origin to the target.
+         */
+        void addTo(WindowCounts target) {
+            int last = origin + getWindowCount() - 1;
+            while (last >= origin && counts[(last - origin) * stride] == 0) {
+                last--;
+            }
+            if (last < target.origin) {
+                return;
+            }
+            target.ensureWindow(last);
+            for (int idx = Math.max(origin, target.origin); idx <= last; idx++) {
+                int offset = (idx - origin) * stride;
+                if (counts[offset] > 0) {
+                    int targetOffset = (idx - target.origin) * stride;
+                    for (int i = 0; i < stride; i++) {
+                        target.counts[targetOffset + i] += counts[offset + i];
+                    }
+                }
+            }
+        }
+
+        /**
+         * Output all windows with a non-zero count with index in [from, to).
+         */
+        void writeWindows(int from, int to, WigWriter wigWriter) {
+            int end = (int) Math.min((long) origin + getWindowCount(), to);
+            for (int idx = Math.max(from, origin); idx < end; idx++) {
+                int offset = (idx - origin) * stride;
+                if (counts[offset] == 0) {
+                    continue;
+                }
+
+                int col = 0;
+                if (outputBases) {
+                    if (outputSeparate) {
+                        for (int strandNum : output_strands) {
+                            for (int b = 0; b < nucleotides.length; b++) {
+                                buffer[col] = (float) counts[offset + 1 + strandNum * nucleotides.length + b];
+                                col++;
+                            }
+                        }
+                    } else {
+                        for (int b = 0; b < nucleotides.length; b++) {
+                            int count = 0;
+                            for (int strandNum : output_strands) {
+                                count += counts[offset + 1 + strandNum * nucleotides.length + b];
+                            }
+                            buffer[col] = (float) count;
+                            col++;
+                        }
+                    }
+                } else if (outputSeparate) {
+                    for (int strandNum : output_strands) {
+                        buffer[col] = (float) counts[offset + 1 + strandNum];
+                        col++;
+                    }
+                } else {
+                    buffer[col] = (float) counts[offset];
+                }
+
+                writeWindow(chr, idx, wigWriter);
+            }
+        }
+    }
+
+
     /**
      * Creates a vary step wig file
      */
@@ -161,6 +161,8 @@ public class IgvTools {
     private static CmdLineParser.Option minMapQualityOpt = null;
     private static CmdLineParser.Option includeDupsOpt = null;
     private static CmdLineParser.Option pairedCoverageOpt = null;
+    private static CmdLineParser.Option threadsOpt = null;
+    private static CmdLineParser.Option quantileErrorOpt = null;
 
     // options for index
     private static CmdLineParser.Option indexTypeOption = null;
@@ -170,6 +172,11 @@ public class IgvTools {
     // Trackline
     private static CmdLineParser.Option colorOption = null;
 
+    /**
+     * Approximate rank error of percentile window functions (median, p2, ...),  0 computes them exactly.
+     */
+    private double quantileError = 0;
+
     /**
      * The general usage string
      */
@@ -340,6 +347,8 @@ public class IgvTools {
                 boolean isGCT = typeString.endsWith("gct") || typeString.equals("mage-tab");
                 String wfsString = (String) parser.getOptionValue(windowFunctions);
                 Collection<WindowFunction> wfList = parseWFS(wfsString, isGCT);
+                int threads = (Integer) parser.getOptionValue(threadsOpt, 1);
+                setQuantileError((Double) parser.getOptionValue(quantileErrorOpt, 0.0));
 
 
                 if (command.equals(CMD_COUNT)) {
@@ -362,16 +371,17 @@ public class IgvTools {
                     int windowSizeValue = (Integer) parser.getOptionValue(windowSizeOption, WINDOW_SIZE);
                     doCount(ifile, ofile, genomeId, maxZoomValue, wfList, windowSizeValue, extFactorValue,
                             preFactorValue, posFactorValue,
-                            trackLine, queryString, minMapQuality, countFlags);
+                            trackLine, queryString, minMapQuality, countFlags, threads);
                 } else {
                     String probeFile = (String) parser.getOptionValue(probeFileOption, PROBE_FILE);
-                    toTDF(typeString, ifile, ofile, probeFile, genomeId, maxZoomValue, wfList, tmpDirName, maxRecords);
+                    toTDF(typeString, ifile, ofile, probeFile, genomeId, maxZoomValue, wfList, tmpDirName, maxRecords, threads);
                 }
 
             } else if (command.equals(CMD_SORT)) {
                 validateArgsLength(nonOptionArgs, 3, basic_syntax);
                 String ofile = nonOptionArgs[2];
-                doSort(ifile, ofile, tmpDirName, maxRecords);
+                int threads = (Integer) parser.getOptionValue(threadsOpt, 1);
+                doSort(ifile, ofile, tmpDirName, maxRecords, threads);
             } else if (command.equals(CMD_INDEX)) {
                 int indexType = (Integer) parser.getOptionValue(indexTypeOption, LINEAR_INDEX);
                 int defaultBinSize = indexType == LINEAR_INDEX ? LINEAR_BIN_SIZE : INTERVAL_SIZE;
@@ -547,11 +557,17 @@ public class IgvTools {
             tmpDirOption = parser.addStringOption('t', "tmpDir");
         }
 
+        if (command.equals(CMD_SORT)) {
+            threadsOpt = parser.addIntegerOption("threads");
+        }
+
         if (command.equals(CMD_COUNT) || command.equals(CMD_TOTDF) || command.equals(CMD_TILE)) {
 
             // general options
             windowFunctions = parser.addStringOption('f', "windowFunctions");
             maxZoomOption = parser.addIntegerOption('z', "maxZoom");
+            threadsOpt = parser.addIntegerOption("threads");
+            quantileErrorOpt = parser.addDoubleOption("quantileError");
 
             // extended options for coverage
             if (command.equals(CMD_COUNT) || command.equals(CMD_BAMTOBED)) {
@@ -635,9 +651,31 @@ public class IgvTools {
 
     }
 
+    /**
+     * Estimate percentile window functions with a fixed memory sketch.  Applies to subsequent toTDF and count calls.
+     *
+     * @param quantileError - approximate rank error, e.g. 0.01.  0 (the default) computes percentiles exactly
+     */
+    public void setQuantileError(double quantileError) {
+        if (quantileError < 0 || quantileError >= 1) {
+            throw new IllegalArgumentException("quantileError must be >= 0 and < 1: " + quantileError);
+        }
+        this.quantileError = quantileError;
+    }
+
     public void toTDF(String typeString, String ifile, String ofile, String probeFile, String genomeId, int maxZoomValue,
                       Collection<WindowFunction> windowFunctions, String tmpDirName, int maxRecords)
             throws IOException, PreprocessingException {
+        toTDF(typeString, ifile, ofile, probeFile, genomeId, maxZoomValue, windowFunctions, tmpDirName, maxRecords, 1);
+    }
+
+    /**
+     * @param threads - number of threads used to build zoom levels and compress tiles
+     * @see #toTDF(String, String, String, String, String, int, java.util.Collection, String, int)
+     */
+    public void toTDF(String typeString, String ifile, String ofile, String probeFile, String genomeId, int maxZoomValue,
+                      Collection<WindowFunction> windowFunctions, String tmpDirName, int maxRecords, int threads)
+            throws IOException, PreprocessingException {
 
         if (!ifile.endsWith(".affective.csv")) validateIsTilable(typeString);
 
@@ -691,8 +729,11 @@ public class IgvTools {
 
         // Convert to tdf
         File outputFile = new File(ofile);
+        Preprocessor p = null;
         try {
-            Preprocessor p = new Preprocessor(outputFile, genome, windowFunctions, nLines, null);
+            p = new Preprocessor(outputFile, genome, windowFunctions, nLines, null);
+            p.setNumThreads(threads);
+            p.setQuantileError(quantileError);
             if (inputFileOrDir.isDirectory() || inputFileOrDir.getName().endsWith(".list")) {
                 p.setSizeEstimate(0);
                 List<File> files = getFilesFromDirOrList(inputFileOrDir);
@@ -710,6 +751,10 @@ public class IgvTools {
                 outputFile.delete();
             }
         } finally {
+            // Stops the tile threads and removes the partial file if preprocessing failed or was halted
+            if (p != null) {
+                p.abort();
+            }
             if (deleteme != null && deleteme.exists()) {
                 deleteme.delete();
             }
@@ -803,6 +848,19 @@ public class IgvTools {
                         Collection<WindowFunction> windowFunctions, int windowSizeValue,
                         int extFactorValue, int preExtFactorValue, int postExtFactorValue,
                         String trackLine, String queryString, int minMapQuality, int countFlags) throws IOException {
+        doCount(ifile, ofile, genomeId, maxZoomValue, windowFunctions, windowSizeValue, extFactorValue,
+                preExtFactorValue, postExtFactorValue, trackLine, queryString, minMapQuality, countFlags, 1);
+    }
+
+    /**
+     * @param threads - number of threads used for counting indexed files
+     * @see #doCount(String, String, String, int, java.util.Collection, int, int, int, int, String, String, int, int)
+     */
+    public void doCount(String ifile, String ofile, String genomeId, int maxZoomValue,
+                        Collection<WindowFunction> windowFunctions, int windowSizeValue,
+                        int extFactorValue, int preExtFactorValue, int postExtFactorValue,
+                        String trackLine, String queryString, int minMapQuality, int countFlags,
+                        int threads) throws IOException {
 
 
         log.info("Computing coverage.  File = " + ifile);
@@ -841,17 +899,21 @@ public class IgvTools {
             tdfFile = new File(tdfFile.getAbsolutePath() + ".tdf");
         }
 
+        Preprocessor p = null;
         try {
 
-            Preprocessor p = new Preprocessor(tdfFile, genome, windowFunctions, -1, null);
+            p = new Preprocessor(tdfFile, genome, windowFunctions, -1, null);
 
             p.setSkipZeroes(true);
+            p.setNumThreads(threads);
+            p.setQuantileError(quantileError);
 
             CoverageCounter counter = new CoverageCounter(ifile, p, windowSizeValue, extFactorValue, wigFile,
                     genome, queryString, minMapQuality, countFlags);
             counter.setWriteStdOut(wigStdOut);
             counter.setPreExtFactor(preExtFactorValue);
             counter.setPosExtFactor(postExtFactorValue);
+            counter.setNumThreads(threads);
 
             String prefix = FilenameUtils.getName(ifile);
             String[] tracknames = counter.getTrackNames(prefix + " ");
@@ -872,6 +934,10 @@ public class IgvTools {
             if (tdfFile != null && wigFile.exists()) {
                 wigFile.delete();
             }
+        } finally {
+            if (p != null) {
+                p.abort();
+            }
         }
 
         userMessageWriter.flush();
@@ -1033,6 +1099,13 @@ public class IgvTools {
 
 
     public void doSort(String ifile, String ofile, String tmpDirName, int maxRecords) {
+        doSort(ifile, ofile, tmpDirName, maxRecords, 1);
+    }
+
+    /**
+     * @param threads - number of threads used to parse and sort the input
+     */
+    public void doSort(String ifile, String ofile, String tmpDirName, int maxRecords, int threads) {
 
         userMessageWriter.println("Sorting " + ifile + "  -> " + ofile);
         File inputFile = new File(ifile);
@@ -1049,6 +1122,7 @@ public class IgvTools {
         }
 
         sorter.setMaxRecords(maxRecords);
+        sorter.setNumThreads(threads);
 
         try {
             sorter.run();
@@ -30,6 +30,7 @@
 package org.broad.igv.tools;
 
 import org.broad.igv.util.collections.DoubleArrayList;
+import org.broad.igv.util.collections.QuantileSketch;
 import org.apache.commons.math.stat.StatUtils;
 import org.apache.log4j.Logger;
 import org.broad.igv.track.WindowFunction;
@@ -62,6 +63,7 @@ public class ListAccumulator {
     List<WindowFunction> quantileFunctions;
     Map<WindowFunction, List<PercentileValue>> percentiles = new HashMap();
     DoubleArrayList values = null;
+    QuantileSketch sketch = null;
     float sum = 0.0f;
     int basesCovered = 0;
     int nPts = 0;
@@ -77,14 +79,27 @@ public class ListAccumulator {
 
 
     public ListAccumulator(Collection<WindowFunction> windowFunctions) {
+        this(windowFunctions, 0);
+    }
+
+    /**
+     * @param windowFunctions
+     * @param quantileError   if > 0 percentiles are estimated with a fixed memory sketch with this approximate rank
+     *                        error,  rather than averaging exact percentiles of MAX_VALUE_COUNT sized chunks
+     */
+    public ListAccumulator(Collection<WindowFunction> windowFunctions, double quantileError) {
         this.windowFunctions = new ArrayList(windowFunctions);
         quantileFunctions = new ArrayList();
         for (WindowFunction wf : windowFunctions) {
             if (PERCENTILE_WINDOW_FUNCTIONS.contains(wf)) {
                 quantileFunctions.add(wf);
-                if (values == null) {
-                    values = new DoubleArrayList();
-                }
+            }
+        }
+        if (quantileFunctions.size() > 0) {
+            if (quantileError > 0) {
+                sketch = QuantileSketch.forRankError(quantileError);
+            } else {
+                values = new DoubleArrayList();
             }
         }
     }
@@ -96,7 +111,9 @@ public class ListAccumulator {
             sum += w*v;
             basesCovered +=w;
             nPts++;
-            if (values != null) {
+            if (sketch != null) {
+                sketch.add(v);
+            } else if (values != null) {
                 values.add(v);
                 if (values.size() > MAX_VALUE_COUNT) {
                     computePercentiles();
@@ -115,7 +132,11 @@ public class ListAccumulator {
 
         mean = Float.isNaN(sum) ? Float.NaN : sum / basesCovered;
 
-        if (values != null) {
+        if (sketch != null) {
+            for (WindowFunction wf : quantileFunctions) {
+                setValue(wf, nPts == 1 ? mean : (float) sketch.getQuantile(getPercentile(wf) / 100));
+            }
+        } else if (values != null) {
             if (nPts == 1) {
                 for (WindowFunction wf : quantileFunctions) {
                     setValue(wf, mean);
@@ -145,6 +166,7 @@ public class ListAccumulator {
             }
         }
         values = null;
+        sketch = null;
         isFinished = true;
 
     }
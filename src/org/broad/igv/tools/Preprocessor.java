@@ -43,6 +43,8 @@ import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author jrobinso
@@ -54,6 +56,10 @@ public class Preprocessor implements DataConsumer {
     boolean compressed = true;
     private boolean skipZeroes = false;
     private int nZoom = 7;
+    private int numThreads = 1;
+    private double quantileError = 0;
+    private TilePipeline pipeline;
+    private final ThreadLocal<TilePipeline.Lane> currentLane = new ThreadLocal<TilePipeline.Lane>();
     int maxExtFactor = 0;
     Zoom[] zoomLevels;
     int nTracks;
@@ -68,6 +74,7 @@ public class Preprocessor implements DataConsumer {
     int lastStartPosition = 0;
     HashSet<String> skippedChromosomes = new HashSet();
     TDFWriter writer;
+    boolean finished = false;
     Raw rawData;
     Zoom genomeZoom;
     File outputFile;
@@ -202,15 +209,32 @@ public class Preprocessor implements DataConsumer {
         }
 
 
-        // Add to raw data
-        rawData.addData(start, end, data, name);
+        if (numThreads > 1) {
+            if (pipeline == null) {
+                pipeline = new TilePipeline(numThreads);
+            }
+            pipeline.addData(chr, start, end, data, name);
+        } else {
+            // Add to raw data
+            rawData.addData(start, end, data, name);
+
+            // Zoom levels
+            for (Zoom zl : zoomLevels) {
+                zl.addData(start, end, data);
+            }
 
-        // Zoom levels
-        for (Zoom zl : zoomLevels) {
-            zl.addData(start, end, data);
+            addGenomeData(chr, start, end, data);
         }
 
-        // Whole genome
+        lastStartPosition = start;
+
+    }
+
+    /**
+     * Add data to the whole genome zoom level and statistics
+     */
+    private void addGenomeData(String chr, int start, int end, float[] data) {
+
         long offset = genome.getCumulativeOffset(chr);
         int gStart = (int) ((offset + start) / 1000);
         int gEnd = Math.max(gStart + 1, (int) ((offset + end) / 1000));
@@ -223,9 +247,19 @@ public class Preprocessor implements DataConsumer {
                 allDataStats.add(gEnd - gStart, data[i]);
             }
         }
+    }
 
-        lastStartPosition = start;
-
+    /**
+     * Write a closed tile.  Tiles closed by the pipeline are handed to it,  so they are written in the same order
+     * as they would be by a single thread.
+     */
+    private void writeTile(String dsName, int tileNumber, TDFTile tile) throws IOException {
+        TilePipeline.Lane lane = currentLane.get();
+        if (lane != null) {
+            lane.writeTile(dsName, tileNumber, tile);
+        } else {
+            writer.writeTile(dsName, tileNumber, tile);
+        }
     }
 
 
@@ -243,6 +277,11 @@ public class Preprocessor implements DataConsumer {
         }
         visitedChromosomes.add(chr);
 
+        // Tiles are closed below on this thread,  after everything queued for the previous chromosome
+        if (pipeline != null) {
+            pipeline.flush();
+        }
+
 
         Chromosome c = genome.getChromosome(chr);
         if (c == null) {
@@ -313,6 +352,12 @@ public class Preprocessor implements DataConsumer {
             writer.getRootGroup().setAttribute(entry.getKey(), entry.getValue());
         }
 
+        if (pipeline != null) {
+            pipeline.flush();
+            pipeline.shutdown();
+            pipeline = null;
+        }
+
         if (zoomLevels != null) {
             for (Zoom zl : zoomLevels) {
                 zl.close();
@@ -338,12 +383,35 @@ public class Preprocessor implements DataConsumer {
             }
             writer.closeFile();
         }
+        finished = true;
 
         if (statusMonitor != null) {
             statusMonitor.setPercentComplete(100);
         }
     }
 
+    /**
+     * Stop a run that did not finish,  after an error or a cancel.  Shuts down the tile pipeline,  discarding
+     * queued tiles,  and closes and deletes the partial output file.  Does nothing once {@link #finish()} has
+     * completed.
+     */
+    public void abort() {
+        if (finished) {
+            return;
+        }
+        if (pipeline != null) {
+            pipeline.abort();
+            pipeline = null;
+        }
+        if (writer != null) {
+            writer.abortFile();
+            writer = null;
+            if (outputFile != null && outputFile.exists()) {
+                outputFile.delete();
+            }
+        }
+    }
+
 
     public void setType(String type) {
         //this.type = type;
@@ -376,6 +444,27 @@ public class Preprocessor implements DataConsumer {
         this.nZoom = nZoom;
     }
 
+    /**
+     * Set the number of threads used to compress tiles.  Values greater than 1 also build the raw, zoom and
+     * whole genome levels concurrently,  one thread per level.  The output file is identical in either case.
+     *
+     * @param numThreads
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * Estimate percentile window functions with a fixed memory sketch rather than buffering every value of a tile.
+     * Must be called before data is added.
+     *
+     * @param quantileError approximate rank error,  0 computes percentiles exactly
+     */
+    public void setQuantileError(double quantileError) {
+        this.quantileError = quantileError;
+        allDataStats = new ListAccumulator(allDataFunctions, quantileError);
+    }
+
 
     /**
      * Class representing a tile of raw (as opposed to summarized) data.
@@ -446,7 +535,7 @@ public class Preprocessor implements DataConsumer {
 
                     String[] n = nameList == null ? null : nameList.toArray(new String[]{});
                     TDFBedTile tile = new TDFBedTile(tileStart, s, e, d, n);
-                    writer.writeTile(dsName, tileNumber, tile);
+                    writeTile(dsName, tileNumber, tile);
                     startArray.clear();
                     endArray.clear();
                     for (int i = 0; i < dataArray.length; i++) {
@@ -647,7 +736,7 @@ public class Preprocessor implements DataConsumer {
 
                 for (int b = startBin; b <= endBin; b++) {
                     if (accumulators[t][b] == null) {
-                        accumulators[t][b] = new ListAccumulator(datasets.keySet());
+                        accumulators[t][b] = new ListAccumulator(datasets.keySet(), quantileError);
                     }
                     accumulators[t][b].add(end - start, data[t]);
                 }
@@ -710,7 +799,7 @@ public class Preprocessor implements DataConsumer {
 
                 String dsName = datasets.get(wf).getName();
                 try {
-                    writer.writeTile(dsName, tileNumber, tile);
+                    writeTile(dsName, tileNumber, tile);
                 } catch (IOException exc) {
                     log.error("Error writing tile: " + dsName + " [" + tileNumber + "]", exc);
                     throw new PreprocessingException(exc.getMessage());
@@ -770,4 +859,306 @@ public class Preprocessor implements DataConsumer {
             return filename.substring(idx).toLowerCase();
         }
     }
+
+
+    /**
+     * Builds the raw, zoom and whole genome levels concurrently.  Each level is a {@link Lane} with its own thread
+     * and bounded queue of record batches.  Tiles closed by a lane are compressed on a shared pool,  and a writer
+     * thread merges them back into the order a single thread would have written them:  by record,  then by lane
+     * (raw, zoom 0..n, genome),  then in the order closed.  The file layout is therefore unchanged.
+     * <p/>
+     * Chromosome changes and {@link #finish()} {@link #flush()} the pipeline and continue on the calling thread,
+     * {@link Preprocessor#abort()} discards it.
+     */
+    class TilePipeline {
+
+        static final int BATCH_SIZE = 1024;
+        static final int QUEUE_CAPACITY = 4;
+
+        final Lane[] lanes;
+        final ExecutorService compressionPool;
+        final Thread writerThread;
+        final Object monitor = new Object();
+        final AtomicInteger pendingWrites = new AtomicInteger();
+
+        Batch batch;
+        long submittedRecords = 0;
+        volatile Throwable error;
+        volatile boolean shutdown = false;
+
+        TilePipeline(int nThreads) {
+            compressionPool = Executors.newFixedThreadPool(nThreads, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "tdf-compress");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+            lanes = new Lane[getNZoom() + 3];
+            for (int i = 0; i < lanes.length; i++) {
+                lanes[i] = new Lane(i);
+                lanes[i].start();
+            }
+            writerThread = new Thread(new Runnable() {
+                public void run() {
+                    writeTiles();
+                }
+            }, "tdf-writer");
+            writerThread.setDaemon(true);
+            writerThread.start();
+        }
+
+        void addData(String chr, int start, int end, float[] data, String name) {
+            if (batch == null) {
+                batch = new Batch(chr, submittedRecords);
+            }
+            // Parsers may reuse the data array
+            batch.add(start, end, data.clone(), name);
+            if (batch.size == BATCH_SIZE) {
+                submit();
+            }
+        }
+
+        private void submit() {
+            if (batch == null) {
+                return;
+            }
+            for (Lane lane : lanes) {
+                try {
+                    while (!lane.queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                        checkError();
+                    }
+                } catch (InterruptedException e) {
+                    throw new PreprocessingException("Preprocessing interrupted");
+                }
+            }
+            submittedRecords += batch.size;
+            batch = null;
+        }
+
+        /**
+         * Wait until all data added so far has been processed and all closed tiles written
+         */
+        void flush() {
+            submit();
+            synchronized (monitor) {
+                while (!isFlushed()) {
+                    checkError();
+                    try {
+                        monitor.wait(100);
+                    } catch (InterruptedException e) {
+                        throw new PreprocessingException("Preprocessing interrupted");
+                    }
+                }
+            }
+            checkError();
+        }
+
+        private boolean isFlushed() {
+            for (Lane lane : lanes) {
+                if (lane.processed < submittedRecords) {
+                    return false;
+                }
+            }
+            return pendingWrites.get() == 0;
+        }
+
+        void shutdown() {
+            shutdown = true;
+            for (Lane lane : lanes) {
+                lane.interrupt();
+            }
+            writerThread.interrupt();
+            compressionPool.shutdownNow();
+        }
+
+        /**
+         * Shut down without writing the remaining tiles.  Waits briefly for the threads to stop,  so that none is
+         * writing when the output file is closed,  then discards queued batches and tiles.
+         */
+        void abort() {
+            shutdown();
+            try {
+                for (Lane lane : lanes) {
+                    lane.join(1000);
+                }
+                writerThread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            batch = null;
+            for (Lane lane : lanes) {
+                lane.queue.clear();
+                EncodedTile tile;
+                while ((tile = lane.output.poll()) != null) {
+                    tile.bytes.cancel(true);
+                }
+            }
+        }
+
+        private void checkError() {
+            Throwable t = error;
+            if (t != null) {
+                shutdown();
+                if (t instanceof RuntimeException) {
+                    throw (RuntimeException) t;
+                }
+                throw new PreprocessingException(t.getMessage());
+            }
+        }
+
+        private void fail(Throwable t) {
+            if (error == null) {
+                // Tasks rejected by a pool shut down by abort() are not errors
+                if (!shutdown) {
+                    log.error("Error creating tiles", t);
+                }
+                error = t;
+            }
+            synchronized (monitor) {
+                monitor.notifyAll();
+            }
+        }
+
+        /**
+         * Merge closed tiles from all lanes in sequential order and write them.  The next tile of a lane is
+         * known to be its queued head,  or if it has none,  no earlier than the next record it will process.
+         */
+        private void writeTiles() {
+            try {
+                while (!shutdown) {
+                    Lane next = null;
+                    long nextRecord = Long.MAX_VALUE;
+                    synchronized (monitor) {
+                        for (Lane lane : lanes) {
+                            // Read the count first,  tiles of the records it counts are already queued
+                            long processed = lane.processed;
+                            EncodedTile head = lane.output.peek();
+                            long record = head != null ? head.record : processed;
+                            if (record < nextRecord) {
+                                nextRecord = record;
+                                next = lane;
+                            }
+                        }
+                        EncodedTile head = next == null ? null : next.output.peek();
+                        if (head == null || head.record != nextRecord) {
+                            monitor.wait(100);
+                            continue;
+                        }
+                    }
+                    EncodedTile tile = next.output.poll();
+                    writer.writeEncodedTile(tile.dsName, tile.tileNumber, tile.bytes.get());
+                    pendingWrites.decrementAndGet();
+                    synchronized (monitor) {
+                        monitor.notifyAll();
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Shutdown
+            } catch (Throwable t) {
+                fail(t instanceof ExecutionException ? t.getCause() : t);
+            }
+        }
+
+        /**
+         * One level of the pyramid: 0 is raw data,  1 to nZoom + 1 the zoom levels,  and the last whole genome.
+         */
+        class Lane extends Thread {
+
+            final int index;
+            final BlockingQueue<Batch> queue = new ArrayBlockingQueue<Batch>(QUEUE_CAPACITY);
+            final Queue<EncodedTile> output = new ConcurrentLinkedQueue<EncodedTile>();
+
+            /**
+             * Number of records processed.  Updated after the tiles they closed are queued.
+             */
+            volatile long processed = 0;
+            long record;
+
+            Lane(int index) {
+                super("tdf-level-" + index);
+                this.index = index;
+                setDaemon(true);
+            }
+
+            @Override
+            public void run() {
+                currentLane.set(this);
+                try {
+                    while (!shutdown) {
+                        Batch b = queue.take();
+                        for (int i = 0; i < b.size; i++) {
+                            record = b.firstRecord + i;
+                            if (index == 0) {
+                                rawData.addData(b.starts[i], b.ends[i], b.data[i], b.names[i]);
+                            } else if (index < lanes.length - 1) {
+                                zoomLevels[index - 1].addData(b.starts[i], b.ends[i], b.data[i]);
+                            } else {
+                                addGenomeData(b.chr, b.starts[i], b.ends[i], b.data[i]);
+                            }
+                        }
+                        processed = b.firstRecord + b.size;
+                        synchronized (monitor) {
+                            monitor.notifyAll();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    // Shutdown
+                } catch (Throwable t) {
+                    fail(t);
+                }
+            }
+
+            void writeTile(final String dsName, final int tileNumber, final TDFTile tile) {
+                Future<byte[]> bytes = compressionPool.submit(new Callable<byte[]>() {
+                    public byte[] call() throws Exception {
+                        return writer.encodeTile(tile);
+                    }
+                });
+                pendingWrites.incrementAndGet();
+                output.add(new EncodedTile(record, dsName, tileNumber, bytes));
+            }
+        }
+    }
+
+    /**
+     * Consecutive records of a single chromosome
+     */
+    static class Batch {
+        final String chr;
+        final long firstRecord;
+        final int[] starts = new int[TilePipeline.BATCH_SIZE];
+        final int[] ends = new int[TilePipeline.BATCH_SIZE];
+        final float[][] data = new float[TilePipeline.BATCH_SIZE][];
+        final String[] names = new String[TilePipeline.BATCH_SIZE];
+        int size = 0;
+
+        Batch(String chr, long firstRecord) {
+            this.chr = chr;
+            this.firstRecord = firstRecord;
+        }
+
+        void add(int start, int end, float[] values, String name) {
+            starts[size] = start;
+            ends[size] = end;
+            data[size] = values;
+            names[size] = name;
+            size++;
+        }
+    }
+
+    static class EncodedTile {
+        final long record;
+        final String dsName;
+        final int tileNumber;
+        final Future<byte[]> bytes;
+
+        EncodedTile(long record, String dsName, int tileNumber, Future<byte[]> bytes) {
+            this.record = record;
+            this.dsName = dsName;
+            this.tileNumber = tileNumber;
+            this.bytes = bytes;
+        }
+    }
 }
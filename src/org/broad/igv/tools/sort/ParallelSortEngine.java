@@ -0,0 +1,626 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.tools.sort;
+
+import org.apache.log4j.Logger;
+import org.broad.igv.feature.genome.ChromosomeNameComparator;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * External merge sort of the data lines of a text file.  The input is memory mapped and cut into chunks on line
+ * boundaries.  Chunks are parsed and sorted concurrently on {@code numThreads} workers.  Each line is reduced to
+ * primitive keys (chromosome, start, offset into the mapped chunk), so no per-line strings are created.  Sorted runs
+ * stay in memory while the total fits in {@code maxRecords}, otherwise they are written to deflate compressed spill
+ * files in {@code tmpDir}.  The runs are then combined with a k-way merge.
+ * <p/>
+ * Lines are ordered by chromosome ({@link ChromosomeNameComparator}) and start.  Lines with equal keys keep their
+ * input order.  Lines may end with \n, \r\n, or \r alone, as accepted by
+ * {@link htsjdk.tribble.readers.AsciiLineReader}.
+ */
+class ParallelSortEngine {
+
+    private static Logger log = Logger.getLogger(ParallelSortEngine.class);
+
+    static final int DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+
+    // Lines are terminated as PrintWriter.println does for the header lines
+    private static final byte[] LINE_SEPARATOR = System.getProperty("line.separator").getBytes(LATIN1);
+
+    private final Parser parser;
+    private final File tmpDir;
+    private final int maxRecords;
+    private final int numThreads;
+    private final int runLimit;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    private final AtomicLong recordsInMemory = new AtomicLong();
+    private final List<File> spillFiles = Collections.synchronizedList(new ArrayList<File>());
+
+    ParallelSortEngine(Parser parser, File tmpDir, int maxRecords, int numThreads) {
+        this.parser = parser;
+        this.tmpDir = tmpDir;
+        this.maxRecords = Math.max(1, maxRecords);
+        this.numThreads = Math.max(1, numThreads);
+        this.runLimit = Math.max(1, this.maxRecords / this.numThreads);
+    }
+
+    void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Sort the lines of {@code file} starting at byte offset {@code dataStart} and write them to {@code out}, each
+     * terminated by a newline.
+     *
+     * @param keepFirstLine if true the first line is treated as a record even if it is blank or a comment
+     */
+    void sort(File file, long dataStart, boolean keepFirstLine, OutputStream out) throws IOException {
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "igvtools-sort");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        try {
+            FileChannel channel = raf.getChannel();
+            long length = channel.size();
+
+            List<Future<List<Run>>> futures = new ArrayList<Future<List<Run>>>();
+            long chunkStart = dataStart;
+            while (chunkStart < length) {
+                long chunkEnd = nextLineStart(channel, Math.min(length, chunkStart + chunkSize), length);
+                if (chunkEnd - chunkStart > Integer.MAX_VALUE) {
+                    throw new RuntimeException("Line too long at offset " + chunkStart + " of " + file.getAbsolutePath());
+                }
+                boolean keepFirst = keepFirstLine && chunkStart == dataStart;
+                futures.add(executor.submit(new ChunkTask(channel, chunkStart, (int) (chunkEnd - chunkStart), keepFirst)));
+                chunkStart = chunkEnd;
+            }
+
+            List<Run> runs = new ArrayList<Run>();
+            for (Future<List<Run>> f : futures) {
+                runs.addAll(getResult(f));
+            }
+            log.debug("Merging " + runs.size() + " sorted runs (" + spillFiles.size() + " spilled to disk)");
+            merge(runs, out);
+        } finally {
+            executor.shutdownNow();
+            raf.close();
+            synchronized (spillFiles) {
+                for (File f : spillFiles) {
+                    f.delete();
+                }
+            }
+        }
+    }
+
+    private static <T> T getResult(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new RuntimeException(cause);
+            }
+        }
+    }
+
+    /**
+     * Return the offset of the first line starting at or after {@code position}.
+     */
+    private static long nextLineStart(FileChannel channel, long position, long length) throws IOException {
+        if (position >= length) {
+            return length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long p = position - 1;     // If the preceding byte is a newline position is already a line start
+        while (p < length) {
+            buffer.clear();
+            int n = channel.read(buffer, p);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                byte b = buffer.get(i);
+                if (b == '\n') {
+                    return p + i + 1;
+                }
+                if (b == '\r') {
+                    // A \r\n pair is a single terminator,  don't split it
+                    long next = p + i + 1;
+                    if (next < length) {
+                        ByteBuffer nextByte = ByteBuffer.allocate(1);
+                        if (channel.read(nextByte, next) == 1 && nextByte.get(0) == '\n') {
+                            next++;
+                        }
+                    }
+                    return next;
+                }
+            }
+            p += n;
+        }
+        return length;
+    }
+
+
+    /**
+     * Merge the runs in (chromosome, start, input offset) order.  Chromosome names are ranked once across all runs so
+     * the merge compares primitives only.
+     */
+    private void merge(List<Run> runs, OutputStream out) throws IOException {
+
+        Set<String> names = new HashSet<String>();
+        for (Run run : runs) {
+            names.addAll(Arrays.asList(run.chrNames));
+        }
+        Map<String, Integer> ranks = rankChromosomes(names);
+
+        PriorityQueue<Cursor> queue = new PriorityQueue<Cursor>(Math.max(1, runs.size()));
+        List<Cursor> cursors = new ArrayList<Cursor>(runs.size());
+        try {
+            for (Run run : runs) {
+                int[] rankMap = new int[run.chrNames.length];
+                for (int i = 0; i < rankMap.length; i++) {
+                    rankMap[i] = ranks.get(run.chrNames[i]);
+                }
+                Cursor c = run.open(rankMap);
+                cursors.add(c);
+                if (c.next()) {
+                    queue.add(c);
+                }
+            }
+
+            while (!queue.isEmpty()) {
+                Cursor c = queue.poll();
+                c.write(out);
+                out.write(LINE_SEPARATOR);
+                if (c.next()) {
+                    queue.add(c);
+                }
+            }
+        } finally {
+            for (Cursor c : cursors) {
+                c.close();
+            }
+        }
+    }
+
+    /**
+     * Rank the chromosome names.  {@link ChromosomeNameComparator} caches comparisons in an unsynchronized table, so
+     * calls from worker threads are serialized on it.
+     */
+    private static Map<String, Integer> rankChromosomes(Collection<String> names) {
+        List<String> sorted = new ArrayList<String>(names);
+        ChromosomeNameComparator comparator = ChromosomeNameComparator.get();
+        synchronized (comparator) {
+            Collections.sort(sorted, comparator);
+        }
+        Map<String, Integer> ranks = new HashMap<String, Integer>(sorted.size() * 2);
+        for (int i = 0; i < sorted.size(); i++) {
+            ranks.put(sorted.get(i), i);
+        }
+        return ranks;
+    }
+
+
+    /**
+     * Parses one chunk of the input into sorted runs.  Records are buffered up to {@code runLimit} before being
+     * sorted and spilled.  The last run of the chunk stays in memory if the global budget allows.
+     */
+    private class ChunkTask implements Callable<List<Run>> {
+
+        final FileChannel channel;
+        final long chunkStart;
+        final int chunkLength;
+        final boolean keepFirst;
+
+        MappedByteBuffer buffer;
+        List<Run> runs = new ArrayList<Run>();
+
+        // Chromosome dictionary for the current run
+        List<String> chrNames = new ArrayList<String>();
+        Map<String, Integer> chrIds = new HashMap<String, Integer>();
+        byte[] lastChr = new byte[0];
+        int lastChrId = -1;
+
+        // Buffered records for the current run, in input order
+        int n = 0;
+        int[] chr = new int[0];
+        int[] start = new int[0];
+        int[] offset = new int[0];
+        int[] length = new int[0];
+
+        ChunkTask(FileChannel channel, long chunkStart, int chunkLength, boolean keepFirst) {
+            this.channel = channel;
+            this.chunkStart = chunkStart;
+            this.chunkLength = chunkLength;
+            this.keepFirst = keepFirst;
+        }
+
+        public List<Run> call() throws IOException {
+
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, chunkStart, chunkLength);
+            int[] bounds = new int[4];
+
+            int pos = 0;
+            while (pos < chunkLength) {
+                int eol = pos;
+                byte b = 0;
+                while (eol < chunkLength && (b = buffer.get(eol)) != '\n' && b != '\r') {
+                    eol++;
+                }
+                int end = eol;
+                if (b == '\r' && eol + 1 < chunkLength && buffer.get(eol + 1) == '\n') {
+                    eol++;
+                }
+
+                if ((keepFirst && pos == 0) || !parser.isSkipped(buffer, pos, end)) {
+                    if (!parser.locateFields(buffer, pos, end, bounds)) {
+                        String line = new String(getBytes(pos, end - pos), LATIN1);
+                        log.error("Too few columns in line: " + line);
+                        throw new RuntimeException("Error parsing line: " + line);
+                    }
+                    add(chromosomeId(bounds[0], bounds[1]), Parser.parseStart(buffer, bounds[2], bounds[3]), pos, end - pos);
+                }
+                pos = eol + 1;
+            }
+
+            if (n > 0) {
+                MemoryRun run = sortRun();
+                if (recordsInMemory.addAndGet(n) <= maxRecords) {
+                    runs.add(run);
+                } else {
+                    recordsInMemory.addAndGet(-n);
+                    runs.add(spill(run));
+                }
+            }
+            return runs;
+        }
+
+        private int chromosomeId(int from, int to) {
+            int len = to - from;
+            if (len == lastChr.length) {
+                boolean same = true;
+                for (int i = 0; i < len; i++) {
+                    if (buffer.get(from + i) != lastChr[i]) {
+                        same = false;
+                        break;
+                    }
+                }
+                if (same && lastChrId >= 0) {
+                    return lastChrId;
+                }
+            }
+            lastChr = getBytes(from, len);
+            String name = new String(lastChr, LATIN1);
+            Integer id = chrIds.get(name);
+            if (id == null) {
+                id = chrNames.size();
+                chrNames.add(name);
+                chrIds.put(name, id);
+            }
+            lastChrId = id;
+            return id;
+        }
+
+        private byte[] getBytes(int from, int len) {
+            byte[] bytes = new byte[len];
+            for (int i = 0; i < len; i++) {
+                bytes[i] = buffer.get(from + i);
+            }
+            return bytes;
+        }
+
+        private void add(int chrId, int startPos, int off, int len) throws IOException {
+            if (n == chr.length) {
+                int capacity = (int) Math.min(runLimit, Math.max(1024, 2L * n));
+                chr = Arrays.copyOf(chr, capacity);
+                start = Arrays.copyOf(start, capacity);
+                offset = Arrays.copyOf(offset, capacity);
+                length = Arrays.copyOf(length, capacity);
+            }
+            chr[n] = chrId;
+            start[n] = startPos;
+            offset[n] = off;
+            length[n] = len;
+            n++;
+            if (n == runLimit) {
+                runs.add(spill(sortRun()));
+            }
+        }
+
+        /**
+         * Sort the buffered records and hand them to a new run, resetting the buffer.  The sort key packs the local
+         * chromosome rank into the high word and the start, offset to unsigned, into the low word.
+         */
+        private MemoryRun sortRun() {
+            Map<String, Integer> ranks = rankChromosomes(chrNames);
+            int[] rank = new int[chrNames.size()];
+            for (int i = 0; i < rank.length; i++) {
+                rank[i] = ranks.get(chrNames.get(i));
+            }
+
+            long[] keys = new long[n];
+            int[] order = new int[n];
+            for (int i = 0; i < n; i++) {
+                keys[i] = ((long) rank[chr[i]] << 32) | ((start[i] ^ 0x80000000) & 0xffffffffL);
+                order[i] = i;
+            }
+            sortIndices(order, keys, n);
+
+            MemoryRun run = new MemoryRun(buffer, chunkStart, chrNames.toArray(new String[chrNames.size()]), n);
+            for (int i = 0; i < n; i++) {
+                int idx = order[i];
+                run.chr[i] = chr[idx];
+                run.start[i] = start[idx];
+                run.offset[i] = offset[idx];
+                run.length[i] = length[idx];
+            }
+
+            n = 0;
+            chrNames = new ArrayList<String>();
+            chrIds = new HashMap<String, Integer>();
+            lastChrId = -1;
+            return run;
+        }
+
+        private Run spill(MemoryRun run) throws IOException {
+            File file = File.createTempFile("igvtools-sort", ".run", tmpDir);
+            file.deleteOnExit();
+            spillFiles.add(file);
+
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            DataOutputStream dos = null;
+            try {
+                dos = new DataOutputStream(new BufferedOutputStream(
+                        new DeflaterOutputStream(new FileOutputStream(file), deflater, 65536), 65536));
+                ByteBuffer source = run.buffer.duplicate();
+                byte[] line = new byte[1024];
+                for (int i = 0; i < run.size; i++) {
+                    int len = run.length[i];
+                    if (len > line.length) {
+                        line = new byte[Math.max(len, 2 * line.length)];
+                    }
+                    source.position(run.offset[i]);
+                    source.get(line, 0, len);
+                    dos.writeInt(run.chr[i]);
+                    dos.writeInt(run.start[i]);
+                    dos.writeLong(run.chunkStart + run.offset[i]);
+                    dos.writeInt(len);
+                    dos.write(line, 0, len);
+                }
+            } finally {
+                if (dos != null) dos.close();
+                deflater.end();
+            }
+            return new FileRun(file, run.chrNames, run.size);
+        }
+    }
+
+    /**
+     * Stable merge sort of {@code order[0, n)} by {@code keys[order[i]]}.  Already sorted input, the common case for
+     * files that are nearly sorted, costs a single pass.
+     */
+    static void sortIndices(int[] order, long[] keys, int n) {
+        mergeSort(order, new int[n], keys, 0, n);
+    }
+
+    private static void mergeSort(int[] a, int[] tmp, long[] keys, int from, int to) {
+        if (to - from < 16) {
+            for (int i = from + 1; i < to; i++) {
+                int v = a[i];
+                long k = keys[v];
+                int j = i - 1;
+                while (j >= from && keys[a[j]] > k) {
+                    a[j + 1] = a[j];
+                    j--;
+                }
+                a[j + 1] = v;
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(a, tmp, keys, from, mid);
+        mergeSort(a, tmp, keys, mid, to);
+        if (keys[a[mid - 1]] <= keys[a[mid]]) {
+            return;
+        }
+        System.arraycopy(a, from, tmp, from, to - from);
+        int i = from, j = mid, k = from;
+        while (i < mid && j < to) {
+            a[k++] = keys[tmp[j]] < keys[tmp[i]] ? tmp[j++] : tmp[i++];
+        }
+        while (i < mid) a[k++] = tmp[i++];
+        while (j < to) a[k++] = tmp[j++];
+    }
+
+
+    private static abstract class Run {
+
+        final String[] chrNames;
+        final int size;
+
+        Run(String[] chrNames, int size) {
+            this.chrNames = chrNames;
+            this.size = size;
+        }
+
+        abstract Cursor open(int[] rankMap) throws IOException;
+    }
+
+    /**
+     * Sorted records whose text is still in the mapped input chunk.
+     */
+    private static class MemoryRun extends Run {
+
+        final ByteBuffer buffer;
+        final long chunkStart;
+        final int[] chr;
+        final int[] start;
+        final int[] offset;
+        final int[] length;
+
+        MemoryRun(ByteBuffer buffer, long chunkStart, String[] chrNames, int size) {
+            super(chrNames, size);
+            this.buffer = buffer;
+            this.chunkStart = chunkStart;
+            this.chr = new int[size];
+            this.start = new int[size];
+            this.offset = new int[size];
+            this.length = new int[size];
+        }
+
+        Cursor open(final int[] rankMap) {
+            final ByteBuffer source = buffer.duplicate();
+            return new Cursor() {
+                int index = -1;
+                byte[] line = new byte[1024];
+
+                boolean next() {
+                    index++;
+                    if (index >= size) {
+                        return false;
+                    }
+                    rank = rankMap[chr[index]];
+                    startPos = start[index];
+                    seq = chunkStart + offset[index];
+                    return true;
+                }
+
+                void write(OutputStream out) throws IOException {
+                    int len = length[index];
+                    if (len > line.length) {
+                        line = new byte[Math.max(len, 2 * line.length)];
+                    }
+                    source.position(offset[index]);
+                    source.get(line, 0, len);
+                    out.write(line, 0, len);
+                }
+            };
+        }
+    }
+
+    /**
+     * Sorted records spilled to a compressed temporary file.
+     */
+    private static class FileRun extends Run {
+
+        final File file;
+
+        FileRun(File file, String[] chrNames, int size) {
+            super(chrNames, size);
+            this.file = file;
+        }
+
+        Cursor open(final int[] rankMap) throws IOException {
+            final DataInputStream dis = new DataInputStream(new BufferedInputStream(
+                    new InflaterInputStream(new FileInputStream(file)), 65536));
+            return new Cursor() {
+                int remaining = size;
+                byte[] line = new byte[1024];
+                int len;
+
+                boolean next() throws IOException {
+                    if (remaining == 0) {
+                        return false;
+                    }
+                    remaining--;
+                    rank = rankMap[dis.readInt()];
+                    startPos = dis.readInt();
+                    seq = dis.readLong();
+                    len = dis.readInt();
+                    if (len > line.length) {
+                        line = new byte[Math.max(len, 2 * line.length)];
+                    }
+                    dis.readFully(line, 0, len);
+                    return true;
+                }
+
+                void write(OutputStream out) throws IOException {
+                    out.write(line, 0, len);
+                }
+
+                void close() {
+                    try {
+                        dis.close();
+                    } catch (IOException e) {
+                        log.error("Error closing " + file.getAbsolutePath(), e);
+                    }
+                }
+            };
+        }
+    }
+
+    /**
+     * Position in a run during the merge.  Ordered by chromosome rank, start, and input offset.
+     */
+    private static abstract class Cursor implements Comparable<Cursor> {
+
+        int rank;
+        int startPos;
+        long seq;
+
+        abstract boolean next() throws IOException;
+
+        abstract void write(OutputStream out) throws IOException;
+
+        void close() {
+        }
+
+        public int compareTo(Cursor o) {
+            if (rank != o.rank) {
+                return rank < o.rank ? -1 : 1;
+            }
+            if (startPos != o.startPos) {
+                return startPos < o.startPos ? -1 : 1;
+            }
+            return seq < o.seq ? -1 : (seq == o.seq ? 0 : 1);
+        }
+    }
+}
@@ -29,6 +29,7 @@ import org.broad.igv.Globals;
 import htsjdk.tribble.readers.AsciiLineReader;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * @author: nazaire
@@ -96,4 +97,103 @@ public class Parser {
 
         return new SortableRecord(chr, start, text);
     }
+
+    /**
+     * Return true if the line occupying bytes [start, end) of {@code buffer} is blank or a comment.  Byte level
+     * equivalent of the tests in {@link #readNextRecord(AsciiLineReader)}.
+     */
+    boolean isSkipped(ByteBuffer buffer, int start, int end) {
+        boolean blank = true;
+        for (int i = start; i < end; i++) {
+            if ((buffer.get(i) & 0xff) > ' ') {
+                blank = false;
+                break;
+            }
+        }
+        if (blank) {
+            return true;
+        }
+        int n = commentPrefix.length();
+        if (n == 0 || end - start < n) {
+            return n == 0;
+        }
+        for (int i = 0; i < n; i++) {
+            if (buffer.get(start + i) != commentPrefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Locate the chromosome and start columns of the line occupying bytes [start, end) of {@code buffer}, splitting
+     * on the same delimiters as {@link #createRecord(String)}.  On return {@code bounds} holds the start and end of
+     * the chromosome field followed by the start and end of the start field.
+     *
+     * @return false if the line has too few columns
+     */
+    boolean locateFields(ByteBuffer buffer, int start, int end, int[] bounds) {
+        int lastCol = Math.max(chrCol, startCol);
+        int col = 0;
+        int fieldStart = start;
+        int i = start;
+        while (col <= lastCol) {
+            if (i == end || buffer.get(i) == '\t' || (splitOnWhiteSpace && buffer.get(i) == ' ')) {
+                if (col == chrCol) {
+                    bounds[0] = fieldStart;
+                    bounds[1] = i;
+                }
+                if (col == startCol) {
+                    bounds[2] = fieldStart;
+                    bounds[3] = i;
+                }
+                if (i == end) {
+                    return col >= lastCol;
+                }
+                // A tab is a single delimiter, a run of spaces is one delimiter (singleTabMultiSpacePattern)
+                if (buffer.get(i) == ' ') {
+                    while (i + 1 < end && buffer.get(i + 1) == ' ') {
+                        i++;
+                    }
+                }
+                col++;
+                fieldStart = i + 1;
+            }
+            i++;
+        }
+        return true;
+    }
+
+    /**
+     * Parse the start field located by {@link #locateFields(ByteBuffer, int, int, int[])}.  Like
+     * {@link #createRecord(String)} the field is trimmed and values that are not integers sort last.
+     */
+    static int parseStart(ByteBuffer buffer, int start, int end) {
+        while (start < end && (buffer.get(start) & 0xff) <= ' ') start++;
+        while (end > start && (buffer.get(end - 1) & 0xff) <= ' ') end--;
+
+        boolean negative = false;
+        if (start < end && (buffer.get(start) == '-' || buffer.get(start) == '+')) {
+            negative = buffer.get(start) == '-';
+            start++;
+        }
+        if (start == end) {
+            return Integer.MAX_VALUE;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return Integer.MAX_VALUE;
+            }
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                return Integer.MAX_VALUE;
+            }
+        }
+        if (negative) {
+            return (int) -value;
+        }
+        return value > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) value;
+    }
 }
@@ -54,6 +54,7 @@ public abstract class Sorter {
     private File outputFile;
     private boolean writeStdOut = false;
     private int maxRecords = MAX_RECORDS_IN_RAM;
+    private int numThreads = 1;
 
     /**
      * Directory used for storing temporary data files
@@ -61,6 +62,7 @@ public abstract class Sorter {
     private File tmpDir;
     static final String usageString = "igvtools sort <inputFile> [outputFile]";
     protected Comparator<SortableRecord> comparator = getDefaultComparator();
+    private boolean customComparator = false;
 
     public static Sorter getSorter(String[] argv) {
 
@@ -72,6 +74,7 @@ public abstract class Sorter {
         CmdLineParser parser = new CmdLineParser();
         CmdLineParser.Option tmpDirOption = parser.addStringOption('t', "tmpDir");
         CmdLineParser.Option maxRecordsOption = parser.addStringOption('m', "maxRecords");
+        CmdLineParser.Option threadsOption = parser.addIntegerOption("threads");
 
         try {
             parser.parse(argv);
@@ -116,6 +119,7 @@ public abstract class Sorter {
         }
 
         sorter.setMaxRecords(mr);
+        sorter.setNumThreads((Integer) parser.getOptionValue(threadsOption, 1));
         return sorter;
     }
 
@@ -168,8 +172,113 @@ public abstract class Sorter {
         }
     }
 
+    /**
+     * Sort the input with {@link ParallelSortEngine}.  The header is copied through {@link #writeHeader}, the data
+     * lines that follow are sorted from a memory mapped view of the input.  Input that cannot be mapped, such as a
+     * pipe, is first copied to the tmp directory.
+     */
     public void run() throws IOException {
 
+        if (customComparator) {
+            runSortingCollection();
+            return;
+        }
+
+        File file = inputFile;
+        File spoolFile = null;
+        OutputStream out = null;
+        try {
+            if (!inputFile.isFile()) {
+                spoolFile = spool(inputFile);
+                file = spoolFile;
+            }
+
+            out = new BufferedOutputStream(writeStdOut ? System.out : new FileOutputStream(outputFile), 65536);
+            PrintWriter writer = new PrintWriter(new OutputStreamWriter(out));
+
+            String firstDataRow;
+            long dataStart;
+            FileInputStream fis = new FileInputStream(file);
+            try {
+                AsciiLineReader reader = new AsciiLineReader(fis);
+                firstDataRow = writeHeader(reader, writer);
+                dataStart = reader.getPosition();
+                if (firstDataRow != null) {
+                    dataStart = getLineStart(file, dataStart, firstDataRow);
+                }
+            } finally {
+                fis.close();
+            }
+            writer.flush();
+
+            ParallelSortEngine engine = new ParallelSortEngine(getParser(), tmpDir, maxRecords, numThreads);
+            engine.sort(file, dataStart, firstDataRow != null, out);
+        } finally {
+            if (out != null) {
+                if (writeStdOut) {
+                    out.flush();
+                } else {
+                    out.close();
+                }
+            }
+            if (spoolFile != null) {
+                spoolFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Return the offset of {@code line}, the line just read by an {@link AsciiLineReader} now positioned at
+     * {@code end}.  The reader strips the terminator, so check which one preceded {@code end}.
+     */
+    private static long getLineStart(File file, long end, String line) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            int terminator = 0;
+            if (end >= 1) {
+                raf.seek(end - 1);
+                int last = raf.read();
+                if (last == '\n') {
+                    terminator = 1;
+                    if (end >= 2) {
+                        raf.seek(end - 2);
+                        if (raf.read() == '\r') {
+                            terminator = 2;
+                        }
+                    }
+                } else if (last == '\r') {
+                    terminator = 1;
+                }
+            }
+            return Math.max(0, end - terminator - line.length());
+        } finally {
+            raf.close();
+        }
+    }
+
+    private File spool(File input) throws IOException {
+        File spoolFile = File.createTempFile("igvtools-sort", ".txt", tmpDir);
+        spoolFile.deleteOnExit();
+        InputStream is = new FileInputStream(input);
+        OutputStream os = new FileOutputStream(spoolFile);
+        try {
+            byte[] buffer = new byte[65536];
+            int n;
+            while ((n = is.read(buffer)) > 0) {
+                os.write(buffer, 0, n);
+            }
+        } finally {
+            is.close();
+            os.close();
+        }
+        return spoolFile;
+    }
+
+    /**
+     * Sort with htsjdk's {@link SortingCollection}.  Used when a custom record comparator has been set.
+     */
+    private void runSortingCollection() throws IOException {
+
         FileInputStream fis = null;
         PrintWriter writer = null;
 
@@ -216,6 +325,7 @@ public abstract class Sorter {
 
     void setComparator(Comparator<SortableRecord> comparator) {
         this.comparator = comparator;
+        this.customComparator = true;
     }
 
     public static Comparator<SortableRecord> getDefaultComparator() {
@@ -256,6 +366,10 @@ public abstract class Sorter {
         this.maxRecords = maxRecords;
     }
 
+    public void setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+    }
+
     public void setWriteStdOut(boolean writeStdOut) {
         this.writeStdOut = writeStdOut;
     }
@@ -77,6 +77,13 @@ public abstract class AbstractTrack implements Track {
     public static final Set<Class> knownUnknownTrackClasses = new HashSet<Class>();
     public static final Class defaultTrackClass = AbstractTrack.class;
 
+    /**
+     * Autoscaled data ranges of the offscreen paint in progress on this thread,  or null if there is none.  See
+     * {@link #beginOffscreenPaint()}.
+     */
+    private static final ThreadLocal<Map<AbstractTrack, DataRange>> offscreenDataRanges =
+            new ThreadLocal<Map<AbstractTrack, DataRange>>();
+
     /**
      * Set default renderer classes by track type.
      */
@@ -255,6 +262,16 @@ public abstract class AbstractTrack implements Track {
         // No-op, to be overriden by subclasses
     }
 
+    @Override
+    public boolean isReadyToPaint(ReferenceFrame frame) {
+        return true;
+    }
+
+    @Override
+    public void prefetch(String chr, int start, int end, int zoom) {
+        // No-op, to be overriden by subclasses
+    }
+
     @Override
     public boolean isFilterable() {
         return true;   // True by default
@@ -555,6 +572,13 @@ public abstract class AbstractTrack implements Track {
     }
 
     public DataRange getDataRange() {
+        Map<AbstractTrack, DataRange> offscreenRanges = offscreenDataRanges.get();
+        if (offscreenRanges != null) {
+            DataRange offscreenRange = offscreenRanges.get(this);
+            if (offscreenRange != null) {
+                return offscreenRange;
+            }
+        }
         if (dataRange == null) {
             // Use the color scale if there is one
             float min = (float) (colorScale == null ? 0 : colorScale.getMinimum());
@@ -571,6 +595,43 @@ public abstract class AbstractTrack implements Track {
         this.dataRange = axisDefinition;
     }
 
+    /**
+     * Set the data range computed by autoscaling while rendering.  During an offscreen paint the range is kept
+     * private to the painting thread until {@link #endOffscreenPaint()},  so concurrent paints of different frames
+     * (see SnapshotRenderer) each render with the range of their own interval.
+     *
+     * @param autoscaleRange
+     */
+    public void setAutoscaleDataRange(DataRange autoscaleRange) {
+        Map<AbstractTrack, DataRange> offscreenRanges = offscreenDataRanges.get();
+        if (offscreenRanges != null) {
+            offscreenRanges.put(this, autoscaleRange);
+        } else {
+            this.dataRange = autoscaleRange;
+        }
+    }
+
+    /**
+     * Start confining autoscaled data ranges to the current thread.
+     */
+    public static void beginOffscreenPaint() {
+        offscreenDataRanges.set(new HashMap<AbstractTrack, DataRange>());
+    }
+
+    /**
+     * Stop confining autoscaled data ranges to the current thread.  The ranges of the paint become the track
+     * ranges,  as for an onscreen paint.
+     */
+    public static void endOffscreenPaint() {
+        Map<AbstractTrack, DataRange> offscreenRanges = offscreenDataRanges.get();
+        offscreenDataRanges.remove();
+        if (offscreenRanges != null) {
+            for (Map.Entry<AbstractTrack, DataRange> entry : offscreenRanges.entrySet()) {
+                entry.getKey().dataRange = entry.getValue();
+            }
+        }
+    }
+
 
     protected Class getDefaultRendererClass() {
         Class def = defaultRendererMap.get(getTrackType());
@@ -0,0 +1,396 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.track;
+
+import htsjdk.samtools.util.LocationAware;
+import htsjdk.tribble.AsciiFeatureCodec;
+import htsjdk.tribble.Feature;
+import htsjdk.tribble.FeatureCodec;
+import htsjdk.tribble.readers.LineIterator;
+import htsjdk.tribble.readers.PositionalBufferedStream;
+import org.apache.log4j.Logger;
+import org.broad.igv.feature.FeatureDB;
+import org.broad.igv.feature.FeatureUtils;
+import org.broad.igv.feature.NamedFeature;
+import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.feature.tribble.*;
+import org.broad.igv.util.ByteLineReader;
+import org.broad.igv.util.FileUtils;
+import org.broad.igv.util.ResourceLocator;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads all features of a local, uncompressed, non-indexed feature file using several threads.  The data section of
+ * the file is cut into byte ranges on line boundaries and each range is decoded by its own codec instance from
+ * {@link CodecFactory}.  The per-chunk results, sorted by start, are then merged into one list per chromosome.
+ * <p/>
+ * The result is identical to reading the file sequentially and sorting each chromosome's features with
+ * {@link FeatureUtils#sortFeatureList(java.util.List)}:  features with equal starts keep their file order, and
+ * features are registered with {@link FeatureDB} in file order.
+ */
+public class ChunkedFeatureLoader {
+
+    private static Logger log = Logger.getLogger(ChunkedFeatureLoader.class);
+
+    static final int N_THREADS = Runtime.getRuntime().availableProcessors();
+
+    static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private static final ExecutorService loadExecutor = Executors.newFixedThreadPool(Math.max(1, N_THREADS), new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "feature-load-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    /**
+     * Codecs whose decode depends only on the header and the current line.  Other codecs keep state between lines,
+     * or are not line based, and are always read sequentially.
+     */
+    private static final Set<Class> CHUNKABLE_CODECS = new HashSet<Class>(Arrays.<Class>asList(
+            IGVBEDCodec.class, GFFCodec.class, PSLCodec.class, UCSCGeneTableCodec.class, REPMaskCodec.class,
+            EncodePeakCodec.class, DGVCodec.class, UCSCSnpCodec.class));
+
+    private final ResourceLocator locator;
+    private final Genome genome;
+    private final int chunkSize;
+
+    public ChunkedFeatureLoader(ResourceLocator locator, Genome genome) {
+        this(locator, genome, DEFAULT_CHUNK_SIZE);
+    }
+
+    ChunkedFeatureLoader(ResourceLocator locator, Genome genome, int chunkSize) {
+        this.locator = locator;
+        this.genome = genome;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Return true if the file is worth loading in chunks:  a local, uncompressed file of at least two chunks, read
+     * with a codec that decodes each line independently.
+     */
+    public static boolean canLoad(ResourceLocator locator, FeatureCodec codec) {
+        if (N_THREADS < 2 || codec == null || !CHUNKABLE_CODECS.contains(codec.getClass())) {
+            return false;
+        }
+        String path = locator.getPath();
+        if (FileUtils.isRemote(path) || path.toLowerCase().endsWith("gz")) {
+            return false;
+        }
+        File file = new File(path);
+        return file.isFile() && file.length() >= 2L * DEFAULT_CHUNK_SIZE;
+    }
+
+    /**
+     * Load all features,  keyed by canonical chromosome name.  Each list is sorted by start position.
+     */
+    public Map<String, List<Feature>> load() throws IOException {
+
+        File file = new File(locator.getPath());
+        long dataStart = getDataStart(file);
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long length = channel.size();
+
+            int nChunks = (int) Math.min(2 * N_THREADS, Math.max(1, (length - dataStart) / chunkSize));
+            long step = Math.max(1, (length - dataStart) / nChunks);
+
+            List<Future<Chunk>> futures = new ArrayList<Future<Chunk>>(nChunks);
+            long chunkStart = dataStart;
+            while (chunkStart < length) {
+                long chunkEnd = nextLineStart(channel, Math.min(length, chunkStart + step), length);
+                futures.add(loadExecutor.submit(new ChunkTask(channel, chunkStart, chunkEnd)));
+                chunkStart = chunkEnd;
+            }
+
+            List<Chunk> chunks = new ArrayList<Chunk>(futures.size());
+            try {
+                for (Future<Chunk> f : futures) {
+                    chunks.add(getResult(f));
+                }
+            } finally {
+                for (Future<Chunk> f : futures) {
+                    f.cancel(true);
+                }
+            }
+
+            for (Chunk chunk : chunks) {
+                for (NamedFeature f : chunk.namedFeatures) {
+                    FeatureDB.addFeature(f, genome);
+                }
+            }
+
+            log.debug("Loaded " + locator.getPath() + " in " + chunks.size() + " chunks");
+            return merge(chunks);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Return the offset of the first data line,  as determined by the codec's header parsing.
+     */
+    private long getDataStart(File file) throws IOException {
+        InputStream is = new FileInputStream(file);
+        try {
+            return readHeader(newCodec(), is);
+        } finally {
+            is.close();
+        }
+    }
+
+    private AsciiFeatureCodec newCodec() {
+        return (AsciiFeatureCodec) CodecFactory.getCodec(locator, genome);
+    }
+
+    /**
+     * Let {@code codec} read the file header from {@code is},  and return the offset of the line following it.
+     */
+    private static long readHeader(AsciiFeatureCodec codec, InputStream is) {
+        Object source = codec.makeIndexableSourceFromStream(new PositionalBufferedStream(is));
+        codec.readActualHeader((LineIterator) source);
+        return ((LocationAware) source).getPosition();
+    }
+
+    /**
+     * Merge the chunk results chromosome by chromosome.  Ties on start go to the earlier chunk,  so the order equals a
+     * stable sort of the whole file.
+     */
+    private static Map<String, List<Feature>> merge(List<Chunk> chunks) {
+
+        Map<String, List<List<Feature>>> runsByChr = new LinkedHashMap<String, List<List<Feature>>>();
+        for (Chunk chunk : chunks) {
+            for (Map.Entry<String, List<Feature>> entry : chunk.featureMap.entrySet()) {
+                List<List<Feature>> runs = runsByChr.get(entry.getKey());
+                if (runs == null) {
+                    runs = new ArrayList<List<Feature>>(chunks.size());
+                    runsByChr.put(entry.getKey(), runs);
+                }
+                runs.add(entry.getValue());
+            }
+        }
+
+        Map<String, List<Feature>> featureMap = new HashMap<String, List<Feature>>(Math.max(25, 2 * runsByChr.size()));
+        for (Map.Entry<String, List<List<Feature>>> entry : runsByChr.entrySet()) {
+            List<List<Feature>> runs = entry.getValue();
+            featureMap.put(entry.getKey(), runs.size() == 1 ? runs.get(0) : mergeRuns(runs));
+        }
+        return featureMap;
+    }
+
+    private static List<Feature> mergeRuns(List<List<Feature>> runs) {
+
+        int size = 0;
+        PriorityQueue<Cursor> queue = new PriorityQueue<Cursor>(runs.size());
+        for (int i = 0; i < runs.size(); i++) {
+            List<Feature> run = runs.get(i);
+            size += run.size();
+            if (!run.isEmpty()) {
+                queue.add(new Cursor(run, i));
+            }
+        }
+
+        List<Feature> merged = new ArrayList<Feature>(size);
+        while (!queue.isEmpty()) {
+            Cursor c = queue.poll();
+            merged.add(c.current);
+            if (c.next()) {
+                queue.add(c);
+            }
+        }
+        return merged;
+    }
+
+    private static <T> T getResult(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new RuntimeException(cause);
+            }
+        }
+    }
+
+    /**
+     * Return the offset of the first line starting at or after {@code position}.
+     */
+    private static long nextLineStart(FileChannel channel, long position, long length) throws IOException {
+        if (position >= length) {
+            return length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long p = position - 1;     // If the preceding byte is a newline position is already a line start
+        while (p < length) {
+            buffer.clear();
+            int n = channel.read(buffer, p);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (buffer.get(i) == '\n') {
+                    return p + i + 1;
+                }
+            }
+            p += n;
+        }
+        return length;
+    }
+
+
+    /**
+     * Features decoded from one byte range,  sorted by start per chromosome.  Named features are also kept in file
+     * order for {@link FeatureDB}.
+     */
+    private static class Chunk {
+        final Map<String, List<Feature>> featureMap = new HashMap<String, List<Feature>>();
+        final List<NamedFeature> namedFeatures = new ArrayList<NamedFeature>();
+    }
+
+    private class ChunkTask implements Callable<Chunk> {
+
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+
+        ChunkTask(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+        }
+
+        public Chunk call() throws IOException {
+
+            // Each chunk gets its own codec,  primed with the file header
+            AsciiFeatureCodec codec = newCodec();
+            InputStream headerStream = new FileInputStream(locator.getPath());
+            try {
+                readHeader(codec, headerStream);
+            } finally {
+                headerStream.close();
+            }
+            ByteLineDecoder byteDecoder = codec instanceof ByteLineDecoder ? (ByteLineDecoder) codec : null;
+
+            Chunk chunk = new Chunk();
+            ByteLineReader lineReader = new ByteLineReader(new RangeInputStream(channel, start, end));
+            while (lineReader.next()) {
+                Feature f = byteDecoder != null ?
+                        byteDecoder.decode(lineReader.getBuffer(), lineReader.getLineStart(), lineReader.getLineEnd()) :
+                        (Feature) codec.decode(lineReader.getLine());
+                if (f == null) continue;
+
+                String igvChr = genome == null ? f.getChr() : genome.getCanonicalChrName(f.getChr());
+                List<Feature> featureList = chunk.featureMap.get(igvChr);
+                if (featureList == null) {
+                    featureList = new ArrayList<Feature>();
+                    chunk.featureMap.put(igvChr, featureList);
+                }
+                featureList.add(f);
+                if (f instanceof NamedFeature) chunk.namedFeatures.add((NamedFeature) f);
+            }
+
+            for (List<Feature> featureList : chunk.featureMap.values()) {
+                FeatureUtils.sortFeatureList(featureList);
+            }
+            return chunk;
+        }
+    }
+
+    private static class Cursor implements Comparable<Cursor> {
+
+        private final Iterator<Feature> iter;
+        private final int run;
+        Feature current;
+
+        Cursor(List<Feature> features, int run) {
+            this.iter = features.iterator();
+            this.run = run;
+            next();
+        }
+
+        boolean next() {
+            current = iter.hasNext() ? iter.next() : null;
+            return current != null;
+        }
+
+        public int compareTo(Cursor o) {
+            int cmp = FeatureUtils.FEATURE_START_COMPARATOR.compare(current, o.current);
+            return cmp != 0 ? cmp : run - o.run;
+        }
+    }
+
+    /**
+     * Stream over a byte range of a file channel.  Uses positional reads,  so several streams can share the channel.
+     */
+    private static class RangeInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private long position;
+        private final long end;
+
+        RangeInputStream(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            len = (int) Math.min(len, end - position);
+            int n = channel.read(ByteBuffer.wrap(b, off, len), position);
+            if (n > 0) {
+                position += n;
+            }
+            return n;
+        }
+    }
+}
@@ -117,6 +117,10 @@ public class DataSourceTrack extends DataTrack {
         setDataRange(new DataRange(min, baseline, max));
     }
 
+    DataSource getDataSource() {
+        return dataSource;
+    }
+
     public List<LocusScore> getSummaryScores(String chr, int startLocation, int endLocation, int zoom) {
         List<LocusScore> tmp = dataSource.getSummaryScoresForRange(chr, startLocation, endLocation, zoom);
         if (tmp == null) tmp = Collections.EMPTY_LIST;
@@ -55,8 +55,10 @@ import javax.xml.bind.annotation.XmlType;
 import javax.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
 import java.awt.*;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Represents a track of numeric data
@@ -71,7 +73,8 @@ public abstract class DataTrack extends AbstractTrack {
     private DataRenderer renderer;
 
     // TODO -- memory leak.  This needs to get cleared when the gene list changes
-    private HashMap<String, LoadedDataInterval> loadedIntervalCache = new HashMap(200);
+    private Map<String, LoadedDataInterval> loadedIntervalCache =
+            Collections.synchronizedMap(new HashMap<String, LoadedDataInterval>(200));
     private boolean featuresLoading = false;
 
 
@@ -83,7 +86,8 @@ public abstract class DataTrack extends AbstractTrack {
 
 
     public void render(RenderContext context, Rectangle rect) {
-        if (featuresLoading) {
+        // Offscreen paints load their scores synchronously,  a load in progress on another thread does not matter
+        if (featuresLoading && context.getPanel() != null) {
             return;
         }
 
@@ -148,7 +152,7 @@ public abstract class DataTrack extends AbstractTrack {
 
                     DataRange newDR = new DataRange(min, base, max, dr.isDrawBaseline());
                     newDR.setType(dr.getType());
-                    setDataRange(newDR);
+                    setAutoscaleDataRange(newDR);
                 }
 
             }
@@ -169,6 +173,20 @@ public abstract class DataTrack extends AbstractTrack {
         }
     }
 
+    @Override
+    public boolean isReadyToPaint(ReferenceFrame frame) {
+        LoadedDataInterval interval = loadedIntervalCache.get(frame.getName());
+        return interval != null &&
+                interval.contains(frame.getChrName(), (int) frame.getOrigin(), (int) frame.getEnd() + 1, frame.getZoom());
+    }
+
+    @Override
+    public void prefetch(String chr, int start, int end, int zoom) {
+        Genome genome = GenomeManager.getInstance().getCurrentGenome();
+        String queryChr = genome == null ? chr : genome.getCanonicalChrName(chr);
+        getSummaryScores(queryChr, start, end, zoom);
+    }
+
     public List<LocusScore> loadScores(final RenderContext context) {
 
         String chr = context.getChr();
@@ -207,6 +225,7 @@ public abstract class DataTrack extends AbstractTrack {
 
     public void clearCaches() {
         loadedIntervalCache.clear();
+        RegionScoreService.getInstance().invalidate(this);
     }
 
     public void setRendererClass(Class rc) {
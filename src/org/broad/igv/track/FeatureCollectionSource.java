@@ -35,7 +35,7 @@ import org.broad.igv.feature.LocusScore;
 import org.broad.igv.feature.genome.Genome;
 import org.broad.igv.feature.genome.GenomeManager;
 import org.broad.igv.ui.panel.ReferenceFrame;
-import org.broad.igv.util.collections.CollUtils;
+import org.broad.igv.util.index.FeatureIntervalIndex;
 import htsjdk.tribble.Feature;
 
 import java.util.*;
@@ -54,6 +54,11 @@ public class FeatureCollectionSource implements FeatureSource {
 
     private Map<String, List<htsjdk.tribble.Feature>> featureMap;
 
+    /**
+     * Map of chr -> interval index over the features of that chromosome.
+     */
+    private Map<String, FeatureIntervalIndex<Feature>> featureIndexMap;
+
     CoverageDataSource coverageData;
 
     Genome genome;
@@ -86,14 +91,23 @@ public class FeatureCollectionSource implements FeatureSource {
         return getFeatureList(chr, start, end).iterator();
     }
 
+    /**
+     * Return features overlapping the interval,  that is features with start <= end and end > start.  The returned
+     * list should be treated as read-only.
+     *
+     * @param chr
+     * @param start
+     * @param end
+     * @return
+     */
     public List<Feature> getFeatureList(String chr, int start, int end) {
 
-        List<Feature> features = featureMap.get(chr);
-        if (features == null) {
+        FeatureIntervalIndex<Feature> index = featureIndexMap.get(chr);
+        if (index == null) {
             return Collections.<Feature>emptyList();
         }
-        List<Feature> filteredFeatures = CollUtils.filter(features, FeatureUtils.getOverlapPredicate(chr, start, end));
-        return filteredFeatures;
+        int queryEnd = end == Integer.MAX_VALUE ? end : end + 1;
+        return index.getOverlapping(start, queryEnd);
     }
 
 
@@ -118,6 +132,7 @@ public class FeatureCollectionSource implements FeatureSource {
         // Separate features by chromosome
 
             featureMap = new HashMap();
+            featureIndexMap = new HashMap<String, FeatureIntervalIndex<Feature>>();
             for (Feature f : allFeatures) {
                 List<Feature> fList = featureMap.get(f.getChr());
                 if (fList == null) {
@@ -127,8 +142,10 @@ public class FeatureCollectionSource implements FeatureSource {
                 fList.add(f);
             }
 
-            for (List<Feature> featureList : featureMap.values()) {
+            for (Map.Entry<String, List<Feature>> entry : featureMap.entrySet()) {
+                List<Feature> featureList = entry.getValue();
                 FeatureUtils.sortFeatureList(featureList);
+                featureIndexMap.put(entry.getKey(), new FeatureIntervalIndex<Feature>(featureList));
             }
 
             if (featureMap.size() < 100) {
@@ -140,6 +157,7 @@ public class FeatureCollectionSource implements FeatureSource {
     private void setFeatures(String chr, List<Feature> features) {
         FeatureUtils.sortFeatureList(features);
         featureMap.put(chr, features);
+        featureIndexMap.put(chr, new FeatureIntervalIndex<Feature>(features));
     }
 
     public TrackType getType() {
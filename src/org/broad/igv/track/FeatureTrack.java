@@ -675,6 +675,31 @@ public class FeatureTrack extends AbstractTrack {
         }
     }
 
+    @Override
+    public boolean isReadyToPaint(ReferenceFrame frame) {
+        // In-memory sources are loaded synchronously by render(),  as in loadFeatures()
+        if (forceLoadSync || source instanceof FeatureCollectionSource ||
+                !isShowFeatures(new RenderContextImpl(null, null, frame, null))) {
+            return true;
+        }
+        PackedFeatures packedFeatures = packedFeaturesMap.get(frame.getName());
+        return packedFeatures != null &&
+                packedFeatures.containsInterval(frame.getChrName(), (int) frame.getOrigin(), (int) frame.getEnd());
+    }
+
+    @Override
+    public void prefetch(String chr, int start, int end, int zoom) {
+        int vw = getVisibilityWindow();
+        if (source == null || source instanceof FeatureCollectionSource || (vw > 0 && end - start > vw)) {
+            return;
+        }
+        try {
+            source.getFeatures(chr, start, end);
+        } catch (IOException e) {
+            log.debug("Error prefetching features for " + getName(), e);
+        }
+    }
+
     @Override
     public void render(RenderContext context, Rectangle rect) {
         Rectangle renderRect = new Rectangle(rect);
@@ -815,37 +840,41 @@ public class FeatureTrack extends AbstractTrack {
 
 
         FeatureRenderer renderer = getRenderer();
-        if (areFeaturesStacked()) {
-            List<PackedFeatures.FeatureRow> rows = packedFeatures.getRows();
-            if (rows != null && rows.size() > 0) {
-
-                int nLevels = rows.size();
-                synchronized (levelRects) {
-
-                    levelRects.clear();
-
-                    // Divide rectangle into equal height levels
-                    double h = inputRect.getHeight() / nLevels;
-                    Rectangle rect = new Rectangle(inputRect.x, inputRect.y, inputRect.width, (int) h);
-                    int i = 0;
-
-                    renderer.reset();
-                    for (PackedFeatures.FeatureRow row : rows) {
-                        levelRects.add(new Rectangle(rect));
-                        renderer.render(row.features, context, levelRects.get(i), this);
-                        if (selectedFeatureRowIndex == i) {
-                            Graphics2D fontGraphics = context.getGraphic2DForColor(SELECTED_FEATURE_ROW_COLOR);
-                            fontGraphics.fillRect(rect.x, rect.y, rect.width, rect.height);
+        // Renderers keep state for the duration of a render (e.g. drawn feature names),  concurrent offscreen
+        // paints of this track share the renderer
+        synchronized (renderer) {
+            if (areFeaturesStacked()) {
+                List<PackedFeatures.FeatureRow> rows = packedFeatures.getRows();
+                if (rows != null && rows.size() > 0) {
+
+                    int nLevels = rows.size();
+                    synchronized (levelRects) {
+
+                        levelRects.clear();
+
+                        // Divide rectangle into equal height levels
+                        double h = inputRect.getHeight() / nLevels;
+                        Rectangle rect = new Rectangle(inputRect.x, inputRect.y, inputRect.width, (int) h);
+                        int i = 0;
+
+                        renderer.reset();
+                        for (PackedFeatures.FeatureRow row : rows) {
+                            levelRects.add(new Rectangle(rect));
+                            renderer.render(row.features, context, levelRects.get(i), this);
+                            if (selectedFeatureRowIndex == i) {
+                                Graphics2D fontGraphics = context.getGraphic2DForColor(SELECTED_FEATURE_ROW_COLOR);
+                                fontGraphics.fillRect(rect.x, rect.y, rect.width, rect.height);
+                            }
+                            rect.y += h;
+                            i++;
                         }
-                        rect.y += h;
-                        i++;
                     }
                 }
-            }
-        } else {
-            List<IGVFeature> features = packedFeatures.getFeatures();
-            if (features != null) {
-                renderer.render(features, context, inputRect, this);
+            } else {
+                List<IGVFeature> features = packedFeatures.getFeatures();
+                if (features != null) {
+                    renderer.render(features, context, inputRect, this);
+                }
             }
         }
     }
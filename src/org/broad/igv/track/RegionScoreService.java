@@ -0,0 +1,233 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.track;
+
+import org.apache.log4j.Logger;
+import org.broad.igv.Globals;
+import org.broad.igv.data.Dataset;
+import org.broad.igv.data.DatasetDataSource;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Computes {@link Track#getRegionScore} for many tracks at once,  for sorting tracks and groups by a region.
+ * Scores are computed once per track on a pool of background threads,  rather than twice per comparison on the
+ * calling thread.  Tracks backed by the same {@link Dataset} share one load of the dataset's data for the region
+ * chromosome before the tracks are scored.
+ * <p/>
+ * Results are cached by region, zoom, and score type,  so that sorting the same region again,  or sorting groups
+ * after samples, does not recompute them.  A track's entries are dropped when its caches are cleared,  see
+ * {@link DataTrack#clearCaches()}.  Mutation counts depend on the other loaded tracks and are not cached.
+ */
+public class RegionScoreService {
+
+    private static Logger log = Logger.getLogger(RegionScoreService.class);
+
+    static final int N_THREADS = Runtime.getRuntime().availableProcessors();
+
+    private static final int MAX_CACHED_REGIONS = 20;
+
+    private static final ExecutorService scoreExecutor = Executors.newFixedThreadPool(Math.max(1, N_THREADS), new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "region-score-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private static RegionScoreService instance;
+
+    /**
+     * Region key -> (track -> score),  in access order.  Weak keys so that unloaded tracks are not retained.
+     */
+    private final LinkedHashMap<String, Map<Track, Float>> cache =
+            new LinkedHashMap<String, Map<Track, Float>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Map<Track, Float>> eldest) {
+                    return size() > MAX_CACHED_REGIONS;
+                }
+            };
+
+    public static synchronized RegionScoreService getInstance() {
+        if (instance == null) {
+            instance = new RegionScoreService();
+        }
+        return instance;
+    }
+
+    RegionScoreService() {
+    }
+
+    /**
+     * Return the region score of each track,  as returned by
+     * {@link Track#getRegionScore(String, int, int, int, RegionScoreType, String)}.  Tracks whose score cannot be
+     * computed are assigned -Float.MAX_VALUE,  which sorts them last,  and are not cached.  Null tracks are ignored.
+     * <p/>
+     * This blocks until the scores are computed,  call it off the event dispatch thread.
+     */
+    public Map<Track, Float> getRegionScores(Collection<Track> tracks, final String chr, final int start,
+                                             final int end, final int zoom, final RegionScoreType type,
+                                             final String frameName) {
+
+        Map<Track, Float> scores = new HashMap<Track, Float>(tracks.size() * 2);
+        String key = chr + ":" + start + "-" + end + ":" + zoom + ":" + type;
+        boolean cacheable = type != RegionScoreType.MUTATION_COUNT;
+
+        Map<Track, Float> cachedScores = cacheable ? getCachedScores(key) : null;
+        final List<Track> toScore = new ArrayList<Track>();
+        for (Track t : tracks) {
+            if (t == null || scores.containsKey(t)) continue;
+            Float score = cachedScores == null ? null : cachedScores.get(t);
+            if (score != null) {
+                scores.put(t, score);
+            } else {
+                scores.put(t, -Float.MAX_VALUE);
+                toScore.add(t);
+            }
+        }
+        if (toScore.isEmpty()) {
+            return scores;
+        }
+
+        // Load the data of each shared dataset once,  rather than having all of its tracks wait on the first
+        if (!chr.equals(Globals.CHR_ALL)) {
+            Set<Dataset> datasets = new LinkedHashSet<Dataset>();
+            for (Track t : toScore) {
+                if (t instanceof DataSourceTrack && ((DataSourceTrack) t).getDataSource() instanceof DatasetDataSource) {
+                    datasets.add(((DatasetDataSource) ((DataSourceTrack) t).getDataSource()).getDataset());
+                }
+            }
+            List<Callable<Object>> loads = new ArrayList<Callable<Object>>(datasets.size());
+            for (final Dataset dataset : datasets) {
+                loads.add(new Callable<Object>() {
+                    public Object call() {
+                        return dataset.getStartLocations(chr);
+                    }
+                });
+            }
+            invokeAll(loads);
+        }
+
+        // Score the tracks in batches,  a few per thread to balance uneven track costs
+        int nBatches = Math.min(toScore.size(), 4 * Math.max(1, N_THREADS));
+        final float[] results = new float[toScore.size()];
+        final boolean[] failed = new boolean[toScore.size()];
+        List<Callable<Object>> batches = new ArrayList<Callable<Object>>(nBatches);
+        for (int b = 0; b < nBatches; b++) {
+            final int first = (int) ((long) b * toScore.size() / nBatches);
+            final int last = (int) ((long) (b + 1) * toScore.size() / nBatches);
+            batches.add(new Callable<Object>() {
+                public Object call() {
+                    for (int i = first; i < last; i++) {
+                        Track t = toScore.get(i);
+                        try {
+                            results[i] = t.getRegionScore(chr, start, end, zoom, type, frameName);
+                        } catch (Exception e) {
+                            log.error("Error computing region score for " + t.getName() +
+                                    ". Sort might not be accurate.", e);
+                            results[i] = -Float.MAX_VALUE;
+                            failed[i] = true;
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+        invokeAll(batches);
+
+        // Failed scores are returned,  but not cached,  so the next sort tries again
+        Map<Track, Float> newScores = new HashMap<Track, Float>(toScore.size() * 2);
+        for (int i = 0; i < results.length; i++) {
+            scores.put(toScore.get(i), results[i]);
+            if (!failed[i]) {
+                newScores.put(toScore.get(i), results[i]);
+            }
+        }
+        if (cacheable) {
+            putCachedScores(key, newScores);
+        }
+        return scores;
+    }
+
+    /**
+     * Drop the cached scores of {@code track},  called when its data or window function changes.
+     */
+    public void invalidate(Track track) {
+        synchronized (cache) {
+            for (Map<Track, Float> scores : cache.values()) {
+                scores.remove(track);
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    private Map<Track, Float> getCachedScores(String key) {
+        synchronized (cache) {
+            Map<Track, Float> scores = cache.get(key);
+            return scores == null ? null : new HashMap<Track, Float>(scores);
+        }
+    }
+
+    private void putCachedScores(String key, Map<Track, Float> newScores) {
+        synchronized (cache) {
+            Map<Track, Float> scores = cache.get(key);
+            if (scores == null) {
+                scores = new WeakHashMap<Track, Float>();
+                cache.put(key, scores);
+            }
+            scores.putAll(newScores);
+        }
+    }
+
+    /**
+     * Run the tasks on the score pool and wait for them.  Tasks handle their own errors,  anything else is logged.
+     */
+    private static void invokeAll(List<Callable<Object>> tasks) {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        try {
+            for (Future<Object> f : scoreExecutor.invokeAll(tasks)) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    log.error("Error computing region scores", e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -66,6 +66,26 @@ public interface Track extends Persistable{
 
     void load(RenderContext context);
 
+    /**
+     * Return true if the data needed to render the current view of the frame is loaded,  that is
+     * {@link #render} will not block loading data.
+     *
+     * @param frame
+     * @return
+     */
+    boolean isReadyToPaint(ReferenceFrame frame);
+
+    /**
+     * Warm the caches of the underlying data source for the given interval without changing the loaded
+     * data of the track.  Called on a background thread in anticipation of panning.
+     *
+     * @param chr
+     * @param start
+     * @param end
+     * @param zoom
+     */
+    void prefetch(String chr, int start, int end, int zoom);
+
     /**
      * Return true if a track can be filtered by sample annotation.
      *
@@ -163,6 +163,24 @@ public class TrackGroup {
         return score;
     }
 
+    /**
+     * Return the composite score for the group from precomputed track scores,  see
+     * {@link RegionScoreService#getRegionScores}.
+     *
+     * @param trackScores track -> region score
+     * @return
+     */
+    public float getRegionScore(Map<Track, Float> trackScores) {
+        float score = -Float.MAX_VALUE;
+        for (Track track : tracks) {
+            Float s = trackScores.get(track);
+            if (track.isVisible() && s != null) {
+                score = Math.max(score, s);
+            }
+        }
+        return score;
+    }
+
 
     public String getName() {
         return name;
@@ -35,7 +35,9 @@ import org.broad.igv.feature.tribble.*;
 import org.broad.igv.ui.IGV;
 import org.broad.igv.ui.panel.ReferenceFrame;
 import org.broad.igv.ui.util.IndexCreatorDialog;
+import org.broad.igv.util.ByteLineReader;
 import org.broad.igv.util.FileUtils;
+import org.broad.igv.util.ParsingUtils;
 import org.broad.igv.util.ResourceLocator;
 import org.broad.igv.util.RuntimeUtils;
 import org.broad.igv.util.collections.CollUtils;
@@ -173,6 +175,12 @@ abstract public class TribbleFeatureSource implements org.broad.igv.track.Featur
                         }
                     }
                 }
+
+                // Only features in view are read,  so names of the rest are searchable only if persisted
+                FeatureNameCache nameCache = FeatureNameCache.getInstance();
+                if (nameCache != null) {
+                    nameCache.load(locator, genome);
+                }
             }
        }
 
@@ -291,41 +299,76 @@ abstract public class TribbleFeatureSource implements org.broad.igv.track.Featur
 
             super(locator, basicReader, codec, genome, false);
 
-            featureMap = new HashMap<String, List<Feature>>(25);
-            Iterator<Feature> iter = null;
+            if (ChunkedFeatureLoader.canLoad(locator, codec)) {
+                // Lists are sorted by the loader
+                featureMap = new ChunkedFeatureLoader(locator, genome).load();
+            } else {
+                featureMap = new HashMap<String, List<Feature>>(25);
+                loadFeatures(codec, locator);
+                for (List<Feature> featureList : featureMap.values()) {
+                    FeatureUtils.sortFeatureList(featureList);
+                }
+            }
 
-            try {
-                iter = reader.iterator();
-                while (iter.hasNext()) {
-                    Feature f = iter.next();
-                    if (f == null) continue;
+            if (genome != null) {
+                coverageData = new CoverageDataSource(genome);
+                coverageData.computeGenomeCoverage();
+                sampleGenomeFeatures();
+            }
+        }
 
-                    String seqName = f.getChr();
-                    String igvChr = genome == null ? seqName : genome.getCanonicalChrName(seqName);
+        private void loadFeatures(FeatureCodec codec, ResourceLocator locator) throws IOException {
+            if (codec instanceof ByteLineDecoder) {
+                loadFeatures((ByteLineDecoder) codec, locator);
+            } else {
+                Iterator<Feature> iter = null;
+                try {
+                    iter = reader.iterator();
+                    while (iter.hasNext()) {
+                        Feature f = iter.next();
+                        if (f == null) continue;
+                        addFeature(f);
+                    }
+                } finally {
+                    if (iter instanceof CloseableTribbleIterator) {
+                        ((CloseableTribbleIterator) iter).close();
+                    }
+                }
+            }
+        }
 
-                    List<Feature> featureList = featureMap.get(igvChr);
-                    if (featureList == null) {
-                        featureList = new ArrayList();
-                        featureMap.put(igvChr, featureList);
+        /**
+         * Read all features with a codec that decodes directly from a byte buffer.  Header lines have already been
+         * read by the tribble reader,  the codec returns null for them here.
+         */
+        private void loadFeatures(ByteLineDecoder codec, ResourceLocator locator) throws IOException {
+            ByteLineReader lineReader = null;
+            try {
+                lineReader = new ByteLineReader(ParsingUtils.openInputStreamGZ(locator));
+                while (lineReader.next()) {
+                    Feature f = codec.decode(lineReader.getBuffer(), lineReader.getLineStart(), lineReader.getLineEnd());
+                    if (f != null) {
+                        addFeature(f);
                     }
-                    featureList.add(f);
-                    if (f instanceof NamedFeature) FeatureDB.addFeature((NamedFeature) f, genome);
                 }
             } finally {
-                if(iter instanceof CloseableTribbleIterator) {
-                    ((CloseableTribbleIterator) iter).close();
+                if (lineReader != null) {
+                    lineReader.close();
                 }
             }
+        }
 
-            for (List<Feature> featureList : featureMap.values()) {
-                FeatureUtils.sortFeatureList(featureList);
-            }
+        private void addFeature(Feature f) {
+            String seqName = f.getChr();
+            String igvChr = genome == null ? seqName : genome.getCanonicalChrName(seqName);
 
-            if (genome != null) {
-                coverageData = new CoverageDataSource(genome);
-                coverageData.computeGenomeCoverage();
-                sampleGenomeFeatures();
+            List<Feature> featureList = featureMap.get(igvChr);
+            if (featureList == null) {
+                featureList = new ArrayList();
+                featureMap.put(igvChr, featureList);
             }
+            featureList.add(f);
+            if (f instanceof NamedFeature) FeatureDB.addFeature((NamedFeature) f, genome);
         }
 
         @Override
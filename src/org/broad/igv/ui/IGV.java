@@ -2235,38 +2235,60 @@ public class IGV {
         final RegionOfInterest r = region == null ? new RegionOfInterest(frame.getChrName(), (int) frame.getOrigin(),
                 (int) frame.getEnd() + 1, frame.getName()) : region;
 
-        // Create a rank order of samples.  This is done globally so sorting is consistent across groups and panels.
-        final List<String> sortedSamples = sortSamplesByRegionScore(r, type, frame);
-
-        for (TrackPanel trackPanel : getTrackPanels()) {
-            trackPanel.sortByRegionsScore(r, type, frame, sortedSamples);
+        // Collect the tracks to score here,  the sortable tracks for this score type and the visible tracks
+        // of each group
+        final List<Track> tracksWithScore = new ArrayList<Track>();
+        for (Track t : getAllTracks()) {
+            if (t.isRegionScoreType(type)) {
+                tracksWithScore.add(t);
+            }
+        }
+        final Set<Track> tracksToScore = new LinkedHashSet<Track>(tracksWithScore);
+        final List<TrackPanel> trackPanels = getTrackPanels();
+        for (TrackPanel trackPanel : trackPanels) {
+            for (TrackGroup group : trackPanel.getGroups()) {
+                tracksToScore.addAll(group.getVisibleTracks());
+            }
         }
-        repaintDataPanels();
+
+        // Score the tracks off the event thread,  then apply the sort back on it
+        LongRunningTask.submit(new NamedRunnable() {
+            public void run() {
+                final Map<Track, Float> scores = RegionScoreService.getInstance().getRegionScores(tracksToScore,
+                        r.getChr(), r.getStart(), r.getEnd(), Math.max(0, frame.getZoom()), type, frame.getName());
+
+                UIUtilities.invokeAndWaitOnEventThread(new Runnable() {
+                    public void run() {
+                        // Create a rank order of samples.  This is done globally so sorting is consistent across
+                        // groups and panels.
+                        final List<String> sortedSamples = sortSamplesByRegionScore(tracksWithScore, scores);
+
+                        for (TrackPanel trackPanel : trackPanels) {
+                            trackPanel.sortByRegionsScore(type, scores, sortedSamples);
+                        }
+                        repaintDataPanels();
+                    }
+                });
+            }
+
+            public String getName() {
+                return "Sort by region score";
+            }
+        });
     }
 
 
     /**
-     * Sort a collection of tracks by a score over a region.
+     * Sort a collection of tracks by precomputed region scores,  and return the resulting order of samples.
      *
-     * @param region
-     * @param type
-     * @param frame
+     * @param tracksWithScore the sortable tracks,  sorted in place
+     * @param scores          track -> region score
      */
-    private List<String> sortSamplesByRegionScore(final RegionOfInterest region,
-                                                  final RegionScoreType type,
-                                                  final ReferenceFrame frame) {
-
-        // Get the sortable tracks for this score (data) type
-        final List<Track> allTracks = getAllTracks();
-        final List<Track> tracksWithScore = new ArrayList(allTracks.size());
-        for (Track t : allTracks) {
-            if (t.isRegionScoreType(type)) {
-                tracksWithScore.add(t);
-            }
-        }
+    private static List<String> sortSamplesByRegionScore(final List<Track> tracksWithScore,
+                                                         final Map<Track, Float> scores) {
 
         // Sort the "sortable" tracks
-        sortByRegionScore(tracksWithScore, region, type, frame);
+        sortByScores(tracksWithScore, scores);
 
         // Now get sample order from sorted tracks, use to sort (tracks which do not implement the selected "sort by" score)
         List<String> sortedSamples = new ArrayList(tracksWithScore.size());
@@ -2293,31 +2315,29 @@ public class IGV {
             final int start = region.getStart();
             final int end = region.getEnd();
 
-            Comparator<Track> c = new Comparator<Track>() {
-
-                public int compare(Track t1, Track t2) {
-                    try {
-                        if (t1 == null && t2 == null) return 0;
-                        if (t1 == null) return 1;
-                        if (t2 == null) return -1;
-
-
-                        float s1 = t1.getRegionScore(chr, start, end, zoom, type, frameName);
-                        float s2 = t2.getRegionScore(chr, start, end, zoom, type, frameName);
+            // Compute each score once,  in parallel,  rather than twice per comparison
+            final Map<Track, Float> scores = RegionScoreService.getInstance().getRegionScores(
+                    tracks, chr, start, end, zoom, type, frameName);
+            sortByScores(tracks, scores);
+        }
+    }
 
-                        return Float.compare(s2, s1);
+    private static void sortByScores(List<Track> tracks, final Map<Track, Float> scores) {
 
+        Comparator<Track> c = new Comparator<Track>() {
 
-                    } catch (Exception e) {
-                        log.error("Error sorting tracks. Sort might not be accurate.", e);
-                        return 0;
-                    }
+            public int compare(Track t1, Track t2) {
+                if (t1 == null && t2 == null) return 0;
+                if (t1 == null) return 1;
+                if (t2 == null) return -1;
 
-                }
-            };
-            Collections.sort(tracks, c);
+                float s1 = scores.get(t1);
+                float s2 = scores.get(t2);
 
-        }
+                return Float.compare(s2, s1);
+            }
+        };
+        Collections.sort(tracks, c);
     }
 
 
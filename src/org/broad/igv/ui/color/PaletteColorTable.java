@@ -54,11 +54,11 @@ public class PaletteColorTable implements ColorTable {
         colorMap = new LinkedHashMap();
     }
 
-    public void put(String key, Color c) {
+    public synchronized void put(String key, Color c) {
         colorMap.put(key, c);
     }
 
-    public Color get(String key) {
+    public synchronized Color get(String key) {
         Color c = colorMap.get(key);
         if (c == null) {
             final int colorIdx = colorMap.size();
@@ -81,7 +81,7 @@ public class PaletteColorTable implements ColorTable {
     }
 
 
-    public String getMapAsString() {
+    public synchronized String getMapAsString() {
         StringBuffer buf = new StringBuffer();
         boolean firstEntry = true;
         for (Map.Entry<String, Color> entry : colorMap.entrySet()) {
@@ -97,7 +97,7 @@ public class PaletteColorTable implements ColorTable {
         return buf.toString();
     }
 
-    public void restoreMapFromString(String string) {
+    public synchronized void restoreMapFromString(String string) {
 
         if (string == null || string.isEmpty()) return;
         colorMap.clear();
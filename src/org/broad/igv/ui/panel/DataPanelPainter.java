@@ -37,6 +37,7 @@ import org.apache.log4j.Logger;
 import org.broad.igv.feature.FeatureUtils;
 import org.broad.igv.feature.LocusScore;
 import org.broad.igv.renderer.DataRange;
+import org.broad.igv.renderer.GraphicUtils;
 import org.broad.igv.track.*;
 import org.broad.igv.ui.IGV;
 import org.broad.igv.ui.UIConstants;
@@ -58,16 +59,32 @@ public class DataPanelPainter {
 
         Graphics2D graphics2D = null;
 
+        // Offscreen paints of independent frames can run concurrently (see SnapshotRenderer),  keep the ranges
+        // they autoscale to private to this thread
+        boolean offscreen = context.getPanel() == null;
+        if (offscreen) {
+            AbstractTrack.beginOffscreenPaint();
+        }
+
         try {
             graphics2D = (Graphics2D) context.getGraphics().create();
             graphics2D.setBackground(background);
             graphics2D.clearRect(visibleRect.x, visibleRect.y, visibleRect.width, visibleRect.height);
             graphics2D.setColor(Color.BLACK);
 
+            // Load data for tracks in view in the background,  tracks still loading are painted as a placeholder
+            if (context.getPanel() != null) {
+                TrackLoadScheduler.getInstance().load(getVisibleTracks(groups, visibleRect),
+                        context.getReferenceFrame(), context.getPanel(), context.getVisibleRect());
+            }
+
             paintFrame(groups, context, width, visibleRect);
 
 
         } finally {
+            if (offscreen) {
+                AbstractTrack.endOffscreenPaint();
+            }
             graphics2D.dispose();
         }
     }
@@ -171,11 +188,19 @@ public class DataPanelPainter {
 
     final private void draw(Track track, Rectangle rect, RenderContext context) {
 
+        if (context.getPanel() != null && TrackLoadScheduler.getInstance().isLoading(track, context.getReferenceFrame())) {
+            Graphics2D g = context.getGraphic2DForColor(Color.gray);
+            Rectangle textRect = new Rectangle(rect);
+            textRect.height = Math.min(rect.height, 20);
+            GraphicUtils.drawCenteredText("Loading...", textRect, g);
+            return;
+        }
+
         track.render(context, rect);
 
         // Get overlays
 
-        List<Track> overlayTracks = IGV.getInstance().getOverlayTracks(track);
+        List<Track> overlayTracks = IGV.hasInstance() ? IGV.getInstance().getOverlayTracks(track) : null;
         if (overlayTracks != null) {
             for (Track overlayTrack : overlayTracks) {
 
@@ -188,15 +213,25 @@ public class DataPanelPainter {
 
     }
 
-    private List<Track> getVisibleTracks(final Collection<TrackGroup> groups) {
+    private List<Track> getVisibleTracks(final Collection<TrackGroup> groups, Rectangle visibleRect) {
         // Find the tracks that need loaded, we go to this bother to avoid loading tracks scrolled out of view
         final List<Track> visibleTracks = new ArrayList<Track>();
+        int trackY = 0;
         for (Iterator<TrackGroup> groupIter = groups.iterator(); groupIter.hasNext(); ) {
             TrackGroup group = groupIter.next();
+            if (!group.isVisible()) continue;
+            if (groups.size() > 1) {
+                trackY += UIConstants.groupGap;
+            }
             List<Track> trackList = new ArrayList(group.getVisibleTracks());
             for (Track track : trackList) {
                 if (track != null && track.isVisible()) {
-                    visibleTracks.add(track);
+                    int trackHeight = track.getHeight();
+                    if (visibleRect == null ||
+                            (trackY <= visibleRect.y + visibleRect.height && trackY + trackHeight >= visibleRect.y)) {
+                        visibleTracks.add(track);
+                    }
+                    trackY += trackHeight;
                 }
             }
         }
@@ -233,7 +268,7 @@ public class DataPanelPainter {
 
                         DataRange newDR = new DataRange(min, base, max, dr.isDrawBaseline());
                         newDR.setType(dr.getType());
-                        track.setDataRange(newDR);
+                        ((DataTrack) track).setAutoscaleDataRange(newDR);
                     }
                 }
             }
@@ -0,0 +1,215 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.ui.panel;
+
+import org.apache.log4j.Logger;
+import org.broad.igv.Globals;
+import org.broad.igv.track.RenderContext;
+import org.broad.igv.track.RenderContextImpl;
+import org.broad.igv.track.Track;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads track data for a {@link ReferenceFrame} on a bounded pool of background threads, so that a slow data
+ * source does not block the paint of the data panel.  Tracks with a load in flight are painted as a placeholder,
+ * and the panel is repainted as each track finishes.  Once a track is loaded the windows adjacent to the current
+ * view are prefetched (see {@link Track#prefetch}) so that panning lands on warm caches.
+ */
+public class TrackLoadScheduler {
+
+    private static Logger log = Logger.getLogger(TrackLoadScheduler.class);
+
+    private static final int N_THREADS = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+
+    private static final ExecutorService loadExecutor = Executors.newFixedThreadPool(N_THREADS, new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "track-load-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private static TrackLoadScheduler instance;
+
+    /**
+     * Load bookkeeping per track.  Weak keys so that unloaded tracks are not retained.
+     */
+    private final Map<Track, LoadState> loadStates = Collections.synchronizedMap(new WeakHashMap<Track, LoadState>());
+
+    public static synchronized TrackLoadScheduler getInstance() {
+        if (instance == null) {
+            instance = new TrackLoadScheduler();
+        }
+        return instance;
+    }
+
+    TrackLoadScheduler() {
+    }
+
+    /**
+     * Schedule loads for the tracks that are not ready to paint the current view of {@code frame}, and prefetches
+     * for those that are.  Does not block.
+     *
+     * @param tracks      the visible tracks
+     * @param frame
+     * @param panel       panel to repaint as loads complete
+     * @param visibleRect
+     */
+    public void load(Collection<Track> tracks, ReferenceFrame frame, JComponent panel, Rectangle visibleRect) {
+
+        if (Globals.isBatch()) {
+            return;
+        }
+
+        String frameName = frame.getName();
+        String locus = getLocusKey(frame);
+        for (Track track : tracks) {
+            if (track == null || !track.isVisible()) continue;
+
+            LoadState state = getLoadState(track);
+            if (state.pending.containsKey(frameName)) {
+                continue;
+            }
+            if (track.isReadyToPaint(frame)) {
+                prefetch(state, track, frame);
+            } else if (!locus.equals(state.requested.get(frameName))) {
+                // Load each locus at most once,  a track that cannot become ready is left to render() as before
+                state.requested.put(frameName, locus);
+                state.pending.put(frameName, locus);
+                RenderContext context = new RenderContextImpl(panel, null, frame, visibleRect);
+                loadExecutor.submit(new LoadTask(state, track, context));
+            }
+        }
+    }
+
+    /**
+     * Return true if a background load of {@code track} for {@code frame} is in progress.
+     */
+    public boolean isLoading(Track track, ReferenceFrame frame) {
+        LoadState state = loadStates.get(track);
+        return state != null && state.pending.containsKey(frame.getName());
+    }
+
+    private LoadState getLoadState(Track track) {
+        synchronized (loadStates) {
+            LoadState state = loadStates.get(track);
+            if (state == null) {
+                state = new LoadState();
+                loadStates.put(track, state);
+            }
+            return state;
+        }
+    }
+
+    private void prefetch(LoadState state, final Track track, ReferenceFrame frame) {
+
+        final String chr = frame.getChrName();
+        if (chr == null || chr.equals(Globals.CHR_ALL)) {
+            return;
+        }
+
+        final int start = (int) frame.getOrigin();
+        final int end = (int) frame.getEnd();
+        final int width = end - start;
+        final int zoom = frame.getZoom();
+        if (width <= 0) {
+            return;
+        }
+
+        // Prefetch again only when the view has moved by a full window width
+        String windowKey = chr + ":" + (start / width) + ":" + zoom;
+        if (windowKey.equals(state.prefetched.put(frame.getName(), windowKey))) {
+            return;
+        }
+
+        loadExecutor.submit(new Runnable() {
+            public void run() {
+                try {
+                    track.prefetch(chr, Math.max(0, start - width), start, zoom);
+                    track.prefetch(chr, end, end + width, zoom);
+                } catch (Exception e) {
+                    log.debug("Error prefetching " + track.getName(), e);
+                }
+            }
+        });
+    }
+
+    private static String getLocusKey(ReferenceFrame frame) {
+        return frame.getChrName() + ":" + frame.getOrigin() + "-" + frame.getEnd() + ":" + frame.getZoom();
+    }
+
+
+    private static class LoadState {
+        // Values are locus strings,  keyed by frame name
+        final Map<String, String> pending = new ConcurrentHashMap<String, String>();
+        final Map<String, String> requested = new ConcurrentHashMap<String, String>();
+        final Map<String, String> prefetched = new ConcurrentHashMap<String, String>();
+    }
+
+    private class LoadTask implements Runnable {
+
+        final LoadState state;
+        final Track track;
+        final RenderContext context;
+
+        LoadTask(LoadState state, Track track, RenderContext context) {
+            this.state = state;
+            this.track = track;
+            this.context = context;
+        }
+
+        public void run() {
+            try {
+                track.load(context);
+                ReferenceFrame frame = context.getReferenceFrame();
+                if (track.isReadyToPaint(frame)) {
+                    prefetch(state, track, frame);
+                }
+            } catch (Exception e) {
+                log.error("Error loading track " + track.getName(), e);
+            } finally {
+                state.pending.remove(context.getReferenceFrame().getName());
+                JComponent panel = context.getPanel();
+                if (panel != null) {
+                    panel.repaint();
+                }
+            }
+        }
+    }
+}
@@ -27,7 +27,7 @@ package org.broad.igv.ui.panel;
 
 
 import org.apache.log4j.Logger;
-import org.broad.igv.feature.RegionOfInterest;
+import org.broad.igv.track.RegionScoreService;
 import org.broad.igv.track.RegionScoreType;
 import org.broad.igv.track.Track;
 import org.broad.igv.track.TrackGroup;
@@ -281,13 +281,14 @@ public class TrackPanel extends IGVPanel {
      * sort is done twice (1) groups are sorted with the featureGroup, and (2) the
      * groups themselves are sorted.
      *
-     * @param region
      * @param type
+     * @param trackScores track -> region score,  computed by the caller off the event thread
+     * @param sortedSamples
      */
-    public void sortByRegionsScore(final RegionOfInterest region, final RegionScoreType type,
-                                   final ReferenceFrame frame, List<String> sortedSamples) {
+    public void sortByRegionsScore(final RegionScoreType type, Map<Track, Float> trackScores,
+                                   List<String> sortedSamples) {
 
-        sortGroupsByRegionScore(trackGroups, region, type, frame.getZoom(), frame.getName());
+        sortGroupsByRegionScore(trackGroups, trackScores);
 
         for (TrackGroup group : trackGroups) {
             // If there is a non-null linking attribute
@@ -300,26 +301,20 @@ public class TrackPanel extends IGVPanel {
      * Sort groups by a score (not the tracks within the group).
      *
      * @param groups
-     * @param region
-     * @param type
-     * @param inzoom
-     * @param frameName
+     * @param trackScores track -> region score,  see {@link RegionScoreService#getRegionScores}
      */
-    private void sortGroupsByRegionScore(List<TrackGroup> groups,
-                                         final RegionOfInterest region,
-                                         final RegionScoreType type,
-                                         int inzoom,
-                                         final String frameName) {
-        if ((groups != null) && (region != null) && !groups.isEmpty()) {
-            final int zoom = Math.max(0, inzoom);
-            final String chr = region.getChr();
-            final int start = region.getStart();
-            final int end = region.getEnd();
+    private void sortGroupsByRegionScore(List<TrackGroup> groups, Map<Track, Float> trackScores) {
+        if ((groups != null) && !groups.isEmpty()) {
+            final Map<TrackGroup, Float> groupScores = new HashMap<TrackGroup, Float>(groups.size() * 2);
+            for (TrackGroup group : groups) {
+                groupScores.put(group, group.getRegionScore(trackScores));
+            }
+
             Comparator<TrackGroup> c = new Comparator<TrackGroup>() {
 
                 public int compare(TrackGroup group1, TrackGroup group2) {
-                    float s1 = group1.getRegionScore(chr, start, end, zoom, type, frameName);
-                    float s2 = group2.getRegionScore(chr, start, end, zoom, type, frameName);
+                    float s1 = groupScores.get(group1);
+                    float s2 = groupScores.get(group2);
 
                     // Use the Float comparator as it handles NaN.  Need to flip the order to make it descending
                     return Float.compare(s2, s1);
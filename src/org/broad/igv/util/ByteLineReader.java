@@ -0,0 +1,144 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads lines from a stream into a reusable byte buffer.  After each successful call to {@link #next()} the current
+ * line occupies getBuffer()[getLineStart(), getLineEnd()),  excluding the line terminator.  The buffer contents are
+ * only valid until the next call.
+ * <p/>
+ * Lines are terminated by "\n", "\r\n", or "\r",  as with {@link java.io.BufferedReader#readLine()}.
+ */
+public class ByteLineReader {
+
+    private final InputStream is;
+    private byte[] buffer;
+    private int position = 0;
+    private int limit = 0;
+    private boolean eof = false;
+    private boolean skipLF = false;
+
+    private int lineStart;
+    private int lineEnd;
+
+    public ByteLineReader(InputStream is) {
+        this(is, 64 * 1024);
+    }
+
+    public ByteLineReader(InputStream is, int bufferSize) {
+        this.is = is;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Advance to the next line.
+     *
+     * @return false at end of stream
+     */
+    public boolean next() throws IOException {
+        int scan = position;
+        while (true) {
+            if (skipLF && scan < limit) {
+                if (buffer[scan] == '\n') {
+                    scan++;
+                    position = scan;
+                }
+                skipLF = false;
+            }
+            for (int i = scan; i < limit; i++) {
+                byte b = buffer[i];
+                if (b == '\n' || b == '\r') {
+                    lineStart = position;
+                    lineEnd = i;
+                    position = i + 1;
+                    skipLF = b == '\r';
+                    return true;
+                }
+            }
+            if (eof) {
+                if (position < limit) {
+                    lineStart = position;
+                    lineEnd = limit;
+                    position = limit;
+                    return true;
+                }
+                return false;
+            }
+            scan = fill();
+        }
+    }
+
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    public int getLineStart() {
+        return lineStart;
+    }
+
+    public int getLineEnd() {
+        return lineEnd;
+    }
+
+    /**
+     * The current line as a string.
+     */
+    public String getLine() {
+        return ByteTokenizer.toString(buffer, lineStart, lineEnd);
+    }
+
+    public void close() throws IOException {
+        is.close();
+    }
+
+    /**
+     * Move the unread bytes to the front of the buffer,  growing it if full,  and read more.
+     *
+     * @return the position to resume scanning for a terminator
+     */
+    private int fill() throws IOException {
+        int remaining = limit - position;
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, remaining);
+        } else if (remaining == buffer.length) {
+            byte[] newBuffer = new byte[buffer.length * 2];
+            System.arraycopy(buffer, 0, newBuffer, 0, remaining);
+            buffer = newBuffer;
+        }
+        position = 0;
+        limit = remaining;
+        int n = is.read(buffer, limit, buffer.length - limit);
+        if (n < 0) {
+            eof = true;
+        } else {
+            limit += n;
+        }
+        return remaining;
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.util;
+
+import org.broad.igv.util.collections.ByteStringDictionary;
+
+/**
+ * Splits a line held in a byte array into tokens,  recording token boundaries as offsets into the array rather than
+ * creating strings.  The token arrays are reused from line to line,  so a single instance can tokenize a whole file
+ * without allocating.  Numeric fields can be parsed in place,  and strings are only created on request.
+ * <p/>
+ * Bytes are interpreted as ASCII.  Strings containing other bytes are decoded with the platform charset,  matching
+ * the behavior of an InputStreamReader.
+ */
+public class ByteTokenizer {
+
+    private byte[] buffer;
+    private int[] starts;
+    private int[] ends;
+    private int count;
+
+    public ByteTokenizer() {
+        this(16);
+    }
+
+    public ByteTokenizer(int capacity) {
+        starts = new int[capacity];
+        ends = new int[capacity];
+    }
+
+    /**
+     * Split buffer[start, end) on each occurrence of {@code delimiter}.  Empty tokens,  including trailing ones,  are
+     * kept,  as with {@code String.split(regex, -1)}.
+     *
+     * @return the number of tokens
+     */
+    public int split(byte[] buffer, int start, int end, byte delimiter) {
+        this.buffer = buffer;
+        count = 0;
+        int tokenStart = start;
+        for (int i = start; i < end; i++) {
+            if (buffer[i] == delimiter) {
+                add(tokenStart, i);
+                tokenStart = i + 1;
+            }
+        }
+        add(tokenStart, end);
+        return count;
+    }
+
+    /**
+     * Trim buffer[start, end),  then split it on runs of whitespace,  as with
+     * {@code Globals.whitespacePattern.split(line.trim())}.
+     *
+     * @return the number of tokens
+     */
+    public int splitWhitespace(byte[] buffer, int start, int end) {
+        this.buffer = buffer;
+        count = 0;
+        while (start < end && (buffer[start] & 0xff) <= ' ') start++;
+        while (end > start && (buffer[end - 1] & 0xff) <= ' ') end--;
+        int tokenStart = start;
+        int i = start;
+        while (i < end) {
+            if (isWhitespace(buffer[i])) {
+                add(tokenStart, i);
+                while (i < end && isWhitespace(buffer[i])) i++;
+                tokenStart = i;
+            } else {
+                i++;
+            }
+        }
+        add(tokenStart, end);
+        return count;
+    }
+
+    /**
+     * Split buffer[start, end) on {@code delimiter},  ignoring delimiters inside double quotes,  and trim each token.
+     * Follows {@link StringUtils#breakQuotedString(String, char)}: an empty range produces no tokens,  and a final
+     * token is only added if it is not empty before trimming.
+     *
+     * @return the number of tokens
+     */
+    public int splitQuoted(byte[] buffer, int start, int end, byte delimiter) {
+        this.buffer = buffer;
+        count = 0;
+        boolean quoted = false;
+        int tokenStart = start;
+        for (int i = start; i < end; i++) {
+            byte b = buffer[i];
+            if (quoted) {
+                if (b == '"') quoted = false;
+            } else if (b == '"') {
+                quoted = true;
+            } else if (b == delimiter) {
+                add(tokenStart, i);
+                trim(count - 1);
+                tokenStart = i + 1;
+            }
+        }
+        if (end > tokenStart) {
+            add(tokenStart, end);
+            trim(count - 1);
+        }
+        return count;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    public int getStart(int token) {
+        return starts[token];
+    }
+
+    public int getEnd(int token) {
+        return ends[token];
+    }
+
+    public int getLength(int token) {
+        return ends[token] - starts[token];
+    }
+
+    /**
+     * Remove leading and trailing whitespace and control characters from a token,  as with {@code String.trim()}.
+     */
+    public void trim(int token) {
+        int s = starts[token];
+        int e = ends[token];
+        while (s < e && (buffer[s] & 0xff) <= ' ') s++;
+        while (e > s && (buffer[e - 1] & 0xff) <= ' ') e--;
+        starts[token] = s;
+        ends[token] = e;
+    }
+
+    public boolean equals(int token, String s) {
+        return equals(buffer, starts[token], ends[token], s);
+    }
+
+    public boolean contains(int token, byte b) {
+        return indexOf(buffer, starts[token], ends[token], b) >= 0;
+    }
+
+    public int parseInt(int token) {
+        return parseInt(buffer, starts[token], ends[token]);
+    }
+
+    public String getString(int token) {
+        return toString(buffer, starts[token], ends[token]);
+    }
+
+    public String getString(int token, ByteStringDictionary dictionary) {
+        return dictionary.get(buffer, starts[token], ends[token]);
+    }
+
+    private void add(int start, int end) {
+        if (count == starts.length) {
+            int[] newStarts = new int[count * 2];
+            int[] newEnds = new int[count * 2];
+            System.arraycopy(starts, 0, newStarts, 0, count);
+            System.arraycopy(ends, 0, newEnds, 0, count);
+            starts = newStarts;
+            ends = newEnds;
+        }
+        starts[count] = start;
+        ends[count] = end;
+        count++;
+    }
+
+    /**
+     * The characters matched by the regular expression {@code \s}.
+     */
+    public static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == 0x0B || b == '\f' || b == '\r';
+    }
+
+    public static int indexOf(byte[] buffer, int start, int end, byte b) {
+        for (int i = start; i < end; i++) {
+            if (buffer[i] == b) return i;
+        }
+        return -1;
+    }
+
+    public static boolean startsWith(byte[] buffer, int start, int end, String prefix) {
+        int n = prefix.length();
+        if (end - start < n) return false;
+        for (int i = 0; i < n; i++) {
+            if (buffer[start + i] != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    public static boolean equals(byte[] buffer, int start, int end, String s) {
+        return end - start == s.length() && startsWith(buffer, start, end, s);
+    }
+
+    /**
+     * Parse a decimal integer from buffer[start, end) without creating a string.  Accepts exactly what
+     * {@link Integer#parseInt(String)} accepts,  and throws the same exception otherwise.
+     */
+    public static int parseInt(byte[] buffer, int start, int end) throws NumberFormatException {
+        if (start >= end) {
+            throw numberFormatException(buffer, start, end);
+        }
+        int i = start;
+        boolean negative = false;
+        byte first = buffer[i];
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+            if (i == end) throw numberFormatException(buffer, start, end);
+        }
+        // Accumulate negatively,  the negative range is larger
+        int limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+        int multmin = limit / 10;
+        int result = 0;
+        for (; i < end; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9 || result < multmin) {
+                throw numberFormatException(buffer, start, end);
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw numberFormatException(buffer, start, end);
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    private static NumberFormatException numberFormatException(byte[] buffer, int start, int end) {
+        return new NumberFormatException("For input string: \"" + toString(buffer, start, end) + "\"");
+    }
+
+    /**
+     * Create a string from buffer[start, end).
+     */
+    @SuppressWarnings("deprecation")
+    public static String toString(byte[] buffer, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (buffer[i] < 0) {
+                return new String(buffer, start, end - start);
+            }
+        }
+        // ASCII,  copy bytes to chars directly
+        return new String(buffer, 0, start, end - start);
+    }
+}
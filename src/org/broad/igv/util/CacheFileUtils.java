@@ -0,0 +1,110 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.util;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Naming and eviction for the file caches kept under the IGV directory.  Cache files are named by an MD5 digest of
+ * a key describing their source,  and evicted least recently modified first.
+ */
+public class CacheFileUtils {
+
+    private static final Comparator<File> LAST_MODIFIED_COMPARATOR = new Comparator<File>() {
+        public int compare(File f1, File f2) {
+            long d = f1.lastModified() - f2.lastModified();
+            return d < 0 ? -1 : (d > 0 ? 1 : 0);
+        }
+    };
+
+    /**
+     * Return the hex MD5 digest of {@code key},  followed by {@code suffix}.
+     */
+    public static String getFileName(String key, String suffix) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("MD5");
+            byte[] digest = md.digest(key.getBytes("UTF-8"));
+            StringBuilder buf = new StringBuilder(digest.length * 2 + suffix.length());
+            for (byte b : digest) {
+                buf.append(Character.forDigit((b >> 4) & 0xf, 16));
+                buf.append(Character.forDigit(b & 0xf, 16));
+            }
+            return buf.append(suffix).toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Return the files in {@code directory} ending with {@code suffix},  least recently modified first.  Returns an
+     * empty array if the directory cannot be read.
+     */
+    public static File[] listFiles(File directory, final String suffix) {
+        File[] files = directory.listFiles(new FileFilter() {
+            public boolean accept(File f) {
+                return f.getName().endsWith(suffix);
+            }
+        });
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files, LAST_MODIFIED_COMPARATOR);
+        return files;
+    }
+
+    /**
+     * Delete the least recently modified files ending with {@code suffix},  other than {@code keep},  until their
+     * total size is within {@code maxBytes}.
+     *
+     * @param keep file to retain regardless of age,  typically the one just written.  Can be null.
+     */
+    public static void evict(File directory, String suffix, long maxBytes, File keep) {
+        File[] files = listFiles(directory, suffix);
+        long totalBytes = 0;
+        for (File f : files) {
+            totalBytes += f.length();
+        }
+        for (File f : files) {
+            if (totalBytes <= maxBytes) {
+                break;
+            }
+            if (!f.equals(keep)) {
+                long length = f.length();
+                if (f.delete()) {
+                    totalBytes -= length;
+                }
+            }
+        }
+    }
+}
@@ -33,23 +33,35 @@
  */
 package org.broad.igv.util;
 
-import org.broad.igv.sam.Alignment;
-
 import java.lang.ref.SoftReference;
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- *
+ * A size bounded cache of softly referenced objects.  When full the oldest entry is evicted.
+ * <p/>
+ * Safe for concurrent use without locking,  decoders running on several threads share caches such as the color
+ * cache.  Null keys are not cached.
  */
 public class ObjectCache<K, V> {
 
     /**
      * Maximum number of objects to cache
      */
-    private int maxSize = 1000;
-    private LinkedHashMap<K, SoftReference<V>> map = new LinkedHashMap<K, SoftReference<V>>();
+    private volatile int maxSize = 1000;
+    private final ConcurrentHashMap<K, Node<K, V>> map;
+
+    /**
+     * Insertion order,  for eviction.  Nodes of removed or replaced entries stay in the queue until they are
+     * polled or purged.
+     */
+    private final ConcurrentLinkedQueue<Node<K, V>> order = new ConcurrentLinkedQueue<Node<K, V>>();
+    private final AtomicInteger orderSize = new AtomicInteger();
+    private final AtomicBoolean purging = new AtomicBoolean();
 
     public ObjectCache() {
         this(50);
@@ -57,31 +69,26 @@ public class ObjectCache<K, V> {
 
     public ObjectCache(int maxSize) {
         this.maxSize = maxSize;
-        map = new LinkedHashMap<K, SoftReference<V>>(maxSize);
+        map = new ConcurrentHashMap<K, Node<K, V>>(maxSize);
     }
 
     public void put(K key, V image) {
-        if (map.size() == maxSize) {
-            // Map has reached maximum size.  Remove the first(oldest) entry.
-            // 
-            for (K k : map.keySet()) {
-                map.remove(k);
-                break;
-            }
+        if (key == null) {
+            return;
         }
-        SoftReference<V> SoftReference = new SoftReference<V>(image);
-        map.put(key, SoftReference);
+        Node<K, V> node = new Node<K, V>(key, new SoftReference<V>(image));
+        order.add(node);
+        orderSize.incrementAndGet();
+        map.put(key, node);
+        evict();
     }
 
     public V get(K key) {
-
-        V image = null;
-        SoftReference<V> SoftReference = map.get(key);
-
-        if (SoftReference != null) {
-            image = SoftReference.get();
+        if (key == null) {
+            return null;
         }
-        return image;
+        Node<K, V> node = map.get(key);
+        return node == null ? null : node.reference.get();
     }
 
     public Collection<K> getKeys() {
@@ -89,15 +96,19 @@ public class ObjectCache<K, V> {
     }
 
     public void remove(K key) {
-        map.remove(key);
+        if (key != null) {
+            map.remove(key);
+        }
     }
 
     public boolean containsKey(K key) {
-        return map.containsKey(key);
+        return key != null && map.containsKey(key);
     }
 
     public void clear() {
         map.clear();
+        order.clear();
+        orderSize.set(0);
     }
 
     public int size() {
@@ -116,4 +127,43 @@ public class ObjectCache<K, V> {
         this.maxSize = maxSize;
     }
 
+    /**
+     * Remove the oldest entries until the cache is within its maximum size.  Once the stale nodes in the eviction
+     * queue outnumber the cache capacity they are purged,  so caches with frequent removals do not grow the queue.
+     */
+    private void evict() {
+        while (map.size() > maxSize) {
+            Node<K, V> eldest = order.poll();
+            if (eldest == null) {
+                break;
+            }
+            orderSize.decrementAndGet();
+            map.remove(eldest.key, eldest);
+        }
+
+        if (orderSize.get() - map.size() > maxSize && purging.compareAndSet(false, true)) {
+            try {
+                for (Iterator<Node<K, V>> iter = order.iterator(); iter.hasNext(); ) {
+                    Node<K, V> node = iter.next();
+                    if (map.get(node.key) != node) {
+                        iter.remove();
+                        orderSize.decrementAndGet();
+                    }
+                }
+            } finally {
+                purging.set(false);
+            }
+        }
+    }
+
+    private static class Node<K, V> {
+        final K key;
+        final SoftReference<V> reference;
+
+        Node(K key, SoftReference<V> reference) {
+            this.key = key;
+            this.reference = reference;
+        }
+    }
+
 }
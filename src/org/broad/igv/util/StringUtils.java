@@ -25,6 +25,9 @@
 
 package org.broad.igv.util;
 
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
 import java.awt.*;
 import java.awt.datatransfer.Clipboard;
 import java.awt.datatransfer.StringSelection;
@@ -38,8 +41,6 @@ import java.net.URLEncoder;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.WeakHashMap;
 
 /**
  * Created by IntelliJ IDEA.
@@ -50,21 +51,18 @@ import java.util.WeakHashMap;
  */
 public class StringUtils {
 
-    private static Map<String, String> internedStrings = new WeakHashMap<String, String>();
+    private static final Interner<String> internedStrings = Interners.newWeakInterner();
 
     /**
      * Creates or retrieves an interned copy of {@code string}. This way,
      * we only keep one reference to strings of the same value.
-     * Backed by a WeakHashMap
+     * Backed by a weak concurrent interner,  features may be decoded on several threads.
      *
      * @param string
      * @return
      */
     public static String intern(String string) {
-        if (!internedStrings.containsKey(string)) {
-            internedStrings.put(string, string);
-        }
-        return internedStrings.get(string);
+        return string == null ? null : internedStrings.intern(string);
     }
 
 
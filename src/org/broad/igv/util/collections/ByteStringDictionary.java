@@ -0,0 +1,134 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.util.collections;
+
+import org.broad.igv.util.ByteTokenizer;
+
+import java.util.Arrays;
+
+/**
+ * Maps byte sequences to shared strings,  so that values repeated on many lines of a file (chromosome names, feature
+ * types, attribute keys) are stored once.  Lookups hash and compare the bytes in place,  a string is only created
+ * the first time a value is seen.  Intended to be used for the duration of a single file load,  not shared between
+ * threads.
+ */
+public class ByteStringDictionary {
+
+    private byte[][] keys;
+    private String[] values;
+    private int[] hashes;
+    private int size;
+
+    public ByteStringDictionary() {
+        this(256);
+    }
+
+    public ByteStringDictionary(int initialCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(16, initialCapacity) - 1) << 1;
+        keys = new byte[capacity][];
+        values = new String[capacity];
+        hashes = new int[capacity];
+    }
+
+    /**
+     * Return the string for buffer[start, end),  creating and storing it if this is the first occurrence.
+     */
+    public String get(byte[] buffer, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+        int mask = keys.length - 1;
+        int idx = mix(hash) & mask;
+        byte[] key;
+        while ((key = keys[idx]) != null) {
+            if (hashes[idx] == hash && matches(key, buffer, start, end)) {
+                return values[idx];
+            }
+            idx = (idx + 1) & mask;
+        }
+
+        key = new byte[end - start];
+        System.arraycopy(buffer, start, key, 0, key.length);
+        String value = ByteTokenizer.toString(buffer, start, end);
+        keys[idx] = key;
+        values[idx] = value;
+        hashes[idx] = hash;
+        size++;
+        if (2 * size > keys.length) {
+            rehash();
+        }
+        return value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, null);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    private void rehash() {
+        byte[][] oldKeys = keys;
+        String[] oldValues = values;
+        int[] oldHashes = hashes;
+        int capacity = oldKeys.length * 2;
+        keys = new byte[capacity][];
+        values = new String[capacity];
+        hashes = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int idx = mix(oldHashes[i]) & mask;
+                while (keys[idx] != null) {
+                    idx = (idx + 1) & mask;
+                }
+                keys[idx] = oldKeys[i];
+                values[idx] = oldValues[i];
+                hashes[idx] = oldHashes[i];
+            }
+        }
+    }
+
+    private static int mix(int h) {
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        return h ^ (h >>> 13);
+    }
+
+    private static boolean matches(byte[] key, byte[] buffer, int start, int end) {
+        if (key.length != end - start) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] != buffer[start + i]) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.util.collections;
+
+import org.apache.commons.math.stat.StatUtils;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * Fixed-memory streaming quantile estimator, a KLL style sketch.  Values are buffered in a stack of "compactors",
+ * values at level h carry a weight of 2^h.  When the sketch fills the lowest full level is sorted and every other
+ * value is promoted to the next level, halving the storage of that level.  Level capacities decay geometrically
+ * below the top level so total storage is bounded by roughly 3k values regardless of the number of values added.
+ * <p/>
+ * Until the first compaction all values are retained and quantiles are computed exactly, identical to
+ * StatUtils.percentile.  After that the normalized rank error is typically below 1/k.  Compaction offsets are chosen
+ * with a fixed seed so results are reproducible.
+ * <p/>
+ * Not thread safe.
+ */
+public class QuantileSketch {
+
+    private static final int MIN_CAPACITY = 8;
+    private static final double CAPACITY_DECAY = 2.0 / 3;
+    private static final long SEED = 4987;
+
+    private final int k;
+    private double[][] levels;
+    private int[] sizes;
+    private final Random random;
+    private int nLevels;
+    private int retained;
+    private int totalCapacity;
+    private long count;
+
+    /**
+     * @param k capacity of the top compactor,  controls the accuracy / memory trade off.
+     */
+    public QuantileSketch(int k) {
+        this.k = Math.max(MIN_CAPACITY, k);
+        levels = new double[4][];
+        sizes = new int[4];
+        random = new Random(SEED);
+        levels[0] = new double[Math.min(this.k, 16)];
+        nLevels = 1;
+        updateTotalCapacity();
+    }
+
+    /**
+     * Create a sketch with an approximate normalized rank error of {@code rankError},  e.g. 0.01 for 1%.
+     */
+    public static QuantileSketch forRankError(double rankError) {
+        if (rankError <= 0 || rankError >= 1) {
+            throw new IllegalArgumentException("Rank error must be between 0 and 1: " + rankError);
+        }
+        return new QuantileSketch((int) Math.ceil(2 / rankError));
+    }
+
+    public void add(double v) {
+        append(0, v);
+        count++;
+        retained++;
+        if (retained >= totalCapacity) {
+            compress();
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the number of values currently retained
+     */
+    public int getRetainedSize() {
+        return retained;
+    }
+
+    /**
+     * @return true if values have been discarded,  i.e. quantiles are estimates
+     */
+    public boolean isEstimate() {
+        return nLevels > 1;
+    }
+
+    /**
+     * Estimate the quantile {@code q} in the range (0, 1].  Returns NaN if no values have been added.
+     */
+    public double getQuantile(double q) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        if (!isEstimate()) {
+            return StatUtils.percentile(levels[0], 0, sizes[0], q * 100);
+        }
+
+        int n = retained;
+        double[] values = new double[n];
+        long[] weights = new long[n];
+        int idx = 0;
+        for (int h = 0; h < nLevels; h++) {
+            for (int i = 0; i < sizes[h]; i++) {
+                values[idx] = levels[h][i];
+                weights[idx] = 1L << h;
+                idx++;
+            }
+        }
+        sortByValue(values, weights);
+
+        long totalWeight = 0;
+        for (long w : weights) totalWeight += w;
+        double target = q * totalWeight;
+        long cumulative = 0;
+        for (int i = 0; i < n; i++) {
+            cumulative += weights[i];
+            if (cumulative >= target) {
+                return values[i];
+            }
+        }
+        return values[n - 1];
+    }
+
+    private int capacity(int level) {
+        int depth = nLevels - level - 1;
+        return Math.max(MIN_CAPACITY, (int) Math.ceil(k * Math.pow(CAPACITY_DECAY, depth)));
+    }
+
+    /**
+     * Compact the lowest level that is at capacity.  Compaction is lazy,  levels may temporarily exceed their
+     * capacity as long as the sketch as a whole does not, which keeps the buffers fuller and the estimates tighter.
+     */
+    private void compress() {
+        for (int h = 0; h < nLevels; h++) {
+            if (sizes[h] >= capacity(h)) {
+                if (h + 1 == nLevels) {
+                    addLevel();
+                }
+                compact(h);
+                break;
+            }
+        }
+        updateTotalCapacity();
+    }
+
+    private void updateTotalCapacity() {
+        int total = 0;
+        for (int h = 0; h < nLevels; h++) {
+            total += capacity(h);
+        }
+        totalCapacity = total;
+    }
+
+    /**
+     * Sort level h and promote every other value to level h+1.  If the level holds an odd number of values the most
+     * recently added one is held back.
+     */
+    private void compact(int h) {
+        double[] buffer = levels[h];
+        int size = sizes[h];
+        boolean odd = (size & 1) == 1;
+        double held = odd ? buffer[size - 1] : 0;
+        int n = odd ? size - 1 : size;
+
+        Arrays.sort(buffer, 0, n);
+        int offset = random.nextBoolean() ? 1 : 0;
+        for (int i = offset; i < n; i += 2) {
+            append(h + 1, buffer[i]);
+        }
+        retained -= n - n / 2;
+
+        sizes[h] = 0;
+        if (odd) {
+            buffer[0] = held;
+            sizes[h] = 1;
+        }
+    }
+
+    private void addLevel() {
+        if (nLevels == levels.length) {
+            int newLength = levels.length * 2;
+            levels = Arrays.copyOf(levels, newLength);
+            sizes = Arrays.copyOf(sizes, newLength);
+        }
+        levels[nLevels] = new double[16];
+        nLevels++;
+    }
+
+    private void append(int h, double v) {
+        double[] buffer = levels[h];
+        if (sizes[h] == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            levels[h] = buffer;
+        }
+        buffer[sizes[h]++] = v;
+    }
+
+    /**
+     * Sort the parallel value and weight arrays by value.
+     */
+    private static void sortByValue(double[] values, long[] weights) {
+        int n = values.length;
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        final double[] v = values;
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer o1, Integer o2) {
+                return Double.compare(v[o1], v[o2]);
+            }
+        });
+        double[] sortedValues = new double[n];
+        long[] sortedWeights = new long[n];
+        for (int i = 0; i < n; i++) {
+            sortedValues[i] = values[order[i]];
+            sortedWeights[i] = weights[order[i]];
+        }
+        System.arraycopy(sortedValues, 0, values, 0, n);
+        System.arraycopy(sortedWeights, 0, weights, 0, n);
+    }
+}
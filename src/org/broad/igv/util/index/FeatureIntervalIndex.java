@@ -0,0 +1,206 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.util.index;
+
+import htsjdk.tribble.Feature;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A static interval index over a list of features sorted by start position.  The sorted list is treated as the
+ * in-order traversal of an implicit balanced binary tree,  each node is augmented with the maximum end of its
+ * subtree.  Queries cost O(log n + k) and return features in list order.
+ * <p/>
+ * The index is built once, the feature list must not be modified afterwards.
+ */
+public class FeatureIntervalIndex<T extends Feature> {
+
+    /**
+     * Subtrees with this many levels or fewer are scanned linearly
+     */
+    private static final int SCAN_LEVEL = 3;
+
+    private final List<T> features;
+    private final int[] starts;
+    private final int[] ends;
+
+    /**
+     * Maximum end of the subtree rooted at each index
+     */
+    private final int[] maxEnds;
+
+    /**
+     * Level of the root node,  the root is at index 2^rootLevel - 1
+     */
+    private final int rootLevel;
+
+    /**
+     * @param features - features sorted by start position
+     */
+    public FeatureIntervalIndex(List<T> features) {
+
+        this.features = features;
+        int n = features.size();
+        starts = new int[n];
+        ends = new int[n];
+        maxEnds = new int[n];
+        for (int i = 0; i < n; i++) {
+            Feature f = features.get(i);
+            starts[i] = f.getStart();
+            ends[i] = f.getEnd();
+        }
+
+        if (n == 0) {
+            rootLevel = 0;
+            return;
+        }
+
+        // Leaves (even indices) are level 0.  Nodes at level k have the k lowest bits set and children at i +- 2^(k-1).
+        // A right child may be beyond the end of the array,  in that case its max is the max of the last node
+        // in the array that falls under it.
+        int lastIdx = 0;
+        int lastMax = 0;
+        for (int i = 0; i < n; i += 2) {
+            maxEnds[i] = ends[i];
+            lastIdx = i;
+            lastMax = ends[i];
+        }
+        int k;
+        for (k = 1; (1L << k) <= n; k++) {
+            int x = 1 << (k - 1);
+            int i0 = (x << 1) - 1;
+            int step = x << 2;
+            for (int i = i0; i < n; i += step) {
+                int el = maxEnds[i - x];
+                int er = i + x < n ? maxEnds[i + x] : lastMax;
+                maxEnds[i] = Math.max(ends[i], Math.max(el, er));
+            }
+            // Move lastIdx to its parent
+            lastIdx = ((lastIdx >> k) & 1) != 0 ? lastIdx - x : lastIdx + x;
+            if (lastIdx < n && maxEnds[lastIdx] > lastMax) {
+                lastMax = maxEnds[lastIdx];
+            }
+        }
+        rootLevel = k - 1;
+    }
+
+    public List<T> getFeatures() {
+        return features;
+    }
+
+    /**
+     * Return all features overlapping [start, end),  in list order.  If the overlapping features are contiguous in
+     * the list, which is normally the case, a read-only view of the list is returned rather than a copy.
+     */
+    public List<T> getOverlapping(int start, int end) {
+
+        int n = features.size();
+        if (n == 0) {
+            return Collections.emptyList();
+        }
+
+        int first = -1;
+        int last = -1;
+        List<T> results = null;
+
+        // Top down traversal with an explicit stack of (index, level, left child visited)
+        int[] stackIdx = new int[64];
+        int[] stackLevel = new int[64];
+        boolean[] stackVisited = new boolean[64];
+        int t = 0;
+        stackIdx[t] = (1 << rootLevel) - 1;
+        stackLevel[t] = rootLevel;
+        stackVisited[t++] = false;
+
+        while (t > 0) {
+            t--;
+            int x = stackIdx[t];
+            int k = stackLevel[t];
+            boolean visited = stackVisited[t];
+
+            if (k <= SCAN_LEVEL) {
+                // Small subtree, scan all of its nodes
+                int i0 = x >> k << k;
+                int i1 = Math.min(n, i0 + (1 << (k + 1)) - 1);
+                for (int i = i0; i < i1 && starts[i] < end; i++) {
+                    if (start < ends[i]) {
+                        if (first < 0) {
+                            first = i;
+                        } else if (results == null && i != last + 1) {
+                            results = copyRange(first, last);
+                        }
+                        if (results != null) {
+                            results.add(features.get(i));
+                        }
+                        last = i;
+                    }
+                }
+            } else if (!visited) {
+                // Revisit this node after the left child
+                stackIdx[t] = x;
+                stackLevel[t] = k;
+                stackVisited[t++] = true;
+                int y = x - (1 << (k - 1));
+                if (y >= n || maxEnds[y] > start) {
+                    stackIdx[t] = y;
+                    stackLevel[t] = k - 1;
+                    stackVisited[t++] = false;
+                }
+            } else if (x < n && starts[x] < end) {
+                if (start < ends[x]) {
+                    if (first < 0) {
+                        first = x;
+                    } else if (results == null && x != last + 1) {
+                        results = copyRange(first, last);
+                    }
+                    if (results != null) {
+                        results.add(features.get(x));
+                    }
+                    last = x;
+                }
+                stackIdx[t] = x + (1 << (k - 1));
+                stackLevel[t] = k - 1;
+                stackVisited[t++] = false;
+            }
+        }
+
+        if (first < 0) {
+            return Collections.emptyList();
+        } else if (results == null) {
+            return Collections.unmodifiableList(features.subList(first, last + 1));
+        } else {
+            return results;
+        }
+    }
+
+    private List<T> copyRange(int first, int last) {
+        List<T> results = new ArrayList<T>(last - first + 10);
+        results.addAll(features.subList(first, last + 1));
+        return results;
+    }
+}
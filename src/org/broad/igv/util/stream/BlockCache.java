@@ -0,0 +1,293 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.util.stream;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * A shared, size-bounded cache of fixed size, aligned blocks read from remote resources.  Blocks are evicted
+ * least-recently-used first once the total cached size exceeds the limit.
+ * <p/>
+ * Missing blocks that are adjacent are fetched with a single read from the {@link BlockSource}, optionally extended
+ * by a number of read-ahead blocks.  A block being fetched by one thread is not fetched again by another, the second
+ * thread waits for the first.
+ */
+public class BlockCache {
+
+    private static Logger log = Logger.getLogger(BlockCache.class);
+
+    public static final int BLOCK_SIZE = 64 * 1024;
+
+    static final byte[] EMPTY_BLOCK = new byte[0];
+
+    private static BlockCache instance;
+
+    private final int blockSize;
+    private long maxBytes;
+    private long currentBytes = 0;
+    private final LinkedHashMap<BlockKey, byte[]> blocks = new LinkedHashMap<BlockKey, byte[]>(256, 0.75f, true);
+    private final Map<BlockKey, CountDownLatch> inFlight = new ConcurrentHashMap<BlockKey, CountDownLatch>();
+    private final Map<String, Long> contentLengths = new ConcurrentHashMap<String, Long>();
+
+    /**
+     * Source of the cached bytes,  for example a remote file.
+     */
+    public interface BlockSource {
+
+        /**
+         * Key identifying the source in the cache,  typically the URL
+         */
+        String getKey();
+
+        /**
+         * Read {@code len} bytes starting at {@code position} with a single request.  Fewer bytes are returned
+         * only at end of file.
+         *
+         * @return the number of bytes read
+         */
+        int read(long position, byte[] buffer, int len) throws IOException;
+    }
+
+    public static synchronized BlockCache getInstance() {
+        if (instance == null) {
+            instance = new BlockCache(BLOCK_SIZE, 64L * 1024 * 1024);
+        }
+        return instance;
+    }
+
+    BlockCache(int blockSize, long maxBytes) {
+        this.blockSize = blockSize;
+        this.maxBytes = maxBytes;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    public synchronized void clear() {
+        blocks.clear();
+        currentBytes = 0;
+        contentLengths.clear();
+    }
+
+    /**
+     * Return the content length of the source,  if end of file has been seen,  or -1
+     */
+    public long getContentLength(String key) {
+        Long length = contentLengths.get(key);
+        return length == null ? -1 : length;
+    }
+
+    /**
+     * Return blocks {@code firstBlock} through {@code lastBlock},  inclusive.  Blocks past end of file are
+     * returned as zero length arrays,  and the block at end of file may be short.
+     *
+     * @param source
+     * @param firstBlock
+     * @param lastBlock
+     * @param readAhead number of blocks past {@code lastBlock} to fetch with any missing block
+     * @return
+     * @throws IOException
+     */
+    public byte[][] getBlocks(BlockSource source, long firstBlock, long lastBlock, int readAhead) throws IOException {
+
+        String key = source.getKey();
+        int nBlocks = (int) (lastBlock - firstBlock + 1);
+        byte[][] result = new byte[nBlocks][];
+
+        while (true) {
+
+            long contentLength = getContentLength(key);
+            List<Long> owned = new ArrayList<Long>();
+            List<CountDownLatch> waiting = new ArrayList<CountDownLatch>();
+            boolean missing = false;
+
+            for (int i = 0; i < nBlocks; i++) {
+                if (result[i] != null) continue;
+                long idx = firstBlock + i;
+                if (contentLength >= 0 && idx * blockSize >= contentLength) {
+                    result[i] = EMPTY_BLOCK;
+                    continue;
+                }
+                BlockKey blockKey = new BlockKey(key, idx);
+                result[i] = get(blockKey);
+                if (result[i] == null) {
+                    missing = true;
+                    CountDownLatch latch = claim(blockKey);
+                    if (latch == null) {
+                        owned.add(idx);
+                    } else {
+                        waiting.add(latch);
+                    }
+                }
+            }
+            if (!missing) {
+                return result;
+            }
+
+            // Read ahead only if this thread is fetching the end of the requested range
+            if (!owned.isEmpty() && owned.get(owned.size() - 1) == lastBlock) {
+                for (long idx = lastBlock + 1; idx <= lastBlock + readAhead; idx++) {
+                    if (contentLength >= 0 && idx * blockSize >= contentLength) break;
+                    BlockKey blockKey = new BlockKey(key, idx);
+                    if (contains(blockKey) || claim(blockKey) != null) break;
+                    owned.add(idx);
+                }
+            }
+
+            // Fetch runs of consecutive owned blocks with one request each
+            int runStart = 0;
+            for (int i = 1; i <= owned.size(); i++) {
+                if (i == owned.size() || owned.get(i) != owned.get(i - 1) + 1) {
+                    fetch(source, owned.get(runStart), owned.get(i - 1), firstBlock, result);
+                    runStart = i;
+                }
+            }
+
+            for (CountDownLatch latch : waiting) {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted waiting for " + key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fetch blocks {@code first} through {@code last} and release their claims.  Blocks within the requested
+     * range are also copied to {@code result}.
+     */
+    private void fetch(BlockSource source, long first, long last, long resultOffset, byte[][] result) throws IOException {
+
+        String key = source.getKey();
+        try {
+            long start = first * blockSize;
+            int len = (int) ((last - first + 1) * blockSize);
+            long contentLength = getContentLength(key);
+            if (contentLength >= 0) {
+                len = (int) Math.max(0, Math.min(len, contentLength - start));
+            }
+
+            byte[] buffer = new byte[len];
+            int n = len == 0 ? 0 : Math.max(0, source.read(start, buffer, len));
+            if (n < len) {
+                contentLengths.put(key, start + n);
+            }
+
+            for (long idx = first; idx <= last; idx++) {
+                int offset = (int) ((idx - first) * blockSize);
+                int blockLen = Math.max(0, Math.min(blockSize, n - offset));
+                byte[] block = blockLen == 0 ? EMPTY_BLOCK : Arrays.copyOfRange(buffer, offset, offset + blockLen);
+                put(new BlockKey(key, idx), block);
+                int i = (int) (idx - resultOffset);
+                if (i >= 0 && i < result.length) {
+                    result[i] = block;
+                }
+            }
+        } finally {
+            for (long idx = first; idx <= last; idx++) {
+                CountDownLatch latch = inFlight.remove(new BlockKey(key, idx));
+                if (latch != null) latch.countDown();
+            }
+        }
+    }
+
+    /**
+     * Claim the block for fetching.  Returns null if the claim succeeded,  otherwise the latch of the thread
+     * currently fetching the block.
+     */
+    private CountDownLatch claim(BlockKey blockKey) {
+        synchronized (inFlight) {
+            CountDownLatch latch = inFlight.get(blockKey);
+            if (latch == null) {
+                inFlight.put(blockKey, new CountDownLatch(1));
+            }
+            return latch;
+        }
+    }
+
+    private synchronized byte[] get(BlockKey blockKey) {
+        return blocks.get(blockKey);
+    }
+
+    private synchronized boolean contains(BlockKey blockKey) {
+        return blocks.containsKey(blockKey);
+    }
+
+    private synchronized void put(BlockKey blockKey, byte[] block) {
+        byte[] previous = blocks.put(blockKey, block);
+        if (previous != null) {
+            currentBytes -= previous.length;
+        }
+        currentBytes += block.length;
+        evict();
+    }
+
+    private void evict() {
+        Iterator<byte[]> iter = blocks.values().iterator();
+        while (currentBytes > maxBytes && iter.hasNext()) {
+            currentBytes -= iter.next().length;
+            iter.remove();
+        }
+    }
+
+
+    private static class BlockKey {
+
+        final String source;
+        final long index;
+
+        BlockKey(String source, long index) {
+            this.source = source;
+            this.index = index;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof BlockKey)) return false;
+            BlockKey other = (BlockKey) o;
+            return index == other.index && source.equals(other.source);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * source.hashCode() + (int) (index ^ (index >>> 32));
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.util.stream;
+
+import htsjdk.samtools.seekablestream.SeekableStream;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * A seekable http stream that reads through the shared {@link BlockCache}.  Nearby small reads, typical of
+ * index and block traversal of bam, tdf, and bigwig files, are served from cached blocks instead of costing an
+ * http request each.
+ */
+public class IGVCachingHTTPStream extends SeekableStream implements BlockCache.BlockSource {
+
+    static int READ_AHEAD_BLOCKS = 1;
+
+    private final URL url;
+    private final String key;
+    private final BlockCache cache;
+    private long position = 0;
+
+    public IGVCachingHTTPStream(URL url) {
+        this(url, BlockCache.getInstance());
+    }
+
+    IGVCachingHTTPStream(URL url, BlockCache cache) {
+        this.url = url;
+        this.key = url.toExternalForm();
+        this.cache = cache;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Read a range from the server with a single request.  A new stream is used for each read so fetches can
+     * proceed in parallel.
+     */
+    public int read(long position, byte[] buffer, int len) throws IOException {
+        IGVSeekableHTTPStream stream = new IGVSeekableHTTPStream(url);
+        stream.seek(position);
+        int n = stream.read(buffer, 0, len);
+        return n < 0 ? 0 : n;
+    }
+
+    public long position() {
+        return position;
+    }
+
+    public long length() {
+        return cache.getContentLength(key);
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long contentLength = length();
+        long bytesToSkip = contentLength < 0 ? n : Math.min(n, contentLength - position);
+        position += bytesToSkip;
+        return bytesToSkip;
+    }
+
+    public boolean eof() throws IOException {
+        long contentLength = length();
+        return contentLength > 0 && position >= contentLength;
+    }
+
+    public void seek(final long position) {
+        this.position = position;
+    }
+
+    public int read(byte[] buffer, int offset, int len) throws IOException {
+
+        if (offset < 0 || len < 0 || (offset + len) > buffer.length) {
+            throw new IndexOutOfBoundsException("Offset=" + offset + ",len=" + len + ",buflen=" + buffer.length);
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (eof()) {
+            return -1;
+        }
+
+        int blockSize = cache.getBlockSize();
+        long firstBlock = position / blockSize;
+        long lastBlock = (position + len - 1) / blockSize;
+        byte[][] blocks = cache.getBlocks(this, firstBlock, lastBlock, READ_AHEAD_BLOCKS);
+
+        int n = 0;
+        for (int i = 0; i < blocks.length && n < len; i++) {
+            byte[] block = blocks[i];
+            int from = (int) (position + n - (firstBlock + i) * blockSize);
+            if (from >= block.length) break;
+            int count = Math.min(block.length - from, len - n);
+            System.arraycopy(block, from, buffer, offset + n, count);
+            n += count;
+            if (block.length < blockSize) break;   // End of file
+        }
+
+        if (n == 0) {
+            return -1;
+        }
+        position += n;
+        return n;
+    }
+
+    public int read() throws IOException {
+        byte[] tmp = new byte[1];
+        int n = read(tmp, 0, 1);
+        return n < 0 ? -1 : (int) tmp[0] & 0xFF;
+    }
+
+    public void close() throws IOException {
+        // Nothing to do
+    }
+
+    @Override
+    public String getSource() {
+        return key;
+    }
+}
@@ -28,6 +28,7 @@ package org.broad.igv.util.stream;
 import htsjdk.samtools.seekablestream.ISeekableStreamFactory;
 import htsjdk.samtools.seekablestream.SeekableFileStream;
 import htsjdk.samtools.seekablestream.SeekableStream;
+import org.broad.igv.PreferenceManager;
 import org.broad.igv.util.HttpUtils;
 
 import java.io.File;
@@ -65,7 +66,7 @@ public class IGVSeekableStreamFactory implements ISeekableStreamFactory {
                 final URL url = new URL(path);
                 boolean useByteRange = HttpUtils.getInstance().useByteRange(url);
                 if (useByteRange) {
-                    is = new IGVSeekableHTTPStream(url);
+                    is = getByteRangeStream(url);
                 } else {
                     is = new SeekableServiceStream(url);
                 }
@@ -79,6 +80,20 @@ public class IGVSeekableStreamFactory implements ISeekableStreamFactory {
         }
     }
 
+    /**
+     * Return a stream for a server supporting byte-range requests,  reading through the shared block cache
+     * unless it is disabled.
+     */
+    private SeekableStream getByteRangeStream(URL url) {
+        int cacheSizeMB = PreferenceManager.getInstance().getAsInt(PreferenceManager.HTTP_BLOCK_CACHE_SIZE);
+        if (cacheSizeMB > 0) {
+            BlockCache.getInstance().setMaxBytes(cacheSizeMB * 1024L * 1024L);
+            return new IGVCachingHTTPStream(url);
+        } else {
+            return new IGVSeekableHTTPStream(url);
+        }
+    }
+
     public SeekableStream getBufferedStream(SeekableStream stream){
         return getBufferedStream(stream, IGVSeekableBufferedStream.DEFAULT_BUFFER_SIZE);
     }
@@ -0,0 +1,229 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.util.stream;
+
+import htsjdk.samtools.seekablestream.SeekableStream;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Thread safe random access reads from a file or URL.  Unlike a {@link SeekableStream} there is no shared file
+ * pointer, so concurrent reads do not need to be serialized.  Local files are read with positional
+ * {@link FileChannel} reads,  other resources with a pool of streams so that each concurrent read has a stream
+ * of its own.
+ */
+public abstract class PositionalReader {
+
+    private static Logger log = Logger.getLogger(PositionalReader.class);
+
+    public static PositionalReader getReader(String path) throws IOException {
+        String lcPath = path.toLowerCase();
+        boolean isLocal = !(lcPath.startsWith("http:") || lcPath.startsWith("https:") || lcPath.startsWith("ftp:") ||
+                lcPath.endsWith(".list"));
+        if (isLocal && new File(path).isFile()) {
+            return new FileChannelReader(new File(path));
+        } else {
+            return new StreamPoolReader(path);
+        }
+    }
+
+    /**
+     * Read nBytes starting at position.  If the end of the resource is reached first the remainder of the
+     * returned array is zero-filled.
+     */
+    public abstract byte[] readBytes(long position, int nBytes) throws IOException;
+
+    public abstract void close() throws IOException;
+
+    /**
+     * Memory map a read-only region of the resource.  Returns null if the resource cannot be mapped, for example
+     * because it is not a local file.
+     */
+    public ByteBuffer map(long position, long size) throws IOException {
+        return null;
+    }
+
+
+    /**
+     * Reads with positional channel reads.  An interrupt during a read closes the channel for every thread,  so
+     * other readers reopen it.  The interrupted thread still gets its ClosedByInterruptException.
+     */
+    static class FileChannelReader extends PositionalReader {
+
+        final File path;
+        RandomAccessFile file;
+        volatile FileChannel channel;
+        volatile boolean closed = false;
+
+        FileChannelReader(File file) throws IOException {
+            this.path = file;
+            this.file = new RandomAccessFile(file, "r");
+            this.channel = this.file.getChannel();
+        }
+
+        public byte[] readBytes(long position, int nBytes) throws IOException {
+            byte[] bytes = new byte[nBytes];
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            FileChannel ch = channel;
+            while (buffer.hasRemaining()) {
+                int n;
+                try {
+                    n = ch.read(buffer, position + buffer.position());
+                } catch (ClosedByInterruptException e) {
+                    throw e;
+                } catch (ClosedChannelException e) {
+                    ch = reopen(ch, e);
+                    continue;
+                }
+                if (n < 0) {
+                    break;
+                }
+            }
+            return bytes;
+        }
+
+        @Override
+        public ByteBuffer map(long position, long size) throws IOException {
+            FileChannel ch = channel;
+            try {
+                return ch.map(FileChannel.MapMode.READ_ONLY, position, size);
+            } catch (ClosedByInterruptException e) {
+                throw e;
+            } catch (ClosedChannelException e) {
+                return reopen(ch, e).map(FileChannel.MapMode.READ_ONLY, position, size);
+            }
+        }
+
+        /**
+         * Replace {@code failed},  closed by an interrupt on another thread,  unless this reader has been closed
+         * or another thread has already replaced it.
+         */
+        private synchronized FileChannel reopen(FileChannel failed, ClosedChannelException e) throws IOException {
+            if (closed) {
+                throw e;
+            }
+            if (channel == failed) {
+                log.debug("Reopening channel closed by an interrupt: " + path);
+                try {
+                    file.close();
+                } catch (IOException ex) {
+                    log.error("Error closing file: " + path, ex);
+                }
+                file = new RandomAccessFile(path, "r");
+                channel = file.getChannel();
+            }
+            return channel;
+        }
+
+        public synchronized void close() throws IOException {
+            closed = true;
+            file.close();
+        }
+    }
+
+
+    /**
+     * Reads from a pool of streams.  A stream is taken from the pool (or created if the pool is empty) for the
+     * duration of each read, so the number of open streams is bounded by the peak number of concurrent reads.
+     */
+    static class StreamPoolReader extends PositionalReader {
+
+        String path;
+        ConcurrentLinkedQueue<SeekableStream> streams = new ConcurrentLinkedQueue<SeekableStream>();
+        volatile boolean closed = false;
+
+        StreamPoolReader(String path) throws IOException {
+            this.path = path;
+            // Open the first stream now to fail early if the resource is not accessible
+            streams.add(IGVSeekableStreamFactory.getInstance().getStreamFor(path));
+        }
+
+        public byte[] readBytes(long position, int nBytes) throws IOException {
+            SeekableStream stream = streams.poll();
+            if (stream == null) {
+                stream = IGVSeekableStreamFactory.getInstance().getStreamFor(path);
+            }
+            boolean success = false;
+            try {
+                stream.seek(position);
+                byte[] bytes = new byte[nBytes];
+                int offset = 0;
+                while (offset < nBytes) {
+                    int n = stream.read(bytes, offset, nBytes - offset);
+                    if (n < 0) {
+                        break;
+                    }
+                    offset += n;
+                }
+                success = true;
+                return bytes;
+            } finally {
+                if (success) {
+                    release(stream);
+                } else {
+                    // The stream may be left in an unknown state,  don't reuse it
+                    closeStream(stream);
+                }
+            }
+        }
+
+        /**
+         * Return {@code stream} to the pool,  or close it if this reader has been closed.  Synchronized with
+         * {@link #close()} so a stream is never added after the pool has been drained.
+         */
+        private synchronized void release(SeekableStream stream) {
+            if (closed) {
+                closeStream(stream);
+            } else {
+                streams.add(stream);
+            }
+        }
+
+        private void closeStream(SeekableStream stream) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                log.error("Error closing stream for: " + path, e);
+            }
+        }
+
+        public synchronized void close() throws IOException {
+            closed = true;
+            SeekableStream stream;
+            while ((stream = streams.poll()) != null) {
+                closeStream(stream);
+            }
+        }
+    }
+}
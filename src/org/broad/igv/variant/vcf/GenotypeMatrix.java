@@ -0,0 +1,412 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.variant.vcf;
+
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.GenotypeType;
+import htsjdk.variant.variantcontext.VariantContext;
+
+import java.util.*;
+
+/**
+ * Genotype calls for a block of consecutive variants,  stored as a sample x variant matrix of primitives.  Each
+ * variant is a column holding a {@link GenotypeType} code per sample,  and optionally the DP and GQ values packed
+ * into one int.  The full htsjdk genotypes are only decoded when attributes other than these are requested.
+ * <p/>
+ * Columns are appended as variants are decoded,  the matrix is full after {@code capacity} columns.
+ */
+public class GenotypeMatrix {
+
+    /**
+     * Returned for DP or GQ if the genotype has no value
+     */
+    public static final int MISSING = -1;
+
+    /**
+     * Returned for DP or GQ if the value could not be stored,  the genotype must be decoded to get it
+     */
+    public static final int UNKNOWN = -2;
+
+    /**
+     * Upper bound on the cells of a matrix block,  about 5 MB with DP and GQ
+     */
+    private static final int BLOCK_CELLS = 1 << 20;
+    private static final int MAX_BLOCK_VARIANTS = 4096;
+
+    private static final GenotypeType[] TYPES = GenotypeType.values();
+    private static final byte ABSENT = -1;
+
+    private static final int DEPTH_BITS = 21;
+    private static final int DEPTH_MISSING = (1 << DEPTH_BITS) - 1;
+    private static final int DEPTH_UNKNOWN = DEPTH_MISSING - 1;
+    private static final int QUALITY_MISSING = (1 << (32 - DEPTH_BITS)) - 1;
+    private static final int QUALITY_UNKNOWN = QUALITY_MISSING - 1;
+    private static final int PACKED_MISSING = (QUALITY_MISSING << DEPTH_BITS) | DEPTH_MISSING;
+
+    private final List<String> sampleNames;
+    private final Map<String, Integer> sampleIndices;
+    private final int nSamples;
+    private final int capacity;
+    private int size;
+
+    private byte[] types;
+    private int[] depthQuality;     // Allocated when the first DP or GQ value is seen
+
+    /**
+     * @param sampleNames   samples in VCF column order
+     * @param sampleIndices map of sample name -> position in {@code sampleNames},  see {@link #indexSamples(List)}
+     * @param capacity      the maximum number of variants
+     */
+    public GenotypeMatrix(List<String> sampleNames, Map<String, Integer> sampleIndices, int capacity) {
+        this.sampleNames = sampleNames;
+        this.sampleIndices = sampleIndices;
+        this.nSamples = sampleNames.size();
+        this.capacity = Math.max(1, capacity);
+        this.types = new byte[Math.min(this.capacity, 16) * nSamples];
+    }
+
+    public static Map<String, Integer> indexSamples(List<String> sampleNames) {
+        Map<String, Integer> indices = new HashMap<String, Integer>(2 * sampleNames.size());
+        for (int i = 0; i < sampleNames.size(); i++) {
+            indices.put(sampleNames.get(i), i);
+        }
+        return indices;
+    }
+
+    /**
+     * @return the number of variants for blocks shared by consecutively decoded variants
+     */
+    public static int getBlockCapacity(int nSamples) {
+        return Math.min(MAX_BLOCK_VARIANTS, Math.max(16, BLOCK_CELLS / Math.max(1, nSamples)));
+    }
+
+    public List<String> getSampleNames() {
+        return sampleNames;
+    }
+
+    /**
+     * @return the position of {@code sample},  or -1 if it is not in this matrix
+     */
+    public int getSampleIndex(String sample) {
+        Integer idx = sampleIndices.get(sample);
+        return idx == null ? -1 : idx;
+    }
+
+    public boolean isFull() {
+        return size >= capacity;
+    }
+
+    /**
+     * Add a column for a new variant.  All samples start as {@link GenotypeType#UNAVAILABLE} without DP or GQ.
+     *
+     * @return the column index
+     */
+    public int addColumn() {
+        if (isFull()) {
+            throw new IllegalStateException("Genotype matrix is full");
+        }
+        int column = size++;
+        int end = size * nSamples;
+        if (end > types.length) {
+            int columns = Math.min(capacity, Math.max(size, 2 * types.length / Math.max(1, nSamples)));
+            types = Arrays.copyOf(types, columns * nSamples);
+            int[] dq = depthQuality;
+            if (dq != null) {
+                int oldLength = dq.length;
+                dq = Arrays.copyOf(dq, types.length);
+                Arrays.fill(dq, oldLength, dq.length, PACKED_MISSING);
+                depthQuality = dq;
+            }
+        }
+        Arrays.fill(types, column * nSamples, end, (byte) GenotypeType.UNAVAILABLE.ordinal());
+        return column;
+    }
+
+    /**
+     * @return the genotype type,  or null if the variant has no genotype for the sample
+     */
+    public GenotypeType getType(int column, int sample) {
+        byte code = types[column * nSamples + sample];
+        return code == ABSENT ? null : TYPES[code];
+    }
+
+    /**
+     * @return the DP value,  {@link #MISSING},  or {@link #UNKNOWN}
+     */
+    public int getDepth(int column, int sample) {
+        int[] dq = depthQuality;
+        if (dq == null) return MISSING;
+        int depth = dq[column * nSamples + sample] & DEPTH_MISSING;
+        return depth == DEPTH_MISSING ? MISSING : depth == DEPTH_UNKNOWN ? UNKNOWN : depth;
+    }
+
+    /**
+     * @return the GQ value,  {@link #MISSING},  or {@link #UNKNOWN}
+     */
+    public int getQuality(int column, int sample) {
+        int[] dq = depthQuality;
+        if (dq == null) return MISSING;
+        int quality = dq[column * nSamples + sample] >>> DEPTH_BITS;
+        return quality == QUALITY_MISSING ? MISSING : quality == QUALITY_UNKNOWN ? UNKNOWN : quality;
+    }
+
+    /**
+     * Count the genotypes of one variant by zygosity
+     */
+    public VCFVariant.ZygosityCount countZygosity(int column) {
+        VCFVariant.ZygosityCount count = new VCFVariant.ZygosityCount();
+        int offset = column * nSamples;
+        for (int i = 0; i < nSamples; i++) {
+            byte code = types[offset + i];
+            if (code != ABSENT) {
+                count.incrementCount(TYPES[code]);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Fill a column from the (decoded) genotypes of {@code variantContext}
+     */
+    public void setGenotypes(int column, VariantContext variantContext) {
+        for (int i = 0; i < nSamples; i++) {
+            Genotype genotype = variantContext.getGenotype(sampleNames.get(i));
+            if (genotype == null) {
+                types[column * nSamples + i] = ABSENT;
+            } else {
+                types[column * nSamples + i] = (byte) genotype.getType().ordinal();
+                if (genotype.hasDP()) setDepth(column, i, genotype.getDP());
+                if (genotype.hasGQ()) setQuality(column, i, genotype.getGQ());
+            }
+        }
+    }
+
+    private void setDepth(int column, int sample, int depth) {
+        int idx = column * nSamples + sample;
+        int[] dq = getDepthQuality();
+        int packed = depth < 0 || depth >= DEPTH_UNKNOWN ? DEPTH_UNKNOWN : depth;
+        dq[idx] = (dq[idx] & ~DEPTH_MISSING) | packed;
+    }
+
+    private void setQuality(int column, int sample, int quality) {
+        int idx = column * nSamples + sample;
+        int[] dq = getDepthQuality();
+        int packed = quality < 0 || quality >= QUALITY_UNKNOWN ? QUALITY_UNKNOWN : quality;
+        dq[idx] = (dq[idx] & DEPTH_MISSING) | (packed << DEPTH_BITS);
+    }
+
+    private int[] getDepthQuality() {
+        int[] dq = depthQuality;
+        if (dq == null) {
+            // Fill before publishing so the field never refers to a partly initialized array
+            dq = new int[types.length];
+            Arrays.fill(dq, PACKED_MISSING);
+            depthQuality = dq;
+        }
+        return dq;
+    }
+
+
+    /**
+     * Fill a column directly from the text of a VCF 4.x data line,  without creating htsjdk genotypes.  The result
+     * is identical to {@link #setGenotypes(int, VariantContext)}.  Lines the htsjdk codec would reject or treat
+     * specially (GT absent or not first, GL values, malformed numbers, wrong number of samples) are not parsed.
+     *
+     * @param alleles the variant alleles,  reference first
+     * @return true if the column was filled,  false if the genotypes must be decoded by htsjdk
+     */
+    public boolean parseGenotypes(int column, String line, List<Allele> alleles) {
+
+        int pos = 0;
+        for (int i = 0; i < 8; i++) {
+            pos = line.indexOf('\t', pos) + 1;
+            if (pos == 0) return false;
+        }
+        int formatEnd = line.indexOf('\t', pos);
+        if (formatEnd < 0) return false;
+
+        // FORMAT keys
+        int nKeys = 0, dpKey = -1, gqKey = -1, adKey = -1, plKey = -1;
+        boolean gtFirst = false;
+        for (int s = pos; s <= formatEnd; ) {
+            int e = line.indexOf(':', s);
+            if (e < 0 || e > formatEnd) e = formatEnd;
+            if (regionEquals(line, s, e, "GT")) {
+                if (nKeys != 0) return false;
+                gtFirst = true;
+            } else if (regionEquals(line, s, e, "DP")) {
+                dpKey = nKeys;
+            } else if (regionEquals(line, s, e, "GQ")) {
+                gqKey = nKeys;
+            } else if (regionEquals(line, s, e, "AD")) {
+                adKey = nKeys;
+            } else if (regionEquals(line, s, e, "PL")) {
+                plKey = nKeys;
+            } else if (regionEquals(line, s, e, "GL")) {
+                return false;
+            }
+            nKeys++;
+            s = e + 1;
+        }
+        if (!gtFirst) return false;
+
+        // Alleles htsjdk considers equal are given the same id
+        int nAlleles = alleles.size();
+        int[] alleleIds = new int[nAlleles];
+        for (int i = 0; i < nAlleles; i++) {
+            alleleIds[i] = i;
+            for (int j = 0; j < i; j++) {
+                if (alleles.get(j).equals(alleles.get(i))) {
+                    alleleIds[i] = alleleIds[j];
+                    break;
+                }
+            }
+        }
+
+        int offset = column * nSamples;
+        int sample = 0;
+        int s = formatEnd + 1;
+        while (true) {
+            if (sample >= nSamples) return false;
+            int end = line.indexOf('\t', s);
+            if (end < 0) end = line.length();
+
+            int key = 0;
+            for (int fs = s; fs <= end; key++) {
+                if (key >= nKeys) return false;
+                int fe = line.indexOf(':', fs);
+                if (fe < 0 || fe > end) fe = end;
+
+                if (key == 0) {
+                    byte type = parseGenotypeType(line, fs, fe, alleles, alleleIds);
+                    if (type == ABSENT) return false;
+                    types[offset + sample] = type;
+                } else if (fe - fs == 1 && line.charAt(fs) == '.') {
+                    // Missing value
+                } else if (key == dpKey) {
+                    long dp = parseInt(line, fs, fe);
+                    if (dp == Long.MIN_VALUE) return false;
+                    setDepth(column, sample, (int) dp);
+                } else if (key == gqKey) {
+                    if (!regionEquals(line, fs, fe, "-1")) {
+                        long gq = parseInt(line, fs, fe);
+                        if (gq == Long.MIN_VALUE) {
+                            try {
+                                gq = Math.round(Double.parseDouble(line.substring(fs, fe)));
+                            } catch (NumberFormatException e) {
+                                return false;
+                            }
+                        }
+                        setQuality(column, sample, (int) gq);
+                    }
+                } else if (key == adKey || key == plKey) {
+                    for (int ls = fs; ls <= fe; ) {
+                        int le = line.indexOf(',', ls);
+                        if (le < 0 || le > fe) le = fe;
+                        if (parseInt(line, ls, le) == Long.MIN_VALUE) return false;
+                        ls = le + 1;
+                    }
+                }
+                fs = fe + 1;
+            }
+
+            sample++;
+            if (end == line.length()) break;
+            s = end + 1;
+        }
+        return sample == nSamples;
+    }
+
+    /**
+     * Classify a GT value as htsjdk's {@link Genotype#getType()} does.
+     *
+     * @return the type code,  or ABSENT if the value cannot be parsed
+     */
+    private static byte parseGenotypeType(String line, int start, int end, List<Allele> alleles, int[] alleleIds) {
+        if (start >= end) return ABSENT;
+        boolean sawNoCall = false;
+        boolean sawMultiple = false;
+        int observed = -1;
+        for (int s = start; s <= end; ) {
+            int e = s;
+            while (e < end && line.charAt(e) != '/' && line.charAt(e) != '|') e++;
+            if (e - s == 1 && line.charAt(s) == '.') {
+                sawNoCall = true;
+            } else {
+                if (e == s || e - s > 9) return ABSENT;
+                int index = 0;
+                for (int i = s; i < e; i++) {
+                    char c = line.charAt(i);
+                    if (c < '0' || c > '9') return ABSENT;
+                    index = 10 * index + (c - '0');
+                }
+                if (index >= alleleIds.length) return ABSENT;
+                if (observed < 0) {
+                    observed = index;
+                } else if (alleleIds[index] != alleleIds[observed]) {
+                    sawMultiple = true;
+                }
+            }
+            s = e + 1;
+        }
+        GenotypeType type;
+        if (sawNoCall) {
+            type = observed < 0 ? GenotypeType.NO_CALL : GenotypeType.MIXED;
+        } else {
+            type = sawMultiple ? GenotypeType.HET :
+                    alleles.get(observed).isReference() ? GenotypeType.HOM_REF : GenotypeType.HOM_VAR;
+        }
+        return (byte) type.ordinal();
+    }
+
+    /**
+     * Parse a decimal integer as {@link Integer#parseInt(String)} does.
+     *
+     * @return the value,  or Long.MIN_VALUE if the text is not a valid int
+     */
+    private static long parseInt(String line, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (line.charAt(i) == '-' || line.charAt(i) == '+')) {
+            negative = line.charAt(i) == '-';
+            i++;
+        }
+        if (i == end || end - i > 10) return Long.MIN_VALUE;
+        long value = 0;
+        for (; i < end; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9') return Long.MIN_VALUE;
+            value = 10 * value + (c - '0');
+        }
+        value = negative ? -value : value;
+        return value < Integer.MIN_VALUE || value > Integer.MAX_VALUE ? Long.MIN_VALUE : value;
+    }
+
+    private static boolean regionEquals(String line, int start, int end, String s) {
+        return end - start == s.length() && line.regionMatches(start, s, 0, s.length());
+    }
+}
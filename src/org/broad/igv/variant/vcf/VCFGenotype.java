@@ -36,93 +36,115 @@ import java.util.List;
 import java.util.Map;
 
 /**
+ * A genotype view on one sample of a {@link VCFVariant}.  These are created on demand and hold no genotype data of
+ * their own:  the type, DP, and GQ are read from the variant's {@link GenotypeMatrix},  and the htsjdk genotype is
+ * only decoded for the remaining attributes and alleles.
+ *
  * @author Jim Robinson
  * @date Aug 1, 2011
  */
 public class VCFGenotype implements org.broad.igv.variant.Genotype {
 
-    Genotype vcfGenotype;
-    Map<String, Object> attributes;
-    List<org.broad.igv.variant.Allele> alleles;
+    private final VCFVariant variant;
+    private final String sample;
+    private final int sampleIndex;
 
-    public VCFGenotype(Genotype wrappedGenotype) {
-        vcfGenotype = wrappedGenotype;
-        attributes = new HashMap<String, Object>();
+    private Genotype vcfGenotype;
+    private Map<String, Object> attributes;
+    private List<org.broad.igv.variant.Allele> alleles;
 
+    VCFGenotype(VCFVariant variant, String sample, int sampleIndex) {
+        this.variant = variant;
+        this.sample = sample;
+        this.sampleIndex = sampleIndex;
+    }
 
-        if (vcfGenotype.hasDP()) {
-            attributes.put("DP", vcfGenotype.getDP());
+    private Genotype getVCFGenotype() {
+        if (vcfGenotype == null) {
+            vcfGenotype = variant.getVariantContext().getGenotype(sample);
         }
+        return vcfGenotype;
+    }
 
-        if (vcfGenotype.hasAD()) {
-            String adString = "";
-            int[] ad = vcfGenotype.getAD();
-            for (int i = 0; i < ad.length; i++) {
-                if (i != 0) adString += ",";
-                adString += String.valueOf(ad[i]);
-            }
-            attributes.put("AD", adString);
-        }
+    public Map<String, Object> getAttributes() {
+        if (attributes == null) {
+            Genotype vcfGenotype = getVCFGenotype();
+            attributes = new HashMap<String, Object>();
 
-        if (vcfGenotype.hasGQ()) {
-            attributes.put("GQ", vcfGenotype.getGQ());
-        }
+            if (vcfGenotype.hasDP()) {
+                attributes.put("DP", vcfGenotype.getDP());
+            }
 
-        if (vcfGenotype.hasPL()) {
-            String plString = "";
-            int[] pl = vcfGenotype.getPL();
-            for (int i = 0; i < pl.length; i++) {
-                if (i != 0) plString += ",";
-                plString += String.valueOf(pl[i]);
+            if (vcfGenotype.hasAD()) {
+                String adString = "";
+                int[] ad = vcfGenotype.getAD();
+                for (int i = 0; i < ad.length; i++) {
+                    if (i != 0) adString += ",";
+                    adString += String.valueOf(ad[i]);
+                }
+                attributes.put("AD", adString);
+            }
 
+            if (vcfGenotype.hasGQ()) {
+                attributes.put("GQ", vcfGenotype.getGQ());
             }
-            attributes.put("PL", plString);
-        }
 
+            if (vcfGenotype.hasPL()) {
+                String plString = "";
+                int[] pl = vcfGenotype.getPL();
+                for (int i = 0; i < pl.length; i++) {
+                    if (i != 0) plString += ",";
+                    plString += String.valueOf(pl[i]);
 
-        attributes.putAll(vcfGenotype.getExtendedAttributes());
-    }
+                }
+                attributes.put("PL", plString);
+            }
 
-    public Map<String, Object> getAttributes() {
+            attributes.putAll(vcfGenotype.getExtendedAttributes());
+        }
         return attributes;
     }
 
     public String getGenotypeString() {
-        return vcfGenotype.getGenotypeString();
+        return getVCFGenotype().getGenotypeString();
     }
 
     public double getPhredScaledQual() {
-        return vcfGenotype.getGQ();
+        int gq = variant.getGenotypeQuality(sampleIndex);
+        if (gq == GenotypeMatrix.UNKNOWN) {
+            return getVCFGenotype().getGQ();
+        }
+        return gq;   // -1 if missing,  as Genotype.getGQ()
     }
 
     public String getTypeString() {
-        return vcfGenotype.getType().toString();
+        return getType().toString();
     }
 
     public GenotypeType getType() {
-        return vcfGenotype.getType();
+        return variant.getGenotypeType(sampleIndex);
     }
 
     public boolean isHomVar() {
-        return vcfGenotype.isHomVar();
+        return getType() == GenotypeType.HOM_VAR;
     }
 
     public boolean isHet() {
-        return vcfGenotype.isHet();
+        return getType() == GenotypeType.HET;
     }
 
     public boolean isHomRef() {
-        return vcfGenotype.isHomRef();
+        return getType() == GenotypeType.HOM_REF;
     }
 
     public boolean isNoCall() {
-        return vcfGenotype.isNoCall();
+        return getType() == GenotypeType.NO_CALL;
     }
 
     public List<org.broad.igv.variant.Allele> getAlleles() {
         if (alleles == null) {
             alleles = new ArrayList<org.broad.igv.variant.Allele>();
-            List<htsjdk.variant.variantcontext.Allele> tmp = vcfGenotype.getAlleles();
+            List<htsjdk.variant.variantcontext.Allele> tmp = getVCFGenotype().getAlleles();
             if (tmp != null) {
                 for (Allele a : tmp) {
                     alleles.add(new VCFAllele(a.getBases()));
@@ -132,7 +154,22 @@ public class VCFGenotype implements org.broad.igv.variant.Genotype {
         return alleles;
     }
 
+    /**
+     * DP and GQ are read from the genotype matrix,  other attributes from the decoded genotype.
+     */
     public double getAttributeAsDouble(String s) {
-        return vcfGenotype.getAttributeAsDouble(s, Double.NaN);
+        int value;
+        if (s.equals("DP")) {
+            value = variant.getGenotypeDepth(sampleIndex);
+        } else if (s.equals("GQ")) {
+            value = variant.getGenotypeQuality(sampleIndex);
+        } else {
+            return getVCFGenotype().getAttributeAsDouble(s, Double.NaN);
+        }
+        if (value == GenotypeMatrix.UNKNOWN) {
+            Object attribute = getAttributes().get(s);
+            return attribute == null ? Double.NaN : ((Number) attribute).doubleValue();
+        }
+        return value == GenotypeMatrix.MISSING ? Double.NaN : value;
     }
 }
@@ -30,6 +30,7 @@ import org.broad.igv.variant.Allele;
 import org.broad.igv.variant.Genotype;
 import org.broad.igv.variant.Variant;
 import org.broad.igv.variant.VariantTrack;
+import htsjdk.variant.variantcontext.GenotypeType;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.variantcontext.VariantContextBuilder;
 
@@ -52,31 +53,39 @@ public class VCFVariant implements Variant {
     private double methylationRate = Double.NaN;  // <= signals unknown / not applicable
     private double coveredSampleFraction = Double.NaN;
 
-    Map<String, VCFGenotype> genotypeMap;
+    /**
+     * Genotype calls,  this variant is column {@code genotypeColumn}.  Null if there are no samples.
+     */
+    private GenotypeMatrix genotypes;
+    private int genotypeColumn;
 
     private int start = -1;
 
     public VCFVariant(VariantContext variantContext, String chr) {
         this.variantContext = variantContext;
         this.chr = chr;
+        if (variantContext.hasGenotypes()) {
+            List<String> sampleNames = new ArrayList<String>(variantContext.getSampleNames());
+            genotypes = new GenotypeMatrix(sampleNames, GenotypeMatrix.indexSamples(sampleNames), 1);
+            genotypeColumn = genotypes.addColumn();
+            genotypes.setGenotypes(genotypeColumn, variantContext);
+        }
         init();
     }
 
-    private void init() {
-
-        // Copy the genotype map.  Calls to variantContext.getGenotype() are expensive
-        genotypeMap = new HashMap<String, VCFGenotype>();
-        for (String sample : getSampleNames()) {
-            htsjdk.variant.variantcontext.Genotype genotype = variantContext.getGenotype(sample);
-            VCFGenotype vcfGenotype = genotype == null ? null : new VCFGenotype(genotype);
-            genotypeMap.put(sample, vcfGenotype);
-        }
+    /**
+     * @param genotypes      genotype calls shared with neighboring variants,  filled by the codec
+     * @param genotypeColumn the column of {@code genotypes} for this variant
+     */
+    public VCFVariant(VariantContext variantContext, String chr, GenotypeMatrix genotypes, int genotypeColumn) {
+        this.variantContext = variantContext;
+        this.chr = chr;
+        this.genotypes = genotypes;
+        this.genotypeColumn = genotypeColumn;
+        init();
+    }
 
-        zygosityCount = new ZygosityCount();
-        for (String sample : getSampleNames()) {
-            Genotype genotype = getGenotype(sample);
-            zygosityCount.incrementCount(genotype);
-        }
+    private void init() {
 
         String afString = null;
         String[] alleleFreqKeys = {"AF", "GMAF"};
@@ -93,6 +102,13 @@ public class VCFVariant implements Variant {
 
     }
 
+    private ZygosityCount getZygosityCount() {
+        if (zygosityCount == null) {
+            zygosityCount = genotypes == null ? new ZygosityCount() : genotypes.countZygosity(genotypeColumn);
+        }
+        return zygosityCount;
+    }
+
     /**
      * Allele frequency is a comma separated list of doubles
      * We strip away brackets and parentheses
@@ -209,16 +225,36 @@ public class VCFVariant implements Variant {
     }
 
     public Collection<String> getSampleNames() {
-        return variantContext.getSampleNames();
+        return genotypes == null ? Collections.<String>emptyList() : genotypes.getSampleNames();
     }
 
     public Map<String, Object> getAttributes() {
         return variantContext.getAttributes();
     }
 
+    /**
+     * Return a lightweight view of the sample's genotype.  The type, DP, and GQ come from the genotype matrix,  other
+     * attributes are decoded from the variant context when first requested.
+     */
     @Override
     public Genotype getGenotype(String sample) {
-        return genotypeMap.get(sample);
+        int sampleIndex = genotypes == null ? -1 : genotypes.getSampleIndex(sample);
+        if (sampleIndex < 0 || genotypes.getType(genotypeColumn, sampleIndex) == null) {
+            return null;
+        }
+        return new VCFGenotype(this, sample, sampleIndex);
+    }
+
+    GenotypeType getGenotypeType(int sampleIndex) {
+        return genotypes.getType(genotypeColumn, sampleIndex);
+    }
+
+    int getGenotypeDepth(int sampleIndex) {
+        return genotypes.getDepth(genotypeColumn, sampleIndex);
+    }
+
+    int getGenotypeQuality(int sampleIndex) {
+        return genotypes.getQuality(genotypeColumn, sampleIndex);
     }
 
     public Collection<String> getFilters() {
@@ -227,22 +263,22 @@ public class VCFVariant implements Variant {
 
     @Override
     public int getHomVarCount() {
-        return zygosityCount.getHomVar();
+        return getZygosityCount().getHomVar();
     }
 
     @Override
     public int getHetCount() {
-        return zygosityCount.getHet();
+        return getZygosityCount().getHet();
     }
 
     @Override
     public int getHomRefCount() {
-        return zygosityCount.getHomRef();
+        return getZygosityCount().getHomRef();
     }
 
     @Override
     public int getNoCallCount() {
-        return zygosityCount.getNoCall();
+        return getZygosityCount().getNoCall();
     }
 
     @Override
@@ -317,15 +353,19 @@ public class VCFVariant implements Variant {
 
         public void incrementCount(Genotype genotype) {
             if (genotype != null) {
-                if (genotype.isHomVar()) {
-                    homVar++;
-                } else if (genotype.isHet()) {
-                    het++;
-                } else if (genotype.isHomRef()) {
-                    homRef++;
-                } else {
-                    noCall++;
-                }
+                incrementCount(genotype.getType());
+            }
+        }
+
+        public void incrementCount(GenotypeType type) {
+            if (type == GenotypeType.HOM_VAR) {
+                homVar++;
+            } else if (type == GenotypeType.HET) {
+                het++;
+            } else if (type == GenotypeType.HOM_REF) {
+                homRef++;
+            } else {
+                noCall++;
             }
         }
 
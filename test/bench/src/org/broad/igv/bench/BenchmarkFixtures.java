@@ -0,0 +1,214 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.bench;
+
+import htsjdk.samtools.*;
+import org.broad.igv.Globals;
+import org.broad.igv.feature.genome.FastaUtils;
+import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.tools.IgvTools;
+import org.broad.igv.tools.Preprocessor;
+import org.broad.igv.tools.TestFileGenerator;
+import org.broad.igv.track.WindowFunction;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic fixture data shared by the benchmarks.  Files are generated once into the fixture directory
+ * (system property "igv.bench.dir") and reused by subsequent benchmark forks.  Generation is seeded so
+ * every run measures the same data.
+ */
+public class BenchmarkFixtures {
+
+    public static final String FIXTURE_DIR = System.getProperty("igv.bench.dir", "benchtmp/fixtures");
+    public static final String GENOME = System.getProperty("igv.bench.genome", "test/data/genomes/hg18.unittest.genome");
+
+    public static final String CHR = "chr1";
+    public static final int READ_LENGTH = 100;
+
+    private static final long SEED = 20150101L;
+    private static final byte[] BASES = {'A', 'C', 'G', 'T'};
+
+    private static Genome genome;
+
+    public static synchronized Genome getGenome() throws IOException {
+        if (genome == null) {
+            Globals.setHeadless(true);
+            genome = IgvTools.loadGenome(GENOME);
+        }
+        return genome;
+    }
+
+    /**
+     * An indexed, coordinate sorted BAM of single-end reads on {@link #CHR}, at roughly {@code coverage}x
+     * over the first {@code length} bases.
+     */
+    public static synchronized File getBam(int length, int coverage) throws IOException {
+        File bam = new File(getDir(), "synthetic_" + length + "_" + coverage + ".bam");
+        if (bam.exists()) {
+            return bam;
+        }
+
+        SAMFileHeader header = new SAMFileHeader();
+        header.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+        header.addSequence(new SAMSequenceRecord(CHR, getGenome().getChromosome(CHR).getLength()));
+        SAMReadGroupRecord readGroup = new SAMReadGroupRecord("rg1");
+        readGroup.setSample("sample1");
+        readGroup.setPlatform("ILLUMINA");
+        header.addReadGroup(readGroup);
+
+        File tmp = new File(getDir(), bam.getName() + ".tmp.bam");
+        SAMFileWriter writer = new SAMFileWriterFactory().setCreateIndex(true).makeBAMWriter(header, true, tmp);
+        Random random = new Random(SEED);
+        int nReads = (int) ((long) length * coverage / READ_LENGTH);
+        double meanGap = (double) length / nReads;
+        double position = 1;
+        byte[] quals = new byte[READ_LENGTH];
+        try {
+            for (int i = 0; i < nReads; i++) {
+                position += random.nextDouble() * 2 * meanGap;
+                SAMRecord record = new SAMRecord(header);
+                record.setReadName("read" + i);
+                record.setReferenceName(CHR);
+                record.setAlignmentStart((int) position);
+                record.setCigarString(READ_LENGTH + "M");
+                record.setMappingQuality(20 + random.nextInt(40));
+                record.setReadNegativeStrandFlag(random.nextBoolean());
+                record.setReadBases(randomBases(random, READ_LENGTH));
+                for (int q = 0; q < READ_LENGTH; q++) {
+                    quals[q] = (byte) (10 + random.nextInt(30));
+                }
+                record.setBaseQualities(quals.clone());
+                record.setAttribute("RG", "rg1");
+                writer.addAlignment(record);
+            }
+        } finally {
+            writer.close();
+        }
+
+        File tmpIndex = new File(getDir(), bam.getName() + ".tmp.bai");
+        tmpIndex.renameTo(new File(getDir(), bam.getName() + ".bai"));
+        tmp.renameTo(bam);
+        return bam;
+    }
+
+    /**
+     * An indexed FASTA file of {@code nContigs} random sequences of {@code length} bases,  60 bases per line.
+     */
+    public static synchronized File getFasta(int nContigs, int length) throws IOException {
+        File fasta = new File(getDir(), "synthetic_" + nContigs + "_" + length + ".fa");
+        if (fasta.exists()) {
+            return fasta;
+        }
+        File tmp = new File(getDir(), fasta.getName() + ".tmp");
+        Random random = new Random(SEED);
+        PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(tmp)));
+        try {
+            for (int c = 0; c < nContigs; c++) {
+                pw.println(">contig" + c);
+                for (int pos = 0; pos < length; pos += 60) {
+                    pw.println(new String(randomBases(random, Math.min(60, length - pos))));
+                }
+            }
+        } finally {
+            pw.close();
+        }
+        tmp.renameTo(fasta);
+        try {
+            FastaUtils.createIndexFile(fasta.getAbsolutePath(), fasta.getAbsolutePath() + ".fai");
+        } catch (Exception e) {
+            throw new IOException("Error indexing " + fasta, e);
+        }
+        return fasta;
+    }
+
+    /**
+     * A TDF file converted from a fixed step wig with {@code nRows} rows spread over all chromosomes,
+     * generated by {@link TestFileGenerator}.
+     */
+    public static synchronized File getTdf(int nRows) throws IOException {
+        File tdf = new File(getDir(), "synthetic_" + nRows + ".tdf");
+        if (tdf.exists()) {
+            return tdf;
+        }
+        File wig = new File(getDir(), "synthetic_" + nRows + ".wig");
+        if (!wig.exists()) {
+            TestFileGenerator.generateTestFile(wig.getAbsolutePath(), true, nRows, 1);
+        }
+        // The TDF writer requires a .tdf extension
+        File tmp = new File(getDir(), "synthetic_" + nRows + ".partial.tdf");
+        Preprocessor preprocessor = new Preprocessor(tmp, getGenome(), Arrays.asList(WindowFunction.mean), -1, null);
+        preprocessor.preprocess(wig, 7, null);
+        preprocessor.finish();
+        tmp.renameTo(tdf);
+        return tdf;
+    }
+
+    /**
+     * {@code n} BED lines,  sorted,  with names, scores, strands, thick ends and 1-10 exons each.
+     */
+    public static List<String> getBedLines(int n) {
+        Random random = new Random(SEED);
+        List<String> lines = new ArrayList<String>(n);
+        int start = 1000;
+        for (int i = 0; i < n; i++) {
+            start += random.nextInt(5000);
+            int nExons = 1 + random.nextInt(10);
+            StringBuilder sizes = new StringBuilder();
+            StringBuilder starts = new StringBuilder();
+            int exonStart = 0;
+            for (int e = 0; e < nExons; e++) {
+                int size = 50 + random.nextInt(200);
+                sizes.append(size).append(',');
+                starts.append(exonStart).append(',');
+                exonStart += size + 100 + random.nextInt(1000);
+            }
+            int end = start + exonStart;
+            lines.add(CHR + "\t" + start + "\t" + end + "\tfeature" + i + "\t" + random.nextInt(1000) + "\t" +
+                    (random.nextBoolean() ? "+" : "-") + "\t" + start + "\t" + end + "\t0\t" + nExons + "\t" +
+                    sizes + "\t" + starts);
+        }
+        return lines;
+    }
+
+    private static byte[] randomBases(Random random, int n) {
+        byte[] bases = new byte[n];
+        for (int i = 0; i < n; i++) {
+            bases[i] = BASES[random.nextInt(4)];
+        }
+        return bases;
+    }
+
+    private static File getDir() {
+        File dir = new File(FIXTURE_DIR);
+        dir.mkdirs();
+        return dir;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.feature.genome;
+
+import org.broad.igv.bench.BenchmarkFixtures;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Random access reads from a synthetic indexed FASTA file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FastaBenchmark {
+
+    private static final int N_CONTIGS = 4;
+    private static final int CONTIG_LENGTH = 10000000;
+
+    @Param({"100", "10000"})
+    public int queryLength;
+
+    @Param({"false", "true"})
+    public boolean memoryMap;
+
+    private FastaIndexedSequence sequence;
+    private Random random;
+
+    @Setup
+    public void setup() throws IOException {
+        String path = BenchmarkFixtures.getFasta(N_CONTIGS, CONTIG_LENGTH).getAbsolutePath();
+        sequence = new FastaIndexedSequence(path, memoryMap);
+        random = new Random(1);
+    }
+
+    @Benchmark
+    public byte[] getSequence() {
+        String chr = "contig" + random.nextInt(N_CONTIGS);
+        int start = random.nextInt(CONTIG_LENGTH - queryLength);
+        return sequence.getSequence(chr, start, start + queryLength);
+    }
+}
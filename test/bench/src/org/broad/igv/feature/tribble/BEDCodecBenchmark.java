@@ -0,0 +1,83 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.feature.tribble;
+
+import org.broad.igv.bench.BenchmarkFixtures;
+import org.broad.igv.util.ByteLineReader;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding synthetic 12 column BED lines,  from strings and from a byte buffer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BEDCodecBenchmark {
+
+    @Param({"100000"})
+    public int nLines;
+
+    private List<String> lines;
+    private IGVBEDCodec codec;
+    private byte[] bytes;
+
+    @Setup
+    public void setup() throws IOException {
+        lines = BenchmarkFixtures.getBedLines(nLines);
+        codec = new IGVBEDCodec();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        for (String line : lines) {
+            bos.write(line.getBytes("US-ASCII"));
+            bos.write('\n');
+        }
+        bytes = bos.toByteArray();
+    }
+
+    @Benchmark
+    public void decode(Blackhole blackhole) {
+        for (String line : lines) {
+            blackhole.consume(codec.decode(line));
+        }
+    }
+
+    @Benchmark
+    public void decodeBytes(Blackhole blackhole) throws IOException {
+        ByteLineReader reader = new ByteLineReader(new ByteArrayInputStream(bytes));
+        while (reader.next()) {
+            blackhole.consume(codec.decode(reader.getBuffer(), reader.getLineStart(), reader.getLineEnd()));
+        }
+    }
+}
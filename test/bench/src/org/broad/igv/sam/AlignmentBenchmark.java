@@ -0,0 +1,92 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.sam;
+
+import org.broad.igv.bench.BenchmarkFixtures;
+import org.broad.igv.sam.reader.AlignmentReaderFactory;
+import org.broad.igv.util.ResourceLocator;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading and packing alignments from a synthetic single-end BAM.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AlignmentBenchmark {
+
+    @Param({"100000"})
+    public int windowSize;
+
+    @Param({"30"})
+    public int coverage;
+
+    private AlignmentTileLoader loader;
+    private AlignmentTrack.RenderOptions renderOptions;
+    private AlignmentInterval interval;
+
+    @Setup
+    public void setup() throws IOException {
+        BenchmarkFixtures.getGenome();
+        File bam = BenchmarkFixtures.getBam(windowSize, coverage);
+        loader = new AlignmentTileLoader(AlignmentReaderFactory.getReader(new ResourceLocator(bam.getAbsolutePath())));
+        renderOptions = new AlignmentTrack.RenderOptions();
+
+        SpliceJunctionHelper spliceJunctionHelper = new SpliceJunctionHelper(new SpliceJunctionHelper.LoadOptions());
+        AlignmentTileLoader.AlignmentTile tile = loadTile(spliceJunctionHelper);
+        interval = new AlignmentInterval(BenchmarkFixtures.CHR, 0, windowSize, tile.getAlignments(), tile.getCounts(),
+                spliceJunctionHelper, tile.getDownsampledIntervals());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        loader.close();
+    }
+
+    @Benchmark
+    public AlignmentTileLoader.AlignmentTile loadTile() {
+        return loadTile(new SpliceJunctionHelper(new SpliceJunctionHelper.LoadOptions()));
+    }
+
+    @Benchmark
+    public PackedAlignments packAlignments() {
+        return new AlignmentPacker().packAlignments(interval, renderOptions);
+    }
+
+    private AlignmentTileLoader.AlignmentTile loadTile(SpliceJunctionHelper spliceJunctionHelper) {
+        AlignmentDataManager.DownsampleOptions downsampleOptions = new AlignmentDataManager.DownsampleOptions(false, 50, 100);
+        return loader.loadTile(BenchmarkFixtures.CHR, 0, windowSize, spliceJunctionHelper, downsampleOptions,
+                new HashMap<String, PEStats>(), null, true, null);
+    }
+}
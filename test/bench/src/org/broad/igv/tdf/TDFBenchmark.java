@@ -0,0 +1,89 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.tdf;
+
+import org.broad.igv.bench.BenchmarkFixtures;
+import org.broad.igv.feature.LocusScore;
+import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.track.WindowFunction;
+import org.broad.igv.util.ResourceLocator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tile reads and summary score queries against a TDF file converted from a synthetic wig.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TDFBenchmark {
+
+    @Param({"1000000"})
+    public int nRows;
+
+    @Param({"0", "3", "6"})
+    public int zoom;
+
+    private TDFReader reader;
+    private TDFDataSource dataSource;
+    private int chrLength;
+
+    @Setup
+    public void setup() throws IOException {
+        Genome genome = BenchmarkFixtures.getGenome();
+        String path = BenchmarkFixtures.getTdf(nRows).getAbsolutePath();
+        reader = new TDFReader(new ResourceLocator(path));
+        dataSource = new TDFDataSource(reader, 0, "benchmark", genome);
+        chrLength = genome.getChromosome(BenchmarkFixtures.CHR).getLength();
+    }
+
+    @TearDown
+    public void tearDown() {
+        reader.close();
+    }
+
+    @Benchmark
+    public void readTiles(Blackhole blackhole) {
+        TDFDataset ds = reader.getDataset(BenchmarkFixtures.CHR, zoom, WindowFunction.mean);
+        for (int t = 0; t < ds.tilePositions.length; t++) {
+            blackhole.consume(reader.readTile(ds, t));
+        }
+    }
+
+    @Benchmark
+    public List<LocusScore> getSummaryScoresForRange() {
+        // A view one tenth of the chromosome wide, in the middle
+        int start = chrLength / 2;
+        return dataSource.getSummaryScoresForRange(BenchmarkFixtures.CHR, start, start + chrLength / 10, zoom);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.tools;
+
+import org.broad.igv.bench.BenchmarkFixtures;
+import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.tools.parsers.DataConsumer;
+import org.broad.igv.track.TrackType;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counting coverage of a synthetic BAM,  as done by "igvtools count",  without writing any output.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CoverageCounterBenchmark {
+
+    @Param({"1000000"})
+    public int length;
+
+    @Param({"30"})
+    public int coverage;
+
+    @Param({"25"})
+    public int windowSize;
+
+    private Genome genome;
+    private String bamPath;
+
+    @Setup
+    public void setup() throws IOException {
+        genome = BenchmarkFixtures.getGenome();
+        bamPath = BenchmarkFixtures.getBam(length, coverage).getAbsolutePath();
+    }
+
+    @Benchmark
+    public int parse() throws IOException {
+        CountingConsumer consumer = new CountingConsumer();
+        CoverageCounter counter = new CoverageCounter(bamPath, consumer, windowSize, 0, null, genome, null, 0, 0);
+        counter.parse();
+        return consumer.count;
+    }
+
+    private static class CountingConsumer implements DataConsumer {
+
+        int count;
+
+        public void setType(String type) {
+        }
+
+        public void addData(String chr, int start, int end, float[] data, String name) {
+            count++;
+        }
+
+        public void parsingComplete() {
+        }
+
+        public void setTrackParameters(TrackType trackType, String trackLine, String[] trackNames) {
+        }
+
+        public void setTrackParameters(TrackType trackType, String trackLine, String[] trackNames, boolean b) {
+        }
+
+        public void setSortTolerance(int tolerance) {
+        }
+
+        public void setAttribute(String key, String value) {
+        }
+    }
+}
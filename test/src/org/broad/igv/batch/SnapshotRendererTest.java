@@ -0,0 +1,100 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.batch;
+
+import org.broad.igv.AbstractHeadlessTest;
+import org.broad.igv.track.Track;
+import org.broad.igv.track.TrackGroup;
+import org.broad.igv.track.TrackLoader;
+import org.broad.igv.util.ResourceLocator;
+import org.broad.igv.util.TestUtils;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SnapshotRendererTest extends AbstractHeadlessTest {
+
+    @Test
+    public void testParallelMatchesSerial() throws Exception {
+
+        TrackGroup group = new TrackGroup();
+        for (String path : new String[]{"bed/Unigene.sample.bed", "wig/hg18_var_sample.wig"}) {
+            List<Track> tracks = new TrackLoader().load(new ResourceLocator(TestUtils.DATA_DIR + path), genome);
+            for (Track track : tracks) {
+                group.add(track);
+            }
+        }
+        List<Collection<TrackGroup>> panels = new ArrayList<Collection<TrackGroup>>();
+        panels.add(Arrays.asList(group));
+
+        File locusFile = new File(TestUtils.TMP_OUTPUT_DIR, "snapshot_loci.txt");
+        PrintWriter pw = new PrintWriter(locusFile);
+        pw.println("# test loci");
+        pw.println("chr2:178700000-178720000");
+        pw.println("chr2:178900000-178980000 region2");
+        pw.println("chr2\t178707289\t178712057\tbed_region");
+        pw.println("chr8:1-2000");
+        pw.println("chr8:1000-5000");
+        pw.println("chr2:1-200000000");
+        pw.close();
+
+        List<SnapshotRenderer.SnapshotLocus> loci = SnapshotRenderer.readLoci(locusFile.getAbsolutePath());
+        assertEquals(6, loci.size());
+        assertEquals("region2.png", loci.get(1).filename);
+        assertEquals(178707289, loci.get(2).locus.getStart());
+        assertEquals(178699999, loci.get(0).locus.getStart());
+
+        File serialDir = new File(TestUtils.TMP_OUTPUT_DIR, "snapshots_serial");
+        File parallelDir = new File(TestUtils.TMP_OUTPUT_DIR, "snapshots_parallel");
+        serialDir.mkdirs();
+        parallelDir.mkdirs();
+
+        assertEquals(6, new SnapshotRenderer(panels, 800, 1).render(loci, serialDir));
+        assertEquals(6, new SnapshotRenderer(panels, 800, 4).render(loci, parallelDir));
+
+        for (SnapshotRenderer.SnapshotLocus locus : loci) {
+            BufferedImage serial = ImageIO.read(new File(serialDir, locus.filename));
+            BufferedImage parallel = ImageIO.read(new File(parallelDir, locus.filename));
+            assertEquals(800, serial.getWidth());
+            assertEquals(serial.getHeight(), parallel.getHeight());
+            boolean blank = true;
+            for (int x = 0; x < serial.getWidth(); x++) {
+                for (int y = 0; y < serial.getHeight(); y++) {
+                    assertEquals(locus.filename, serial.getRGB(x, y), parallel.getRGB(x, y));
+                    if (serial.getRGB(x, y) != 0xFFFFFFFF) blank = false;
+                }
+            }
+            assertTrue(!blank);
+        }
+    }
+}
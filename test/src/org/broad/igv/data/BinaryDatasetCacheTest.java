@@ -0,0 +1,133 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.data;
+
+import org.broad.igv.AbstractHeadlessTest;
+import org.broad.igv.util.FileUtils;
+import org.broad.igv.util.ResourceLocator;
+import org.broad.igv.util.TestUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static junit.framework.Assert.*;
+
+public class BinaryDatasetCacheTest extends AbstractHeadlessTest {
+
+    private File cacheDir;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        cacheDir = new File(TestUtils.TMP_OUTPUT_DIR, "datasets");
+        cacheDir.mkdirs();
+        for (File f : cacheDir.listFiles()) {
+            f.delete();
+        }
+    }
+
+    /**
+     * Datasets read from the cache,  both on the load that writes it and on later loads,  must match the text parser
+     */
+    @Test
+    public void testCompareText() throws Exception {
+        String[] paths = {TestUtils.DATA_DIR + "cn/HindForGISTIC.hg16.cn",
+                TestUtils.DATA_DIR + "igv/recombRate.igv.txt",
+                TestUtils.DATA_DIR + "cn/HindForGISTIC.hg16.chr.cn"};
+
+        BinaryDatasetCache cache = new BinaryDatasetCache(cacheDir, 1024 * 1024 * 1024, 0);
+        for (String path : paths) {
+            ResourceLocator locator = new ResourceLocator(path);
+            IGVDataset expected = new IGVDataset(new IGVDatasetParser(locator, genome, null), genome);
+
+            IGVDataset written = new IGVDataset(new IGVDatasetParser(locator, genome, cache), genome);
+            String[] headings = expected.getTrackNames();
+            assertNotNull(cache.open(path, genome.getId(), headings, expected.getEndLocations("chr1") != null));
+            assertDatasetsEqual(expected, written);
+
+            IGVDataset cached = new IGVDataset(new IGVDatasetParser(locator, genome, cache), genome);
+            assertDatasetsEqual(expected, cached);
+        }
+    }
+
+    @Test
+    public void testStaleEntry() throws Exception {
+        String path = TestUtils.DATA_DIR + "igv/recombRate.ens.igv.txt";
+        File copy = new File(TestUtils.TMP_OUTPUT_DIR, "recombRate.ens.igv.txt");
+        FileUtils.copyFile(new File(path), copy);
+
+        BinaryDatasetCache cache = new BinaryDatasetCache(cacheDir, 1024 * 1024 * 1024, 0);
+        ResourceLocator locator = new ResourceLocator(copy.getAbsolutePath());
+        IGVDataset ds = new IGVDataset(new IGVDatasetParser(locator, genome, cache), genome);
+        String[] headings = ds.getTrackNames();
+
+        assertNotNull(cache.open(copy.getAbsolutePath(), genome.getId(), headings, true));
+        assertNull(cache.open(copy.getAbsolutePath(), "otherGenome", headings, true));
+        assertNull(cache.open(copy.getAbsolutePath(), genome.getId(), new String[]{"a"}, false));
+
+        copy.setLastModified(copy.lastModified() - 10000);
+        assertNull(cache.open(copy.getAbsolutePath(), genome.getId(), headings, true));
+    }
+
+    @Test
+    public void testMinFileSize() throws Exception {
+        String path = TestUtils.DATA_DIR + "igv/recombRate.ens.igv.txt";
+        BinaryDatasetCache cache = new BinaryDatasetCache(cacheDir, 1024 * 1024 * 1024, new File(path).length() + 1);
+        new IGVDataset(new IGVDatasetParser(new ResourceLocator(path), genome, cache), genome);
+        assertEquals(0, cacheDir.listFiles().length);
+    }
+
+    private void assertDatasetsEqual(IGVDataset expected, IGVDataset actual) {
+        assertTrue(Arrays.equals(expected.getChromosomes(), actual.getChromosomes()));
+        assertTrue(Arrays.equals(expected.getTrackNames(), actual.getTrackNames()));
+        assertEquals(expected.getDataMin(), actual.getDataMin());
+        assertEquals(expected.getDataMax(), actual.getDataMax());
+        assertEquals(expected.isLogNormalized(), actual.isLogNormalized());
+        assertEquals(expected.getType(), actual.getType());
+
+        for (String chr : expected.getChromosomes()) {
+            assertEquals(expected.getLongestFeature(chr), actual.getLongestFeature(chr));
+            assertTrue(chr, Arrays.equals(expected.getStartLocations(chr), actual.getStartLocations(chr)));
+            assertTrue(chr, Arrays.equals(expected.getEndLocations(chr), actual.getEndLocations(chr)));
+            assertTrue(chr, Arrays.equals(expected.getFeatureNames(chr), actual.getFeatureNames(chr)));
+            for (String heading : expected.getTrackNames()) {
+                assertTrue(chr, Arrays.equals(expected.getData(heading, chr), actual.getData(heading, chr)));
+            }
+        }
+
+        GenomeSummaryData expectedSummary = expected.getGenomeSummary();
+        GenomeSummaryData actualSummary = actual.getGenomeSummary();
+        assertEquals(expectedSummary == null, actualSummary == null);
+        if (expectedSummary != null) {
+            assertTrue(Arrays.equals(expectedSummary.getLocations(), actualSummary.getLocations()));
+            for (String heading : expected.getTrackNames()) {
+                assertTrue(Arrays.equals(expectedSummary.getData(heading), actualSummary.getData(heading)));
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.data;
+
+import org.broad.igv.AbstractHeadlessTest;
+import org.broad.igv.feature.LocusScore;
+import org.broad.igv.track.WindowFunction;
+import org.broad.igv.util.TestUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.*;
+
+public class SummaryTileDiskCacheTest extends AbstractHeadlessTest {
+
+    private File cacheDir;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        cacheDir = new File(TestUtils.TMP_OUTPUT_DIR, "summary");
+        cacheDir.mkdirs();
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        SummaryTileDiskCache cache = new SummaryTileDiskCache(cacheDir, 1024 * 1024);
+
+        List<LocusScore> scores = new ArrayList<LocusScore>();
+        scores.add(new BasicScore(0, 10, 1.5f));
+        scores.add(new NamedScore(10, 20, 2.5f, "probe1"));
+        scores.add(new NamedScore(20, 30, Float.NaN, null));
+        scores.add(new CompositeScore(30, 40, 3.5f, new float[]{3, 4}, new String[]{"a", null}, WindowFunction.mean));
+        cache.put("key", scores);
+
+        assertNull(cache.get("otherKey", WindowFunction.mean));
+        List<LocusScore> cached = cache.get("key", WindowFunction.median);
+        assertNotNull(cached);
+        assertEquals(scores.size(), cached.size());
+        for (int i = 0; i < scores.size(); i++) {
+            LocusScore expected = scores.get(i);
+            LocusScore actual = cached.get(i);
+            assertEquals(expected.getClass(), actual.getClass());
+            assertEquals(expected.getStart(), actual.getStart());
+            assertEquals(expected.getEnd(), actual.getEnd());
+            assertEquals(expected.getScore(), actual.getScore());
+        }
+        assertEquals("probe1", ((NamedScore) cached.get(1)).getProbe());
+        assertNull(((NamedScore) cached.get(2)).getProbe());
+        CompositeScore cs = (CompositeScore) cached.get(3);
+        assertEquals(2, cs.data.length);
+        assertEquals(4.0f, cs.data[1]);
+        assertEquals("a", cs.probes[0]);
+        assertNull(cs.probes[1]);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testUnsupportedScore() throws Exception {
+        SummaryTileDiskCache cache = new SummaryTileDiskCache(cacheDir, 1024 * 1024);
+        List<LocusScore> scores = new ArrayList<LocusScore>();
+        scores.add(new BasicScore(0, 10, 1.5f));
+        scores.add(new BasicScore(10, 20, 1.5f) {
+        });
+        cache.put("key", scores);
+        assertNull(cache.get("key", WindowFunction.mean));
+        assertEquals(0, cache.getCurrentBytes());
+    }
+
+    @Test
+    public void testEvictionAndReload() throws Exception {
+        List<LocusScore> scores = new ArrayList<LocusScore>();
+        for (int i = 0; i < 1000; i++) {
+            scores.add(new BasicScore(i * 10, i * 10 + 10, (float) Math.random()));
+        }
+
+        SummaryTileDiskCache cache = new SummaryTileDiskCache(cacheDir, 1024 * 1024);
+        cache.put("key0", scores);
+        long entryBytes = cache.getCurrentBytes();
+        assertTrue(entryBytes > 0);
+
+        // Room for 2 entries
+        cache.setMaxBytes(2 * entryBytes + entryBytes / 2);
+        cache.put("key1", scores);
+        assertNotNull(cache.get("key0", WindowFunction.mean));    // key1 is now least recently used
+        cache.put("key2", scores);
+
+        assertNotNull(cache.get("key0", WindowFunction.mean));
+        assertNull(cache.get("key1", WindowFunction.mean));
+        assertNotNull(cache.get("key2", WindowFunction.mean));
+        assertTrue(cache.getCurrentBytes() <= 2 * entryBytes + entryBytes / 2);
+
+        // A new instance picks up the existing files
+        SummaryTileDiskCache cache2 = new SummaryTileDiskCache(cacheDir, 1024 * 1024);
+        assertEquals(cache.getCurrentBytes(), cache2.getCurrentBytes());
+        assertNotNull(cache2.get("key2", WindowFunction.mean));
+
+        cache2.clear();
+        assertEquals(0, cache2.getCurrentBytes());
+        assertNull(cache2.get("key0", WindowFunction.mean));
+    }
+
+    @Test
+    public void testFileIdentity() throws Exception {
+        File file = new File(TestUtils.TMP_OUTPUT_DIR, "identity.txt");
+        FileWriter writer = new FileWriter(file);
+        writer.write("abc");
+        writer.close();
+        String id1 = SummaryTileDiskCache.getFileIdentity(file.getAbsolutePath());
+        assertNotNull(id1);
+        assertEquals(id1, SummaryTileDiskCache.getFileIdentity(file.getAbsolutePath()));
+
+        writer = new FileWriter(file, true);
+        writer.write("def");
+        writer.close();
+        assertFalse(id1.equals(SummaryTileDiskCache.getFileIdentity(file.getAbsolutePath())));
+    }
+}
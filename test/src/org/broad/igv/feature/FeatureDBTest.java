@@ -107,7 +107,8 @@ public class FeatureDBTest extends AbstractHeadlessTest {
     }
 
     /**
-     * Test thread safety by trying to read the map and clear it at the same time.
+     * Test thread safety by trying to read the map and clear it at the same time.  The reader searches a snapshot,
+     * so it must find either all the features or,  if the clear came first,  none of them.
      *
      * @throws Exception
      */
@@ -126,7 +127,8 @@ public class FeatureDBTest extends AbstractHeadlessTest {
                         //Check for data corruption
                         assertTrue(f.getName().startsWith(CHECK_STR));
                     }
-                    assertEquals(expected, features.size());
+                    int size = features.size();
+                    assertTrue("Partially cleared index: " + size, size == expected || size == 0);
                 } catch (AssertionFailedError e) {
                     map.put(0, e);
                 }
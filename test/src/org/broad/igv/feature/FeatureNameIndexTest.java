@@ -0,0 +1,243 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.feature;
+
+import org.broad.igv.AbstractHeadlessTest;
+import org.broad.igv.util.ResourceLocator;
+import org.broad.igv.util.TestUtils;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class FeatureNameIndexTest extends AbstractHeadlessTest {
+
+    private static final int MAX_VALUES = 5;
+
+    /**
+     * Longest first
+     */
+    private static final Comparator<NamedFeature> comparator = new Comparator<NamedFeature>() {
+        public int compare(NamedFeature f1, NamedFeature f2) {
+            return (f2.getEnd() - f2.getStart()) - (f1.getEnd() - f1.getStart());
+        }
+    };
+
+    /**
+     * Compare lookups against a TreeMap,  with names added in batches,  one at a time,  and spread over enough
+     * tables to be merged.
+     */
+    @Test
+    public void testCompareTreeMap() throws Exception {
+
+        FeatureNameIndex index = new FeatureNameIndex(comparator, MAX_VALUES);
+        TreeMap<String, List<NamedFeature>> expected = new TreeMap<String, List<NamedFeature>>();
+        Random random = new Random(1234);
+
+        for (int batch = 0; batch < 20; batch++) {
+            FeatureNameIndex.Builder builder = index.newBuilder();
+            for (int i = 0; i < 2000; i++) {
+                String name = randomName(random);
+                NamedFeature f = newFeature(name, random);
+                builder.add(name, f);
+                addExpected(expected, name, f);
+            }
+            index.addAll(builder);
+
+            for (int i = 0; i < 700; i++) {
+                String name = randomName(random);
+                NamedFeature f = newFeature(name, random);
+                index.put(name, f);
+                addExpected(expected, name, f);
+            }
+        }
+
+        for (String name : Arrays.asList("A", "AB", "ABC", "Q", "ZZZZ", "")) {
+            for (int limit : new int[]{1, 10, Integer.MAX_VALUE}) {
+                SortedMap<String, List<NamedFeature>> actual = index.getByPrefix(name, limit);
+                Iterator<Map.Entry<String, List<NamedFeature>>> iter =
+                        expected.subMap(name, name + Character.MAX_VALUE).entrySet().iterator();
+                int count = 0;
+                for (Map.Entry<String, List<NamedFeature>> entry : actual.entrySet()) {
+                    Map.Entry<String, List<NamedFeature>> expectedEntry = iter.next();
+                    assertEquals(expectedEntry.getKey(), entry.getKey());
+                    assertLengthsEqual(expectedEntry.getValue(), entry.getValue());
+                    count++;
+                }
+                assertTrue(count == limit || !iter.hasNext());
+            }
+        }
+
+        for (Map.Entry<String, List<NamedFeature>> entry : expected.entrySet()) {
+            assertLengthsEqual(entry.getValue(), index.get(entry.getKey()));
+        }
+        assertNull(index.get("NOT_A_NAME"));
+
+        index.clear();
+        assertEquals(0, index.size());
+        assertTrue(index.getByPrefix("A", 10).isEmpty());
+    }
+
+    @Test
+    public void testDuplicates() throws Exception {
+        FeatureNameIndex index = new FeatureNameIndex(comparator, MAX_VALUES);
+
+        // The same feature added twice under one name is kept once
+        BasicFeature f = new BasicFeature("chr1", 0, 100);
+        f.setName("EGFR");
+        index.put("EGFR", f);
+        index.put("EGFR", f);
+        FeatureNameIndex.Builder builder = index.newBuilder();
+        builder.add("EGFR", f);
+        index.addAll(builder);
+        assertEquals(1, index.get("EGFR").size());
+
+        // At most MAX_VALUES are kept,  longest first
+        builder = index.newBuilder();
+        for (int i = 1; i <= 2 * MAX_VALUES; i++) {
+            BasicFeature g = new BasicFeature("chr1", 0, 100 + i);
+            g.setName("EGFR");
+            builder.add("EGFR", g);
+        }
+        index.addAll(builder);
+        List<NamedFeature> features = index.get("EGFR");
+        assertEquals(MAX_VALUES, features.size());
+        for (int i = 0; i < MAX_VALUES; i++) {
+            assertEquals(100 + 2 * MAX_VALUES - i, features.get(i).getEnd());
+        }
+    }
+
+    @Test
+    public void testWriteOpen() throws Exception {
+        FeatureNameIndex index = new FeatureNameIndex(comparator, MAX_VALUES);
+        FeatureNameIndex.Builder builder = index.newBuilder();
+        Random random = new Random(5678);
+        for (int i = 0; i < 5000; i++) {
+            String name = randomName(random);
+            builder.add(name, new FeatureNameIndex.NamedLocus(name.toLowerCase(), "chr" + (1 + random.nextInt(22)),
+                    random.nextInt(1000000), 1000000 + random.nextInt(1000000)));
+        }
+        FeatureNameIndex.MemoryTable table = builder.build();
+
+        File file = new File(TestUtils.TMP_OUTPUT_DIR, "test.names");
+        FeatureNameIndex.write(file, table, "source");
+        assertNull(FeatureNameIndex.open(file, "another source"));
+        FeatureNameIndex.MappedTable mapped = FeatureNameIndex.open(file, "source");
+        assertNotNull(mapped);
+
+        assertEquals(table.size(), mapped.size());
+        for (int i = 0; i < table.size(); i++) {
+            assertEquals(table.key(i), mapped.key(i));
+            NamedFeature[] expected = table.values(i);
+            NamedFeature[] actual = mapped.values(i);
+            assertEquals(expected.length, actual.length);
+            for (int j = 0; j < expected.length; j++) {
+                assertEquals(expected[j].getName(), actual[j].getName());
+                assertEquals(expected[j].getChr(), actual[j].getChr());
+                assertEquals(expected[j].getStart(), actual[j].getStart());
+                assertEquals(expected[j].getEnd(), actual[j].getEnd());
+            }
+        }
+
+        FeatureNameIndex searchIndex = new FeatureNameIndex(comparator, MAX_VALUES);
+        searchIndex.addMapped(mapped);
+        String key = table.key(table.size() / 2);
+        assertEquals(key.toLowerCase(), searchIndex.get(key).get(0).getName());
+        assertEquals(key, searchIndex.getByPrefix(key, 1).firstKey());
+    }
+
+    /**
+     * Build a name table for an indexed file,  and search it through FeatureDB
+     */
+    @Test
+    public void testNameCache() throws Exception {
+        String path = TestUtils.DATA_DIR + "bed/Unigene.sample.sorted.bed";
+        File dir = new File(TestUtils.TMP_OUTPUT_DIR, "names");
+        dir.mkdirs();
+        FeatureNameCache cache = new FeatureNameCache(dir, Long.MAX_VALUE);
+        File source = new File(path);
+
+        assertNull(cache.open(source, genome));
+        FeatureNameIndex.MappedTable table = cache.build(new ResourceLocator(path), source, genome);
+        assertNotNull(table);
+        assertNotNull(cache.open(source, genome));
+
+        FeatureDB.clearFeatures();
+        try {
+            FeatureDB.addNameTable(table);
+            NamedFeature feature = FeatureDB.getFeature("hs.377257");
+            assertNotNull(feature);
+            assertEquals("Hs.377257", feature.getName());
+            assertEquals("chr2", feature.getChr());
+            assertEquals(178709699, feature.getStart());
+            assertEquals(178711955, feature.getEnd());
+            assertTrue(FeatureDB.getFeaturesList("HS.6", 100).size() > 1);
+        } finally {
+            FeatureDB.clearFeatures();
+        }
+    }
+
+    private static String randomName(Random random) {
+        char[] chars = new char[1 + random.nextInt(5)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) ('A' + random.nextInt(4));
+        }
+        return new String(chars);
+    }
+
+    private static NamedFeature newFeature(String name, Random random) {
+        int start = random.nextInt(1000000);
+        BasicFeature f = new BasicFeature("chr1", start, start + 1 + random.nextInt(100000));
+        f.setName(name);
+        return f;
+    }
+
+    private static void addExpected(Map<String, List<NamedFeature>> expected, String name, NamedFeature f) {
+        List<NamedFeature> list = expected.get(name);
+        if (list == null) {
+            list = new ArrayList<NamedFeature>();
+            expected.put(name, list);
+        }
+        list.add(f);
+        Collections.sort(list, comparator);
+        if (list.size() > MAX_VALUES) {
+            list.remove(list.size() - 1);
+        }
+    }
+
+    /**
+     * Features are compared by length only,  as features of equal length may be ordered either way
+     */
+    private static void assertLengthsEqual(List<NamedFeature> expected, List<NamedFeature> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getEnd() - expected.get(i).getStart(),
+                    actual.get(i).getEnd() - actual.get(i).getStart());
+        }
+    }
+}
@@ -25,13 +25,18 @@
 
 package org.broad.igv.feature.genome;
 
+import org.broad.igv.util.FileUtils;
 import org.broad.igv.util.TestUtils;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
 import java.io.IOException;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 /**
  * Created by IntelliJ IDEA.
@@ -113,6 +118,49 @@ public class FastaIndexedSequenceTest {
     }
 
 
+    /**
+     * Compare memory mapped and direct reads to the sequence parsed from the file, over a range of intervals
+     * including those spanning line ends and the end of the contig
+     */
+    @Test
+    public void testMemoryMappedReads() throws Exception {
+
+        // Index a copy, so the tracked index is not rewritten
+        File outDir = new File(TestUtils.TMP_OUTPUT_DIR);
+        outDir.mkdirs();
+        File fastaFile = new File(outDir, "ecoli_out.padded.fasta");
+        FileUtils.copyFile(new File(TestUtils.DATA_DIR + "fasta/ecoli_out.padded.fasta"), fastaFile);
+        String fasta = fastaFile.getPath();
+        FastaUtils.createIndexFile(fasta, fasta + ".fai");
+
+        String chr = "NC_000913_bb";
+        StringBuilder sb = new StringBuilder();
+        BufferedReader br = new BufferedReader(new FileReader(fasta));
+        String nextLine;
+        while ((nextLine = br.readLine()) != null) {
+            if (!nextLine.startsWith(">")) {
+                sb.append(nextLine.trim());
+            }
+        }
+        br.close();
+        String expectedSequence = sb.toString();
+        int chrLen = expectedSequence.length();
+
+        for (boolean useMemoryMap : new boolean[]{true, false}) {
+            FastaIndexedSequence sequence = new FastaIndexedSequence(fasta, useMemoryMap);
+            assertEquals(chrLen, sequence.getChromosomeLength(chr));
+            for (int start = 0; start < chrLen; start += 37) {
+                for (int len : new int[]{1, 59, 60, 61, 250}) {
+                    int end = Math.min(chrLen, start + len);
+                    byte[] bytes = sequence.getSequence(chr, start, start + len);
+                    assertEquals(expectedSequence.substring(start, end), new String(bytes));
+                }
+            }
+            sequence.close();
+            assertNull(sequence.getSequence(chr, 0, 100));
+        }
+    }
+
     // TODO -- add some assertions, what are we testing?
     @Test
     public void testPaddedReference2() throws Exception {
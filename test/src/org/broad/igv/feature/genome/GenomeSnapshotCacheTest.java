@@ -0,0 +1,245 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.feature.genome;
+
+import htsjdk.tribble.Feature;
+import org.broad.igv.AbstractHeadlessTest;
+import org.broad.igv.feature.*;
+import org.broad.igv.util.FileUtils;
+import org.broad.igv.util.ResourceLocator;
+import org.broad.igv.util.TestUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+public class GenomeSnapshotCacheTest extends AbstractHeadlessTest {
+
+    File archive;
+
+    @After
+    public void tearDown() throws Exception {
+        if (archive != null) {
+            GenomeSnapshotCache.getInstance().getSnapshotFile(archive).delete();
+            archive.delete();
+        }
+        genome = TestUtils.loadGenome();
+        super.tearDown();
+    }
+
+    /**
+     * Load a genome twice,  the second time from its snapshot,  and compare the results.
+     */
+    @Test
+    public void testLoadFromSnapshot() throws Exception {
+
+        archive = copyArchive("hg18_truncated_aliased.genome");
+        GenomeSnapshotCache cache = GenomeSnapshotCache.getInstance();
+        File snapshotFile = cache.getSnapshotFile(archive);
+        snapshotFile.delete();
+
+        Genome parsedGenome = GenomeManager.getInstance().loadGenome(archive.getAbsolutePath(), null);
+        assertTrue(snapshotFile.exists());
+        NamedFeature parsedFeature = FeatureDB.getFeature("CAMK2D");
+        assertNotNull(parsedFeature);
+
+        Genome restoredGenome = GenomeManager.getInstance().loadGenome(archive.getAbsolutePath(), null);
+        assertEquals(parsedGenome.getAllChromosomeNames(), restoredGenome.getAllChromosomeNames());
+        for (String chr : parsedGenome.getAllChromosomeNames()) {
+            assertEquals(parsedGenome.getChromosome(chr).getLength(), restoredGenome.getChromosome(chr).getLength());
+        }
+        // The alias table is also filled lazily as names are canonicalized,  so compare lookups rather than tables
+        for (Map.Entry<String, String> entry : parsedGenome.getChrAliasTable().entrySet()) {
+            assertEquals(entry.getValue(), restoredGenome.getCanonicalChrName(entry.getKey()));
+        }
+        assertNotNull(restoredGenome.getGeneTrack());
+        assertEquals(parsedGenome.getGeneTrack().getName(), restoredGenome.getGeneTrack().getName());
+
+        NamedFeature restoredFeature = FeatureDB.getFeature("CAMK2D");
+        assertNotNull(restoredFeature);
+        assertNotSame(parsedFeature, restoredFeature);
+        assertFeatureEquals((BasicFeature) parsedFeature, (BasicFeature) restoredFeature);
+    }
+
+    /**
+     * Compare the snapshot contents with a fresh parse of the archive
+     */
+    @Test
+    public void testSnapshotContents() throws Exception {
+
+        archive = copyArchive("hg18_truncated_aliased.genome");
+        GenomeSnapshotCache cache = GenomeSnapshotCache.getInstance();
+        cache.getSnapshotFile(archive).delete();
+
+        Genome genome = GenomeManager.getInstance().loadGenome(archive.getAbsolutePath(), null);
+        GenomeSnapshotCache.Snapshot snapshot = cache.get(archive);
+        assertNotNull(snapshot);
+
+        GenomeDescriptor descriptor = GenomeManager.parseGenomeArchiveFile(archive);
+        try {
+            LinkedHashMap<String, List<Cytoband>> cytobands = CytoBandFileParser.loadData(
+                    new BufferedReader(new InputStreamReader(descriptor.getCytoBandStream())));
+            assertEquals(new ArrayList<String>(cytobands.keySet()),
+                    new ArrayList<String>(snapshot.getCytobands().keySet()));
+            for (Map.Entry<String, List<Cytoband>> entry : cytobands.entrySet()) {
+                List<Cytoband> expected = entry.getValue();
+                List<Cytoband> actual = snapshot.getCytobands().get(entry.getKey());
+                assertEquals(expected.size(), actual.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(expected.get(i).getChr(), actual.get(i).getChr());
+                    assertEquals(expected.get(i).getName(), actual.get(i).getName());
+                    assertEquals(expected.get(i).getStart(), actual.get(i).getStart());
+                    assertEquals(expected.get(i).getEnd(), actual.get(i).getEnd());
+                    assertEquals(expected.get(i).getType(), actual.get(i).getType());
+                    assertEquals(expected.get(i).getStain(), actual.get(i).getStain());
+                }
+            }
+
+            assertNotNull(snapshot.getAliases());
+            assertTrue(snapshot.getAliases().size() > 0);
+
+            FeatureParser parser = AbstractFeatureParser.getInstanceFor(
+                    new ResourceLocator(descriptor.getGeneFileName()), genome);
+            List<Feature> genes = parser.loadFeatures(
+                    new BufferedReader(new InputStreamReader(descriptor.getGeneStream())), genome);
+            assertEquals(genes.size(), snapshot.getGenes().size());
+            for (int i = 0; i < genes.size(); i++) {
+                assertFeatureEquals((BasicFeature) genes.get(i), (BasicFeature) snapshot.getGenes().get(i));
+            }
+        } finally {
+            descriptor.close();
+        }
+    }
+
+    /**
+     * Genes with gffTags register their ID, Alias, and Symbol attributes with FeatureDB,  which a restore would
+     * lose,  so they are not snapshot.
+     */
+    @Test
+    public void testGffTagsNotSnapshot() throws Exception {
+
+        archive = new File(TestUtils.TMP_OUTPUT_DIR, "snapshot_gffTags.genome");
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(archive));
+        try {
+            zos.putNextEntry(new ZipEntry("property.txt"));
+            zos.write(("id=gffTagsTest\nname=gffTags test\ncytobandFile=cytoBand.txt\ngeneFile=genes.bed\n" +
+                    "sequenceLocation=http://www.broadinstitute.org/igvdata/annotations/seq/hg18\n").getBytes());
+            zos.putNextEntry(new ZipEntry("cytoBand.txt"));
+            zos.write("chr1\t0\t1000000\tp1\tgneg\n".getBytes());
+            zos.putNextEntry(new ZipEntry("genes.bed"));
+            zos.write(("#gffTags\n" +
+                    "chr1\t100\t200\tName=GENEA;ID=gffTagsId;Alias=gffTagsAlias;Symbol=gffTagsSymbol\n").getBytes());
+        } finally {
+            zos.close();
+        }
+        GenomeSnapshotCache cache = GenomeSnapshotCache.getInstance();
+        cache.getSnapshotFile(archive).delete();
+
+        // Names registered by the parse must also be found after the second load
+        String[] names = {"GENEA", "gffTagsId", "gffTagsAlias", "gffTagsSymbol"};
+        Set<String> parsedNames = new HashSet<String>();
+        GenomeManager.getInstance().loadGenome(archive.getAbsolutePath(), null);
+        GenomeSnapshotCache.Snapshot snapshot = cache.get(archive);
+        assertTrue(snapshot == null || snapshot.getGenes() == null);
+        for (String name : names) {
+            if (FeatureDB.getFeature(name) != null) parsedNames.add(name);
+        }
+
+        GenomeManager.getInstance().loadGenome(archive.getAbsolutePath(), null);
+        for (String name : names) {
+            assertEquals(name, parsedNames.contains(name), FeatureDB.getFeature(name) != null);
+        }
+    }
+
+    @Test
+    public void testInvalidation() throws Exception {
+
+        archive = copyArchive("hg18_truncated_aliased.genome");
+        GenomeSnapshotCache cache = GenomeSnapshotCache.getInstance();
+        cache.getSnapshotFile(archive).delete();
+
+        GenomeManager.getInstance().loadGenome(archive.getAbsolutePath(), null);
+        assertNotNull(cache.get(archive));
+
+        archive.setLastModified(archive.lastModified() - 10000);
+        assertNull(cache.get(archive));
+    }
+
+    private static File copyArchive(String name) throws Exception {
+        File source = new File(TestUtils.DATA_DIR, "genomes/" + name);
+        File copy = new File(TestUtils.TMP_OUTPUT_DIR, "snapshot_" + name);
+        FileUtils.copyFile(source, copy);
+        return copy;
+    }
+
+    private static void assertFeatureEquals(BasicFeature expected, BasicFeature actual) {
+        assertAbstractFeatureEquals(expected, actual);
+        assertEquals(expected.getIdentifier(), actual.getIdentifier());
+        assertEquals(expected.getScore(), actual.getScore(), 0);
+        assertEquals(expected.getThickStart(), actual.getThickStart());
+        assertEquals(expected.getThickEnd(), actual.getThickEnd());
+        assertEquals(expected.getURL(), actual.getURL());
+        assertArrayEquals(expected.getParentIds(), actual.getParentIds());
+        assertEquals(expected.getExonCount(), actual.getExonCount());
+        for (int i = 0; i < expected.getExonCount(); i++) {
+            Exon expectedExon = expected.getExons().get(i);
+            Exon actualExon = actual.getExons().get(i);
+            assertAbstractFeatureEquals(expectedExon, actualExon);
+            assertEquals(expectedExon.getCdStart(), actualExon.getCdStart());
+            assertEquals(expectedExon.getCdEnd(), actualExon.getCdEnd());
+            assertEquals(expectedExon.isNonCoding(), actualExon.isNonCoding());
+            assertEquals(expectedExon.getAminoAcidNumber(expectedExon.getCdStart()),
+                    actualExon.getAminoAcidNumber(actualExon.getCdStart()));
+        }
+    }
+
+    private static void assertAbstractFeatureEquals(AbstractFeature expected, AbstractFeature actual) {
+        assertEquals(expected.getChr(), actual.getChr());
+        assertEquals(expected.getStart(), actual.getStart());
+        assertEquals(expected.getEnd(), actual.getEnd());
+        assertEquals(expected.getStrand(), actual.getStrand());
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(expected.getDescription(), actual.getDescription());
+        assertEquals(expected.getColor(), actual.getColor());
+        assertEquals(expected.getReadingFrame(), actual.getReadingFrame());
+        assertEquals(expected.getAttributes() == null, actual.getAttributes() == null);
+        if (expected.getAttributes() != null) {
+            assertEquals(expected.getAttributes().keys(), actual.getAttributes().keys());
+            for (String key : expected.getAttributes().keys()) {
+                assertEquals(expected.getAttributes().getAll(key), actual.getAttributes().getAll(key));
+            }
+        }
+    }
+}
@@ -33,16 +33,22 @@ package org.broad.igv.feature.genome;
 import org.broad.igv.AbstractHeadlessTest;
 import org.broad.igv.PreferenceManager;
 import org.broad.igv.util.HttpUtils;
+import org.broad.igv.util.TestUtils;
 import org.junit.After;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Random;
 import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author jrobinso
@@ -151,6 +157,136 @@ public class SequenceWrapperTest extends AbstractHeadlessTest{
         }
     }
 
+    /**
+     * Packed tiles must reproduce the original bytes,  including soft masking, N runs, and IUPAC codes.
+     */
+    @Test
+    public void testPackedTile() {
+        byte[] bases = randomSequence(10007, 1);
+        SequenceTile tile = new SequenceTile("chr1", 0, 0, bases);
+        assertTrue(tile.getMemorySize() < bases.length / 2);
+
+        for (int i = 0; i < bases.length; i++) {
+            assertEquals("i=" + i, bases[i], tile.getBase(i));
+        }
+        Random random = new Random(2);
+        for (int n = 0; n < 100; n++) {
+            int from = random.nextInt(bases.length);
+            int len = random.nextInt(bases.length - from);
+            byte[] copy = new byte[len + 3];
+            tile.copy(from, copy, 3, len);
+            for (int i = 0; i < len; i++) {
+                assertEquals(bases[from + i], copy[3 + i]);
+            }
+        }
+
+        // Protein sequence does not pack,  it is stored as is
+        byte[] protein = "MKVLAAGIVGLLLAQPAMAQEWRSTYHNDFIK".getBytes();
+        tile = new SequenceTile("p", 0, 0, protein);
+        for (int i = 0; i < protein.length; i++) {
+            assertEquals(protein[i], tile.getBase(i));
+        }
+    }
+
+    @Test
+    public void testTileCache() {
+        byte[] bases = randomSequence(50000, 3);
+        SequenceWrapper.setTileSize(1000);
+        try {
+            SequenceWrapper wrapper = new SequenceWrapper(new InMemorySequence("chr1", bases));
+            wrapper.setPrefetch(false);
+
+            byte[] seq = wrapper.getSequence("chr1", 1500, 7250);
+            for (int i = 0; i < seq.length; i++) {
+                assertEquals(bases[1500 + i], seq[i]);
+            }
+            for (int i = 0; i < bases.length; i += 7) {
+                assertEquals(bases[i], wrapper.getBase("chr1", i));
+            }
+            assertTrue(wrapper.getCacheMisses() >= 50);
+
+            long misses = wrapper.getCacheMisses();
+            wrapper.getSequence("chr1", 1500, 7250);
+            assertEquals(misses, wrapper.getCacheMisses());
+            assertTrue(wrapper.getCacheHits() > 0);
+
+            // Cache is bounded by size, not entry count
+            wrapper.setCacheMaxBytes(2000);
+            assertTrue(wrapper.getCacheSize() <= 2000);
+            seq = wrapper.getSequence("chr1", 0, bases.length);
+            assertTrue(Arrays.equals(bases, seq));
+            assertTrue(wrapper.getCacheSize() <= 2000);
+        } finally {
+            SequenceWrapper.setTileSize(1000000);
+        }
+    }
+
+    @Test
+    public void testPrefetch() throws Exception {
+        byte[] bases = randomSequence(10000, 4);
+        SequenceWrapper.setTileSize(1000);
+        try {
+            SequenceWrapper wrapper = new SequenceWrapper(new InMemorySequence("chr1", bases));
+            assertEquals(bases[4500], wrapper.getBase("chr1", 4500));
+
+            // Tiles 3 and 5 are loaded in the background
+            long timeout = System.currentTimeMillis() + 5000;
+            while (wrapper.getCachePrefetches() < 2 && System.currentTimeMillis() < timeout) {
+                Thread.sleep(10);
+            }
+            assertEquals(2, wrapper.getCachePrefetches());
+            Thread.sleep(50);
+
+            long misses = wrapper.getCacheMisses();
+            assertEquals(bases[5500], wrapper.getBase("chr1", 5500));
+            assertEquals(bases[3500], wrapper.getBase("chr1", 3500));
+            assertEquals(misses, wrapper.getCacheMisses());
+        } finally {
+            SequenceWrapper.setTileSize(1000000);
+        }
+    }
+
+    /**
+     * An IGVSequence without cytobands has no chromosome lengths,  prefetching neighbouring tiles must not
+     * break the foreground read.
+     */
+    @Test
+    public void testPrefetchNoChromosomeLengths() throws Exception {
+        byte[] bases = randomSequence(5000, 5);
+        File dir = new File(TestUtils.TMP_OUTPUT_DIR, "seq");
+        dir.mkdirs();
+        FileOutputStream out = new FileOutputStream(new File(dir, "chr1.txt"));
+        try {
+            out.write(bases);
+        } finally {
+            out.close();
+        }
+
+        SequenceWrapper.setTileSize(1000);
+        try {
+            SequenceWrapper wrapper = new SequenceWrapper(new IGVSequence(dir.getAbsolutePath()));
+            byte[] seq = wrapper.getSequence("chr1", 1500, 2500);
+            assertTrue(Arrays.equals(Arrays.copyOfRange(bases, 1500, 2500), seq));
+            assertEquals(bases[4999], wrapper.getBase("chr1", 4999));
+        } finally {
+            SequenceWrapper.setTileSize(1000000);
+        }
+    }
+
+    private static byte[] randomSequence(int length, long seed) {
+        Random random = new Random(seed);
+        byte[] alphabet = "ACGTacgt".getBytes();
+        byte[] bases = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bases[i] = alphabet[random.nextInt(4) + (i / 500 % 3 == 1 ? 4 : 0)];
+        }
+        Arrays.fill(bases, 100, 400, (byte) 'N');
+        bases[1000] = 'R';
+        bases[1001] = 'y';
+        bases[length - 1] = '-';
+        return bases;
+    }
+
     @Test
     public void testGetKeyUniqueness() throws Exception{
         int count = 0;
@@ -0,0 +1,273 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.feature.tribble;
+
+import htsjdk.tribble.AbstractFeatureReader;
+import htsjdk.tribble.AsciiFeatureCodec;
+import htsjdk.tribble.Feature;
+import org.broad.igv.AbstractHeadlessTest;
+import org.broad.igv.feature.BasicFeature;
+import org.broad.igv.feature.Exon;
+import org.broad.igv.feature.FeatureUtils;
+import org.broad.igv.track.GFFFeatureSource;
+import org.broad.igv.track.TribbleFeatureSource;
+import org.broad.igv.util.ByteLineReader;
+import org.broad.igv.util.ParsingUtils;
+import org.broad.igv.util.ResourceLocator;
+import org.broad.igv.util.TestUtils;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static junit.framework.Assert.*;
+
+/**
+ * Checks that decoding from byte buffers gives the same features as decoding from strings.
+ */
+public class ByteLineDecoderTest extends AbstractHeadlessTest {
+
+    @Test
+    public void testBEDFiles() throws Exception {
+        int nFiles = 0;
+        for (File file : findFiles(new File(TestUtils.DATA_DIR), ".bed", ".bed.gz")) {
+            ResourceLocator locator = new ResourceLocator(file.getAbsolutePath());
+            compareDecoders(locator, (AsciiFeatureCodec) CodecFactory.getCodec(locator, genome), CodecFactory.getCodec(locator, genome));
+            nFiles++;
+        }
+        assertTrue(nFiles > 10);
+    }
+
+    @Test
+    public void testGFFFiles() throws Exception {
+        int nFiles = 0;
+        for (File file : findFiles(new File(TestUtils.DATA_DIR), ".gff", ".gff3", ".gtf", ".gff.gz", ".gtf.gz", ".gvf")) {
+            ResourceLocator locator = new ResourceLocator(file.getAbsolutePath());
+            compareDecoders(locator, (AsciiFeatureCodec) CodecFactory.getCodec(locator, genome), CodecFactory.getCodec(locator, genome));
+            nFiles++;
+        }
+        assertTrue(nFiles > 5);
+    }
+
+    @Test
+    public void testBEDLines() throws Exception {
+        String[] lines = {
+                "chr1\t100\t200",
+                "  chr1   100 200 \"quoted\" 5.5 - ",
+                "chr1\t100\t200\t.\t1000\t+\t120\t180\t255,0,0\t2\t10,20,\t0,80,",
+                "chr1\t100\t200\tname\tscore\t+",
+                "chr1\t100\t200\tname\t-0\t+\t90\t180",
+                "chr1\t100\t200\tname\t0\t+\t120\tx",
+                "chr1\t+100\t200",
+                "chr1\t100",
+                "chr1",
+                "track name=foo",
+                "#comment",
+                "   ",
+                ""
+        };
+        compareLines(new IGVBEDCodec(genome), new IGVBEDCodec(genome), lines);
+        compareLines(new IGVBEDCodec(null), new IGVBEDCodec(null), lines);
+    }
+
+    @Test
+    public void testGFFLines() throws Exception {
+        String[] lines = {
+                "chr1\ttest\tgene\t1\t100\t.\t+\t.\tgene_id \"g1\"; gene_name  \"A B\"; tag=x; =y; \"q\"uote v; ;",
+                "chr1\ttest\texon\t1\t100\t.\t-\t0\tgene_id \"g1\"; transcript_id \"t1\";",
+                "chr1\ttest\tCDS\t1\t100\t.\t-\t2\ta==b;c=;d",
+                "chr1\ttest\tstart_codon\t1\t3\t.\t+\t.\tgene_id \"g1\"",
+                "chr1\ttest\tgene\t0\t100\t.\t+\t.\tgene_id \"g1\"",
+                "chr1\ttest\tgene\tx\t100\t.\t+\t.\tgene_id \"g1\"",
+                "chr1\ttest\tgene\t1\t100\t.\t+\tx\tgene_id \"g1\"",
+                "chr1\ttest\tgene\t1\t100",
+                "##gff-version 2"
+        };
+        compareLines(new GFFCodec(genome), new GFFCodec(genome), lines);
+
+        String[] gff3Lines = {
+                "chr1\ttest\tgene\t1\t100\t.\t+\t.\tID=g1;Name=A%20B;Note=a+b;Alias=\"x;y\";Parent=p1,p2",
+                "chr1\ttest\tmRNA\t1\t100\t.\t+\t.\tID=m1;Parent=g1;color=#ff0000;;empty=",
+                "chr1\ttest\tmRNA\t1\t100\t.\t+\t.\t ",
+                "##FASTA",
+                "chr1\ttest\tmRNA\t1\t100\t.\t+\t.\tID=m2"
+        };
+        compareLines(new GFFCodec(GFFCodec.Version.GFF3, null), new GFFCodec(GFFCodec.Version.GFF3, null), gff3Lines);
+    }
+
+    /**
+     * Loading a file through TribbleFeatureSource,  which uses the byte decoders,  gives the same features as the
+     * tribble iterator.
+     */
+    @Test
+    public void testFeatureSource() throws Exception {
+        String path = TestUtils.DATA_DIR + "gtf/transcript_id.gtf";
+        ResourceLocator locator = new ResourceLocator(path);
+        GFFFeatureSource source = new GFFFeatureSource(TribbleFeatureSource.getFeatureSource(locator, genome));
+
+        AbstractFeatureReader reader = AbstractFeatureReader.getFeatureReader(path, CodecFactory.getCodec(locator, genome), false);
+        List<Feature> features = new ArrayList<Feature>();
+        Iterator iter = reader.iterator();
+        while (iter.hasNext()) {
+            Feature f = (Feature) iter.next();
+            if (f != null) features.add(f);
+        }
+        reader.close();
+        FeatureUtils.sortFeatureList(features);
+        List<Feature> expected = new GFFFeatureSource.GFFCombiner().addFeatures(features.iterator()).combineFeatures();
+
+        List<Feature> actual = new ArrayList<Feature>();
+        Iterator<Feature> sourceIter = source.getFeatures("I", 0, Integer.MAX_VALUE);
+        while (sourceIter.hasNext()) {
+            actual.add(sourceIter.next());
+        }
+        assertTrue(expected.size() > 0);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertFeaturesEqual((BasicFeature) expected.get(i), (BasicFeature) actual.get(i));
+        }
+    }
+
+    private void compareDecoders(ResourceLocator locator, AsciiFeatureCodec stringCodec, Object byteCodec) throws Exception {
+
+        // Read the headers,  which can change codec state
+        AbstractFeatureReader.getFeatureReader(locator.getPath(), stringCodec, false).close();
+        AbstractFeatureReader.getFeatureReader(locator.getPath(), (AsciiFeatureCodec) byteCodec, false).close();
+
+        BufferedReader stringReader = ParsingUtils.openBufferedReader(locator);
+        ByteLineReader byteReader = new ByteLineReader(ParsingUtils.openInputStreamGZ(locator), 64);
+        String line;
+        int lineNumber = 0;
+        while ((line = stringReader.readLine()) != null) {
+            lineNumber++;
+            assertTrue(byteReader.next());
+            assertEquals(line, byteReader.getLine());
+            compare(locator.getPath() + ":" + lineNumber, stringCodec, (ByteLineDecoder) byteCodec, line,
+                    byteReader.getBuffer(), byteReader.getLineStart(), byteReader.getLineEnd());
+        }
+        assertFalse(byteReader.next());
+        stringReader.close();
+        byteReader.close();
+    }
+
+    private void compareLines(AsciiFeatureCodec stringCodec, ByteLineDecoder byteCodec, String[] lines) throws Exception {
+        for (String line : lines) {
+            byte[] bytes = ("xx" + line + "\n").getBytes("UTF-8");
+            compare(line, stringCodec, byteCodec, line, bytes, 2, bytes.length - 1);
+        }
+    }
+
+    private void compare(String context, AsciiFeatureCodec stringCodec, ByteLineDecoder byteCodec, String line,
+                         byte[] buffer, int start, int end) {
+        Feature expected = null;
+        Exception expectedException = null;
+        try {
+            expected = stringCodec.decode(line);
+        } catch (Exception e) {
+            expectedException = e;
+        }
+        Feature actual = null;
+        try {
+            actual = byteCodec.decode(buffer, start, end);
+        } catch (Exception e) {
+            assertNotNull(context + " " + e, expectedException);
+            assertEquals(context, expectedException.getClass(), e.getClass());
+            assertEquals(context, expectedException.getMessage(), e.getMessage());
+            return;
+        }
+        assertNull(context, expectedException);
+        if (expected == null) {
+            assertNull(context, actual);
+        } else {
+            assertNotNull(context, actual);
+            assertFeaturesEqual((BasicFeature) expected, (BasicFeature) actual);
+        }
+    }
+
+    public static void assertFeaturesEqual(BasicFeature expected, BasicFeature actual) {
+        String context = expected.getChr() + ":" + expected.getStart() + " " + expected.getName();
+        assertEquals(context, expected.getChr(), actual.getChr());
+        assertEquals(context, expected.getStart(), actual.getStart());
+        assertEquals(context, expected.getEnd(), actual.getEnd());
+        assertEquals(context, expected.getStrand(), actual.getStrand());
+        assertEquals(context, expected.getName(), actual.getName());
+        if (expected.getIdentifier() == null || !expected.getIdentifier().startsWith("igv_")) {
+            assertEquals(context, expected.getIdentifier(), actual.getIdentifier());
+        }
+        assertEquals(context, expected.getType(), actual.getType());
+        assertEquals(context, expected.getScore(), actual.getScore());
+        assertEquals(context, expected.getColor(), actual.getColor());
+        assertEquals(context, expected.getThickStart(), actual.getThickStart());
+        assertEquals(context, expected.getThickEnd(), actual.getThickEnd());
+        assertEquals(context, expected.getReadingFrame(), actual.getReadingFrame());
+        assertTrue(context, Arrays.equals(expected.getParentIds(), actual.getParentIds()));
+        assertEquals(context, attributeString(expected), attributeString(actual));
+
+        List<Exon> expectedExons = expected.getExons();
+        List<Exon> actualExons = actual.getExons();
+        assertEquals(context, expectedExons == null ? 0 : expectedExons.size(), actualExons == null ? 0 : actualExons.size());
+        if (expectedExons != null) {
+            for (int i = 0; i < expectedExons.size(); i++) {
+                Exon e1 = expectedExons.get(i);
+                Exon e2 = actualExons.get(i);
+                assertEquals(context, e1.getStart(), e2.getStart());
+                assertEquals(context, e1.getEnd(), e2.getEnd());
+                assertEquals(context, e1.getCdStart(), e2.getCdStart());
+                assertEquals(context, e1.getCdEnd(), e2.getCdEnd());
+            }
+        }
+    }
+
+    private static String attributeString(BasicFeature f) {
+        if (f.getAttributes() == null) return null;
+        StringBuffer buffer = new StringBuffer();
+        f.getAttributes().printHtml(buffer, Integer.MAX_VALUE);
+        return buffer.toString();
+    }
+
+    private static List<File> findFiles(File dir, String... suffixes) {
+        List<File> files = new ArrayList<File>();
+        File[] children = dir.listFiles();
+        if (children == null) return files;
+        for (File child : children) {
+            if (child.isDirectory()) {
+                if (!child.getName().equals("out")) files.addAll(findFiles(child, suffixes));
+            } else {
+                for (String suffix : suffixes) {
+                    if (child.getName().toLowerCase().endsWith(suffix)) {
+                        files.add(child);
+                        break;
+                    }
+                }
+            }
+        }
+        return files;
+    }
+}
@@ -423,6 +423,27 @@ public class AlignmentDataManagerTest extends AbstractHeadlessTest {
      * Load alignment interval. Here for other tests, so we don't need to expose
      * {@link AlignmentDataManager#loadInterval(String, int, int, AlignmentTrack.RenderOptions)}
      */
+    /**
+     * The loaded interval budget is shared by all live data managers
+     */
+    @Test
+    public void testCacheBudgetShared() throws Exception {
+        ResourceLocator locator = new ResourceLocator(TestUtils.DATA_DIR + "sam/NA12878.muc1.test.sam");
+        long budget = AlignmentDataManager.getCacheBudget();
+
+        AlignmentDataManager manager1 = new AlignmentDataManager(locator, genome);
+        AlignmentDataManager manager2 = new AlignmentDataManager(locator, genome);
+        long sharedBudget = AlignmentDataManager.getCacheBudget();
+        assertTrue(sharedBudget < budget);
+        Assert.assertEquals(sharedBudget, manager1.getCache().getMaxWeight());
+        Assert.assertEquals(sharedBudget, manager2.getCache().getMaxWeight());
+
+        manager2.dispose();
+        assertTrue(AlignmentDataManager.getCacheBudget() > sharedBudget);
+        assertTrue(manager1.getCache().getMaxWeight() > sharedBudget);
+        manager1.dispose();
+    }
+
     public static AlignmentInterval loadInterval(AlignmentDataManager manager, String chr, int start, int end) {
         return manager.loadInterval(chr, start, end, new AlignmentTrack.RenderOptions());
     }
@@ -118,4 +118,76 @@ public class AlignmentPackerTest extends AbstractHeadlessTest {
     }
 
 
-}
\ No newline at end of file
+    /**
+     * Rows must not overlap, and each alignment must be in the lowest row it fits in, which is equivalent to filling
+     * one row at a time left to right.
+     */
+    @Test
+    public void testPackFirstFit() throws Exception {
+        AlignmentReader reader = AlignmentReaderFactory.getReader(TestUtils.DATA_DIR + "sam/test_2.sam", false);
+        List<Alignment> list = new ArrayList<Alignment>();
+        CloseableIterator<Alignment> iter = reader.iterator();
+        while (iter.hasNext()) {
+            list.add(iter.next());
+        }
+        iter.close();
+        int minStart = Integer.MAX_VALUE;
+        int maxEnd = 0;
+        for (Alignment al : list) {
+            minStart = Math.min(minStart, al.getStart());
+            maxEnd = Math.max(maxEnd, al.getEnd());
+        }
+        AlignmentInterval interval = new AlignmentInterval(list.get(0).getChr(), minStart, maxEnd, list, null, null, null);
+
+        AlignmentTrack.RenderOptions renderOptions = new AlignmentTrack.RenderOptions();
+        checkFirstFit((new AlignmentPacker()).packAlignments(interval, renderOptions), list.size());
+
+        renderOptions.groupByOption = AlignmentTrack.GroupOption.STRAND;
+        PackedAlignments grouped = (new AlignmentPacker()).packAlignments(interval, renderOptions);
+        assertEquals(Arrays.asList("false", "true", ""), new ArrayList<String>(grouped.keySet()));
+        checkFirstFit(grouped, list.size());
+    }
+
+    private void checkFirstFit(Map<String, List<Row>> result, int expectedCount) {
+        int count = 0;
+        for (List<Row> rows : result.values()) {
+            for (int r = 0; r < rows.size(); r++) {
+                List<Alignment> alignments = rows.get(r).alignments;
+                count += alignments.size();
+                for (int ii = 0; ii < alignments.size(); ii++) {
+                    Alignment al = alignments.get(ii);
+                    if (ii > 0) {
+                        assertTrue(al.getStart() - alignments.get(ii - 1).getEnd() >= AlignmentPacker.MIN_ALIGNMENT_SPACING);
+                    }
+                    for (int prev = 0; prev < r; prev++) {
+                        boolean blocked = false;
+                        for (Alignment other : rows.get(prev).alignments) {
+                            if (other.getStart() <= al.getStart() &&
+                                    other.getEnd() + AlignmentPacker.MIN_ALIGNMENT_SPACING > al.getStart()) {
+                                blocked = true;
+                                break;
+                            }
+                        }
+                        assertTrue("Alignment would fit in row " + prev, blocked);
+                    }
+                }
+            }
+        }
+        assertEquals(expectedCount, count);
+    }
+
+    @Test
+    public void testSortedIndex() throws Exception {
+        int[] starts = {5, 1, 5, 1, 3};
+        int[] ends = {10, 4, 20, 4, 8};
+        int[] order = AlignmentPacker.sortedIndex(starts, ends);
+        assertTrue(Arrays.equals(new int[]{1, 3, 4, 2, 0}, order));
+
+        // Already sorted by start, only ties are reordered
+        starts = new int[]{1, 1, 1, 2};
+        ends = new int[]{5, 9, 5, 3};
+        order = AlignmentPacker.sortedIndex(starts, ends);
+        assertTrue(Arrays.equals(new int[]{1, 0, 2, 3}, order));
+    }
+
+}
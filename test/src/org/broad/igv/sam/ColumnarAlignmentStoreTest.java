@@ -0,0 +1,274 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.sam;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import org.broad.igv.AbstractHeadlessTest;
+import org.broad.igv.PreferenceManager;
+import org.broad.igv.sam.reader.AlignmentReader;
+import org.broad.igv.sam.reader.AlignmentReaderFactory;
+import org.broad.igv.util.ResourceLocator;
+import org.broad.igv.util.TestUtils;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static junit.framework.Assert.*;
+
+public class ColumnarAlignmentStoreTest extends AbstractHeadlessTest {
+
+    static final String[] FILES = {"test_2.sam", "hardSoftClip.sam", "has_padding.sam", "yc_tags.sam",
+            "NA12878.muc1.test.sam"};
+
+    @Test
+    public void testHeap() throws Exception {
+        for (String file : FILES) {
+            tstFile(file, false);
+        }
+    }
+
+    @Test
+    public void testOffHeap() throws Exception {
+        for (String file : FILES) {
+            tstFile(file, true);
+        }
+    }
+
+    @Test
+    public void testShowSoftClipped() throws Exception {
+        PreferenceManager prefMgr = PreferenceManager.getInstance();
+        String showSoftClipped = prefMgr.get(PreferenceManager.SAM_SHOW_SOFT_CLIPPED);
+        prefMgr.put(PreferenceManager.SAM_SHOW_SOFT_CLIPPED, "true");
+        try {
+            tstFile("hardSoftClip.sam", false);
+        } finally {
+            prefMgr.put(PreferenceManager.SAM_SHOW_SOFT_CLIPPED, showSoftClipped);
+        }
+    }
+
+    @Test
+    public void testMateSequence() throws Exception {
+        ColumnarAlignmentStore store = new ColumnarAlignmentStore(false);
+        AlignmentReader reader = AlignmentReaderFactory.getReader(new ResourceLocator(TestUtils.DATA_DIR + "sam/test_2.sam"));
+        Iterator<Alignment> iter = reader.iterator();
+        Alignment first = store.add(iter.next());
+        Alignment second = store.add(iter.next());
+        reader.close();
+
+        first.setMateSequence("ACGTACGT");
+        assertTrue(first.getClipboardString(first.getStart()).endsWith("Mate sequence: ACGTACGT"));
+        assertFalse(second.getClipboardString(second.getStart()).contains("Mate sequence"));
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    public void testRowTags() throws Exception {
+        ColumnarAlignmentStore store = new ColumnarAlignmentStore(false);
+        long emptySize = store.getStorageSize();
+        int[] arrayValue = new int[10000];
+        Arrays.fill(arrayValue, 7);
+
+        for (int i = 0; i < 2; i++) {
+            SAMRecord record = new SAMRecord(new SAMFileHeader());
+            record.setReadName("read" + i);
+            record.setReferenceName("chr1");
+            record.setAlignmentStart(100 + i);
+            record.setCigarString("4M2I4M");
+            record.setReadString("ACGTACGTAC");
+            record.setBaseQualityString("IIIIIIIIII");
+            record.setAttribute("NM", 2);
+            record.setAttribute("MD", "8" + i);
+            record.setAttribute("XB", arrayValue);
+            record.setAttribute("SA", "chr2,100,+,10M,60,0;");
+
+            PicardAlignment expected = new PicardAlignment(record);
+            Alignment actual = store.add(expected);
+            assertAlignmentsEqual(expected, actual);
+            assertEquals("8" + i, actual.getAttribute("MD"));
+            assertTrue(Arrays.equals(arrayValue, (int[]) actual.getAttribute("XB")));
+
+            // Blocks are decoded once,  not per accessor
+            assertSame(actual.getAlignmentBlocks(), actual.getAlignmentBlocks());
+        }
+
+        // Array tags count at their size
+        assertTrue(store.getStorageSize() - emptySize > 2 * 4 * arrayValue.length);
+    }
+
+    @Test
+    public void testLoadTile() throws Exception {
+        tstLoadTile(false);
+        tstLoadTile(true);
+    }
+
+    private void tstLoadTile(boolean downsample) throws Exception {
+
+        PreferenceManager prefMgr = PreferenceManager.getInstance();
+        String compact = prefMgr.get(PreferenceManager.SAM_COMPACT_ALIGNMENTS);
+        try {
+            prefMgr.put(PreferenceManager.SAM_COMPACT_ALIGNMENTS, "false");
+            List<Alignment> expected = loadTile(downsample);
+            prefMgr.put(PreferenceManager.SAM_COMPACT_ALIGNMENTS, "true");
+            List<Alignment> actual = loadTile(downsample);
+
+            assertTrue(expected.size() > 0);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                Alignment e = expected.get(i);
+                Alignment a = actual.get(i);
+                assertTrue(a instanceof ColumnarAlignmentStore.ColumnarAlignment);
+                assertEquals(e.getStart(), a.getStart());
+                assertEquals(e.getClipboardString(e.getStart()), a.getClipboardString(a.getStart()));
+            }
+        } finally {
+            prefMgr.put(PreferenceManager.SAM_COMPACT_ALIGNMENTS, compact);
+        }
+    }
+
+    private List<Alignment> loadTile(boolean downsample) throws Exception {
+        ResourceLocator loc = new ResourceLocator(TestUtils.DATA_DIR + "sam/NA12878.muc1.test.sam");
+        AlignmentTileLoader loader = new AlignmentTileLoader(AlignmentReaderFactory.getReader(loc));
+        AlignmentDataManager.DownsampleOptions downsampleOptions =
+                new AlignmentDataManager.DownsampleOptions(downsample, 50, 1000);
+        AlignmentTileLoader.AlignmentTile tile =
+                loader.loadTile("chr1", 153425000, 153428000, null, downsampleOptions, null, null, true, null);
+        return tile.getAlignments();
+    }
+
+    private void tstFile(String file, boolean offHeap) throws Exception {
+
+        ColumnarAlignmentStore store = new ColumnarAlignmentStore(offHeap);
+        AlignmentReader reader = AlignmentReaderFactory.getReader(new ResourceLocator(TestUtils.DATA_DIR + "sam/" + file));
+        Iterator<Alignment> iter = reader.iterator();
+        int count = 0;
+        while (iter.hasNext()) {
+            PicardAlignment expected = (PicardAlignment) iter.next();
+            Alignment actual = store.add(expected);
+            assertTrue(actual instanceof ColumnarAlignmentStore.ColumnarAlignment);
+            assertAlignmentsEqual(expected, actual);
+            SAMRecord record = ((ColumnarAlignmentStore.ColumnarAlignment) actual).toSAMRecord(reader.getFileHeader());
+            assertEquals(expected.getRecord().getSAMString(), record.getSAMString());
+            count++;
+        }
+        reader.close();
+        assertTrue(count > 0);
+        assertEquals(count, store.size());
+        assertTrue(store.getStorageSize() > 0);
+    }
+
+    private void assertAlignmentsEqual(PicardAlignment expected, Alignment actual) {
+
+        String name = expected.getReadName();
+        assertEquals(name, actual.getReadName());
+        assertEquals(name, expected.getReadSequence(), actual.getReadSequence());
+        assertEquals(name, expected.getChr(), actual.getChr());
+        assertEquals(name, expected.getStart(), actual.getStart());
+        assertEquals(name, expected.getEnd(), actual.getEnd());
+        assertEquals(name, expected.getAlignmentStart(), actual.getAlignmentStart());
+        assertEquals(name, expected.getAlignmentEnd(), actual.getAlignmentEnd());
+        assertEquals(name, expected.getCigarString(), actual.getCigarString());
+        assertEquals(name, expected.getMappingQuality(), actual.getMappingQuality());
+        assertEquals(name, expected.getInferredInsertSize(), actual.getInferredInsertSize());
+        assertEquals(name, expected.isPaired(), actual.isPaired());
+        assertEquals(name, expected.isProperPair(), actual.isProperPair());
+        assertEquals(name, expected.isMapped(), actual.isMapped());
+        assertEquals(name, expected.isNegativeStrand(), actual.isNegativeStrand());
+        assertEquals(name, expected.isFirstOfPair(), actual.isFirstOfPair());
+        assertEquals(name, expected.isSecondOfPair(), actual.isSecondOfPair());
+        assertEquals(name, expected.isDuplicate(), actual.isDuplicate());
+        assertEquals(name, expected.isPrimary(), actual.isPrimary());
+        assertEquals(name, expected.isSupplementary(), actual.isSupplementary());
+        assertEquals(name, expected.isVendorFailedRead(), actual.isVendorFailedRead());
+        assertEquals(name, expected.getPairOrientation(), actual.getPairOrientation());
+        assertEquals(name, expected.getFirstOfPairStrand(), actual.getFirstOfPairStrand());
+        assertEquals(name, expected.getSecondOfPairStrand(), actual.getSecondOfPairStrand());
+        assertEquals(name, expected.getColor(), actual.getColor());
+        assertEquals(name, expected.getSample(), actual.getSample());
+        assertEquals(name, expected.getReadGroup(), actual.getReadGroup());
+        assertEquals(name, expected.getLibrary(), actual.getLibrary());
+
+        ReadMate expectedMate = expected.getMate();
+        ReadMate actualMate = actual.getMate();
+        if (expectedMate == null) {
+            assertNull(name, actualMate);
+        } else {
+            assertEquals(name, expectedMate.getChr(), actualMate.getChr());
+            assertEquals(name, expectedMate.getStart(), actualMate.getStart());
+            assertEquals(name, expectedMate.isNegativeStrand(), actualMate.isNegativeStrand());
+            assertEquals(name, expectedMate.isMapped(), actualMate.isMapped());
+        }
+
+        for (SAMRecord.SAMTagAndValue tv : expected.getRecord().getAttributes()) {
+            // Wrap the values so that array tags compare by content
+            assertTrue(name + " " + tv.tag,
+                    Arrays.deepEquals(new Object[]{tv.value}, new Object[]{actual.getAttribute(tv.tag)}));
+        }
+        assertNull(name, actual.getAttribute("XX"));
+        assertEquals(name, expected.getAttribute("TEMPLATE_ORIENTATION"), actual.getAttribute("TEMPLATE_ORIENTATION"));
+
+        assertBlocksEqual(name, expected.getAlignmentBlocks(), actual.getAlignmentBlocks());
+        assertBlocksEqual(name, expected.getInsertions(), actual.getInsertions());
+        assertTrue(name, Arrays.equals(expected.getGapTypes(), actual.getGapTypes()));
+
+        for (AlignmentBlock block : expected.getAlignmentBlocks()) {
+            int position = block.getStart() + block.getLength() / 2;
+            assertEquals(name, expected.getBase(position), actual.getBase(position));
+            assertEquals(name, expected.getPhred(position), actual.getPhred(position));
+            assertEquals(name, expected.getValueString(position, null), actual.getValueString(position, null));
+            assertEquals(name, expected.getClipboardString(position), actual.getClipboardString(position));
+        }
+        if (expected.getInsertions() != null) {
+            for (AlignmentBlock block : expected.getInsertions()) {
+                assertEquals(name, expected.getValueString(block.getStart(), null),
+                        actual.getValueString(block.getStart(), null));
+            }
+        }
+    }
+
+    private void assertBlocksEqual(String name, AlignmentBlock[] expected, AlignmentBlock[] actual) {
+        if (expected == null) {
+            assertNull(name, actual);
+            return;
+        }
+        assertEquals(name, expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            AlignmentBlock e = expected[i];
+            AlignmentBlock a = actual[i];
+            assertEquals(name, e.getStart(), a.getStart());
+            assertEquals(name, e.getEnd(), a.getEnd());
+            assertEquals(name, e.getLength(), a.getLength());
+            assertEquals(name, e.isSoftClipped(), a.isSoftClipped());
+            assertTrue(name, Arrays.equals(e.getBases(), a.getBases()));
+            for (int j = 0; j < e.getLength(); j++) {
+                assertEquals(name, e.getBase(j), a.getBase(j));
+                assertEquals(name, e.getQuality(j), a.getQuality(j));
+            }
+        }
+    }
+}
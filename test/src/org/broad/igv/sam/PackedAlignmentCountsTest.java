@@ -0,0 +1,116 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.sam;
+
+import org.broad.igv.AbstractHeadlessTest;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PackedAlignmentCountsTest extends AbstractHeadlessTest {
+
+    private static final byte[] BASES = {'A', 'C', 'G', 'T', 'N', 'a', 'c', 'g', 't', 'n', 'R', '='};
+
+    /**
+     * Apply the same random increments to packed and dense counts and compare every accessor.  The depth
+     * at the start of the interval is high enough to force short and int promotion of the packed blocks.
+     */
+    @Test
+    public void testMatchesDenseCounts() throws Exception {
+        for (boolean countDeleted : new boolean[]{false, true}) {
+            compareCounts(1000, 1000 + 3 * PackedAlignmentCounts.BLOCK_SIZE + 17, countDeleted);
+        }
+    }
+
+    @Test
+    public void testStorageIsCompact() throws Exception {
+        int start = 0;
+        int end = 100000;
+        PackedAlignmentCounts counts = new PackedAlignmentCounts(start, end, null);
+        Random random = new Random(7);
+        for (int pos = start; pos < end / 2; pos++) {
+            for (int d = 0; d < 30; d++) {
+                counts.incPositionCount(pos, BASES[random.nextInt(4)], (byte) 30, random.nextBoolean());
+            }
+        }
+        // Dense storage uses 20 ints per position
+        long denseSize = 20L * 4 * (end - start);
+        assertTrue(counts.getStorageSize() * 4 < denseSize);
+    }
+
+    private void compareCounts(int start, int end, boolean countDeleted) {
+
+        DenseAlignmentCounts dense = new DenseAlignmentCounts(start, end, null);
+        PackedAlignmentCounts packed = new PackedAlignmentCounts(start, end, null);
+        dense.countDeletedBasesCovered = countDeleted;
+        packed.countDeletedBasesCovered = countDeleted;
+
+        Random random = new Random(42);
+        int nPts = end - start;
+        for (int i = 0; i < 200000; i++) {
+            // Concentrate coverage at the start of the interval
+            int pos = start - 5 + (i % 3 == 0 ? random.nextInt(nPts + 10) : random.nextInt(20));
+            boolean neg = random.nextBoolean();
+            int op = random.nextInt(10);
+            if (op == 0) {
+                dense.incrementDeletion(pos, neg);
+                packed.incrementDeletion(pos, neg);
+            } else if (op == 1) {
+                AlignmentBlock ins = new AlignmentBlockImpl("chr1", pos, new byte[]{'A'}, new byte[]{30});
+                dense.incrementInsertion(ins);
+                packed.incrementInsertion(ins);
+            } else {
+                byte b = BASES[random.nextInt(BASES.length)];
+                byte q = (byte) random.nextInt(60);
+                dense.incPositionCount(pos, b, q, neg);
+                packed.incPositionCount(pos, b, q, neg);
+            }
+        }
+
+        assertEquals(dense.getNumberOfPoints(), packed.getNumberOfPoints());
+        for (int pos = start - 2; pos < end + 2; pos++) {
+            assertEquals(dense.getTotalCount(pos), packed.getTotalCount(pos));
+            assertEquals(dense.getTotalQuality(pos), packed.getTotalQuality(pos));
+            assertEquals(dense.getDelCount(pos), packed.getDelCount(pos));
+            assertEquals(dense.getInsCount(pos), packed.getInsCount(pos));
+            for (byte b : "ACGTNacgtn".getBytes()) {
+                assertEquals(dense.getCount(pos, b), packed.getCount(pos, b));
+                assertEquals(dense.getPosCount(pos, b), packed.getPosCount(pos, b));
+                assertEquals(dense.getNegCount(pos, b), packed.getNegCount(pos, b));
+                if (pos >= start && pos < end) {
+                    assertEquals(dense.getQuality(pos, b), packed.getQuality(pos, b));
+                }
+            }
+        }
+        for (int s = start; s < end; s += 37) {
+            assertEquals(dense.getMaxCount(s, s + 150), packed.getMaxCount(s, s + 150));
+        }
+        assertTrue(packed.getTotalCount(start + 5) > 0xFFFF / 60);
+    }
+}
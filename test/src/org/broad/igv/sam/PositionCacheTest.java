@@ -0,0 +1,144 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.sam;
+
+import org.broad.igv.feature.Range;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+
+import static junit.framework.Assert.*;
+
+public class PositionCacheTest {
+
+    @Test
+    public void testGetForRange() throws Exception {
+        PositionCache<String> cache = new PositionCache<String>();
+        cache.put(new Range("chr1", 100, 200), "a");
+        cache.put(new Range("chr1", 150, 1000), "b");
+        cache.put(new Range("chr2", 100, 200), "c");
+
+        assertEquals("a", cache.getForRange(new Range("chr1", 100, 200)));
+        assertEquals("b", cache.getForRange(new Range("chr1", 300, 400)));
+        assertEquals("c", cache.getForRange(new Range("chr2", 120, 130)));
+        assertNull(cache.getForRange(new Range("chr1", 50, 150)));
+        assertNull(cache.getForRange(new Range("chr3", 100, 200)));
+        assertTrue(cache.containsRange(new Range("chr1", 160, 900)));
+
+        // Negative starts match ranges containing 0
+        cache.put(new Range("chr3", 0, 50), "d");
+        assertEquals("d", cache.getForRange(new Range("chr3", -10, 20)));
+    }
+
+    @Test
+    public void testPutReplacesContainingRange() throws Exception {
+        PositionCache<String> cache = new PositionCache<String>();
+        cache.put(new Range("chr1", 0, 1000), "a");
+        String old = cache.put(new Range("chr1", 100, 200), "b");
+        assertEquals("a", old);
+        assertEquals(1, cache.size());
+        assertEquals("b", cache.getForRange(new Range("chr1", 500, 600)));
+    }
+
+    @Test
+    public void testWeightEviction() throws Exception {
+        PositionCache.Weigher<String> weigher = new PositionCache.Weigher<String>() {
+            public long weigh(String value) {
+                return value.length();
+            }
+        };
+        PositionCache<String> cache = new PositionCache<String>(weigher, 10);
+        cache.put(new Range("chr1", 0, 100), "aaaa");
+        cache.put(new Range("chr1", 200, 300), "bbbb");
+        assertEquals(8, cache.getTotalWeight());
+
+        // Touch the first entry so the second is the eldest
+        cache.getForRange(new Range("chr1", 10, 20));
+        cache.put(new Range("chr2", 0, 100), "cccc");
+
+        assertEquals(2, cache.size());
+        assertEquals(8, cache.getTotalWeight());
+        assertNotNull(cache.getForRange(new Range("chr1", 10, 20)));
+        assertNull(cache.getForRange(new Range("chr1", 210, 220)));
+
+        // Weight limit does not evict below the minimum entry count
+        cache.setMinEntries(3);
+        cache.put(new Range("chr3", 0, 100), "dddddddddd");
+        assertEquals(3, cache.size());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getTotalWeight());
+    }
+
+    @Test
+    public void testEntryCountEviction() throws Exception {
+        PositionCache<Integer> cache = new PositionCache<Integer>();
+        cache.setMaxEntries(10);
+        for (int i = 0; i < 25; i++) {
+            cache.put(new Range("chr1", i * 100, i * 100 + 50), i);
+        }
+        assertEquals(10, cache.size());
+        assertNotNull(cache.getForRange(new Range("chr1", 2400, 2450)));
+        assertNull(cache.getForRange(new Range("chr1", 0, 50)));
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final PositionCache<Integer> cache = new PositionCache<Integer>();
+        cache.setMaxEntries(50);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+        for (int t = 0; t < 8; t++) {
+            final int seed = t;
+            results.add(executor.submit(new Callable<Integer>() {
+                public Integer call() throws Exception {
+                    Random random = new Random(seed);
+                    int mismatches = 0;
+                    for (int i = 0; i < 20000; i++) {
+                        int bin = random.nextInt(200);
+                        Range range = new Range("chr" + (bin % 3), bin * 1000, bin * 1000 + 1000);
+                        if (random.nextBoolean()) {
+                            cache.put(range, bin);
+                        } else {
+                            Integer value = cache.getForRange(new Range(range.getChr(), bin * 1000 + 10, bin * 1000 + 20));
+                            if (value != null && value != bin) mismatches++;
+                        }
+                    }
+                    return mismatches;
+                }
+            }));
+        }
+        for (Future<Integer> f : results) {
+            assertEquals(0, (int) f.get());
+        }
+        executor.shutdown();
+        assertTrue(cache.size() <= 50);
+    }
+}
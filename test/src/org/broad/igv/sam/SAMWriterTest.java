@@ -27,6 +27,7 @@ package org.broad.igv.sam;
 
 import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMFileReader;
+import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.SAMRecordIterator;
 import htsjdk.samtools.ValidationStringency;
 import org.broad.igv.AbstractHeadlessTest;
@@ -70,6 +71,51 @@ public class SAMWriterTest extends AbstractHeadlessTest {
         return inpaths.toArray(new String[0]);
     }
 
+    /**
+     * Alignments held in a {@link ColumnarAlignmentStore} must be exported too
+     */
+    @Test
+    public void testWriteCompactedAlignments() throws Exception {
+        String inpath = TestUtils.DATA_DIR + "sam/NA12878.muc1.test.sam";
+        String chr = "chr1";
+        int start = 153425000;
+        int end = 153428000;
+
+        AlignmentReader reader = AlignmentReaderFactory.getReader(new ResourceLocator(inpath));
+        SAMFileHeader header = reader.getFileHeader();
+        ColumnarAlignmentStore store = new ColumnarAlignmentStore(false);
+        List<String> expected = new ArrayList<String>();
+        List<Alignment> compacted = new ArrayList<Alignment>();
+        Iterator<PicardAlignment> iter = reader.iterator();
+        while (iter.hasNext()) {
+            PicardAlignment al = iter.next();
+            Alignment stored = store.add(al);
+            assertTrue(stored instanceof ColumnarAlignmentStore.ColumnarAlignment);
+            compacted.add(stored);
+            if (chr.equals(al.getChr()) && al.getStart() <= end && al.getEnd() >= start) {
+                expected.add(al.getRecord().getSAMString());
+            }
+        }
+        reader.close();
+        assertTrue(expected.size() > 0);
+
+        File outFile = new File(TestUtils.TMP_OUTPUT_DIR, "compacted.sam");
+        outFile.delete();
+        SAMWriter writer = new SAMWriter(header);
+        int count = writer.writeToFile(outFile,
+                new SAMWriter.SamAlignmentIterable(compacted.iterator(), chr, start, end, header), false);
+        assertEquals(expected.size(), count);
+
+        SAMFileReader writtenReader = new SAMFileReader(outFile);
+        writtenReader.setValidationStringency(ValidationStringency.SILENT);
+        List<String> actual = new ArrayList<String>();
+        for (SAMRecord record : writtenReader) {
+            actual.add(record.getSAMString());
+        }
+        writtenReader.close();
+        assertEquals(expected, actual);
+    }
+
     @Test
     public void testWriteRecordsFile() throws Exception {
         for (String inpath : getTestPaths()) {
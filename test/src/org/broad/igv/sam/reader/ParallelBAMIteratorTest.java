@@ -0,0 +1,134 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.sam.reader;
+
+import htsjdk.samtools.*;
+import htsjdk.samtools.util.CloseableIterator;
+import org.apache.commons.io.FileUtils;
+import org.broad.igv.AbstractHeadlessTest;
+import org.broad.igv.sam.PicardAlignment;
+import org.broad.igv.util.TestUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.*;
+
+public class ParallelBAMIteratorTest extends AbstractHeadlessTest {
+
+    File bamFile;
+    File indexFile;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        bamFile = new File(TestUtils.TMP_OUTPUT_DIR, "index_test.bam");
+        indexFile = new File(TestUtils.TMP_OUTPUT_DIR, "index_test.bam.bai");
+        FileUtils.copyFile(new File(TestUtils.DATA_DIR + "samtools/index_test.bam"), bamFile);
+        SamReader samReader = SamReaderFactory.makeDefault().enable(SamReaderFactory.Option.INCLUDE_SOURCE_IN_RECORDS)
+                .validationStringency(ValidationStringency.SILENT).open(bamFile);
+        BAMIndexer.createIndex(samReader, indexFile);
+        samReader.close();
+    }
+
+    @Test
+    public void testIterate() throws Exception {
+        SAMFileReader reader = new SAMFileReader(bamFile);
+        reader.setValidationStringency(ValidationStringency.SILENT);
+        List<String> expected = toStrings(reader.iterator());
+        List<String> actual = toStrings(ParallelBAMIterator.iterate(bamFile, reader.getFileHeader()));
+        reader.close();
+
+        assertTrue(expected.size() > 1000);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testQuery() throws Exception {
+        SAMFileReader reader = new SAMFileReader(bamFile, indexFile);
+        reader.setValidationStringency(ValidationStringency.SILENT);
+        SAMFileHeader header = reader.getFileHeader();
+        BAMChunkIndex index = new BAMChunkIndex(indexFile);
+
+        int nonEmpty = 0;
+        for (SAMSequenceRecord seq : header.getSequenceDictionary().getSequences()) {
+            int length = seq.getSequenceLength();
+            int step = Math.max(1, length / 20);
+            for (int start = 1; start < length; start += step) {
+                int end = start + step / 3;
+                for (boolean contained : new boolean[]{false, true}) {
+                    List<String> expected = toStrings(reader.query(seq.getSequenceName(), start, end, contained));
+                    List<String> actual = toStrings(new ParallelBAMIterator(bamFile, header,
+                            index.getChunks(seq.getSequenceIndex(), start, end), seq.getSequenceIndex(), start, end, contained));
+                    assertEquals(seq.getSequenceName() + ":" + start + "-" + end, expected, actual);
+                    if (expected.size() > 0) nonEmpty++;
+                }
+            }
+        }
+        reader.close();
+        assertTrue(nonEmpty > 0);
+    }
+
+    @Test
+    public void testBAMFileReader() throws Exception {
+        BAMFileReader reader = new BAMFileReader(bamFile);
+        SAMFileHeader header = reader.getFileHeader();
+        SAMSequenceRecord seq = header.getSequenceDictionary().getSequence(0);
+
+        reader.setParallelDecode(false);
+        List<String> expected = toStrings(reader.query(seq.getSequenceName(), 0, seq.getSequenceLength(), false));
+        reader.setParallelDecode(true);
+        CloseableIterator<PicardAlignment> iter = reader.query(seq.getSequenceName(), 0, seq.getSequenceLength(), false);
+        assertTrue(iter instanceof ParallelBAMIterator);
+        assertEquals(expected, toStrings(iter));
+        reader.close();
+    }
+
+    @Test
+    public void testEarlyClose() throws Exception {
+        SAMFileReader reader = new SAMFileReader(bamFile);
+        ParallelBAMIterator iter = ParallelBAMIterator.iterate(bamFile, reader.getFileHeader());
+        reader.close();
+        assertTrue(iter.hasNext());
+        iter.next();
+        iter.close();
+        assertFalse(iter.hasNext());
+    }
+
+    private static List<String> toStrings(CloseableIterator<?> iter) {
+        List<String> records = new ArrayList<String>();
+        while (iter.hasNext()) {
+            Object next = iter.next();
+            SAMRecord record = next instanceof PicardAlignment ? ((PicardAlignment) next).getRecord() : (SAMRecord) next;
+            records.add(record.getSAMString());
+        }
+        iter.close();
+        return records;
+    }
+}
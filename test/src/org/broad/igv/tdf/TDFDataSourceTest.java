@@ -27,6 +27,7 @@ package org.broad.igv.tdf;
 
 import org.broad.igv.AbstractHeadlessTest;
 import org.broad.igv.Globals;
+import org.broad.igv.PreferenceManager;
 import org.broad.igv.feature.LocusScore;
 import org.broad.igv.feature.genome.ChromosomeCoordinate;
 import org.broad.igv.util.ResourceLocator;
@@ -80,4 +81,24 @@ public class TDFDataSourceTest extends AbstractHeadlessTest {
         }
 
     }
+
+    /**
+     * Invalid rank errors fall back to exact percentiles rather than failing the summary
+     */
+    @Test
+    public void testQuantileSketchErrorPreference() throws Exception {
+        PreferenceManager prefs = PreferenceManager.getInstance();
+        String key = PreferenceManager.QUANTILE_SKETCH_ERROR;
+        String oldValue = prefs.get(key);
+        try {
+            prefs.put(key, "0.01");
+            assertEquals(0.01f, prefs.getQuantileSketchError(), 0);
+            for (String invalid : new String[]{"-0.5", "1", "2", "NaN", "abc"}) {
+                prefs.put(key, invalid);
+                assertEquals(invalid, 0f, prefs.getQuantileSketchError(), 0);
+            }
+        } finally {
+            prefs.put(key, oldValue);
+        }
+    }
 }
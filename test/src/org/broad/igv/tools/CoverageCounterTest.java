@@ -25,6 +25,10 @@
 
 package org.broad.igv.tools;
 
+import htsjdk.samtools.BAMIndexer;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import org.apache.commons.io.FileUtils;
 import org.broad.igv.AbstractHeadlessTest;
 import org.broad.igv.PreferenceManager;
 import org.broad.igv.feature.genome.Genome;
@@ -38,10 +42,12 @@ import org.junit.Test;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
 
 
 public class CoverageCounterTest extends AbstractHeadlessTest {
@@ -269,6 +275,65 @@ public class CoverageCounterTest extends AbstractHeadlessTest {
 
     }
 
+    /**
+     * Compare the multi-threaded engine to the single threaded engine.  The range size is reduced so the
+     * reads are split across many ranges.
+     */
+    @Test
+    public void testThreadedCountsMatch() throws Exception {
+        File bamFile = new File(TestUtils.TMP_OUTPUT_DIR, "chr1_chr2.hg18.bam");
+        FileUtils.copyFile(new File(TestUtils.DATA_DIR + "bam/chr1_chr2.hg18.bam"), bamFile);
+        SamReader samReader = SamReaderFactory.makeDefault().enable(SamReaderFactory.Option.INCLUDE_SOURCE_IN_RECORDS).open(bamFile);
+        BAMIndexer.createIndex(samReader, new File(bamFile.getPath() + ".bai"));
+        samReader.close();
+
+        int origRangeBufferSize = CoverageCounter.RANGE_BUFFER_SIZE;
+        try {
+            int[] countFlags = new int[]{0, CoverageCounter.STRANDS_BY_READ, CoverageCounter.BASES,
+                    CoverageCounter.BASES + CoverageCounter.STRANDS_BY_READ};
+
+            // Whole file
+            CoverageCounter.RANGE_BUFFER_SIZE = 100000;
+            for (int flags : countFlags) {
+                compareThreadedCounts(bamFile.getPath(), 25, null, flags);
+            }
+
+            // Reads are all in this region,  use small ranges to split reads across range boundaries
+            CoverageCounter.RANGE_BUFFER_SIZE = 500;
+            int[] windowSizes = new int[]{1, 25, 1000};
+            for (int flags : countFlags) {
+                for (int windowSize : windowSizes) {
+                    compareThreadedCounts(bamFile.getPath(), windowSize, "chr2:155743000-155750000", flags);
+                }
+            }
+        } finally {
+            CoverageCounter.RANGE_BUFFER_SIZE = origRangeBufferSize;
+        }
+    }
+
+    private void compareThreadedCounts(String path, int windowSize, String queryString, int flags) throws IOException {
+        TestDataConsumer expected = new TestDataConsumer();
+        CoverageCounter cc = new CoverageCounter(path, expected, windowSize, 200, null, genome, queryString, 0, flags);
+        cc.parse();
+
+        TestDataConsumer actual = new TestDataConsumer();
+        cc = new CoverageCounter(path, actual, windowSize, 200, null, genome, queryString, 0, flags);
+        cc.setNumThreads(4);
+        cc.parse();
+
+        assertEquals(expected.attributes.get("totalCount"), actual.attributes.get("totalCount"));
+        assertTrue(expected.testDatas.size() > 0);
+        assertEquals(expected.testDatas.size(), actual.testDatas.size());
+        for (int i = 0; i < expected.testDatas.size(); i++) {
+            TestData exp = expected.testDatas.get(i);
+            TestData act = actual.testDatas.get(i);
+            assertEquals(exp.chr, act.chr);
+            assertEquals(exp.start, act.start);
+            assertEquals(exp.end, act.end);
+            assertTrue(Arrays.equals(exp.data, act.data));
+        }
+    }
+
     @Test
     public void testIncludeDuplicatesFlag() throws IOException {
         String bamURL = "http://data.broadinstitute.org/igvdata/BodyMap/hg18/Merged/HBM.adipose.bam.sorted.bam";
@@ -39,6 +39,7 @@ import org.broad.igv.sam.reader.SamUtils;
 import org.broad.igv.tdf.TDFDataset;
 import org.broad.igv.tdf.TDFReader;
 import org.broad.igv.tdf.TDFTile;
+import org.broad.igv.tools.parsers.UnsortedException;
 import org.broad.igv.tools.sort.SorterTest;
 import org.broad.igv.util.FileUtils;
 import org.broad.igv.util.ResourceLocator;
@@ -227,6 +228,70 @@ public class IGVToolsTest extends AbstractHeadlessTest {
     }
 
 
+    @Test
+    public void testTileThreadsIdenticalOutput() throws IOException {
+        String[] inputFiles = {TestUtils.DATA_DIR + "cn/HindForGISTIC.hg16.cn",
+                TestUtils.DATA_DIR + "wig/phastCons_chr1_small.wig"};
+        for (String inputFile : inputFiles) {
+            String file1 = TestUtils.DATA_DIR + "out/single.tdf";
+            String file2 = TestUtils.DATA_DIR + "out/threaded.tdf";
+
+            String[] args = {"toTDF", "--windowFunctions", "mean,min,max", inputFile, file1, hg18id};
+            igvTools.run(args);
+            args = new String[]{"toTDF", "--windowFunctions", "mean,min,max", "--threads", "4", inputFile, file2, hg18id};
+            igvTools.run(args);
+
+            byte[] bytes1 = org.apache.commons.io.FileUtils.readFileToByteArray(new File(file1));
+            byte[] bytes2 = org.apache.commons.io.FileUtils.readFileToByteArray(new File(file2));
+            assertTrue(bytes1.length > 0);
+            assertTrue(inputFile, Arrays.equals(bytes1, bytes2));
+
+            (new File(file1)).delete();
+            (new File(file2)).delete();
+        }
+    }
+
+
+    /**
+     * Unsorted input halts a threaded run,  which must stop the tile threads and remove the partial file
+     */
+    @Test
+    public void testTileThreadsUnsorted() throws Exception {
+        File inputFile = new File(TestUtils.DATA_DIR + "out/unsorted.wig");
+        PrintWriter pw = new PrintWriter(new FileWriter(inputFile));
+        pw.println("variableStep chrom=chr1 span=10");
+        for (int i = 0; i < 5000; i++) {
+            pw.println((1000000 + 100 * i) + "\t1.0");
+        }
+        pw.println("100\t1.0");
+        pw.close();
+        File outputFile = new File(TestUtils.DATA_DIR + "out/unsorted.tdf");
+
+        String[] args = {"toTDF", "--threads", "4", inputFile.getAbsolutePath(), outputFile.getAbsolutePath(), hg18id};
+        try {
+            igvTools.run(args);
+            fail("Expected UnsortedException");
+        } catch (RuntimeException e) {
+            // The parser wraps the UnsortedException
+            Throwable cause = e;
+            while (cause != null && !(cause instanceof UnsortedException)) {
+                cause = cause.getCause();
+            }
+            assertNotNull(cause);
+        }
+        assertFalse(outputFile.exists());
+
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            String name = t.getName();
+            if (name.startsWith("tdf-")) {
+                t.join(5000);
+                assertFalse(name, t.isAlive());
+            }
+        }
+        inputFile.delete();
+    }
+
+
     private void testTile(String inputFile, int start, int end) throws IOException {
         String file1 = TestUtils.DATA_DIR + "out/file1.tdf";
         String file2 = TestUtils.DATA_DIR + "out/file2.tdf";
@@ -33,11 +33,16 @@ import org.broad.igv.util.TestUtils;
 import org.junit.Test;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import static org.junit.Assert.*;
@@ -88,6 +93,113 @@ public class SorterTest extends AbstractHeadlessTest {
         testSort(path, 0, 1, 10, 100, 1);
     }
 
+    @Test
+    public void testSortBedThreads() throws Exception {
+        File ifile = new File(TestUtils.DATA_DIR + "bed/Unigene.unsorted.bed");
+        File ofile = new File(TestUtils.TMP_OUTPUT_DIR, "Unigene.threads.sorted.bed");
+        Sorter sorter = Sorter.getSorter(ifile, ofile);
+        sorter.setMaxRecords(10);
+        sorter.setNumThreads(4);
+        sorter.run();
+        assertEquals(71, checkFileSorted(ofile, 0, 1, 0));
+    }
+
+    /**
+     * Sort with small chunks and runs so the parallel parse, spill, and merge paths are all exercised, and compare
+     * with a stable in-memory sort of the same lines.
+     */
+    @Test
+    public void testParallelSortEngine() throws Exception {
+        checkParallelSortEngine(new File(TestUtils.DATA_DIR + "bed/GSM1004654_10k.bed"));
+    }
+
+    /**
+     * Lines terminated by a carriage return alone,  as read by AsciiLineReader
+     */
+    @Test
+    public void testParallelSortEngineCROnly() throws Exception {
+        File ifile = new File(TestUtils.TMP_OUTPUT_DIR, "GSM1004654_10k.cr.bed");
+        writeCROnly(new File(TestUtils.DATA_DIR + "bed/GSM1004654_10k.bed"), ifile);
+        try {
+            checkParallelSortEngine(ifile);
+        } finally {
+            ifile.delete();
+        }
+    }
+
+    @Test
+    public void testSortBedCROnly() throws Exception {
+        File ifile = new File(TestUtils.TMP_OUTPUT_DIR, "Unigene.unsorted.cr.bed");
+        File ofile = new File(TestUtils.TMP_OUTPUT_DIR, "Unigene.cr.sorted.bed");
+        writeCROnly(new File(TestUtils.DATA_DIR + "bed/Unigene.unsorted.bed"), ifile);
+        try {
+            Sorter sorter = Sorter.getSorter(ifile, ofile);
+            sorter.setMaxRecords(10);
+            sorter.run();
+            assertEquals(71, checkFileSorted(ofile, 0, 1, 0));
+
+            BufferedReader reader = new BufferedReader(new FileReader(ofile));
+            try {
+                assertEquals("track name=\"Unsorted bed\"", reader.readLine());
+            } finally {
+                reader.close();
+            }
+        } finally {
+            ifile.delete();
+            ofile.delete();
+        }
+    }
+
+    private void checkParallelSortEngine(File ifile) throws Exception {
+
+        List<String> expected = readLines(ifile);
+        final Comparator<SortableRecord> comparator = Sorter.getDefaultComparator();
+        final Parser parser = new Parser(0, 1);
+        Collections.sort(expected, new Comparator<String>() {
+            public int compare(String o1, String o2) {
+                return comparator.compare(parser.createRecord(o1), parser.createRecord(o2));
+            }
+        });
+
+        ParallelSortEngine engine = new ParallelSortEngine(parser, new File(TestUtils.TMP_OUTPUT_DIR), 500, 4);
+        engine.setChunkSize(4096);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        engine.sort(ifile, 0, false, out);
+
+        // Output lines end with the platform line separator
+        String[] lines = out.toString().split("\r?\n");
+        assertEquals(expected.size(), lines.length);
+        for (int i = 0; i < lines.length; i++) {
+            assertEquals(expected.get(i), lines[i]);
+        }
+    }
+
+    private static List<String> readLines(File file) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String nextLine;
+            while ((nextLine = reader.readLine()) != null) {
+                lines.add(nextLine);
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+
+    private static void writeCROnly(File source, File dest) throws IOException {
+        FileWriter writer = new FileWriter(dest);
+        try {
+            for (String line : readLines(source)) {
+                writer.write(line);
+                writer.write('\r');
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
     public void testSort(String infile, int chrCol, int startCol) throws IOException {
         testSort(infile, chrCol, startCol, 10, null, 0);
     }
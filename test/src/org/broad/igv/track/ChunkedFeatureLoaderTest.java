@@ -0,0 +1,110 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.track;
+
+import htsjdk.tribble.Feature;
+import org.broad.igv.AbstractHeadlessTest;
+import org.broad.igv.Globals;
+import org.broad.igv.feature.BasicFeature;
+import org.broad.igv.feature.tribble.ByteLineDecoderTest;
+import org.broad.igv.util.ResourceLocator;
+import org.broad.igv.util.TestUtils;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.*;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class ChunkedFeatureLoaderTest extends AbstractHeadlessTest {
+
+    /**
+     * Loading in small chunks gives the same features,  in the same order,  as the sequential load.
+     */
+    @Test
+    public void testCompareSequential() throws Exception {
+        String[] paths = {
+                "bed/Unigene.unsorted.bed",
+                "bed/Unigene.withheader.sorted.bed",
+                "bed/H3K4me1_sample_bed6.bed",
+                "bed/gene.bed",
+                "bed/mini.junctions.bed",
+                "gff/gene.unsorted.gff3",
+                "gff/aliased.unsorted.gff",
+                "gff/gffWithFasta.gff",
+                "gtf/transcript_id.gtf",
+                "psl/fishBlat.psl"
+        };
+        for (String path : paths) {
+            compareSequential(TestUtils.DATA_DIR + path, 200);
+        }
+    }
+
+    /**
+     * Features with equal starts are spread over many chunks and chromosomes,  and must keep their file order.
+     */
+    @Test
+    public void testTies() throws Exception {
+        File file = new File(TestUtils.TMP_OUTPUT_DIR, "chunkedTies.bed");
+        PrintWriter pw = new PrintWriter(file);
+        Random random = new Random(1);
+        pw.println("track name=ties");
+        for (int i = 0; i < 5000; i++) {
+            int start = random.nextInt(50);
+            pw.println("chr" + (1 + random.nextInt(3)) + "\t" + start + "\t" + (start + 10) + "\tf" + i);
+        }
+        pw.close();
+
+        compareSequential(file.getAbsolutePath(), 1000);
+        file.delete();
+    }
+
+    private void compareSequential(String path, int chunkSize) throws Exception {
+        ResourceLocator locator = new ResourceLocator(path);
+        TribbleFeatureSource source = TribbleFeatureSource.getFeatureSource(locator, genome);
+        Map<String, List<Feature>> featureMap = new ChunkedFeatureLoader(locator, genome, chunkSize).load();
+
+        // The sequential source also holds sampled features for the whole genome view
+        Set<String> expectedNames = new HashSet<String>(source.getSequenceNames());
+        expectedNames.remove(Globals.CHR_ALL);
+        assertEquals(path, expectedNames, featureMap.keySet());
+        for (String chr : featureMap.keySet()) {
+            List<Feature> expected = new ArrayList<Feature>();
+            Iterator iter = source.getFeatures(chr, 0, Integer.MAX_VALUE);
+            while (iter.hasNext()) {
+                expected.add((Feature) iter.next());
+            }
+            List<Feature> actual = featureMap.get(chr);
+            assertTrue(path, expected.size() > 0);
+            assertEquals(path, expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                ByteLineDecoderTest.assertFeaturesEqual((BasicFeature) expected.get(i), (BasicFeature) actual.get(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.track;
+
+import org.broad.igv.AbstractHeadlessTest;
+import org.broad.igv.util.ResourceLocator;
+import org.broad.igv.util.TestUtils;
+import org.junit.Test;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class RegionScoreServiceTest extends AbstractHeadlessTest {
+
+    /**
+     * Scores computed by the service must match scores computed one track at a time
+     */
+    @Test
+    public void testCompareSequential() throws Exception {
+        String[] paths = {TestUtils.DATA_DIR + "cn/HindForGISTIC.hg16.cn",
+                TestUtils.DATA_DIR + "seg/canFam2_hg18.seg"};
+        List<Track> tracks = new ArrayList<Track>();
+        TrackLoader loader = new TrackLoader();
+        for (String path : paths) {
+            tracks.addAll(loader.load(new ResourceLocator(path), genome));
+        }
+        assertTrue(tracks.size() > 4);
+
+        String chr = "chr1";
+        int start = 2000000;
+        int end = 40000000;
+        int zoom = 3;
+        for (RegionScoreType type : RegionScoreType.values()) {
+            Map<Track, Float> scores = new RegionScoreService().getRegionScores(tracks, chr, start, end, zoom, type, null);
+            assertEquals(tracks.size(), scores.size());
+            for (Track t : tracks) {
+                float expected = t.getRegionScore(chr, start, end, zoom, type, null);
+                assertEquals(t.getName() + " " + type, expected, scores.get(t), 1.0e-6);
+            }
+        }
+    }
+
+    @Test
+    public void testCache() throws Exception {
+        CountingTrack track = new CountingTrack();
+        List<Track> tracks = Arrays.<Track>asList(track, null);
+        RegionScoreService service = new RegionScoreService();
+
+        Map<Track, Float> scores = service.getRegionScores(tracks, "chr1", 0, 100, 0, RegionScoreType.SCORE, null);
+        assertEquals(1, scores.size());
+        assertEquals(1.0f, scores.get(track));
+        service.getRegionScores(tracks, "chr1", 0, 100, 0, RegionScoreType.SCORE, null);
+        assertEquals(1, track.count.get());
+
+        // A different region or score type is a new entry
+        service.getRegionScores(tracks, "chr1", 0, 200, 0, RegionScoreType.SCORE, null);
+        service.getRegionScores(tracks, "chr1", 0, 100, 0, RegionScoreType.EXPRESSION, null);
+        assertEquals(3, track.count.get());
+
+        // Mutation counts are not cached
+        service.getRegionScores(tracks, "chr1", 0, 100, 0, RegionScoreType.MUTATION_COUNT, null);
+        service.getRegionScores(tracks, "chr1", 0, 100, 0, RegionScoreType.MUTATION_COUNT, null);
+        assertEquals(5, track.count.get());
+
+        service.invalidate(track);
+        scores = service.getRegionScores(tracks, "chr1", 0, 100, 0, RegionScoreType.SCORE, null);
+        assertEquals(6, track.count.get());
+        assertEquals(6.0f, scores.get(track));
+    }
+
+    @Test
+    public void testFailedScoresNotCached() throws Exception {
+        CountingTrack track = new CountingTrack() {
+            @Override
+            public float getRegionScore(String chr, int start, int end, int zoom, RegionScoreType type, String frameName) {
+                if (count.incrementAndGet() == 1) {
+                    throw new RuntimeException("Expected failure");
+                }
+                return count.get();
+            }
+        };
+        List<Track> tracks = Arrays.<Track>asList(track);
+        RegionScoreService service = new RegionScoreService();
+
+        Map<Track, Float> scores = service.getRegionScores(tracks, "chr1", 0, 100, 0, RegionScoreType.SCORE, null);
+        assertEquals(-Float.MAX_VALUE, scores.get(track));
+
+        scores = service.getRegionScores(tracks, "chr1", 0, 100, 0, RegionScoreType.SCORE, null);
+        assertEquals(2.0f, scores.get(track));
+        service.getRegionScores(tracks, "chr1", 0, 100, 0, RegionScoreType.SCORE, null);
+        assertEquals(2, track.count.get());
+    }
+
+    static class CountingTrack extends AbstractTrack {
+
+        final AtomicInteger count = new AtomicInteger();
+
+        CountingTrack() {
+            super("counting");
+        }
+
+        @Override
+        public float getRegionScore(String chr, int start, int end, int zoom, RegionScoreType type, String frameName) {
+            return count.incrementAndGet();
+        }
+
+        public void render(RenderContext context, Rectangle rect) {
+        }
+    }
+}
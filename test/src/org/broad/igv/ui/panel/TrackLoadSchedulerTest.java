@@ -0,0 +1,116 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.ui.panel;
+
+import org.broad.igv.AbstractHeadlessTest;
+import org.broad.igv.track.AbstractTrack;
+import org.broad.igv.track.RenderContext;
+import org.broad.igv.track.Track;
+import org.junit.Test;
+
+import java.awt.*;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class TrackLoadSchedulerTest extends AbstractHeadlessTest {
+
+    @Test
+    public void testLoadInBackground() throws Exception {
+
+        ReferenceFrame frame = new ReferenceFrame("testFrame");
+        frame.setBounds(0, 500);
+        frame.jumpTo("chr1", 100000, 110000);
+
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingTrack track = new BlockingTrack(release);
+        List<Track> tracks = Arrays.<Track>asList(track);
+
+        TrackLoadScheduler scheduler = new TrackLoadScheduler();
+        scheduler.load(tracks, frame, null, new Rectangle(0, 0, 500, 100));
+        assertTrue(scheduler.isLoading(track, frame));
+
+        // A second paint while the load is in flight must not queue another load
+        scheduler.load(tracks, frame, null, new Rectangle(0, 0, 500, 100));
+
+        release.countDown();
+        assertTrue(track.prefetched.await(10, TimeUnit.SECONDS));
+        assertFalse(scheduler.isLoading(track, frame));
+        assertEquals(1, track.loadCount.get());
+        assertEquals(2, track.prefetchCount.get());
+
+        // Once loaded and prefetched, repainting the same view does no more work
+        scheduler.load(tracks, frame, null, new Rectangle(0, 0, 500, 100));
+        Thread.sleep(100);
+        assertEquals(1, track.loadCount.get());
+        assertEquals(2, track.prefetchCount.get());
+    }
+
+    static class BlockingTrack extends AbstractTrack {
+
+        final CountDownLatch release;
+        final CountDownLatch prefetched = new CountDownLatch(2);
+        final AtomicInteger loadCount = new AtomicInteger();
+        final AtomicInteger prefetchCount = new AtomicInteger();
+        volatile boolean loaded = false;
+
+        BlockingTrack(CountDownLatch release) {
+            super("blocking");
+            this.release = release;
+        }
+
+        @Override
+        public void load(RenderContext context) {
+            loadCount.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            loaded = true;
+        }
+
+        @Override
+        public boolean isReadyToPaint(ReferenceFrame frame) {
+            return loaded;
+        }
+
+        @Override
+        public void prefetch(String chr, int start, int end, int zoom) {
+            prefetchCount.incrementAndGet();
+            prefetched.countDown();
+        }
+
+        public void render(RenderContext context, Rectangle rect) {
+        }
+    }
+}
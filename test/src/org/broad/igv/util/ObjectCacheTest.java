@@ -0,0 +1,69 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ObjectCacheTest {
+
+    @Test
+    public void testEvictOldest() throws Exception {
+        ObjectCache<String, String> cache = new ObjectCache<String, String>(3);
+        String[] values = {"a", "b", "c", "d"};
+        for (String v : values) {
+            cache.put(v, v);
+        }
+        assertEquals(3, cache.size());
+        assertFalse(cache.containsKey("a"));
+        assertEquals("d", cache.get("d"));
+        assertNull(cache.get(null));
+    }
+
+    /**
+     * Removed entries must not count against the cache,  nor evict entries added after them
+     */
+    @Test
+    public void testPutRemove() throws Exception {
+        ObjectCache<String, String> cache = new ObjectCache<String, String>(3);
+        cache.put("kept", "kept");
+        for (int i = 0; i < 10000; i++) {
+            String key = String.valueOf(i);
+            cache.put(key, key);
+            cache.remove(key);
+        }
+        assertEquals(1, cache.size());
+        assertEquals("kept", cache.get("kept"));
+
+        cache.put("x", "x");
+        cache.put("y", "y");
+        assertEquals(3, cache.size());
+        cache.put("z", "z");
+        assertFalse(cache.containsKey("kept"));
+        assertEquals("x", cache.get("x"));
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.util.collections;
+
+import org.apache.commons.math.stat.StatUtils;
+import org.broad.igv.tdf.Accumulator;
+import org.broad.igv.track.WindowFunction;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class QuantileSketchTest {
+
+    private static final double[] QUANTILES = {0.02, 0.1, 0.5, 0.9, 0.98};
+
+    @Test
+    public void testExactBeforeCompaction() {
+        Random random = new Random(1);
+        double[] values = new double[150];
+        QuantileSketch sketch = new QuantileSketch(200);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextGaussian();
+            sketch.add(values[i]);
+        }
+        assertFalse(sketch.isEstimate());
+        for (double q : QUANTILES) {
+            assertEquals(StatUtils.percentile(values, q * 100), sketch.getQuantile(q), 0);
+        }
+    }
+
+    @Test
+    public void testRankError() {
+        double rankError = 0.01;
+        int n = 1000000;
+        Random random = new Random(2);
+
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = random.nextDouble() * 1000;
+        }
+        checkRankError(values, rankError);
+
+        // Sorted input is the adversarial case for deterministic compaction
+        Arrays.sort(values);
+        checkRankError(values, rankError);
+    }
+
+    private void checkRankError(double[] values, double rankError) {
+        QuantileSketch sketch = QuantileSketch.forRankError(rankError);
+        for (double v : values) {
+            sketch.add(v);
+        }
+        assertEquals(values.length, sketch.getCount());
+        assertTrue(sketch.isEstimate());
+        assertTrue("Retained " + sketch.getRetainedSize(), sketch.getRetainedSize() < 1000);
+
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        for (double q : QUANTILES) {
+            double estimate = sketch.getQuantile(q);
+            int rank = Arrays.binarySearch(sorted, estimate);
+            double actualQ = (double) rank / sorted.length;
+            assertEquals("q = " + q, q, actualQ, rankError);
+        }
+    }
+
+    @Test
+    public void testAccumulator() {
+        Random random = new Random(3);
+        Accumulator exact = new Accumulator(WindowFunction.median);
+        Accumulator sketched = new Accumulator(WindowFunction.median, 0, 0.01);
+        for (int i = 0; i < 50000; i++) {
+            float v = (float) random.nextGaussian();
+            exact.add(1, v, null);
+            sketched.add(1, v, null);
+        }
+        // Standard normal, density at the median ~0.4 so a 1% rank error is ~0.025
+        assertEquals(exact.getValue(), sketched.getValue(), 0.03);
+        assertEquals(Float.NaN, new Accumulator(WindowFunction.median, 0, 0.01).getValue(), 0);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.util.index;
+
+import htsjdk.tribble.Feature;
+import org.broad.igv.feature.BasicFeature;
+import org.broad.igv.feature.FeatureUtils;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class FeatureIntervalIndexTest {
+
+    /**
+     * Compare index queries to a linear scan over random features, including long features spanning many others
+     */
+    @Test
+    public void testOverlapping() {
+
+        Random random = new Random(1234);
+        for (int n : new int[]{0, 1, 2, 7, 16, 17, 100, 1000, 5000}) {
+            List<Feature> features = new ArrayList<Feature>();
+            for (int i = 0; i < n; i++) {
+                int start = random.nextInt(100000);
+                int length = random.nextInt(10) == 0 ? random.nextInt(20000) : random.nextInt(500);
+                features.add(new BasicFeature("chr1", start, start + length));
+            }
+            FeatureUtils.sortFeatureList(features);
+            FeatureIntervalIndex<Feature> index = new FeatureIntervalIndex<Feature>(features);
+
+            for (int q = 0; q < 200; q++) {
+                int start = random.nextInt(110000) - 5000;
+                int end = start + random.nextInt(q % 2 == 0 ? 100 : 10000);
+
+                List<Feature> expected = new ArrayList<Feature>();
+                for (Feature f : features) {
+                    if (f.getStart() < end && f.getEnd() > start) {
+                        expected.add(f);
+                    }
+                }
+                List<Feature> actual = index.getOverlapping(start, end);
+                assertEquals(expected.size(), actual.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(expected.get(i), actual.get(i));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.util.stream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the http block cache against a local stub server that counts range requests.
+ */
+public class BlockCacheTest {
+
+    private static final int FILE_SIZE = 5 * BlockCache.BLOCK_SIZE + 1234;
+
+    private HttpServer server;
+    private byte[] content;
+    private AtomicInteger requestCount = new AtomicInteger();
+    private URL url;
+
+    @Before
+    public void setUp() throws Exception {
+        content = new byte[FILE_SIZE];
+        new Random(1).nextBytes(content);
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/data.bin", new RangeHandler());
+        server.setExecutor(Executors.newFixedThreadPool(4));
+        server.start();
+        url = new URL("http://localhost:" + server.getAddress().getPort() + "/data.bin");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop(0);
+    }
+
+    @Test
+    public void testSmallReadsCoalesced() throws Exception {
+
+        BlockCache cache = new BlockCache(BlockCache.BLOCK_SIZE, 10L * BlockCache.BLOCK_SIZE);
+        IGVCachingHTTPStream stream = new IGVCachingHTTPStream(url, cache);
+
+        // Many small nearby reads,  all within the first block and its read-ahead block
+        byte[] buffer = new byte[100];
+        for (int pos = 0; pos < 2 * BlockCache.BLOCK_SIZE - 100; pos += 997) {
+            stream.seek(pos);
+            assertEquals(100, stream.read(buffer, 0, 100));
+            assertArrayEquals(Arrays.copyOfRange(content, pos, pos + 100), buffer);
+        }
+        assertEquals(1, requestCount.get());
+
+        // A new stream on the same url shares the cache
+        IGVCachingHTTPStream stream2 = new IGVCachingHTTPStream(url, cache);
+        stream2.seek(500);
+        assertEquals(100, stream2.read(buffer, 0, 100));
+        assertEquals(1, requestCount.get());
+    }
+
+    @Test
+    public void testReadToEnd() throws Exception {
+
+        BlockCache cache = new BlockCache(BlockCache.BLOCK_SIZE, 10L * BlockCache.BLOCK_SIZE);
+        IGVCachingHTTPStream stream = new IGVCachingHTTPStream(url, cache);
+
+        // A read spanning several missing blocks is a single request
+        byte[] buffer = new byte[FILE_SIZE + 1000];
+        int n = stream.read(buffer, 0, buffer.length);
+        assertEquals(FILE_SIZE, n);
+        assertArrayEquals(content, Arrays.copyOf(buffer, n));
+        assertEquals(1, requestCount.get());
+
+        assertEquals(FILE_SIZE, stream.length());
+        assertTrue(stream.eof());
+        assertEquals(-1, stream.read(buffer, 0, 10));
+
+        stream.seek(FILE_SIZE - 10);
+        assertEquals(10, stream.read(buffer, 0, 100));
+        assertEquals(1, requestCount.get());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+
+        // Cache holds a single block,  reads must still be correct
+        BlockCache cache = new BlockCache(BlockCache.BLOCK_SIZE, BlockCache.BLOCK_SIZE);
+        IGVCachingHTTPStream stream = new IGVCachingHTTPStream(url, cache);
+
+        Random random = new Random(2);
+        byte[] buffer = new byte[3 * BlockCache.BLOCK_SIZE];
+        for (int i = 0; i < 20; i++) {
+            int pos = random.nextInt(FILE_SIZE);
+            int len = Math.min(1 + random.nextInt(buffer.length), FILE_SIZE - pos);
+            stream.seek(pos);
+            int n = 0;
+            while (n < len) {
+                int count = stream.read(buffer, n, len - n);
+                assertTrue(count > 0);
+                n += count;
+            }
+            assertArrayEquals(Arrays.copyOfRange(content, pos, pos + len), Arrays.copyOf(buffer, len));
+        }
+    }
+
+    @Test
+    public void testConcurrentReadsFetchOnce() throws Exception {
+
+        final BlockCache cache = new BlockCache(BlockCache.BLOCK_SIZE, 10L * BlockCache.BLOCK_SIZE);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<byte[]>> futures = new ArrayList<Future<byte[]>>();
+        for (int t = 0; t < 8; t++) {
+            futures.add(executor.submit(new Callable<byte[]>() {
+                public byte[] call() throws Exception {
+                    IGVCachingHTTPStream stream = new IGVCachingHTTPStream(url, cache);
+                    stream.seek(1000);
+                    byte[] buffer = new byte[50000];
+                    int n = stream.read(buffer, 0, buffer.length);
+                    return Arrays.copyOf(buffer, n);
+                }
+            }));
+        }
+        for (Future<byte[]> f : futures) {
+            assertArrayEquals(Arrays.copyOfRange(content, 1000, 51000), f.get());
+        }
+        executor.shutdown();
+        assertEquals(1, requestCount.get());
+    }
+
+
+    /**
+     * Serve {@code content},  honoring single byte-range requests
+     */
+    class RangeHandler implements HttpHandler {
+
+        public void handle(HttpExchange exchange) throws IOException {
+            requestCount.incrementAndGet();
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            int start = 0;
+            int end = content.length - 1;
+            if (range != null) {
+                String[] tokens = range.substring("bytes=".length()).split("-");
+                start = Integer.parseInt(tokens[0]);
+                end = Math.min(end, Integer.parseInt(tokens[1]));
+            }
+            OutputStream os = exchange.getResponseBody();
+            if (start >= content.length) {
+                byte[] msg = "416 Requested Range Not Satisfiable".getBytes();
+                exchange.sendResponseHeaders(416, msg.length);
+                os.write(msg);
+            } else {
+                exchange.sendResponseHeaders(range == null ? 200 : 206, end - start + 1);
+                os.write(content, start, end - start + 1);
+            }
+            os.close();
+        }
+    }
+}
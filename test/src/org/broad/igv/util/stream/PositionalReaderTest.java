@@ -0,0 +1,195 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.util.stream;
+
+import htsjdk.samtools.seekablestream.SeekableFileStream;
+import org.broad.igv.util.TestUtils;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class PositionalReaderTest {
+
+    private static final String TEST_FILE = TestUtils.DATA_DIR + "tdf/NA12878.SLX.egfr.sam.tdf";
+
+    @Test
+    public void testLocalReaderType() throws Exception {
+        PositionalReader reader = PositionalReader.getReader(TEST_FILE);
+        assertTrue(reader instanceof PositionalReader.FileChannelReader);
+        reader.close();
+    }
+
+    @Test
+    public void testReadPastEnd() throws Exception {
+        File file = new File(TEST_FILE);
+        int nBytes = 100;
+        long position = file.length() - nBytes / 2;
+
+        PositionalReader reader = PositionalReader.getReader(TEST_FILE);
+        byte[] bytes = reader.readBytes(position, nBytes);
+        reader.close();
+
+        assertEquals(nBytes, bytes.length);
+        for (int i = nBytes / 2; i < nBytes; i++) {
+            assertEquals(0, bytes[i]);
+        }
+    }
+
+    /**
+     * An interrupted read closes the shared channel,  other reads must reopen it,  but not after close()
+     */
+    @Test
+    public void testInterruptedRead() throws Exception {
+        final PositionalReader reader = PositionalReader.getReader(TEST_FILE);
+        byte[] expected = reader.readBytes(0, 100);
+
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                Thread.currentThread().interrupt();
+                try {
+                    reader.readBytes(0, 100);
+                } catch (IOException e) {
+                    // Expected,  ClosedByInterruptException
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+        assertFalse(((PositionalReader.FileChannelReader) reader).channel.isOpen());
+
+        assertTrue(Arrays.equals(expected, reader.readBytes(0, 100)));
+
+        reader.close();
+        try {
+            reader.readBytes(0, 100);
+            fail("Expected ClosedChannelException");
+        } catch (ClosedChannelException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * A stream which fails a read is closed rather than returned to the pool,  as is a stream released after the
+     * reader is closed.
+     */
+    @Test
+    public void testStreamPoolDiscardsStreams() throws Exception {
+        PositionalReader.StreamPoolReader reader = new PositionalReader.StreamPoolReader(TEST_FILE);
+        final AtomicBoolean brokenClosed = new AtomicBoolean(false);
+        SeekableFileStream broken = new SeekableFileStream(new File(TEST_FILE)) {
+            @Override
+            public void seek(long position) throws IOException {
+                throw new IOException("Test failure");
+            }
+
+            @Override
+            public void close() throws IOException {
+                brokenClosed.set(true);
+                super.close();
+            }
+        };
+        reader.streams.clear();
+        reader.streams.add(broken);
+        try {
+            reader.readBytes(0, 10);
+            fail("Expected IOException");
+        } catch (IOException e) {
+            // expected
+        }
+        assertTrue(brokenClosed.get());
+        assertTrue(reader.streams.isEmpty());
+
+        // A good read returns its stream to the pool
+        reader.readBytes(0, 10);
+        assertEquals(1, reader.streams.size());
+
+        reader.close();
+        assertTrue(reader.streams.isEmpty());
+        reader.readBytes(0, 10);
+        assertTrue(reader.streams.isEmpty());
+    }
+
+    /**
+     * Read random ranges from several threads at once and compare to a RandomAccessFile
+     */
+    @Test
+    public void testConcurrentReads() throws Exception {
+        testConcurrentReads(PositionalReader.getReader(TEST_FILE));
+        testConcurrentReads(new PositionalReader.StreamPoolReader(TEST_FILE));
+    }
+
+    private void testConcurrentReads(final PositionalReader reader) throws Exception {
+
+        final File file = new File(TEST_FILE);
+        final int fileLength = (int) file.length();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+        for (int t = 0; t < 8; t++) {
+            final long seed = t;
+            results.add(executor.submit(new Callable<Boolean>() {
+                public Boolean call() throws Exception {
+                    Random random = new Random(seed);
+                    RandomAccessFile raf = new RandomAccessFile(file, "r");
+                    try {
+                        for (int i = 0; i < 200; i++) {
+                            int position = random.nextInt(fileLength - 1);
+                            int nBytes = 1 + random.nextInt(Math.min(10000, fileLength - position));
+                            byte[] expected = new byte[nBytes];
+                            raf.seek(position);
+                            raf.readFully(expected);
+                            if (!Arrays.equals(expected, reader.readBytes(position, nBytes))) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    } finally {
+                        raf.close();
+                    }
+                }
+            }));
+        }
+        for (Future<Boolean> result : results) {
+            assertTrue(result.get());
+        }
+        executor.shutdown();
+        reader.close();
+    }
+}
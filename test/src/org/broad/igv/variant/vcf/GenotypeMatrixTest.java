@@ -0,0 +1,150 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.variant.vcf;
+
+import htsjdk.tribble.AbstractFeatureReader;
+import htsjdk.tribble.Feature;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFHeader;
+import org.broad.igv.AbstractHeadlessTest;
+import org.broad.igv.feature.tribble.CodecFactory;
+import org.broad.igv.util.ResourceLocator;
+import org.broad.igv.util.TestUtils;
+import org.broad.igv.variant.Genotype;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class GenotypeMatrixTest extends AbstractHeadlessTest {
+
+    /**
+     * Genotypes served from the matrix agree with the htsjdk genotypes for all test VCF and BCF files
+     */
+    @Test
+    public void testCompareDecoded() throws Exception {
+        String[] paths = {"vcf/ex2.vcf", "vcf/hc_mod.vcf", "vcf/missingFields.vcf", "vcf/SRP32_v4.0.vcf",
+                "vcf/multi_allele_freqs.vcf", "vcf/outputPileup.flt1.vcf", "vcf/example4-last-gsnap-2_fixed.vcf",
+                "bcf/ex2.bcf"};
+        int nGenotypes = 0;
+        for (String path : paths) {
+            nGenotypes += compareDecoded(TestUtils.DATA_DIR + path);
+        }
+        assertTrue(nGenotypes > 100);
+    }
+
+    /**
+     * Lines the text parser accepts give the same calls as decoding them with htsjdk,  lines it declines are
+     * the ones htsjdk rejects or treats specially.
+     */
+    @Test
+    public void testParseLines() throws Exception {
+        String[] lines = {
+                "20\t14370\t.\tG\tA,T\t29\tPASS\t.\tGT:GQ:DP:AD\t0|0:48:1:5,0\t1|0:-1:8:.\t./.:.:.:1,2\t0/.:25.6:+3\t2|1",
+                "20\t14371\t.\tG\tA\t29\tPASS\t.\tGT:DP\t0/0:1000000\t1/1:5000000\t0/1:-3\t.\t./.",
+                "20\t14372\t.\tG\t.\t29\tPASS\t.\tGT:GQ\t0:3000\t0\t.\t0:1\t0",
+                "20\t14373\t.\tG\tA\t29\tPASS\t.\tDP:GT\t3:0/1\t3:0/1\t3:0/1\t3:0/1\t3:0/1",
+                "20\t14374\t.\tG\tA\t29\tPASS\t.\tGT:GL\t0/1:-1,-2,-3\t0/1:.\t0/1:.\t0/1:.\t0/1:.",
+                "20\t14375\t.\tG\tA\t29\tPASS\t.\tGT:PL\t0/1:1,x\t0/1:.\t0/1:.\t0/1:.\t0/1:.",
+                "20\t14376\t.\tG\tA\t29\tPASS\t.\tGT\t0/1\t0/1\t0/1\t0/1",
+                "20\t14377\t.\tG\tA\t29\tPASS\t.\tGT\t0/2\t0/1\t0/1\t0/1\t0/1",
+                "20\t14378\t.\tG\tA\t29\tPASS\t.\tGT:DP\t0/1:3:4\t0/1\t0/1\t0/1\t0/1"
+        };
+        boolean[] parsed = {true, true, true, false, false, false, false, false, false};
+
+        File file = new File(TestUtils.TMP_OUTPUT_DIR, "genotypeMatrix.vcf");
+        PrintWriter pw = new PrintWriter(file);
+        pw.println("##fileformat=VCFv4.1");
+        pw.println("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\ts1\ts2\ts3\ts4\ts5");
+        pw.close();
+
+        VCFCodec codec = new VCFCodec();
+        AbstractFeatureReader reader = AbstractFeatureReader.getFeatureReader(file.getAbsolutePath(), codec, false);
+        List<String> samples = ((VCFHeader) reader.getHeader()).getGenotypeSamples();
+        reader.close();
+        file.delete();
+
+        for (int i = 0; i < lines.length; i++) {
+            VariantContext vc = codec.decode(lines[i]);
+            GenotypeMatrix matrix = new GenotypeMatrix(samples, GenotypeMatrix.indexSamples(samples), 2);
+            int column = matrix.addColumn();
+            assertEquals(lines[i], parsed[i], matrix.parseGenotypes(column, lines[i], vc.getAlleles()));
+            if (parsed[i]) {
+                int expectedColumn = matrix.addColumn();
+                matrix.setGenotypes(expectedColumn, vc);
+                for (int s = 0; s < samples.size(); s++) {
+                    assertEquals(lines[i], matrix.getType(expectedColumn, s), matrix.getType(column, s));
+                    assertEquals(lines[i], matrix.getDepth(expectedColumn, s), matrix.getDepth(column, s));
+                    assertEquals(lines[i], matrix.getQuality(expectedColumn, s), matrix.getQuality(column, s));
+                }
+                assertTrue(matrix.isFull());
+            }
+        }
+    }
+
+    private int compareDecoded(String path) throws Exception {
+        ResourceLocator locator = new ResourceLocator(path);
+        AbstractFeatureReader reader = AbstractFeatureReader.getFeatureReader(path, CodecFactory.getCodec(locator, genome), false);
+        Iterator iter = reader.iterator();
+        int nGenotypes = 0;
+        while (iter.hasNext()) {
+            VCFVariant variant = (VCFVariant) iter.next();
+            VariantContext vc = variant.getVariantContext();
+
+            VCFVariant.ZygosityCount expectedCount = new VCFVariant.ZygosityCount();
+            List<String> expectedSamples = new ArrayList<String>(vc.getSampleNamesOrderedByName());
+            List<String> samples = new ArrayList<String>(variant.getSampleNames());
+            java.util.Collections.sort(samples);
+            assertEquals(path, expectedSamples, samples);
+
+            for (String sample : samples) {
+                htsjdk.variant.variantcontext.Genotype expected = vc.getGenotype(sample);
+                Genotype actual = variant.getGenotype(sample);
+                String msg = path + " " + variant + " " + sample;
+                assertEquals(msg, expected.getType(), actual.getType());
+                assertEquals(msg, expected.isHet(), actual.isHet());
+                assertEquals(msg, expected.getGQ(), actual.getPhredScaledQual(), 0);
+                assertEquals(msg, expected.hasDP() ? expected.getDP() : Double.NaN, actual.getAttributeAsDouble("DP"), 0);
+                assertEquals(msg, expected.getGenotypeString(), actual.getGenotypeString());
+                assertEquals(msg, expected.getAlleles().size(), actual.getAlleles().size());
+                expectedCount.incrementCount(expected.getType());
+                nGenotypes++;
+            }
+            assertEquals(expectedCount.getHomVar(), variant.getHomVarCount());
+            assertEquals(expectedCount.getHet(), variant.getHetCount());
+            assertEquals(expectedCount.getHomRef(), variant.getHomRefCount());
+            assertEquals(expectedCount.getNoCall(), variant.getNoCallCount());
+        }
+        reader.close();
+        return nGenotypes;
+    }
+}